@@ -19,14 +19,21 @@
  */
 package net.brabenetz.app.springstompserver;
 
+import io.micrometer.core.instrument.binder.MeterBinder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.AnnotatedBeanDefinition;
 import org.springframework.boot.Banner.Mode;
+import org.springframework.boot.LazyInitializationExcludeFilter;
 import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.core.env.SimpleCommandLinePropertySource;
+import org.springframework.core.env.StandardEnvironment;
 
 /**
  * Simple Spring Stomp Server as described in <a href="https://spring.io/guides/gs/messaging-stomp-websocket/">Spring Websocket Guide</a> .
@@ -36,18 +43,50 @@ import org.springframework.boot.context.properties.EnableConfigurationProperties
 @SuppressWarnings("PMD.UseUtilityClass")
 public class SpringStompServerApplication {
 
+    static final String FAST_START_PROPERTY = "spring-stomp-server.fast-start";
+
+    static final String EXIT_AFTER_START_PROPERTY = "spring-stomp-server.exit-after-start";
+
+    /** The packages of the beans which are not lazy with fast-start: the application itself and the spring websocket message broker. */
+    private static final String[] EAGER_PACKAGES = {
+        SpringStompServerApplication.class.getPackage().getName() + ".",
+        "org.springframework.messaging.simp.",
+        "org.springframework.web.socket.",
+    };
+
     /**
      * Spring boot start.
      *
      * @param args Override Config-Properties. See: {@link net.brabenetz.app.springstompserver.config.WebSocketConfigProperties}.
      */
-    @SuppressWarnings("resource")
     public static void main(final String[] args) {
         if (System.getProperty("spring.config.name") == null) {
             System.setProperty("spring.config.name", "spring-stomp-server");
         }
 
-        new SpringApplicationBuilder(SpringStompServerApplication.class)
+        ConfigurableApplicationContext context = start(args);
+        if (isEnabled(args, EXIT_AFTER_START_PROPERTY)) {
+            // e.g. for the training run of the AppCDS archive
+            context.close();
+        }
+    }
+
+    /**
+     * Starts the application in one context with lazy bean initialization if "spring-stomp-server.fast-start" is true,
+     * otherwise with the AppPrepare context as parent.
+     * <p>
+     * The fast-start is read before any context exists, so it can only be given as command line argument, System-Property or environment variable.
+     */
+    @SuppressWarnings("resource")
+    static ConfigurableApplicationContext start(final String[] args) {
+        if (isEnabled(args, FAST_START_PROPERTY)) {
+            return new SpringApplicationBuilder(SpringStompServerApplication.class)
+                    .banner(new SpringStompServerBanner())
+                    .lazyInitialization(true)
+                    .initializers(context -> AppPrepare.logEnvironment())
+                    .run(args);
+        }
+        return new SpringApplicationBuilder(SpringStompServerApplication.class)
                 .bannerMode(Mode.OFF)
                 .parent(new SpringApplicationBuilder(AppPrepare.class)
                         .banner(new SpringStompServerBanner())
@@ -56,6 +95,36 @@ public class SpringStompServerApplication {
                 .run(args);
     }
 
+    private static boolean isEnabled(final String[] args, final String property) {
+        StandardEnvironment environment = new StandardEnvironment();
+        environment.getPropertySources().addFirst(new SimpleCommandLinePropertySource(args));
+        return Boolean.TRUE.equals(environment.getProperty(property, Boolean.class));
+    }
+
+    /**
+     * Keeps the beans of this application, of the message broker and the metrics eager if lazy initialization is enabled (fast-start),
+     * because they register listeners, interceptors, threads and meters as side effect, and are configured after creation (e.g. the subscription registry
+     * of the broker). The beans of their configuration classes (@Bean methods) are matched by the declaring class of the factory method.
+     * The remaining auto-configured infrastructure (e.g. actuator endpoints, Jackson, validation) is created on first use.
+     */
+    @Bean
+    public static LazyInitializationExcludeFilter eagerApplicationBeans() {
+        return (beanName, beanDefinition, beanType) -> isEagerPackage(beanType.getName())
+                || MeterBinder.class.isAssignableFrom(beanType)
+                || beanDefinition instanceof AnnotatedBeanDefinition
+                        && ((AnnotatedBeanDefinition) beanDefinition).getFactoryMethodMetadata() != null
+                        && isEagerPackage(((AnnotatedBeanDefinition) beanDefinition).getFactoryMethodMetadata().getDeclaringClassName());
+    }
+
+    private static boolean isEagerPackage(final String className) {
+        for (String eagerPackage : EAGER_PACKAGES) {
+            if (className.startsWith(eagerPackage)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * AppPrepare to run before SpringStompServerApplication starts.
      */
@@ -64,6 +133,10 @@ public class SpringStompServerApplication {
 
         @Override
         public void afterPropertiesSet() throws Exception {
+            logEnvironment();
+        }
+
+        static void logEnvironment() {
             LOG.info("Current Java-Version: {}; OS: {}; Timezone: {}; Lang: {}",
                     System.getProperty("java.version"),
                     System.getProperty("os.name"),
@@ -0,0 +1,130 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.broker;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.util.function.Supplier;
+
+/**
+ * A {@link SubscriptionRegistry} which is partitioned into N slices, one per lane of the {@link ShardedTaskExecutor}. The slices are
+ * {@link TrieSubscriptionRegistry} or {@link org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry} (which supports the "selector"
+ * header).
+ * <p>
+ * A subscription is stored in the slice of its destination, and a message destination is only looked up in its slice. The
+ * {@link ShardedTaskExecutor} routes the messages of a destination to the same lane, so each slice is mostly read by one thread only. The
+ * subscriptions are written by the lanes of their sessions, so the slices are not lock-free: the lookups of a {@link TrieSubscriptionRegistry}
+ * slice are, but its updates are synchronized. The lanes share no lock for the messages of different slices.<br>
+ * Subscriptions with wildcards can match destinations of every slice, so they are stored in all slices. UNSUBSCRIBE (without destination) and
+ * DISCONNECT are also applied to all slices.
+ */
+public class ShardedSubscriptionRegistry implements SubscriptionRegistry {
+
+    private final SubscriptionRegistry[] shards;
+
+    /**
+     * Create the registry with the given number of {@link TrieSubscriptionRegistry} slices.
+     *
+     * @param shardCount the number of slices, the same as the number of lanes of the {@link ShardedTaskExecutor}.
+     */
+    public ShardedSubscriptionRegistry(final int shardCount) {
+        this(shardCount, TrieSubscriptionRegistry::new);
+    }
+
+    /**
+     * Create the registry with the given number of slices.
+     *
+     * @param shardCount the number of slices, the same as the number of lanes of the {@link ShardedTaskExecutor}.
+     * @param sliceFactory creates the subscription registry of each slice.
+     */
+    public ShardedSubscriptionRegistry(final int shardCount, final Supplier<? extends SubscriptionRegistry> sliceFactory) {
+        shards = new SubscriptionRegistry[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = sliceFactory.get();
+        }
+    }
+
+    @Override
+    public void registerSubscription(final Message<?> message) {
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null) {
+            // just log the invalid message once
+            shards[0].registerSubscription(message);
+        } else if (TrieSubscriptionRegistry.isPattern(destination)) {
+            for (SubscriptionRegistry shard : shards) {
+                shard.registerSubscription(message);
+            }
+        } else {
+            shards[ShardedTaskExecutor.shardOf(destination, shards.length)].registerSubscription(message);
+        }
+    }
+
+    @Override
+    public void unregisterSubscription(final Message<?> message) {
+        for (SubscriptionRegistry shard : shards) {
+            shard.unregisterSubscription(message);
+        }
+    }
+
+    @Override
+    public void unregisterAllSubscriptions(final String sessionId) {
+        for (SubscriptionRegistry shard : shards) {
+            shard.unregisterAllSubscriptions(sessionId);
+        }
+    }
+
+    @Override
+    public MultiValueMap<String, String> findSubscriptions(final Message<?> message) {
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null) {
+            return new LinkedMultiValueMap<>();
+        }
+        return shards[ShardedTaskExecutor.shardOf(destination, shards.length)].findSubscriptions(message);
+    }
+
+    /**
+     * Gets the number of slices.
+     *
+     * @return the number of slices
+     */
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Gets the number of registered subscriptions of the given slice (subscriptions with wildcards are counted in each slice).
+     *
+     * @param shard the slice index.
+     * @return the number of registered subscriptions of the slice, or -1 if the slice is not a {@link TrieSubscriptionRegistry}
+     */
+    public int getSubscriptionCount(final int shard) {
+        return shards[shard] instanceof TrieSubscriptionRegistry ? ((TrieSubscriptionRegistry) shards[shard]).getSubscriptionCount() : -1;
+    }
+
+    @Override
+    public String toString() {
+        return "ShardedSubscriptionRegistry[shards=" + shards.length + "]";
+    }
+
+}
@@ -0,0 +1,174 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.broker;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ThreadPoolTaskExecutor} for the message channels which partitions the messages into N single-threaded lanes.
+ * <p>
+ * MESSAGE frames (the SEND frames of the clients and the messages of the brokerChannel) are routed by the hash of their destination. So all messages
+ * of the same destination are processed in order by the same thread, while different destinations are processed in parallel.<br>
+ * All other frames (CONNECT, SUBSCRIBE, UNSUBSCRIBE, DISCONNECT, ...) are routed by the hash of their session id, so the subscriptions of a session
+ * are never registered after its DISCONNECT.<br>
+ * All other tasks are executed by the normal thread pool.
+ * <p>
+ * See also {@link ShardedSubscriptionRegistry}, which uses the same {@link #shardOf(String, int)}.
+ */
+public class ShardedTaskExecutor extends ThreadPoolTaskExecutor {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int shardCount;
+
+    private transient ThreadPoolExecutor[] lanes;
+
+    /**
+     * Create the executor with the given number of lanes.
+     *
+     * @param shardCount the number of single-threaded lanes.
+     */
+    public ShardedTaskExecutor(final int shardCount) {
+        if (shardCount < 1) {
+            throw new IllegalArgumentException("The shardCount must be at least 1 but was " + shardCount);
+        }
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * Get the lane of the given routing key.
+     *
+     * @param key the routing key, like the destination.
+     * @param shardCount the number of lanes.
+     * @return the lane index between 0 and shardCount - 1.
+     */
+    public static int shardOf(final String key, final int shardCount) {
+        int hash = key.hashCode();
+        return Math.floorMod(hash ^ (hash >>> 16), shardCount);
+    }
+
+    /**
+     * Gets the number of single-threaded lanes.
+     *
+     * @return the number of single-threaded lanes
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Gets the number of tasks which are currently executed by the lanes and the thread pool.
+     *
+     * @return the number of active tasks
+     */
+    @Override
+    public int getActiveCount() {
+        int activeCount = super.getActiveCount();
+        for (ThreadPoolExecutor lane : lanes()) {
+            activeCount += lane.getActiveCount();
+        }
+        return activeCount;
+    }
+
+    /**
+     * Gets the number of tasks which are waiting in the lanes and the thread pool.
+     *
+     * @return the number of queued tasks
+     */
+    public int getQueuedTaskCount() {
+        int queuedTaskCount = lanes == null ? 0 : getThreadPoolExecutor().getQueue().size();
+        for (ThreadPoolExecutor lane : lanes()) {
+            queuedTaskCount += lane.getQueue().size();
+        }
+        return queuedTaskCount;
+    }
+
+    /**
+     * Gets the number of tasks which were completed by the lanes and the thread pool.
+     *
+     * @return the number of completed tasks
+     */
+    public long getCompletedTaskCount() {
+        long completedTaskCount = lanes == null ? 0 : getThreadPoolExecutor().getCompletedTaskCount();
+        for (ThreadPoolExecutor lane : lanes()) {
+            completedTaskCount += lane.getCompletedTaskCount();
+        }
+        return completedTaskCount;
+    }
+
+    @Override
+    protected ExecutorService initializeExecutor(final ThreadFactory threadFactory, final RejectedExecutionHandler rejectedExecutionHandler) {
+        ExecutorService executor = super.initializeExecutor(threadFactory, rejectedExecutionHandler);
+        lanes = new ThreadPoolExecutor[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            CustomizableThreadFactory laneThreadFactory = new CustomizableThreadFactory(getThreadNamePrefix() + "shard-" + i + "-");
+            laneThreadFactory.setDaemon(isDaemon());
+            lanes[i] = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), laneThreadFactory, rejectedExecutionHandler);
+        }
+        return executor;
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        String key = task instanceof MessageHandlingRunnable ? routingKey(((MessageHandlingRunnable) task).getMessage()) : null;
+        if (key == null || lanes == null) {
+            super.execute(task);
+        } else {
+            lanes[shardOf(key, shardCount)].execute(task);
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        if (lanes != null) {
+            for (ExecutorService lane : lanes) {
+                lane.shutdown();
+            }
+        }
+        super.shutdown();
+    }
+
+    private ThreadPoolExecutor[] lanes() {
+        return lanes != null ? lanes : new ThreadPoolExecutor[0];
+    }
+
+    private static String routingKey(final Message<?> message) {
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+            String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+            if (destination != null) {
+                return destination;
+            }
+        }
+        return SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+    }
+
+}
@@ -0,0 +1,38 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.broker;
+
+/**
+ * The implementations of the {@link org.springframework.messaging.simp.broker.SubscriptionRegistry} for the simple message broker.
+ */
+public enum SubscriptionRegistryType {
+
+    /**
+     * The {@link org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry} from spring with a destination cache limited by the
+     * broker-registry-cache-limit. Supports the "selector" header.
+     */
+    DEFAULT,
+
+    /**
+     * The {@link TrieSubscriptionRegistry} which indexes all destinations in a segment trie.
+     */
+    TRIE
+
+}
@@ -0,0 +1,278 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.broker;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.broker.AbstractSubscriptionRegistry;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A {@link org.springframework.messaging.simp.broker.SubscriptionRegistry} which indexes the subscribed destinations in a trie of the "/" separated
+ * segments.
+ * <p>
+ * The lookup of a message destination walks the trie segment by segment, so it is O(depth) and independent of the number of subscriptions. Unlike the
+ * {@link org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry} there is no destination cache with a cache-limit, which falls back to
+ * a scan over all subscriptions if many different destinations are used.
+ * <p>
+ * Supported wildcards (like the AntPathMatcher): "*" matches exactly one segment, "**" matches zero or more segments, and segments like "order-*" or
+ * "{id}" are matched with the {@link AntPathMatcher}. The "selector" header of the DefaultSubscriptionRegistry is not supported.
+ * <p>
+ * Lookups are lock-free and can run concurrently. Subscribe and unsubscribe update the trie incrementally and are synchronized.
+ */
+public class TrieSubscriptionRegistry extends AbstractSubscriptionRegistry {
+
+    private static final String SEPARATOR = "/";
+
+    private static final String SINGLE_WILDCARD = "*";
+
+    private static final String DOUBLE_WILDCARD = "**";
+
+    private final AntPathMatcher segmentMatcher = new AntPathMatcher(SEPARATOR);
+
+    private final Node root = new Node(null, null);
+
+    /** sessionId -> subscriptionId -> destination. */
+    private final Map<String, Map<String, String>> sessions = new ConcurrentHashMap<>();
+
+    @Override
+    protected synchronized void addSubscriptionInternal(final String sessionId, final String subscriptionId, final String destination,
+            final Message<?> message) {
+        String previousDestination = sessions.computeIfAbsent(sessionId, key -> new ConcurrentHashMap<>()).put(subscriptionId, destination);
+        if (previousDestination != null) {
+            // re-subscription with the same subscriptionId
+            removeFromTrie(sessionId, subscriptionId, previousDestination);
+        }
+        Node node = root;
+        for (String segment : split(destination)) {
+            node = node.getOrCreateChild(segment);
+        }
+        node.subscriptions.computeIfAbsent(sessionId, key -> ConcurrentHashMap.newKeySet()).add(subscriptionId);
+    }
+
+    @Override
+    protected synchronized void removeSubscriptionInternal(final String sessionId, final String subscriptionId, final Message<?> message) {
+        Map<String, String> subscriptions = sessions.get(sessionId);
+        if (subscriptions == null) {
+            return;
+        }
+        String destination = subscriptions.remove(subscriptionId);
+        if (subscriptions.isEmpty()) {
+            sessions.remove(sessionId);
+        }
+        if (destination != null) {
+            removeFromTrie(sessionId, subscriptionId, destination);
+        }
+    }
+
+    @Override
+    public synchronized void unregisterAllSubscriptions(final String sessionId) {
+        Map<String, String> subscriptions = sessions.remove(sessionId);
+        if (subscriptions != null) {
+            subscriptions.forEach((subscriptionId, destination) -> removeFromTrie(sessionId, subscriptionId, destination));
+        }
+    }
+
+    @Override
+    protected MultiValueMap<String, String> findSubscriptionsInternal(final String destination, final Message<?> message) {
+        String[] segments = split(destination);
+        List<Node> matchingNodes = new ArrayList<>(2);
+        collectMatchingNodes(root, segments, 0, matchingNodes);
+
+        MultiValueMap<String, String> result = new LinkedMultiValueMap<>();
+        for (Node node : matchingNodes) {
+            for (Map.Entry<String, Set<String>> entry : node.subscriptions.entrySet()) {
+                for (String subscriptionId : entry.getValue()) {
+                    result.add(entry.getKey(), subscriptionId);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of all registered subscriptions.
+     *
+     * @return the number of all registered subscriptions
+     */
+    public int getSubscriptionCount() {
+        int count = 0;
+        for (Map<String, String> subscriptions : sessions.values()) {
+            count += subscriptions.size();
+        }
+        return count;
+    }
+
+    /**
+     * Gets the number of nodes in the trie, including the root node. Only for tests and monitoring.
+     *
+     * @return the number of nodes in the trie
+     */
+    public int getNodeCount() {
+        return root.countNodes();
+    }
+
+    private void collectMatchingNodes(final Node node, final String[] segments, final int index, final List<Node> matchingNodes) {
+        if (index == segments.length) {
+            // a node can be reached on several paths via "**"
+            if (!node.subscriptions.isEmpty() && !matchingNodes.contains(node)) {
+                matchingNodes.add(node);
+            }
+        } else {
+            String segment = segments[index];
+            Node literalChild = node.literalChildren.get(segment);
+            if (literalChild != null) {
+                collectMatchingNodes(literalChild, segments, index + 1, matchingNodes);
+            }
+            if (!node.patternChildren.isEmpty()) {
+                for (Node patternChild : node.patternChildren.values()) {
+                    if (SINGLE_WILDCARD.equals(patternChild.segment) || segmentMatcher.match(patternChild.segment, segment)) {
+                        collectMatchingNodes(patternChild, segments, index + 1, matchingNodes);
+                    }
+                }
+            }
+        }
+        Node doubleWildcardChild = node.doubleWildcardChild;
+        if (doubleWildcardChild != null) {
+            // "**" matches zero or more segments
+            for (int next = index; next <= segments.length; next++) {
+                collectMatchingNodes(doubleWildcardChild, segments, next, matchingNodes);
+            }
+        }
+    }
+
+    private void removeFromTrie(final String sessionId, final String subscriptionId, final String destination) {
+        Node node = root;
+        for (String segment : split(destination)) {
+            node = node.getChild(segment);
+            if (node == null) {
+                return;
+            }
+        }
+        Set<String> subscriptionIds = node.subscriptions.get(sessionId);
+        if (subscriptionIds != null) {
+            subscriptionIds.remove(subscriptionId);
+            if (subscriptionIds.isEmpty()) {
+                node.subscriptions.remove(sessionId);
+            }
+        }
+        node.pruneIfEmpty();
+    }
+
+    private static String[] split(final String destination) {
+        return destination.split(SEPARATOR, -1);
+    }
+
+    static boolean isPattern(final String segment) {
+        return segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0 || segment.indexOf('{') >= 0;
+    }
+
+    @Override
+    public String toString() {
+        return "TrieSubscriptionRegistry[sessions=" + sessions.size() + ", subscriptions=" + getSubscriptionCount() + "]";
+    }
+
+    /**
+     * One segment in the trie with the subscriptions of the destination which ends here.
+     */
+    private static final class Node {
+
+        private final Node parent;
+
+        private final String segment;
+
+        private final Map<String, Node> literalChildren = new ConcurrentHashMap<>();
+
+        /** Children with wildcards, which must be matched with the AntPathMatcher (includes "*" but not "**"). */
+        private final Map<String, Node> patternChildren = new ConcurrentHashMap<>();
+
+        /** The "**" child, which can match zero or more segments. */
+        private volatile Node doubleWildcardChild;
+
+        /** sessionId -> subscriptionIds. */
+        private final Map<String, Set<String>> subscriptions = new ConcurrentHashMap<>();
+
+        Node(final Node parent, final String segment) {
+            this.parent = parent;
+            this.segment = segment;
+        }
+
+        private Node getChild(final String childSegment) {
+            if (DOUBLE_WILDCARD.equals(childSegment)) {
+                return doubleWildcardChild;
+            }
+            return (isPattern(childSegment) ? patternChildren : literalChildren).get(childSegment);
+        }
+
+        private Node getOrCreateChild(final String childSegment) {
+            if (DOUBLE_WILDCARD.equals(childSegment)) {
+                if (doubleWildcardChild == null) {
+                    doubleWildcardChild = new Node(this, childSegment);
+                }
+                return doubleWildcardChild;
+            }
+            return (isPattern(childSegment) ? patternChildren : literalChildren).computeIfAbsent(childSegment, key -> new Node(this, key));
+        }
+
+        private void removeChild(final Node child) {
+            if (child == doubleWildcardChild) {
+                doubleWildcardChild = null;
+            } else if (isPattern(child.segment)) {
+                patternChildren.remove(child.segment, child);
+            } else {
+                literalChildren.remove(child.segment, child);
+            }
+        }
+
+        private void pruneIfEmpty() {
+            Node node = this;
+            while (node.parent != null && node.isEmpty()) {
+                node.parent.removeChild(node);
+                node = node.parent;
+            }
+        }
+
+        private boolean isEmpty() {
+            return subscriptions.isEmpty() && literalChildren.isEmpty() && patternChildren.isEmpty() && doubleWildcardChild == null;
+        }
+
+        private int countNodes() {
+            int count = 1;
+            for (Node child : literalChildren.values()) {
+                count += child.countNodes();
+            }
+            for (Node child : patternChildren.values()) {
+                count += child.countNodes();
+            }
+            if (doubleWildcardChild != null) {
+                count += doubleWildcardChild.countNodes();
+            }
+            return count;
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.compression;
+
+import net.brabenetz.app.springstompserver.config.WebSocketConfigProperties;
+import org.springframework.context.Lifecycle;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.http.server.ServletServerHttpRequest;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeFailureException;
+import org.springframework.web.socket.server.HandshakeHandler;
+import org.springframework.web.socket.server.support.DefaultHandshakeHandler;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletRequestWrapper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * A {@link HandshakeHandler} which controls the permessage-deflate negotiation of one websocket-endpoint (see
+ * {@link WebSocketConfigProperties#getCompression()}).
+ * <p>
+ * The embedded Tomcat accepts each permessage-deflate offer of a client and reads the offers again from the servlet request during the upgrade. So the
+ * "Sec-WebSocket-Extensions" header of the servlet request is rewritten before the handshake: the permessage-deflate offers are removed if the
+ * compression is disabled, or the no-context-takeover parameters are added, which the server may accept also if the client didn't offer them.
+ */
+public class CompressionHandshakeHandler implements HandshakeHandler, Lifecycle {
+
+    static final String EXTENSIONS_HEADER = "Sec-WebSocket-Extensions";
+
+    static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+
+    private final DefaultHandshakeHandler delegate = new DefaultHandshakeHandler();
+
+    private final boolean enabled;
+
+    private final boolean serverNoContextTakeover;
+
+    private final boolean clientNoContextTakeover;
+
+    /**
+     * Create the handshake handler.
+     *
+     * @param enabled true if permessage-deflate is accepted.
+     * @param serverNoContextTakeover true to add "server_no_context_takeover" to the permessage-deflate offers.
+     * @param clientNoContextTakeover true to add "client_no_context_takeover" to the permessage-deflate offers.
+     */
+    public CompressionHandshakeHandler(final boolean enabled, final boolean serverNoContextTakeover, final boolean clientNoContextTakeover) {
+        this.enabled = enabled;
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        this.clientNoContextTakeover = clientNoContextTakeover;
+    }
+
+    @Override
+    public boolean doHandshake(final ServerHttpRequest request, final ServerHttpResponse response, final WebSocketHandler wsHandler,
+            final Map<String, Object> attributes) throws HandshakeFailureException {
+        ServerHttpRequest handshakeRequest = request;
+        if (request instanceof ServletServerHttpRequest) {
+            HttpServletRequest servletRequest = ((ServletServerHttpRequest) request).getServletRequest();
+            List<String> extensions = Collections.list(servletRequest.getHeaders(EXTENSIONS_HEADER));
+            if (!extensions.isEmpty()) {
+                handshakeRequest = new ServletServerHttpRequest(new ExtensionsRequestWrapper(servletRequest,
+                        rewriteExtensions(String.join(",", extensions))));
+            }
+        }
+        return delegate.doHandshake(handshakeRequest, response, wsHandler, attributes);
+    }
+
+    /**
+     * Rewrite the permessage-deflate offers of the "Sec-WebSocket-Extensions" header.
+     *
+     * @param extensions the value of the "Sec-WebSocket-Extensions" header.
+     * @return the rewritten value, or null if no extension is left
+     */
+    String rewriteExtensions(final String extensions) {
+        List<String> result = new ArrayList<>();
+        for (String offer : extensions.split(",")) {
+            String trimmedOffer = offer.trim();
+            String name = trimmedOffer.split(";", 2)[0].trim();
+            if (!PERMESSAGE_DEFLATE.equalsIgnoreCase(name)) {
+                result.add(trimmedOffer);
+            } else if (enabled) {
+                StringBuilder deflateOffer = new StringBuilder(trimmedOffer);
+                String lowerCaseOffer = trimmedOffer.toLowerCase(Locale.ROOT);
+                if (serverNoContextTakeover && !lowerCaseOffer.contains("server_no_context_takeover")) {
+                    deflateOffer.append("; server_no_context_takeover");
+                }
+                if (clientNoContextTakeover && !lowerCaseOffer.contains("client_no_context_takeover")) {
+                    deflateOffer.append("; client_no_context_takeover");
+                }
+                result.add(deflateOffer.toString());
+            }
+        }
+        return result.isEmpty() ? null : String.join(", ", result);
+    }
+
+    @Override
+    public void start() {
+        delegate.start();
+    }
+
+    @Override
+    public void stop() {
+        delegate.stop();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return delegate.isRunning();
+    }
+
+    /**
+     * The servlet request with the rewritten "Sec-WebSocket-Extensions" header.
+     */
+    private static final class ExtensionsRequestWrapper extends HttpServletRequestWrapper {
+
+        private final String extensions;
+
+        ExtensionsRequestWrapper(final HttpServletRequest request, final String extensions) {
+            super(request);
+            this.extensions = extensions;
+        }
+
+        @Override
+        public String getHeader(final String name) {
+            return EXTENSIONS_HEADER.equalsIgnoreCase(name) ? extensions : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(final String name) {
+            if (!EXTENSIONS_HEADER.equalsIgnoreCase(name)) {
+                return super.getHeaders(name);
+            }
+            return Collections.enumeration(extensions != null ? Collections.singletonList(extensions) : Collections.<String>emptyList());
+        }
+
+        @Override
+        public Enumeration<String> getHeaderNames() {
+            List<String> names = Collections.list(super.getHeaderNames());
+            if (extensions == null) {
+                names.removeIf(EXTENSIONS_HEADER::equalsIgnoreCase);
+            }
+            return Collections.enumeration(names);
+        }
+    }
+
+}
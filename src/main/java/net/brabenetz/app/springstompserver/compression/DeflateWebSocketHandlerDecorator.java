@@ -0,0 +1,145 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.compression;
+
+import org.apache.tomcat.websocket.PerMessageDeflate;
+import org.apache.tomcat.websocket.Transformation;
+import org.apache.tomcat.websocket.WsRemoteEndpointImplBase;
+import org.apache.tomcat.websocket.WsSession;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.lang.reflect.Field;
+import java.util.zip.Deflater;
+
+/**
+ * A {@link WebSocketHandlerDecorator} which sets the compression level and the min-size (see {@link MinSizePerMessageDeflate}) on the permessage-deflate
+ * transformation of each new Tomcat websocket session.
+ * <p>
+ * The Tomcat implementation has no options for them, so the private fields of the Tomcat session are changed by reflection before the first message is
+ * sent. The fields are resolved once: check {@link #isSupported()} at startup and don't register the decorator if it returns false (e.g. another Tomcat
+ * version), then only the negotiation of Tomcat is used. If a session can't be configured anyway, the Tomcat defaults are used and a warning is logged
+ * once.
+ * <p>
+ * Register it via {@link org.springframework.web.socket.config.annotation.WebSocketTransportRegistration#addDecoratorFactory} as last decorator, so it
+ * gets the undecorated session first.
+ */
+public class DeflateWebSocketHandlerDecorator extends WebSocketHandlerDecorator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(DeflateWebSocketHandlerDecorator.class);
+
+    private static final Field WS_REMOTE_ENDPOINT;
+
+    private static final Field TRANSFORMATION;
+
+    private static final Field DEFLATER;
+
+    private static volatile boolean warned;
+
+    static {
+        Field wsRemoteEndpoint = null;
+        Field transformation = null;
+        Field deflater = null;
+        try {
+            wsRemoteEndpoint = accessible(WsSession.class.getDeclaredField("wsRemoteEndpoint"));
+            transformation = accessible(WsRemoteEndpointImplBase.class.getDeclaredField("transformation"));
+            deflater = accessible(PerMessageDeflate.class.getDeclaredField("deflater"));
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+            // not supported by this Tomcat version (or no Tomcat at all), see isSupported()
+            LOG.debug("The permessage-deflate transformation of Tomcat is not accessible: {}", ex.toString());
+        }
+        WS_REMOTE_ENDPOINT = wsRemoteEndpoint;
+        TRANSFORMATION = transformation;
+        DEFLATER = deflater;
+    }
+
+    private final int level;
+
+    private final int minSize;
+
+    /**
+     * Create the decorator.
+     *
+     * @param delegate the websocket handler to decorate.
+     * @param level the deflate compression level from 0 to 9, or -1 for the default level.
+     * @param minSize the minimum payload size in bytes of a message to be compressed.
+     */
+    public DeflateWebSocketHandlerDecorator(final WebSocketHandler delegate, final int level, final int minSize) {
+        super(delegate);
+        this.level = level;
+        this.minSize = minSize;
+    }
+
+    /**
+     * Checks if the compression level and the min-size can be applied to the sessions of this Tomcat version.
+     *
+     * @return true if the private fields of Tomcat are accessible
+     */
+    public static boolean isSupported() {
+        return WS_REMOTE_ENDPOINT != null && TRANSFORMATION != null && DEFLATER != null && MinSizePerMessageDeflate.isSupported();
+    }
+
+    @Override
+    public void afterConnectionEstablished(final WebSocketSession session) throws Exception {
+        WebSocketSession nativeSession = WebSocketSessionDecorator.unwrap(session);
+        if (nativeSession instanceof NativeWebSocketSession && !nativeSession.getExtensions().isEmpty()) {
+            Object wsSession = ((NativeWebSocketSession) nativeSession).getNativeSession();
+            if (wsSession instanceof WsSession) {
+                configure((WsSession) wsSession);
+            }
+        }
+        super.afterConnectionEstablished(session);
+    }
+
+    private void configure(final WsSession wsSession) {
+        try {
+            Object remoteEndpoint = WS_REMOTE_ENDPOINT.get(wsSession);
+            Object transformation = TRANSFORMATION.get(remoteEndpoint);
+            if (!(transformation instanceof PerMessageDeflate)) {
+                return;
+            }
+            if (level != Deflater.DEFAULT_COMPRESSION) {
+                // a changed level on the used deflater is applied within the next deflate call, which confuses the Tomcat loop, so it is replaced.
+                Deflater defaultDeflater = (Deflater) DEFLATER.get(transformation);
+                DEFLATER.set(transformation, new Deflater(level, true));
+                defaultDeflater.end();
+            }
+            if (minSize > 0) {
+                TRANSFORMATION.set(remoteEndpoint, new MinSizePerMessageDeflate((Transformation) transformation, minSize));
+            }
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError ex) {
+            if (!warned) {
+                warned = true;
+                LOG.warn("The compression level and min-size are not supported by this Tomcat version, the defaults are used: {}", ex.toString());
+            }
+        }
+    }
+
+    private static Field accessible(final Field field) {
+        field.setAccessible(true);
+        return field;
+    }
+
+}
@@ -0,0 +1,182 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.compression;
+
+import org.apache.tomcat.websocket.Transformation;
+import org.apache.tomcat.websocket.TransformationResult;
+
+import javax.websocket.Extension;
+
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A Tomcat {@link Transformation} which sends the small messages uncompressed and delegates all other messages to the permessage-deflate transformation
+ * of Tomcat.
+ * <p>
+ * RFC 7692 allows to send each message compressed (RSV1 bit set) or uncompressed, and an uncompressed message doesn't touch the compression context, so
+ * the clients can decompress the following messages as usual. Only complete (unfragmented) data messages below the min-size are sent uncompressed.
+ * <p>
+ * The message parts are of the package private Tomcat class "MessagePart", so they are handled as raw objects and read by reflection.
+ */
+@SuppressWarnings({"rawtypes", "unchecked" })
+final class MinSizePerMessageDeflate implements Transformation {
+
+    private static final byte CONTINUATION_OP_CODE = 0;
+
+    private static final byte FIRST_CONTROL_OP_CODE = 8;
+
+    private static final Method IS_FIN;
+
+    private static final Method GET_OP_CODE;
+
+    private static final Method GET_PAYLOAD;
+
+    static {
+        Method isFin = null;
+        Method getOpCode = null;
+        Method getPayload = null;
+        try {
+            Class<?> messagePart = Class.forName("org.apache.tomcat.websocket.MessagePart");
+            isFin = accessible(messagePart.getMethod("isFin"));
+            getOpCode = accessible(messagePart.getMethod("getOpCode"));
+            getPayload = accessible(messagePart.getMethod("getPayload"));
+        } catch (ReflectiveOperationException | RuntimeException ex) {
+            // not supported by this Tomcat version, see isSupported()
+            isFin = null;
+        }
+        IS_FIN = isFin;
+        GET_OP_CODE = getOpCode;
+        GET_PAYLOAD = getPayload;
+    }
+
+    private final Transformation delegate;
+
+    private final int minSize;
+
+    private volatile Transformation next;
+
+    /** True while the parts of a fragmented message are sent through the delegate. */
+    private boolean inCompressedMessage;
+
+    MinSizePerMessageDeflate(final Transformation delegate, final int minSize) {
+        this.delegate = delegate;
+        this.minSize = minSize;
+    }
+
+    /**
+     * Checks if the message parts of this Tomcat version can be read.
+     *
+     * @return true if the min-size can be applied
+     */
+    static boolean isSupported() {
+        return IS_FIN != null && GET_OP_CODE != null && GET_PAYLOAD != null;
+    }
+
+    @Override
+    public List sendMessagePart(final List messageParts) throws IOException {
+        List result = new ArrayList(messageParts.size());
+        List compressedParts = new ArrayList(messageParts.size());
+        for (Object part : messageParts) {
+            byte opCode = opCode(part);
+            if (opCode >= FIRST_CONTROL_OP_CODE) {
+                compressedParts.add(part);
+            } else if (!inCompressedMessage && opCode != CONTINUATION_OP_CODE && isFin(part) && payload(part).remaining() < minSize) {
+                sendCompressed(compressedParts, result);
+                List uncompressedPart = new ArrayList(1);
+                uncompressedPart.add(part);
+                result.addAll(next != null ? next.sendMessagePart(uncompressedPart) : uncompressedPart);
+            } else {
+                compressedParts.add(part);
+                inCompressedMessage = !isFin(part);
+            }
+        }
+        sendCompressed(compressedParts, result);
+        return result;
+    }
+
+    private void sendCompressed(final List compressedParts, final List result) throws IOException {
+        if (!compressedParts.isEmpty()) {
+            result.addAll(delegate.sendMessagePart(new ArrayList(compressedParts)));
+            compressedParts.clear();
+        }
+    }
+
+    @Override
+    public void setNext(final Transformation next) {
+        this.next = next;
+        delegate.setNext(next);
+    }
+
+    @Override
+    public boolean validateRsvBits(final int i) {
+        return delegate.validateRsvBits(i);
+    }
+
+    @Override
+    public Extension getExtensionResponse() {
+        return delegate.getExtensionResponse();
+    }
+
+    @Override
+    public TransformationResult getMoreData(final byte opCode, final boolean fin, final int rsv, final ByteBuffer dest) throws IOException {
+        return delegate.getMoreData(opCode, fin, rsv, dest);
+    }
+
+    @Override
+    public boolean validateRsv(final int rsv, final byte opCode) {
+        return delegate.validateRsv(rsv, opCode);
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    private static Method accessible(final Method method) {
+        method.setAccessible(true);
+        return method;
+    }
+
+    private static Object invoke(final Method method, final Object part) {
+        try {
+            return method.invoke(part);
+        } catch (IllegalAccessException | InvocationTargetException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static boolean isFin(final Object part) {
+        return (Boolean) invoke(IS_FIN, part);
+    }
+
+    private static byte opCode(final Object part) {
+        return (Byte) invoke(GET_OP_CODE, part);
+    }
+
+    private static ByteBuffer payload(final Object part) {
+        return (ByteBuffer) invoke(GET_PAYLOAD, part);
+    }
+
+}
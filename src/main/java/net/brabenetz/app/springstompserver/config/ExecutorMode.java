@@ -0,0 +1,37 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+/**
+ * The execution mode of the inbound, outbound and broker message channels.
+ */
+public enum ExecutorMode {
+
+    /**
+     * A thread pool of platform threads with the configured core pool size.
+     */
+    POOLED,
+
+    /**
+     * A new virtual thread for each message (see {@link VirtualThreadTaskExecutor}). Needs Java 21+, otherwise POOLED is used.
+     */
+    VIRTUAL
+
+}
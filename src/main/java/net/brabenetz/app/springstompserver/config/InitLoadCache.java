@@ -0,0 +1,268 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory LRU cache for the init-load responses, keyed by the resolved proxy url.
+ * <p>
+ * The cache is bounded by {@link WebSocketInitLoadConfigProperties.Cache#getMaxEntries()} and {@link WebSocketInitLoadConfigProperties.Cache#getMaxBytes()}
+ * and each entry expires after {@link WebSocketInitLoadConfigProperties.Cache#getTimeToLive()}.
+ * <p>
+ * The counters are bound as the Micrometer meters "stomp.init-load.cache.*" by the {@link InitLoadProxyClient}.
+ */
+public class InitLoadCache implements MeterBinder {
+
+    private final WebSocketInitLoadConfigProperties.Cache properties;
+
+    private final Clock clock;
+
+    private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long currentBytes;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong revalidationCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Create a new cache with the given properties.
+     *
+     * @param properties the cache properties.
+     */
+    public InitLoadCache(final WebSocketInitLoadConfigProperties.Cache properties) {
+        this(properties, Clock.systemUTC());
+    }
+
+    InitLoadCache(final WebSocketInitLoadConfigProperties.Cache properties, final Clock clock) {
+        this.properties = properties;
+        this.clock = clock;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        FunctionCounter.builder("stomp.init-load.cache.hits", hitCount, AtomicLong::get)
+                .description("The init-load lookups which found a not expired response").register(registry);
+        FunctionCounter.builder("stomp.init-load.cache.misses", missCount, AtomicLong::get)
+                .description("The init-load lookups which found no or only an expired response").register(registry);
+        FunctionCounter.builder("stomp.init-load.cache.revalidations", revalidationCount, AtomicLong::get)
+                .description("The expired init-load responses which were revalidated (304 Not Modified)").register(registry);
+        FunctionCounter.builder("stomp.init-load.cache.evictions", evictionCount, AtomicLong::get)
+                .description("The init-load responses which were evicted because of the max-entries or max-bytes").register(registry);
+        Gauge.builder("stomp.init-load.cache.entries", this, InitLoadCache::size)
+                .description("The number of cached init-load responses").register(registry);
+        Gauge.builder("stomp.init-load.cache.bytes", this, InitLoadCache::getCurrentBytes)
+                .description("The payload bytes of the cached init-load responses").baseUnit("bytes").register(registry);
+    }
+
+    /**
+     * Get the cached response for the given proxy url, also if it is already expired (to be able to revalidate it).
+     * <p>
+     * A not expired response is counted as hit, everything else as miss.
+     *
+     * @param proxyUrl the resolved proxy url.
+     * @return the cached response or null.
+     */
+    public synchronized CachedResponse get(final String proxyUrl) {
+        CachedResponse cached = entries.get(proxyUrl);
+        if (cached != null && !isExpired(cached)) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return cached;
+    }
+
+    /**
+     * Checks if the given cached response is expired.
+     *
+     * @param cached the cached response.
+     * @return true if the time to live is over.
+     */
+    public boolean isExpired(final CachedResponse cached) {
+        return clock.millis() >= cached.expiresAt;
+    }
+
+    /**
+     * Put the given response into the cache. Only successful responses which fit into the cache are stored.
+     *
+     * @param proxyUrl the resolved proxy url.
+     * @param response the response from the proxy-server.
+     */
+    public synchronized void put(final String proxyUrl, final ResponseEntity<byte[]> response) {
+        int size = response.getBody() != null ? response.getBody().length : 0;
+        if (!response.getStatusCode().is2xxSuccessful() || size > properties.getMaxBytes()) {
+            remove(proxyUrl);
+            return;
+        }
+        CachedResponse previous = entries.put(proxyUrl, new CachedResponse(response, size, clock.millis() + properties.getTimeToLive()));
+        if (previous != null) {
+            currentBytes -= previous.size;
+        }
+        currentBytes += size;
+        evict();
+    }
+
+    /**
+     * Renew the time to live of the given cached response after a successful revalidation (304 Not Modified).
+     *
+     * @param proxyUrl the resolved proxy url.
+     * @param cached the revalidated response.
+     */
+    public synchronized void revalidated(final String proxyUrl, final CachedResponse cached) {
+        revalidationCount.incrementAndGet();
+        put(proxyUrl, cached.getResponse());
+    }
+
+    /**
+     * Remove the cached response for the given proxy url.
+     *
+     * @param proxyUrl the resolved proxy url.
+     */
+    public synchronized void remove(final String proxyUrl) {
+        CachedResponse removed = entries.remove(proxyUrl);
+        if (removed != null) {
+            currentBytes -= removed.size;
+        }
+    }
+
+    /**
+     * Remove all cached responses.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, CachedResponse>> eldest = entries.entrySet().iterator();
+        while (eldest.hasNext() && (entries.size() > properties.getMaxEntries() || currentBytes > properties.getMaxBytes())) {
+            currentBytes -= eldest.next().getValue().size;
+            eldest.remove();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the number of cached responses.
+     *
+     * @return the number of cached responses
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the payload bytes of all cached responses.
+     *
+     * @return the payload bytes of all cached responses
+     */
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    /**
+     * Gets the number of lookups which found a not expired response.
+     *
+     * @return the number of cache hits
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Gets the number of lookups which found no or only an expired response.
+     *
+     * @return the number of cache misses
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Gets the number of expired responses which were successfully revalidated (304 Not Modified).
+     *
+     * @return the number of revalidated responses
+     */
+    public long getRevalidationCount() {
+        return revalidationCount.get();
+    }
+
+    /**
+     * Gets the number of responses which were evicted because of the maxEntries or maxBytes limit.
+     *
+     * @return the number of evicted responses
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * A cached init-load response.
+     */
+    public static final class CachedResponse {
+
+        private final ResponseEntity<byte[]> response;
+
+        private final int size;
+
+        private final long expiresAt;
+
+        CachedResponse(final ResponseEntity<byte[]> response, final int size, final long expiresAt) {
+            this.response = response;
+            this.size = size;
+            this.expiresAt = expiresAt;
+        }
+
+        /**
+         * Gets the cached response.
+         *
+         * @return the cached response
+         */
+        public ResponseEntity<byte[]> getResponse() {
+            return response;
+        }
+
+        /**
+         * Checks if the cached response has an ETag or Last-Modified header, which can be used for a conditional request.
+         *
+         * @return true if the cached response can be revalidated
+         */
+        public boolean isRevalidatable() {
+            return response.getHeaders().getETag() != null || response.getHeaders().getLastModified() >= 0;
+        }
+    }
+
+}
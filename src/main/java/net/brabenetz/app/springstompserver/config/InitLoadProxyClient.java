@@ -0,0 +1,197 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Executes the init-load GET requests to the proxy-server (see {@link WebSocketInitLoadConfigProperties#getProxyUrl()}).
+ * <p>
+ * The requests are executed asynchronously in an own bounded thread pool, so a slow proxy-server will not block the thread which handles the websocket
+ * subscription.
+ * <p>
+ * If the {@link WebSocketInitLoadConfigProperties#getCache()} is enabled, the responses are cached by the resolved proxy-url.
+ * <p>
+ * Concurrent init-loads for the same resolved proxy-url are collapsed into one request to the proxy-server (single-flight): all waiting subscriptions get
+ * the shared response or the shared failure. The headers of the first subscription are used for the shared request.
+ */
+@Component
+public class InitLoadProxyClient implements InitializingBean, DisposableBean, MeterBinder {
+
+    @Autowired
+    private WebSocketInitLoadConfigProperties initLoadConfigProperties;
+
+    private ThreadPoolTaskExecutor executor;
+
+    private RestTemplate restTemplate;
+
+    private InitLoadCache cache;
+
+    private final ConcurrentMap<String, CompletableFuture<ResponseEntity<byte[]>>> inFlightRequests = new ConcurrentHashMap<>();
+
+    private final AtomicLong coalescedRequestCount = new AtomicLong();
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(initLoadConfigProperties.getConnectTimeout());
+        requestFactory.setReadTimeout(initLoadConfigProperties.getReadTimeout());
+        restTemplate = new RestTemplate(requestFactory);
+
+        executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("init-load-");
+        executor.setCorePoolSize(initLoadConfigProperties.getMaxConcurrentRequests());
+        executor.setMaxPoolSize(initLoadConfigProperties.getMaxConcurrentRequests());
+        executor.setQueueCapacity(initLoadConfigProperties.getMaxQueuedRequests());
+        executor.setDaemon(true);
+        executor.initialize();
+
+        if (initLoadConfigProperties.getCache().isEnabled()) {
+            cache = new InitLoadCache(initLoadConfigProperties.getCache());
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        executor.shutdown();
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        if (cache != null) {
+            cache.bindTo(registry);
+        }
+    }
+
+    /**
+     * Fetch the init-load asynchronously from the given proxy-url, or directly from the cache if enabled and not expired.
+     *
+     * @param proxyUrl the resolved proxy-url.
+     * @param headers the headers which should be sent to the proxy-server.
+     * @return the future response, which completes exceptionally if the request failed, timed out or was rejected because of too many queued requests.
+     */
+    public CompletableFuture<ResponseEntity<byte[]>> fetch(final String proxyUrl, final HttpHeaders headers) {
+        InitLoadCache.CachedResponse cached = cache != null ? cache.get(proxyUrl) : null;
+        if (cached != null && !cache.isExpired(cached)) {
+            return CompletableFuture.completedFuture(cached.getResponse());
+        }
+
+        CompletableFuture<ResponseEntity<byte[]>> request = new CompletableFuture<>();
+        CompletableFuture<ResponseEntity<byte[]>> inFlightRequest = inFlightRequests.putIfAbsent(proxyUrl, request);
+        if (inFlightRequest != null) {
+            // same proxy-url is already requested: share the result.
+            coalescedRequestCount.incrementAndGet();
+            return inFlightRequest;
+        }
+        load(proxyUrl, headers, cached).whenComplete((response, ex) -> {
+            inFlightRequests.remove(proxyUrl, request);
+            if (ex != null) {
+                request.completeExceptionally(ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            } else {
+                request.complete(response);
+            }
+        });
+        return request;
+    }
+
+    /**
+     * Gets the number of init-loads which were served by an already running request for the same proxy-url.
+     *
+     * @return the number of coalesced init-loads
+     */
+    public long getCoalescedRequestCount() {
+        return coalescedRequestCount.get();
+    }
+
+    private CompletableFuture<ResponseEntity<byte[]>> load(final String proxyUrl, final HttpHeaders headers, final InitLoadCache.CachedResponse cached) {
+        if (cache == null) {
+            return fetchAsync(proxyUrl, headers);
+        }
+        if (cached != null && initLoadConfigProperties.getCache().isRevalidate() && cached.isRevalidatable()) {
+            return fetchAsync(proxyUrl, conditionalHeaders(headers, cached.getResponse().getHeaders())).thenApply(response -> {
+                if (response.getStatusCode() == HttpStatus.NOT_MODIFIED) {
+                    cache.revalidated(proxyUrl, cached);
+                    return cached.getResponse();
+                }
+                return cacheResponse(proxyUrl, response);
+            });
+        }
+        return fetchAsync(proxyUrl, headers).thenApply(response -> cacheResponse(proxyUrl, response));
+    }
+
+    /**
+     * Gets the init-load cache with the hit/miss counters.
+     *
+     * @return the init-load cache or null if the cache is disabled
+     */
+    public InitLoadCache getCache() {
+        return cache;
+    }
+
+    private ResponseEntity<byte[]> cacheResponse(final String proxyUrl, final ResponseEntity<byte[]> response) {
+        cache.put(proxyUrl, response);
+        return response;
+    }
+
+    private HttpHeaders conditionalHeaders(final HttpHeaders headers, final HttpHeaders cachedHeaders) {
+        HttpHeaders conditionalHeaders = new HttpHeaders();
+        conditionalHeaders.putAll(headers);
+        if (cachedHeaders.getETag() != null) {
+            conditionalHeaders.setIfNoneMatch(cachedHeaders.getETag());
+        }
+        if (cachedHeaders.getLastModified() >= 0) {
+            conditionalHeaders.setIfModifiedSince(cachedHeaders.getLastModified());
+        }
+        return conditionalHeaders;
+    }
+
+    private CompletableFuture<ResponseEntity<byte[]>> fetchAsync(final String proxyUrl, final HttpHeaders headers) {
+        try {
+            return CompletableFuture.supplyAsync(
+                    () -> restTemplate.exchange(proxyUrl, HttpMethod.GET, new HttpEntity<>(headers), byte[].class),
+                    executor);
+        } catch (TaskRejectedException e) {
+            CompletableFuture<ResponseEntity<byte[]>> rejected = new CompletableFuture<>();
+            rejected.completeExceptionally(e);
+            return rejected;
+        }
+    }
+
+}
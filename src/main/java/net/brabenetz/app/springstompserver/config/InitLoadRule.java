@@ -0,0 +1,169 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import javax.validation.constraints.AssertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * One init-load rule: subscriptions matching the {@link #getDestinationPatterns()} get their initial load from the {@link #getProxyUrl()}.
+ * <p>
+ * See {@link WebSocketInitLoadConfigProperties#getRules()}.
+ */
+@SuppressWarnings("PMD.DataClass")
+public class InitLoadRule {
+
+    /**
+     * The Websocket Subscription destination pattern like "^/user/[^/]+/topic/orders/(.*)$".
+     */
+    private Pattern destinationPatterns;
+
+    /**
+     * The proxy url from where the init load should be get, like: "http://localhost:8181/orders/${group-1}".
+     * <p>
+     * ${group-1}, ${group-2}, ${group-3}, ... ${group-X} reference to the group-pattern from {@link #getDestinationPatterns()}.
+     */
+    private String proxyUrl;
+
+    /**
+     * The {@link #proxyUrl} parsed once into a template.
+     */
+    private ProxyUrlTemplate proxyUrlTemplate;
+
+    /**
+     * Optional additional headers which are sent to the proxy-server, like an "Authorization" header.
+     */
+    private Map<String, String> headers = new LinkedHashMap<>();
+
+    /**
+     * Create an empty rule, which is filled by the configuration properties binding.
+     */
+    public InitLoadRule() {
+        // default constructor for configuration properties.
+    }
+
+    /**
+     * Create a rule with the given destination pattern and proxy url.
+     *
+     * @param destinationPatterns the Websocket Subscription destination pattern.
+     * @param proxyUrl the proxy url from where the init load should be get.
+     */
+    public InitLoadRule(final Pattern destinationPatterns, final String proxyUrl) {
+        this.destinationPatterns = destinationPatterns;
+        setProxyUrl(proxyUrl);
+    }
+
+    /**
+     * Gets the Websocket Subscription destination pattern like "^/user/[^/]+/topic/orders/(.*)$".
+     *
+     * @return the Websocket Subscription destination pattern
+     */
+    public Pattern getDestinationPatterns() {
+        return destinationPatterns;
+    }
+
+    /**
+     * Sets the Websocket Subscription destination pattern like "^/user/[^/]+/topic/orders/(.*)$".
+     *
+     * @param destinationPatterns the new Websocket Subscription destination pattern
+     */
+    public void setDestinationPatterns(Pattern destinationPatterns) {
+        this.destinationPatterns = destinationPatterns;
+    }
+
+    /**
+     * Gets the proxy url from where the init load should be get, like: "http://localhost:8181/orders/${group-1}".
+     * <p>
+     * ${group-1}, ${group-2}, ${group-3}, .. ${group-X} reference to the group-pattern from {@link #getDestinationPatterns()}.
+     *
+     * @return the proxy url from where the init load should be get
+     */
+    public String getProxyUrl() {
+        return proxyUrl;
+    }
+
+    /**
+     * Sets the proxy url from where the init load should be get, like: "http://localhost:8181/orders/${group-1}".
+     * <p>
+     * ${group-1}, ${group-2}, ${group-3}, .. ${group-X} reference to the group-pattern from {@link #getDestinationPatterns()}.
+     *
+     * @param proxyUrl the new proxy url from where the init load should be get
+     */
+    public void setProxyUrl(String proxyUrl) {
+        this.proxyUrl = proxyUrl;
+        this.proxyUrlTemplate = proxyUrl != null ? ProxyUrlTemplate.compile(proxyUrl) : null;
+    }
+
+    /**
+     * Gets the proxy url parsed into a template, to resolve the ${group-X} references without regex replacements.
+     *
+     * @return the proxy url template or null if no proxy url is configured
+     */
+    public ProxyUrlTemplate getProxyUrlTemplate() {
+        return proxyUrlTemplate;
+    }
+
+    /**
+     * Gets the optional additional headers which are sent to the proxy-server, like an "Authorization" header.
+     *
+     * @return the optional additional headers which are sent to the proxy-server
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Sets the optional additional headers which are sent to the proxy-server, like an "Authorization" header.
+     *
+     * @param headers the new optional additional headers which are sent to the proxy-server
+     */
+    public void setHeaders(Map<String, String> headers) {
+        this.headers = headers;
+    }
+
+    /**
+     * Checks that the destination pattern and proxy url are configured.
+     *
+     * @return true if the rule is complete
+     */
+    @AssertTrue(message = "The destination-patterns and the proxy-url of an init-load rule are required")
+    public boolean isComplete() {
+        return destinationPatterns != null && proxyUrlTemplate != null;
+    }
+
+    /**
+     * Checks that every ${group-X} referenced by the {@link #getProxyUrl()} exists in the {@link #getDestinationPatterns()}.
+     *
+     * @return true if all referenced groups exist
+     */
+    @AssertTrue(message = "The proxy-url references a ${group-X} which doesn't exist in the destination-patterns")
+    public boolean isProxyUrlResolvable() {
+        return !isComplete() || proxyUrlTemplate.isResolvableBy(destinationPatterns);
+    }
+
+    @Override
+    public String toString() {
+        return destinationPatterns + " -> " + proxyUrl;
+    }
+
+}
@@ -0,0 +1,219 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the {@link InitLoadRule}s by the literal prefix of their destination pattern.
+ * <p>
+ * The literal prefixes (like "/topic/orders/" for "^/topic/orders/(.*)$") are stored in a character trie. For a subscription only the rules whose
+ * literal prefix is a prefix of the destination are candidates, and only those candidates run their regex (in the configured order). So the subscribe
+ * latency stays flat, also with many rules.
+ */
+public final class InitLoadRuleIndex {
+
+    private static final String REGEX_META_CHARACTERS = "\\[](){}.*+?^$|";
+
+    private static final String OPTIONAL_QUANTIFIERS = "?*{";
+
+    private final Node root = new Node();
+
+    private final int size;
+
+    /**
+     * Build the index for the given rules.
+     *
+     * @param rules the rules in the order in which they should be checked.
+     */
+    public InitLoadRuleIndex(final List<InitLoadRule> rules) {
+        for (int order = 0; order < rules.size(); order++) {
+            InitLoadRule rule = rules.get(order);
+            Node node = root;
+            for (char c : literalPrefix(rule.getDestinationPatterns()).toCharArray()) {
+                node = node.children.computeIfAbsent(c, key -> new Node());
+            }
+            node.rules.add(new IndexedRule(order, rule));
+        }
+        root.collectPathRules(Collections.emptyList());
+        this.size = rules.size();
+    }
+
+    /**
+     * Checks if there is no rule at all.
+     *
+     * @return true if the index is empty
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Find the first rule (in the configured order) which matches the given destination.
+     *
+     * @param destination the subscribed destination.
+     * @return the match of the first matching rule, or null if no rule matches.
+     */
+    public Match findMatch(final String destination) {
+        Node node = root;
+        for (int i = 0; i < destination.length(); i++) {
+            Node child = node.children.get(destination.charAt(i));
+            if (child == null) {
+                break;
+            }
+            node = child;
+        }
+        for (InitLoadRule rule : node.pathRules) {
+            Matcher matcher = rule.getDestinationPatterns().matcher(destination);
+            if (matcher.matches()) {
+                return new Match(rule, matcher);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the literal prefix which each destination matched by the given pattern must start with, like "/topic/orders/" for "^/topic/orders/(.*)$".
+     * <p>
+     * The prefix is computed conservatively: It is empty for patterns with alternations or flags which change the meaning of the characters.
+     *
+     * @param pattern the destination pattern.
+     * @return the literal prefix, maybe empty.
+     */
+    static String literalPrefix(final Pattern pattern) {
+        String regex = pattern.pattern();
+        if ((pattern.flags() & (Pattern.CASE_INSENSITIVE | Pattern.COMMENTS | Pattern.LITERAL)) != 0 || containsAlternation(regex)) {
+            return "";
+        }
+        StringBuilder prefix = new StringBuilder();
+        int i = regex.startsWith("^") ? 1 : 0;
+        while (i < regex.length()) {
+            char c = regex.charAt(i);
+            char literal;
+            int next;
+            if (c == '\\' && i + 1 < regex.length() && !Character.isLetterOrDigit(regex.charAt(i + 1))) {
+                // escaped meta character like "\." or "\/"
+                literal = regex.charAt(i + 1);
+                next = i + 2;
+            } else if (REGEX_META_CHARACTERS.indexOf(c) < 0) {
+                literal = c;
+                next = i + 1;
+            } else {
+                break;
+            }
+            if (next < regex.length() && OPTIONAL_QUANTIFIERS.indexOf(regex.charAt(next)) >= 0) {
+                // the literal is optional, so it is not part of the prefix.
+                break;
+            }
+            prefix.append(literal);
+            i = next;
+        }
+        return prefix.toString();
+    }
+
+    private static boolean containsAlternation(final String regex) {
+        for (int i = 0; i < regex.length(); i++) {
+            char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == '|') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The first rule which matches a destination.
+     */
+    public static final class Match {
+
+        private final InitLoadRule rule;
+
+        private final MatchResult matchResult;
+
+        Match(final InitLoadRule rule, final MatchResult matchResult) {
+            this.rule = rule;
+            this.matchResult = matchResult;
+        }
+
+        /**
+         * Gets the matching rule.
+         *
+         * @return the matching rule
+         */
+        public InitLoadRule getRule() {
+            return rule;
+        }
+
+        /**
+         * Gets the match result of the destination pattern, to resolve the ${group-X} references.
+         *
+         * @return the match result of the destination pattern
+         */
+        public MatchResult getMatchResult() {
+            return matchResult;
+        }
+    }
+
+    private static final class IndexedRule {
+
+        private final int order;
+
+        private final InitLoadRule rule;
+
+        IndexedRule(final int order, final InitLoadRule rule) {
+            this.order = order;
+            this.rule = rule;
+        }
+    }
+
+    private static final class Node {
+
+        private final Map<Character, Node> children = new HashMap<>();
+
+        private final List<IndexedRule> rules = new ArrayList<>();
+
+        /** All rules of this node and its parents, sorted by the configured order. */
+        private List<InitLoadRule> pathRules;
+
+        private void collectPathRules(final List<IndexedRule> parentRules) {
+            List<IndexedRule> indexedPathRules = new ArrayList<>(parentRules);
+            indexedPathRules.addAll(rules);
+            indexedPathRules.sort((a, b) -> Integer.compare(a.order, b.order));
+            List<InitLoadRule> sortedRules = new ArrayList<>(indexedPathRules.size());
+            for (IndexedRule indexedRule : indexedPathRules) {
+                sortedRules.add(indexedRule.rule);
+            }
+            pathRules = sortedRules;
+            for (Node child : children.values()) {
+                child.collectPathRules(indexedPathRules);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,134 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A proxy url like "http://localhost:8181/my-mock-endpoint/${group-1}" which is parsed once into literal segments and group references.
+ * <p>
+ * {@link #expand(String, MatchResult)} then builds the resolved url with a single StringBuilder, instead of compiling a regex for each group on each subscription.
+ */
+public final class ProxyUrlTemplate {
+
+    private static final Pattern GROUP_REFERENCE = Pattern.compile("\\$\\{group-(\\d+)\\}");
+
+    private final String template;
+
+    /** The literal segments, always one more than {@link #groups}. */
+    private final String[] literals;
+
+    /** The referenced groups between the literal segments. */
+    private final int[] groups;
+
+    private final int literalLength;
+
+    private final int maxGroupReference;
+
+    private ProxyUrlTemplate(final String template, final String[] literals, final int[] groups) {
+        this.template = template;
+        this.literals = literals;
+        this.groups = groups;
+        int length = 0;
+        for (String literal : literals) {
+            length += literal.length();
+        }
+        this.literalLength = length;
+        int max = 0;
+        for (int group : groups) {
+            max = Math.max(max, group);
+        }
+        this.maxGroupReference = max;
+    }
+
+    /**
+     * Parse the given proxy url into a template.
+     *
+     * @param template the proxy url with ${group-1}, ${group-2}, ... ${group-X} references.
+     * @return the compiled template.
+     */
+    public static ProxyUrlTemplate compile(final String template) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> groups = new ArrayList<>();
+        Matcher matcher = GROUP_REFERENCE.matcher(template);
+        int start = 0;
+        while (matcher.find()) {
+            literals.add(template.substring(start, matcher.start()));
+            groups.add(Integer.valueOf(matcher.group(1)));
+            start = matcher.end();
+        }
+        literals.add(template.substring(start));
+        return new ProxyUrlTemplate(template,
+                literals.toArray(new String[0]),
+                groups.stream().mapToInt(Integer::intValue).toArray());
+    }
+
+    /**
+     * Gets the highest referenced group, e.g. 2 for "http://localhost/${group-1}/${group-2}". Zero if no group is referenced.
+     *
+     * @return the highest referenced group
+     */
+    public int getMaxGroupReference() {
+        return maxGroupReference;
+    }
+
+    /**
+     * Checks if all referenced groups exist in the given destination pattern.
+     *
+     * @param destinationPattern the destination pattern which is used to resolve the groups.
+     * @return true if the destination pattern has enough groups.
+     */
+    public boolean isResolvableBy(final Pattern destinationPattern) {
+        return maxGroupReference <= destinationPattern.matcher("").groupCount();
+    }
+
+    /**
+     * Build the resolved proxy url with the groups of the given match. A group which didn't participate in the match is replaced by an empty string.
+     *
+     * @param destination the destination which was matched.
+     * @param match the match result of the destination pattern.
+     * @return the resolved proxy url.
+     */
+    public String expand(final String destination, final MatchResult match) {
+        if (groups.length == 0) {
+            return literals[0];
+        }
+        StringBuilder url = new StringBuilder(literalLength + 16 * groups.length);
+        url.append(literals[0]);
+        for (int i = 0; i < groups.length; i++) {
+            int start = match.start(groups[i]);
+            if (start >= 0) {
+                url.append(destination, start, match.end(groups[i]));
+            }
+            url.append(literals[i + 1]);
+        }
+        return url.toString();
+    }
+
+    @Override
+    public String toString() {
+        return template;
+    }
+
+}
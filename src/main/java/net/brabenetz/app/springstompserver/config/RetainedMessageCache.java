@@ -0,0 +1,199 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory LRU cache of the last published message per destination.
+ * <p>
+ * The cache is bounded by {@link WebSocketRetainedConfigProperties#getMaxEntries()} and {@link WebSocketRetainedConfigProperties#getMaxBytes()}; the
+ * least recently published message is evicted first.
+ */
+public class RetainedMessageCache {
+
+    private final WebSocketRetainedConfigProperties properties;
+
+    private final LinkedHashMap<String, RetainedMessage> entries = new LinkedHashMap<>(16, 0.75f, false);
+
+    private long currentBytes;
+
+    private final AtomicLong hitCount = new AtomicLong();
+
+    private final AtomicLong missCount = new AtomicLong();
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * Create a new cache with the given properties.
+     *
+     * @param properties the retained properties.
+     */
+    public RetainedMessageCache(final WebSocketRetainedConfigProperties properties) {
+        this.properties = properties;
+    }
+
+    /**
+     * Get the last published message of the given destination.
+     *
+     * @param destination the destination.
+     * @return the retained message or null.
+     */
+    public synchronized RetainedMessage get(final String destination) {
+        RetainedMessage retained = entries.get(destination);
+        if (retained != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return retained;
+    }
+
+    /**
+     * Replace the last published message of the given destination. A message which is larger than the whole cache is not retained.
+     *
+     * @param destination the destination.
+     * @param payload the message body.
+     * @param nativeHeaders the stomp headers which are sent again with the retained message.
+     */
+    public synchronized void put(final String destination, final byte[] payload, final Map<String, List<String>> nativeHeaders) {
+        // remove first, so the destination moves to the end of the publish order.
+        remove(destination);
+        if (payload.length > properties.getMaxBytes()) {
+            return;
+        }
+        entries.put(destination, new RetainedMessage(payload, nativeHeaders));
+        currentBytes += payload.length;
+        evict();
+    }
+
+    /**
+     * Remove the retained message of the given destination.
+     *
+     * @param destination the destination.
+     */
+    public synchronized void remove(final String destination) {
+        RetainedMessage removed = entries.remove(destination);
+        if (removed != null) {
+            currentBytes -= removed.payload.length;
+        }
+    }
+
+    /**
+     * Remove all retained messages.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    private void evict() {
+        Iterator<Map.Entry<String, RetainedMessage>> eldest = entries.entrySet().iterator();
+        while (eldest.hasNext() && (entries.size() > properties.getMaxEntries() || currentBytes > properties.getMaxBytes())) {
+            currentBytes -= eldest.next().getValue().payload.length;
+            eldest.remove();
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Gets the number of retained messages.
+     *
+     * @return the number of retained messages
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Gets the payload bytes of all retained messages.
+     *
+     * @return the payload bytes of all retained messages
+     */
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    /**
+     * Gets the number of subscriptions which got a retained message.
+     *
+     * @return the number of cache hits
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Gets the number of subscriptions without a retained message.
+     *
+     * @return the number of cache misses
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Gets the number of retained messages which were evicted because of the max-entries or max-bytes limit.
+     *
+     * @return the number of evicted messages
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * The last published message of a destination.
+     */
+    public static final class RetainedMessage {
+
+        private final byte[] payload;
+
+        private final Map<String, List<String>> nativeHeaders;
+
+        RetainedMessage(final byte[] payload, final Map<String, List<String>> nativeHeaders) {
+            this.payload = payload;
+            this.nativeHeaders = nativeHeaders;
+        }
+
+        /**
+         * Gets the message body.
+         *
+         * @return the message body
+         */
+        @SuppressWarnings("PMD.MethodReturnsInternalArray")
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        /**
+         * Gets the stomp headers which are sent again with the retained message.
+         *
+         * @return the stomp headers
+         */
+        public Map<String, List<String>> getNativeHeaders() {
+            return nativeHeaders;
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationListener;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Retains the last message published to each destination which matches the {@link WebSocketRetainedConfigProperties#getDestinationPatterns()}, and sends
+ * it directly to each new subscription of that destination (like the init-load of the {@link StompSubscriptionEventListener}, but without the round trip
+ * to a proxy-server).
+ * <p>
+ * The published messages are taken from the clientInboundChannel (SEND frames of the clients) and the brokerChannel (messages of the server itself) with
+ * the {@link #interceptor()}. The retained message is only sent to the subscribing session (see {@link SubscriptionMessageSender}).
+ */
+@Component
+public class RetainedMessageListener implements ApplicationListener<SessionSubscribeEvent>, InitializingBean {
+
+    /**
+     * The stomp headers which belong to the frame of the publisher or to the subscription (the destination, subscription and content-length are set
+     * again for the new subscription). Only the application headers and the content-type are sent again with the retained message.
+     */
+    private static final Set<String> FRAME_HEADERS = new HashSet<>(Arrays.asList(
+            "destination", "subscription", "content-length", "message-id", "receipt", "receipt-id", "transaction", "ack", "id", "session",
+            "login", "passcode", "host", "accept-version", "heart-beat"));
+
+    @Autowired
+    private WebSocketRetainedConfigProperties retainedConfigProperties;
+
+    @Autowired
+    private TenantPartitions tenantPartitions;
+
+    /** Lazy, because the {@link WebSocketConfig} needs the {@link #interceptor()} before the clientOutboundChannel is created. */
+    @Autowired
+    @Lazy
+    private SubscriptionMessageSender subscriptionMessageSender;
+
+    private RetainedMessageCache cache;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        cache = new RetainedMessageCache(retainedConfigProperties);
+    }
+
+    /**
+     * Checks if the retained messages are enabled.
+     *
+     * @return true if at least one destination pattern is configured
+     */
+    public boolean isEnabled() {
+        return retainedConfigProperties.isEnabled();
+    }
+
+    @Override
+    public void onApplicationEvent(final SessionSubscribeEvent event) {
+        if (!isEnabled()) {
+            return;
+        }
+        StompHeaderAccessor sha = StompHeaderAccessor.wrap(event.getMessage());
+        String destination = sha.getDestination();
+        if (destination == null || !retainedConfigProperties.matches(destination)) {
+            return;
+        }
+        RetainedMessageCache.RetainedMessage retained = cache.get(tenantPartitions.isolate(tenantPartitions.getTenant(event.getMessage().getHeaders()),
+                destination));
+        if (retained != null) {
+            subscriptionMessageSender.send(sha.getSessionId(), sha.getSubscriptionId(), destination, retained.getPayload(), retained.getNativeHeaders());
+        }
+    }
+
+    /**
+     * Gets the interceptor for the clientInboundChannel and the brokerChannel, which retains the last published message of each matching destination.
+     *
+     * @return the interceptor
+     */
+    public ChannelInterceptor interceptor() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(final Message<?> message, final MessageChannel channel) {
+                retain(message);
+                return message;
+            }
+        };
+    }
+
+    /**
+     * Gets the cache with the retained messages.
+     *
+     * @return the cache with the retained messages
+     */
+    public RetainedMessageCache getCache() {
+        return cache;
+    }
+
+    private void retain(final Message<?> message) {
+        MessageHeaders headers = message.getHeaders();
+        String destination = SimpMessageHeaderAccessor.getDestination(headers);
+        if (SimpMessageHeaderAccessor.getMessageType(headers) == SimpMessageType.MESSAGE && destination != null
+                && message.getPayload() instanceof byte[] && retainedConfigProperties.matches(destination)) {
+            // the retained messages are partitioned like the broker if the tenants are isolated
+            cache.put(tenantPartitions.isolate(tenantPartitions.getTenant(headers), destination), (byte[]) message.getPayload(), retainedHeaders(headers));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, List<String>> retainedHeaders(final MessageHeaders headers) {
+        Map<String, List<String>> nativeHeaders = (Map<String, List<String>>) headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        if (nativeHeaders != null) {
+            nativeHeaders.forEach((name, values) -> {
+                if (!FRAME_HEADERS.contains(name)) {
+                    result.put(name, new ArrayList<>(values));
+                }
+            });
+        }
+        Object contentType = headers.get(MessageHeaders.CONTENT_TYPE);
+        if (contentType != null && !result.containsKey("content-type")) {
+            result.put("content-type", Collections.singletonList(contentType.toString()));
+        }
+        return result;
+    }
+
+}
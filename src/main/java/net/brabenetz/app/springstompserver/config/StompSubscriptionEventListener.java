@@ -19,79 +19,100 @@
  */
 package net.brabenetz.app.springstompserver.config;
 
+import net.brabenetz.app.springstompserver.jfr.InitLoadTrace;
+import net.brabenetz.app.springstompserver.jfr.JfrSupport;
+import net.brabenetz.app.springstompserver.metrics.StompMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.context.ApplicationListener;
-import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
-import org.springframework.http.HttpMethod;
 import org.springframework.http.ResponseEntity;
-import org.springframework.messaging.Message;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
 import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
-import org.springframework.messaging.support.MessageBuilder;
 import org.springframework.messaging.support.NativeMessageHeaderAccessor;
 import org.springframework.stereotype.Component;
-import org.springframework.util.ObjectUtils;
-import org.springframework.web.client.RestTemplate;
 import org.springframework.web.socket.messaging.SessionSubscribeEvent;
 
-import java.util.Collections;
 import java.util.List;
 import java.util.Map;
-import java.util.regex.Matcher;
 
 /**
- * Listen on all subscriptions, and if a subscription starts with {@link WebSocketInitLoadConfigProperties#getDestinationPatterns()}, then directly send an
- * initial load from {@link WebSocketInitLoadConfigProperties#getProxyUrl()} to the subscribed topic.
+ * Listen on all subscriptions, and if a subscription matches one of the {@link WebSocketInitLoadConfigProperties#getEffectiveRules()}, then directly send an
+ * initial load from the proxy-url of the first matching rule to the new subscription.
+ * <p>
+ * The initial load is only sent to the subscribing session (see {@link SubscriptionMessageSender}), so other subscribers of the same topic don't get
+ * duplicates.
+ * <p>
+ * The initial load is fetched asynchronously by the {@link InitLoadProxyClient}, so the subscription itself is not blocked by the proxy-server.
  */
 @Component
 public class StompSubscriptionEventListener implements ApplicationListener<SessionSubscribeEvent> {
 
+    private static final Logger LOG = LoggerFactory.getLogger(StompSubscriptionEventListener.class);
+
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
+    private SubscriptionMessageSender subscriptionMessageSender;
 
     @Autowired
     private WebSocketInitLoadConfigProperties initLoadConfigProperties;
 
-    private final RestTemplate restTemplate = new RestTemplate();
+    @Autowired
+    private InitLoadProxyClient initLoadProxyClient;
+
+    @Autowired
+    private StompMetrics stompMetrics;
+
+    @Autowired
+    private JfrSupport jfrSupport;
 
     @Override
     public void onApplicationEvent(final SessionSubscribeEvent event) {
-        if (ObjectUtils.isEmpty(initLoadConfigProperties.getProxyUrl())) {
+        InitLoadRuleIndex ruleIndex = initLoadConfigProperties.getRuleIndex();
+        if (ruleIndex.isEmpty()) {
             // nothing to proxy
             return;
         }
 
         StompHeaderAccessor sha = StompHeaderAccessor.wrap(event.getMessage());
         String destination = sha.getDestination();
+        String sessionId = sha.getSessionId();
+        String subscriptionId = sha.getSubscriptionId();
         @SuppressWarnings("unchecked")
         Map<String, List<String>> nativHeaders = (Map<String, List<String>>) sha.getHeader(NativeMessageHeaderAccessor.NATIVE_HEADERS);
 
-        Matcher userDestMatcher = initLoadConfigProperties.getDestinationPatterns().matcher(destination);
-        if (userDestMatcher.matches()) {
+        InitLoadRuleIndex.Match match = destination != null ? ruleIndex.findMatch(destination) : null;
+        if (match != null) {
             // call proxy-server
-            String proxyUrl = getProxyUrl(userDestMatcher, initLoadConfigProperties.getProxyUrl());
+            InitLoadRule rule = match.getRule();
+            String proxyUrl = rule.getProxyUrlTemplate().expand(destination, match.getMatchResult());
             HttpHeaders headers = new HttpHeaders();
-            nativHeaders.forEach((k, v) -> headers.addAll(k, v));
-            ResponseEntity<byte[]> response = restTemplate.exchange(proxyUrl, HttpMethod.GET, new HttpEntity<>(headers), byte[].class);
-
-            // relay response to the subscribed subject:
-            HttpHeaders respHeaders = response.getHeaders();
-            Message<byte[]> stompMessage = MessageBuilder
-                    .withPayload(response.getBody())
-                    .copyHeaders(Collections.singletonMap(NativeMessageHeaderAccessor.NATIVE_HEADERS, respHeaders))
-                    .build();
-            messagingTemplate.send(destination, stompMessage);
+            if (nativHeaders != null) {
+                nativHeaders.forEach((k, v) -> headers.addAll(k, v));
+            }
+            if (rule.getHeaders() != null) {
+                headers.setAll(rule.getHeaders());
+            }
+            long startNanos = System.nanoTime();
+            InitLoadTrace trace = jfrSupport.initLoadStarted(destination, proxyUrl);
+            initLoadProxyClient.fetch(proxyUrl, headers).whenComplete((response, ex) -> {
+                if (ex != null) {
+                    stompMetrics.initLoadCompleted(startNanos, -1);
+                    trace.completed(0, false);
+                    LOG.warn("Init-load for destination '{}' from '{}' failed: {}", destination, proxyUrl, ex.getMessage());
+                } else {
+                    sendInitLoad(sessionId, subscriptionId, destination, response, startNanos, trace);
+                }
+            });
         }
     }
 
-    private String getProxyUrl(final Matcher userDestMatcher, final String proxyUrlTemplate) {
-        userDestMatcher.groupCount();
-        String proxyUrl = proxyUrlTemplate;
-        for (int i = 1; i <= userDestMatcher.groupCount(); i++) {
-            proxyUrl = proxyUrl.replaceAll("\\$\\{group-" + i + "\\}", userDestMatcher.group(i));
-        }
-        return proxyUrl;
+    private void sendInitLoad(final String sessionId, final String subscriptionId, final String destination, final ResponseEntity<byte[]> response,
+            final long startNanos, final InitLoadTrace trace) {
+        // relay response to the subscription:
+        byte[] body = response.getBody() != null ? response.getBody() : new byte[0];
+        stompMetrics.initLoadCompleted(startNanos, body.length);
+        trace.completed(body.length, true);
+        subscriptionMessageSender.send(sessionId, subscriptionId, destination, body, response.getHeaders());
     }
 
 }
@@ -0,0 +1,68 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends a message directly to a single subscription of a single websocket session.
+ * <p>
+ * Unlike the {@link org.springframework.messaging.simp.SimpMessagingTemplate} the message doesn't pass the message broker, so it is not fanned out to the
+ * other subscribers of the same destination. The message is sent to the "clientOutboundChannel", like the message broker does for each subscriber.
+ */
+@Component
+public class SubscriptionMessageSender {
+
+    @Autowired
+    @Qualifier("clientOutboundChannel")
+    private MessageChannel clientOutboundChannel;
+
+    /**
+     * Send the payload to the given subscription of the given session.
+     *
+     * @param sessionId the websocket session id (the "simpSessionId" header).
+     * @param subscriptionId the subscription id of the session (the "simpSubscriptionId" header).
+     * @param destination the subscribed destination, which is sent back as "destination" header.
+     * @param payload the message body.
+     * @param nativeHeaders optional additional stomp headers, like "content-type".
+     */
+    public void send(final String sessionId, final String subscriptionId, final String destination, final byte[] payload,
+            final Map<String, List<String>> nativeHeaders) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        if (nativeHeaders != null) {
+            accessor.setHeader(NativeMessageHeaderAccessor.NATIVE_HEADERS, nativeHeaders);
+        }
+        clientOutboundChannel.send(MessageBuilder.createMessage(payload, accessor.getMessageHeaders()));
+    }
+
+}
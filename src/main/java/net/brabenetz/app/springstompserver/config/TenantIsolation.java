@@ -0,0 +1,42 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+/**
+ * The tenant isolation of the broker (see {@link TenantPartitions}).
+ */
+public enum TenantIsolation {
+
+    /**
+     * All sessions share one broker.
+     */
+    NONE,
+
+    /**
+     * Each websocket-endpoint is a tenant with its own partition of the broker.
+     */
+    ENDPOINT,
+
+    /**
+     * The tenant is given by the header "tenant-header" of the CONNECT frame. Sessions without the header share the default partition.
+     */
+    CONNECT_HEADER
+
+}
@@ -0,0 +1,261 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Map;
+
+/**
+ * Isolates the tenants (see {@link TenantIsolation}) in one simple broker by a partition of the destinations: the destinations of a tenant session
+ * get the tenant as first segment after the destination prefix, like "/topic/~tenant-a/prices" for "/topic/prices". The sessions without a tenant and the
+ * messages published by the server itself (brokerChannel) share the default partition "/topic/~/prices", so a wildcard subscription of a session without
+ * tenant can't match the destinations of the tenants. The clients can't give a partitioned destination: the SEND and SUBSCRIBE frames with "/~" in the
+ * destination are rejected by the {@link #validationInterceptor()}.
+ * <p>
+ * The {@link #inboundInterceptor()} is the last interceptor of the clientInboundChannel, so the broker (subscription registry and fan-out) only sees the
+ * partitioned destinations, while the metrics, the recording and the init-load still see the destinations of the client. The
+ * {@link #outboundInterceptor()} is the first interceptor of the clientOutboundChannel and restores the destination of the client in the MESSAGE frames.
+ * <p>
+ * The tenant of a session is stored in the websocket session attributes: by the {@link #handshakeInterceptor(String)} of the websocket-endpoint, or by
+ * the CONNECT frame.
+ */
+@Component
+public class TenantPartitions {
+
+    /** The websocket session attribute with the tenant of the session. */
+    public static final String TENANT_ATTRIBUTE = "spring-stomp-server.tenant";
+
+    private static final String TENANT_SEGMENT = "/~";
+
+    /** The tenant of the default partition, which can't be the result of {@link #toTenant(String)}. */
+    private static final String DEFAULT_TENANT = "";
+
+    @Autowired
+    private WebSocketConfigProperties properties;
+
+    /**
+     * Checks if the tenant isolation is enabled.
+     *
+     * @return true if the tenant-isolation is not NONE
+     */
+    public boolean isEnabled() {
+        return properties.getTenantIsolation() != TenantIsolation.NONE;
+    }
+
+    /**
+     * Gets the tenant of the session of the given message.
+     *
+     * @param headers the headers of an inbound message.
+     * @return the tenant, or null for the default partition
+     */
+    public String getTenant(final MessageHeaders headers) {
+        Map<String, Object> sessionAttributes = SimpMessageHeaderAccessor.getSessionAttributes(headers);
+        return sessionAttributes != null ? (String) sessionAttributes.get(TENANT_ATTRIBUTE) : null;
+    }
+
+    /**
+     * Gets the destination in the partition of the tenant.
+     *
+     * @param tenant the tenant, or null for the default partition.
+     * @param destination the destination of the client, or an already partitioned destination of the server for the default partition.
+     * @return the partitioned destination, or the unchanged destination if the tenant isolation is not enabled, for an unknown destination prefix or an
+     *         already partitioned destination of the default partition
+     */
+    public String isolate(final String tenant, final String destination) {
+        if (destination == null || !isEnabled() || tenant == null && isPartitioned(destination)) {
+            return destination;
+        }
+        String partition = tenant != null ? tenant : DEFAULT_TENANT;
+        for (String prefix : properties.getDestinationPrefixes()) {
+            String path = withoutTrailingSlash(prefix);
+            if (destination.startsWith(path + "/")) {
+                return path + TENANT_SEGMENT + partition + destination.substring(path.length());
+            }
+        }
+        return destination;
+    }
+
+    /**
+     * Checks if the given destination contains a tenant segment.
+     *
+     * @param destination the destination.
+     * @return true if the destination contains "/~"
+     */
+    public static boolean isPartitioned(final String destination) {
+        return destination != null && destination.contains(TENANT_SEGMENT);
+    }
+
+    /**
+     * Gets the destination of the client from a partitioned destination.
+     *
+     * @param destination the partitioned destination.
+     * @return the destination without the tenant segment, or the unchanged destination of the default partition
+     */
+    public String restore(final String destination) {
+        if (destination == null) {
+            return null;
+        }
+        for (String prefix : properties.getDestinationPrefixes()) {
+            String path = withoutTrailingSlash(prefix);
+            if (destination.startsWith(path + TENANT_SEGMENT)) {
+                int end = destination.indexOf('/', path.length() + TENANT_SEGMENT.length());
+                return end < 0 ? path : path + destination.substring(end);
+            }
+        }
+        return destination;
+    }
+
+    /**
+     * Gets the handshake interceptor, which stores the websocket-endpoint as tenant of the new sessions.
+     *
+     * @param endpoint the websocket-endpoint.
+     * @return the handshake interceptor
+     */
+    public HandshakeInterceptor handshakeInterceptor(final String endpoint) {
+        String tenant = toTenant(endpoint);
+        return new HandshakeInterceptor() {
+            @Override
+            public boolean beforeHandshake(final ServerHttpRequest request, final ServerHttpResponse response, final WebSocketHandler wsHandler,
+                    final Map<String, Object> attributes) {
+                attributes.put(TENANT_ATTRIBUTE, tenant);
+                return true;
+            }
+
+            @Override
+            public void afterHandshake(final ServerHttpRequest request, final ServerHttpResponse response, final WebSocketHandler wsHandler,
+                    final Exception exception) {
+                // nothing to do
+            }
+        };
+    }
+
+    /**
+     * Gets the interceptor for the clientInboundChannel, which rejects the SEND and SUBSCRIBE frames with a partitioned destination (see
+     * {@link #isPartitioned(String)}). It is the first interceptor, so no other interceptor (e.g. the retained messages) sees these frames.
+     *
+     * @return the interceptor
+     */
+    public ChannelInterceptor validationInterceptor() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(final Message<?> message, final MessageChannel channel) {
+                MessageHeaders headers = message.getHeaders();
+                SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(headers);
+                String destination = SimpMessageHeaderAccessor.getDestination(headers);
+                if ((messageType == SimpMessageType.MESSAGE || messageType == SimpMessageType.SUBSCRIBE) && isPartitioned(destination)) {
+                    throw new MessageDeliveryException(message, "The destination '" + destination + "' must not contain '" + TENANT_SEGMENT + "'");
+                }
+                return message;
+            }
+        };
+    }
+
+    /**
+     * Gets the interceptor for the clientInboundChannel, which stores the tenant of the CONNECT frames and partitions the destinations of the
+     * SUBSCRIBE and SEND frames.
+     *
+     * @return the interceptor
+     */
+    public ChannelInterceptor inboundInterceptor() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(final Message<?> message, final MessageChannel channel) {
+                MessageHeaders headers = message.getHeaders();
+                if (SimpMessageHeaderAccessor.getMessageType(headers) == SimpMessageType.CONNECT) {
+                    connect(headers);
+                    return message;
+                }
+                String destination = SimpMessageHeaderAccessor.getDestination(headers);
+                String isolated = isolate(getTenant(headers), destination);
+                // the original message is also used for the SessionSubscribeEvent, so a copy is changed.
+                return isolated == null || isolated.equals(destination) ? message : withDestination(message, isolated);
+            }
+        };
+    }
+
+    /**
+     * Gets the interceptor for the clientOutboundChannel, which restores the destinations of the client in the MESSAGE frames.
+     *
+     * @return the interceptor
+     */
+    public ChannelInterceptor outboundInterceptor() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(final Message<?> message, final MessageChannel channel) {
+                MessageHeaders headers = message.getHeaders();
+                if (SimpMessageHeaderAccessor.getMessageType(headers) != SimpMessageType.MESSAGE) {
+                    return message;
+                }
+                String destination = SimpMessageHeaderAccessor.getDestination(headers);
+                String restored = restore(destination);
+                return restored == null || restored.equals(destination) ? message : withDestination(message, restored);
+            }
+        };
+    }
+
+    private void connect(final MessageHeaders headers) {
+        Map<String, Object> sessionAttributes = SimpMessageHeaderAccessor.getSessionAttributes(headers);
+        if (properties.getTenantIsolation() != TenantIsolation.CONNECT_HEADER || sessionAttributes == null) {
+            return;
+        }
+        String tenant = NativeMessageHeaderAccessor.getFirstNativeHeader(properties.getTenantHeader(), headers);
+        if (tenant != null && !tenant.isEmpty()) {
+            sessionAttributes.put(TENANT_ATTRIBUTE, toTenant(tenant));
+        }
+    }
+
+    private static Message<?> withDestination(final Message<?> message, final String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+    }
+
+    /**
+     * Gets the tenant for the given key (like the websocket-endpoint or the CONNECT header), which is a single destination segment.
+     *
+     * @param key the tenant key.
+     * @return the tenant without the leading slash and with "_" for each character other than letters, digits, "_", "." and "-" (or "_" for an empty key)
+     */
+    public static String toTenant(final String key) {
+        String tenant = key.startsWith("/") ? key.substring(1) : key;
+        // the empty tenant is the default partition
+        return tenant.isEmpty() ? "_" : tenant.replaceAll("[^A-Za-z0-9_.-]", "_");
+    }
+
+    private static String withoutTrailingSlash(final String prefix) {
+        return prefix.endsWith("/") ? prefix.substring(0, prefix.length() - 1) : prefix;
+    }
+
+}
@@ -0,0 +1,247 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link ThreadPoolTaskExecutor} which executes each task in a new virtual thread, if running on Java 21+.
+ * <p>
+ * The messages of the channels keep their order like with a single thread: the messages of a session (or without session, of a destination) are
+ * executed one after the other by one virtual thread at a time, while different sessions are executed in parallel. All other tasks are executed
+ * in their own virtual thread.
+ * <p>
+ * The virtual thread executor is created via reflection, so the server still runs on Java 8. On older Java versions the normal thread pool is
+ * used. The normal thread pool is always initialized, but with virtual threads only {@link #getActiveCount()}, {@link #getQueuedTaskCount()} and
+ * {@link #getCompletedTaskCount()} count the executed tasks.
+ */
+public class VirtualThreadTaskExecutor extends ThreadPoolTaskExecutor {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOG = LoggerFactory.getLogger(VirtualThreadTaskExecutor.class);
+
+    private transient ExecutorService virtualThreadExecutor;
+
+    /** Replaces the virtual thread executor in the tests (which also run on Java versions without virtual threads). */
+    private final transient ExecutorService threadPerTaskExecutor;
+
+    /** The waiting messages by session id or destination. A key is only present while its messages are executed. */
+    private final transient ConcurrentMap<String, ArrayDeque<Runnable>> orderedTasks = new ConcurrentHashMap<>();
+
+    private final AtomicInteger activeCount = new AtomicInteger();
+
+    private final AtomicInteger queuedTaskCount = new AtomicInteger();
+
+    private final AtomicLong completedTaskCount = new AtomicLong();
+
+    /**
+     * Create the executor which uses virtual threads if available.
+     */
+    public VirtualThreadTaskExecutor() {
+        this(null);
+    }
+
+    VirtualThreadTaskExecutor(final ExecutorService threadPerTaskExecutor) {
+        this.threadPerTaskExecutor = threadPerTaskExecutor;
+    }
+
+    /**
+     * Checks if virtual threads are available (Java 21+).
+     *
+     * @return true if virtual threads are available
+     */
+    public static boolean isVirtualThreadsAvailable() {
+        return findNewVirtualThreadPerTaskExecutor() != null;
+    }
+
+    /**
+     * Checks if the tasks are executed in virtual threads. Only valid after initialization.
+     *
+     * @return true if the tasks are executed in virtual threads
+     */
+    public boolean isVirtual() {
+        return virtualThreadExecutor != null;
+    }
+
+    /**
+     * Gets the number of tasks which are currently executed.
+     *
+     * @return the number of active tasks
+     */
+    @Override
+    public int getActiveCount() {
+        return virtualThreadExecutor != null ? activeCount.get() : super.getActiveCount();
+    }
+
+    /**
+     * Gets the number of tasks which are waiting for a thread or for the previous message of their session.
+     *
+     * @return the number of queued tasks
+     */
+    public int getQueuedTaskCount() {
+        return virtualThreadExecutor != null ? queuedTaskCount.get() : getThreadPoolExecutor().getQueue().size();
+    }
+
+    /**
+     * Gets the number of completed tasks.
+     *
+     * @return the number of completed tasks
+     */
+    public long getCompletedTaskCount() {
+        return virtualThreadExecutor != null ? completedTaskCount.get() : getThreadPoolExecutor().getCompletedTaskCount();
+    }
+
+    @Override
+    protected ExecutorService initializeExecutor(final ThreadFactory threadFactory, final RejectedExecutionHandler rejectedExecutionHandler) {
+        ExecutorService executor = super.initializeExecutor(threadFactory, rejectedExecutionHandler);
+        Method factoryMethod = findNewVirtualThreadPerTaskExecutor();
+        if (threadPerTaskExecutor != null) {
+            virtualThreadExecutor = threadPerTaskExecutor;
+        } else if (factoryMethod == null) {
+            LOG.info("Virtual threads are not available in Java {}, {} uses the thread pool.", System.getProperty("java.version"), getThreadNamePrefix());
+        } else {
+            try {
+                virtualThreadExecutor = (ExecutorService) factoryMethod.invoke(null);
+            } catch (ReflectiveOperationException ex) {
+                LOG.warn("Failed to create the virtual thread executor, {} uses the thread pool: {}", getThreadNamePrefix(), ex.toString());
+            }
+        }
+        return executor;
+    }
+
+    @Override
+    public void execute(final Runnable task) {
+        if (virtualThreadExecutor == null) {
+            super.execute(task);
+            return;
+        }
+        queuedTaskCount.incrementAndGet();
+        String key = task instanceof MessageHandlingRunnable ? orderKey(((MessageHandlingRunnable) task).getMessage()) : null;
+        if (key == null) {
+            virtualThreadExecutor.execute(() -> run(task));
+            return;
+        }
+        boolean[] first = new boolean[1];
+        orderedTasks.compute(key, (k, waitingTasks) -> {
+            if (waitingTasks == null) {
+                first[0] = true;
+                return new ArrayDeque<>();
+            }
+            waitingTasks.add(task);
+            return waitingTasks;
+        });
+        if (first[0]) {
+            // no other message of this key is executed: start a virtual thread which also executes the messages which arrive meanwhile.
+            virtualThreadExecutor.execute(() -> runInOrder(key, task));
+        }
+    }
+
+    @Override
+    public Future<?> submit(final Runnable task) {
+        FutureTask<Object> future = new FutureTask<>(task, null);
+        execute(future);
+        return future;
+    }
+
+    @Override
+    public <T> Future<T> submit(final Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        execute(future);
+        return future;
+    }
+
+    @Override
+    public void shutdown() {
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdown();
+        }
+        super.shutdown();
+    }
+
+    private void runInOrder(final String key, final Runnable firstTask) {
+        Runnable task = firstTask;
+        while (task != null) {
+            try {
+                run(task);
+            } catch (RuntimeException ex) {
+                // like a thread pool, the failed message doesn't stop the following messages.
+                LOG.error("Failed to execute the message of {} in {}", key, getThreadNamePrefix(), ex);
+            }
+            task = nextTask(key);
+        }
+    }
+
+    /**
+     * Get the next waiting task of the given key, or remove the key if there is none (so the next message starts a new virtual thread).
+     */
+    private Runnable nextTask(final String key) {
+        Runnable[] next = new Runnable[1];
+        orderedTasks.computeIfPresent(key, (k, waitingTasks) -> {
+            next[0] = waitingTasks.poll();
+            return next[0] != null ? waitingTasks : null;
+        });
+        return next[0];
+    }
+
+    private void run(final Runnable task) {
+        queuedTaskCount.decrementAndGet();
+        activeCount.incrementAndGet();
+        try {
+            task.run();
+        } finally {
+            activeCount.decrementAndGet();
+            completedTaskCount.incrementAndGet();
+        }
+    }
+
+    private static String orderKey(final Message<?> message) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        return sessionId != null ? sessionId : SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+    }
+
+    private static Method findNewVirtualThreadPerTaskExecutor() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException ex) {
+            return null;
+        }
+    }
+
+}
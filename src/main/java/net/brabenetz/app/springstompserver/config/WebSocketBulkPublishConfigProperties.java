@@ -0,0 +1,153 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import net.brabenetz.app.springstompserver.publish.BulkPublishController;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Properties for the {@link BulkPublishController}.
+ */
+@Component
+@ConfigurationProperties("spring-stomp-server.bulk-publish")
+@SuppressWarnings("PMD.DataClass")
+public class WebSocketBulkPublishConfigProperties {
+
+    /**
+     * The activation of the HTTP bulk publish endpoint, which publishes the NDJSON records of the request body to the broker.
+     * <p>
+     * Default is false.
+     */
+    private boolean enabled;
+
+    /**
+     * The path of the HTTP bulk publish endpoint (POST).
+     * <p>
+     * Default is "/publish".
+     */
+    private String path = "/publish";
+
+    /**
+     * The number of records which are published as one batch. After each batch the request waits until the broker dispatched the batch, and an
+     * acknowledgement line is written to the response.
+     * <p>
+     * Default is 1000.
+     */
+    private int batchSize = 1000;
+
+    /**
+     * The maximum time in milliseconds to wait until the broker dispatched a batch. Then the request is stopped with an error line.
+     * <p>
+     * Default is 30000 (30 seconds).
+     */
+    private int batchTimeout = 30000;
+
+    /**
+     * Checks if is the activation of the HTTP bulk publish endpoint, which publishes the NDJSON records of the request body to the broker.
+     * <p>
+     * Default is false.
+     *
+     * @return the activation of the HTTP bulk publish endpoint
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets the activation of the HTTP bulk publish endpoint, which publishes the NDJSON records of the request body to the broker.
+     * <p>
+     * Default is false.
+     *
+     * @param enabled the new activation of the HTTP bulk publish endpoint
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Gets the path of the HTTP bulk publish endpoint (POST).
+     * <p>
+     * Default is "/publish".
+     *
+     * @return the path of the HTTP bulk publish endpoint
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Sets the path of the HTTP bulk publish endpoint (POST).
+     * <p>
+     * Default is "/publish".
+     *
+     * @param path the new path of the HTTP bulk publish endpoint
+     */
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Gets the number of records which are published as one batch. After each batch the request waits until the broker dispatched the batch, and an
+     * acknowledgement line is written to the response.
+     * <p>
+     * Default is 1000.
+     *
+     * @return the number of records which are published as one batch
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Sets the number of records which are published as one batch. After each batch the request waits until the broker dispatched the batch, and an
+     * acknowledgement line is written to the response.
+     * <p>
+     * Default is 1000.
+     *
+     * @param batchSize the new number of records which are published as one batch
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Gets the maximum time in milliseconds to wait until the broker dispatched a batch. Then the request is stopped with an error line.
+     * <p>
+     * Default is 30000 (30 seconds).
+     *
+     * @return the maximum time in milliseconds to wait until the broker dispatched a batch
+     */
+    public int getBatchTimeout() {
+        return batchTimeout;
+    }
+
+    /**
+     * Sets the maximum time in milliseconds to wait until the broker dispatched a batch. Then the request is stopped with an error line.
+     * <p>
+     * Default is 30000 (30 seconds).
+     *
+     * @param batchTimeout the new maximum time in milliseconds to wait until the broker dispatched a batch
+     */
+    public void setBatchTimeout(int batchTimeout) {
+        this.batchTimeout = batchTimeout;
+    }
+
+}
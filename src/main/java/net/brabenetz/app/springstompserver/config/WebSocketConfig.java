@@ -19,24 +19,57 @@
  */
 package net.brabenetz.app.springstompserver.config;
 
+import net.brabenetz.app.springstompserver.broker.ShardedSubscriptionRegistry;
+import net.brabenetz.app.springstompserver.broker.ShardedTaskExecutor;
+import net.brabenetz.app.springstompserver.broker.SubscriptionRegistryType;
+import net.brabenetz.app.springstompserver.broker.TrieSubscriptionRegistry;
+import net.brabenetz.app.springstompserver.compression.CompressionHandshakeHandler;
+import net.brabenetz.app.springstompserver.compression.DeflateWebSocketHandlerDecorator;
+import net.brabenetz.app.springstompserver.jfr.JfrSupport;
+import net.brabenetz.app.springstompserver.metrics.ChannelExecutorMetrics;
+import net.brabenetz.app.springstompserver.metrics.LatencyTracer;
+import net.brabenetz.app.springstompserver.metrics.StompMetrics;
+import net.brabenetz.app.springstompserver.publish.BrokerDispatchTracker;
+import net.brabenetz.app.springstompserver.received.ReceivedMessageRecorder;
+import net.brabenetz.app.springstompserver.recording.TrafficRecorder;
+import net.brabenetz.app.springstompserver.session.BatchingWebSocketHandlerDecorator;
+import net.brabenetz.app.springstompserver.stomp.BroadcastStompEncoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Lazy;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
 import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
 import org.springframework.scheduling.TaskScheduler;
-import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.socket.messaging.StompSubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolHandler;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+import org.springframework.web.socket.server.HandshakeHandler;
+import org.springframework.web.socket.server.HandshakeInterceptor;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+import java.util.zip.Deflater;
+
 /**
  * The Websocket Stomp Configuration.
  */
 @Configuration
-@EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
 
+    private static final Logger LOG = LoggerFactory.getLogger(WebSocketConfig.class);
+
     @Autowired
     private WebSocketConfigProperties properties;
 
@@ -44,27 +77,198 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
     @Lazy
     private TaskScheduler messageBrokerTaskScheduler;
 
+    @Autowired
+    @Lazy
+    @Qualifier("clientOutboundChannelExecutor")
+    private TaskExecutor clientOutboundChannelExecutor;
+
+    @Autowired
+    private StompMetrics stompMetrics;
+
+    @Autowired
+    private LatencyTracer latencyTracer;
+
+    @Autowired
+    private JfrSupport jfrSupport;
+
+    @Autowired
+    private TrafficRecorder trafficRecorder;
+
+    @Autowired
+    private ReceivedMessageRecorder receivedMessageRecorder;
+
+    @Autowired
+    private RetainedMessageListener retainedMessageListener;
+
+    @Autowired
+    private TenantPartitions tenantPartitions;
+
+    @Autowired
+    private BrokerDispatchTracker brokerDispatchTracker;
+
     @Override
     public void configureMessageBroker(final MessageBrokerRegistry registry) {
         registry.enableSimpleBroker(properties.getDestinationPrefixes())
                 .setTaskScheduler(messageBrokerTaskScheduler);
-        // By default, messages from the application to the message broker are sentsynchronously.
-        registry.configureBrokerChannel().taskExecutor().corePoolSize(properties.getChannelBrokerCorePoolSize());
+        if (retainedMessageListener.isEnabled()) {
+            // messages published by the server itself
+            registry.configureBrokerChannel().interceptors(retainedMessageListener.interceptor());
+        }
+        if (brokerDispatchTracker.isEnabled()) {
+            // counts the dispatched messages of the bulk publish and the replay, which wait for each batch
+            registry.configureBrokerChannel().interceptors(brokerDispatchTracker.interceptor());
+        }
+        if (properties.getBrokerShardCount() > 0) {
+            registry.configureBrokerChannel().taskExecutor(createShardedTaskExecutor("brokerChannel-"));
+        } else if (properties.getExecutorMode() == ExecutorMode.VIRTUAL) {
+            registry.configureBrokerChannel().taskExecutor(createVirtualThreadTaskExecutor("brokerChannel-", properties.getChannelBrokerCorePoolSize()));
+        } else {
+            // By default, messages from the application to the message broker are sentsynchronously.
+            registry.configureBrokerChannel().taskExecutor().corePoolSize(properties.getChannelBrokerCorePoolSize());
+        }
         // The default cache limit there is 1024.
         registry.setCacheLimit(properties.getBrokerRegistryCacheLimit());
     }
 
+    /**
+     * The MessageBrokerRegistry has no option for the subscription registry, so it is set on the SimpleBrokerMessageHandler after creation (but before
+     * the broker is started).
+     *
+     * @param simpleBrokerMessageHandler the simple broker.
+     * @return the initializer which sets the configured subscription registry.
+     */
+    @Bean
+    public SmartInitializingSingleton brokerSubscriptionRegistryInitializer(final ObjectProvider<SimpleBrokerMessageHandler> simpleBrokerMessageHandler) {
+        return () -> {
+            if (properties.getBrokerShardCount() > 0) {
+                simpleBrokerMessageHandler.ifAvailable(handler -> handler.setSubscriptionRegistry(
+                        new ShardedSubscriptionRegistry(properties.getBrokerShardCount(), this::createSubscriptionRegistrySlice)));
+            } else if (properties.getBrokerSubscriptionRegistry() == SubscriptionRegistryType.TRIE) {
+                simpleBrokerMessageHandler.ifAvailable(handler -> handler.setSubscriptionRegistry(new TrieSubscriptionRegistry()));
+            }
+        };
+    }
+
+    private SubscriptionRegistry createSubscriptionRegistrySlice() {
+        if (properties.getBrokerSubscriptionRegistry() == SubscriptionRegistryType.TRIE) {
+            return new TrieSubscriptionRegistry();
+        }
+        // the broker only configures its own DefaultSubscriptionRegistry
+        DefaultSubscriptionRegistry slice = new DefaultSubscriptionRegistry();
+        slice.setCacheLimit(properties.getBrokerRegistryCacheLimit());
+        return slice;
+    }
+
+    /**
+     * The StompEndpointRegistry has no option for the StompEncoder, so it is set on the StompSubProtocolHandler (which is shared by all endpoints) after
+     * creation.
+     *
+     * @param subProtocolWebSocketHandler the websocket handler with the StompSubProtocolHandler.
+     * @return the initializer which sets the {@link BroadcastStompEncoder}.
+     */
+    @Bean
+    public SmartInitializingSingleton stompEncoderInitializer(final ObjectProvider<SubProtocolWebSocketHandler> subProtocolWebSocketHandler) {
+        return () -> {
+            if (properties.isHeaderEncodingCache() && properties.getExecutorMode() == ExecutorMode.VIRTUAL) {
+                // each frame is encoded by a new virtual thread, so the per-thread cache of the encoded headers would never hit.
+                LOG.warn("The header-encoding-cache is not used with the executor-mode VIRTUAL");
+            } else if (properties.isHeaderEncodingCache()) {
+                subProtocolWebSocketHandler.ifAvailable(handler -> {
+                    for (SubProtocolHandler protocolHandler : handler.getProtocolHandlers()) {
+                        if (protocolHandler instanceof StompSubProtocolHandler) {
+                            ((StompSubProtocolHandler) protocolHandler).setEncoder(new BroadcastStompEncoder());
+                        }
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * The StompEndpointRegistry has no option for the StompDecoder, so the decoder which emits the JFR frame decode events is set on the
+     * StompSubProtocolHandler after creation.
+     *
+     * @param subProtocolWebSocketHandler the websocket handler with the StompSubProtocolHandler.
+     * @return the initializer which sets the JFR decoder.
+     */
+    @Bean
+    public SmartInitializingSingleton stompDecoderInitializer(final ObjectProvider<SubProtocolWebSocketHandler> subProtocolWebSocketHandler) {
+        return () -> {
+            if (jfrSupport.isEnabled()) {
+                subProtocolWebSocketHandler.ifAvailable(handler -> {
+                    for (SubProtocolHandler protocolHandler : handler.getProtocolHandlers()) {
+                        if (protocolHandler instanceof StompSubProtocolHandler) {
+                            ((StompSubProtocolHandler) protocolHandler).setDecoder(jfrSupport.decoder());
+                        }
+                    }
+                });
+            }
+        };
+    }
+
+    /**
+     * The metrics of the channel executors, which are created by the spring websocket configuration.
+     *
+     * @param clientInboundChannelExecutor the executor of the clientInboundChannel.
+     * @param clientOutboundChannelExecutor the executor of the clientOutboundChannel.
+     * @param brokerChannelExecutor the executor of the brokerChannel.
+     * @return the metrics of the channel executors.
+     */
+    @Bean
+    public ChannelExecutorMetrics channelExecutorMetrics(
+            @Qualifier("clientInboundChannelExecutor") final TaskExecutor clientInboundChannelExecutor,
+            @Qualifier("clientOutboundChannelExecutor") final TaskExecutor clientOutboundChannelExecutor,
+            @Qualifier("brokerChannelExecutor") final TaskExecutor brokerChannelExecutor) {
+        return new ChannelExecutorMetrics()
+                .add("inbound", clientInboundChannelExecutor)
+                .add("outbound", clientOutboundChannelExecutor)
+                .add("broker", brokerChannelExecutor);
+    }
+
     @Override
     public void registerStompEndpoints(final StompEndpointRegistry registry) {
-        registry.addEndpoint(properties.getWebsocketEndpoints()); // normal WebSocket
+        WebSocketConfigProperties.Compression compression = properties.getCompression();
+        for (String endpoint : properties.getWebsocketEndpoints()) {
+            // controls the permessage-deflate negotiation of the endpoint
+            HandshakeHandler handshakeHandler = new CompressionHandshakeHandler(compression.isEnabledFor(endpoint),
+                    compression.isServerNoContextTakeover(), compression.isClientNoContextTakeover());
+            HandshakeInterceptor[] handshakeInterceptors = properties.getTenantIsolation() == TenantIsolation.ENDPOINT
+                    ? new HandshakeInterceptor[] {tenantPartitions.handshakeInterceptor(endpoint) }
+                    : new HandshakeInterceptor[0];
+            registry.addEndpoint(endpoint).setHandshakeHandler(handshakeHandler).addInterceptors(handshakeInterceptors); // normal WebSocket
 
-        if (properties.isWithSockJs()) {
-            registry.addEndpoint(properties.getWebsocketEndpoints()).withSockJS(); // SockJs Legacy support.
+            if (properties.isWithSockJs()) {
+                registry.addEndpoint(endpoint).setHandshakeHandler(handshakeHandler).addInterceptors(handshakeInterceptors)
+                        .withSockJS(); // SockJs Legacy support.
+            }
         }
     }
 
+    /**
+     * The executor of the {@link net.brabenetz.app.springstompserver.session.SlowConsumerSubProtocolWebSocketHandler}, which writes the queued frames of the backlogged sessions.
+     * <p>
+     * The writes block while a client doesn't read (at most for the send-time-limit), so the executor doesn't queue the drain tasks
+     * but starts a new thread for each backlogged session if all threads are busy.
+     *
+     * @return the executor which writes the queued frames.
+     */
+    @Bean
+    public ThreadPoolTaskExecutor sessionWriterExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(properties.getChannelOutboundCorePoolSize());
+        executor.setQueueCapacity(0);
+        executor.setThreadNamePrefix("sessionWriter-");
+        executor.setDaemon(true);
+        return executor;
+    }
+
     @Override
     public void configureWebSocketTransport(final WebSocketTransportRegistration registry) {
+        // count the sessions by transport
+        registry.addDecoratorFactory(stompMetrics::decorate);
+        if (jfrSupport.isEnabled()) {
+            registry.addDecoratorFactory(jfrSupport::decorate);
+        }
         if (properties.getMessageSizeLimit() != null) {
             registry.setMessageSizeLimit(properties.getMessageSizeLimit()); // The default value is 64K (i.e. 64 * 1024).
         }
@@ -74,21 +278,98 @@ public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
         if (properties.getSendTimeLimit() != null) {
             registry.setSendTimeLimit(properties.getSendTimeLimit()); // The default value is 10 seconds (i.e. 10 * 10000).
         }
+        if (properties.getSendBatchSizeLimit() != null) {
+            // combine the outbound STOMP frames of a session into one WebSocket message.
+            // the scheduler only triggers the flush after the time limit, the socket write runs on the clientOutboundChannel executor.
+            registry.addDecoratorFactory(handler -> new BatchingWebSocketHandlerDecorator(handler, properties.getSendBatchSizeLimit(),
+                    properties.getSendBatchTimeLimit(), messageBrokerTaskScheduler, clientOutboundChannelExecutor));
+        }
         if (properties.getTimeToFirstMessage() != null) {
             registry.setTimeToFirstMessage(1000); // The default is set to 60,000 (1 minute).
         }
+        WebSocketConfigProperties.Compression compression = properties.getCompression();
+        if (compression.isEnabled() && (compression.getLevel() != Deflater.DEFAULT_COMPRESSION || compression.getMinSize() > 0)) {
+            if (DeflateWebSocketHandlerDecorator.isSupported()) {
+                // the last decorator, to get the undecorated session
+                registry.addDecoratorFactory(handler -> new DeflateWebSocketHandlerDecorator(handler, compression.getLevel(), compression.getMinSize()));
+            } else {
+                LOG.warn("The compression level and min-size are not supported by this Tomcat version, the defaults of Tomcat are used");
+            }
+        }
     }
 
     @Override
     public void configureClientInboundChannel(ChannelRegistration registration) {
-        // By default the channel is backed by a thread pool of size 1.
-        registration.taskExecutor().corePoolSize(properties.getChannelInboundCorePoolSize());
+        if (tenantPartitions.isEnabled()) {
+            // the first interceptor, so the partitioned destinations of the clients are rejected before any other interceptor sees them
+            registration.interceptors(tenantPartitions.validationInterceptor());
+        }
+        registration.interceptors(stompMetrics.inboundInterceptor());
+        if (properties.isLatencyTracing()) {
+            registration.interceptors(latencyTracer.inboundInterceptor());
+        }
+        if (jfrSupport.isEnabled()) {
+            registration.interceptors(jfrSupport.inboundInterceptor());
+        }
+        if (trafficRecorder.isEnabled()) {
+            registration.interceptors(trafficRecorder.inboundInterceptor());
+        }
+        if (retainedMessageListener.isEnabled()) {
+            registration.interceptors(retainedMessageListener.interceptor());
+        }
+        if (tenantPartitions.isEnabled()) {
+            // after all interceptors which need the destinations of the client, so only the broker sees the partitioned destinations
+            registration.interceptors(tenantPartitions.inboundInterceptor());
+        }
+        if (receivedMessageRecorder.isEnabled()) {
+            // the last interceptor, so only the accepted SEND frames are recorded (with the restored destination of the client)
+            registration.interceptors(receivedMessageRecorder.inboundInterceptor());
+        }
+        if (properties.getBrokerShardCount() > 0) {
+            registration.taskExecutor(createShardedTaskExecutor("clientInboundChannel-"));
+        } else if (properties.getExecutorMode() == ExecutorMode.VIRTUAL) {
+            registration.taskExecutor(createVirtualThreadTaskExecutor("clientInboundChannel-", properties.getChannelInboundCorePoolSize()));
+        } else {
+            // By default the channel is backed by a thread pool of size 1.
+            registration.taskExecutor().corePoolSize(properties.getChannelInboundCorePoolSize());
+        }
     }
 
     @Override
     public void configureClientOutboundChannel(ChannelRegistration registration) {
-        // By default the channel is backed by a thread pool of size 1.
-        registration.taskExecutor().corePoolSize(properties.getChannelOutboundCorePoolSize());
+        if (tenantPartitions.isEnabled()) {
+            // the first interceptor, so all others see the destinations of the client
+            registration.interceptors(tenantPartitions.outboundInterceptor());
+        }
+        registration.interceptors(stompMetrics.outboundInterceptor());
+        if (properties.isLatencyTracing()) {
+            registration.interceptors(latencyTracer.outboundInterceptor());
+        }
+        if (jfrSupport.isEnabled()) {
+            registration.interceptors(jfrSupport.outboundInterceptor());
+        }
+        if (properties.getExecutorMode() == ExecutorMode.VIRTUAL) {
+            registration.taskExecutor(createVirtualThreadTaskExecutor("clientOutboundChannel-", properties.getChannelOutboundCorePoolSize()));
+        } else {
+            // By default the channel is backed by a thread pool of size 1.
+            registration.taskExecutor().corePoolSize(properties.getChannelOutboundCorePoolSize());
+        }
+    }
+
+    private ShardedTaskExecutor createShardedTaskExecutor(final String threadNamePrefix) {
+        ShardedTaskExecutor executor = new ShardedTaskExecutor(properties.getBrokerShardCount());
+        // the pool only runs the tasks which can't be routed to a lane.
+        executor.setCorePoolSize(1);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        return executor;
+    }
+
+    private VirtualThreadTaskExecutor createVirtualThreadTaskExecutor(final String threadNamePrefix, final int corePoolSize) {
+        VirtualThreadTaskExecutor executor = new VirtualThreadTaskExecutor();
+        // the pool is only used if virtual threads are not available.
+        executor.setCorePoolSize(corePoolSize);
+        executor.setThreadNamePrefix(threadNamePrefix);
+        return executor;
     }
 
 }
@@ -19,12 +19,18 @@
  */
 package net.brabenetz.app.springstompserver.config;
 
+import net.brabenetz.app.springstompserver.broker.SubscriptionRegistryType;
+import net.brabenetz.app.springstompserver.session.SlowConsumerRule;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
 import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * Additional Websocket Stomp Properties use in the {@link WebSocketConfig}.
  */
@@ -66,6 +72,22 @@ public class WebSocketConfigProperties {
      */
     private Integer sendTimeLimit;
 
+    /**
+     * The number of bytes after which the batched outbound STOMP frames of a session are sent as one WebSocket message. Optional, the batching is
+     * disabled by default.
+     * <p>
+     * If set, the outbound frames of a session are combined into one WebSocket message until this size or the {@link #getSendBatchTimeLimit()} is
+     * reached.
+     */
+    private Integer sendBatchSizeLimit;
+
+    /**
+     * The maximum time in milliseconds an outbound STOMP frame is delayed by the batching (see {@link #getSendBatchSizeLimit()}).
+     * <p>
+     * Default is 10 milliseconds.
+     */
+    private int sendBatchTimeLimit = 10;
+
     /**
      * The WebSocketTransportRegistration timeToFirstMessage. Optional, The default is set to 60,000 (1 minute).
      *
@@ -93,6 +115,16 @@ public class WebSocketConfigProperties {
      */
     private int brokerRegistryCacheLimit = 1024;
 
+    /**
+     * The subscription registry of the simple message broker.
+     * <p>
+     * DEFAULT is the spring DefaultSubscriptionRegistry with the {@link #getBrokerRegistryCacheLimit()}. TRIE (opt-in) indexes all subscribed
+     * destinations in a segment trie without a cache limit, but ignores the "selector" header of the SUBSCRIBE frames: a subscription with a selector
+     * gets all messages of its destination.<br>
+     * Default is DEFAULT.
+     */
+    private SubscriptionRegistryType brokerSubscriptionRegistry = SubscriptionRegistryType.DEFAULT;
+
     /**
      * The MessageChannel PoolSize used for incoming messages from WebSocket clients.<br>
      * See {@link WebSocketMessageBrokerConfigurer#configureClientInboundChannel(org.springframework.messaging.simp.config.ChannelRegistration)}
@@ -118,6 +150,86 @@ public class WebSocketConfigProperties {
      */
     private int channelBrokerCorePoolSize = 1;
 
+    /**
+     * The number of single-threaded broker lanes. If greater than 0, the inbound and broker channel messages are partitioned by the hash of their
+     * destination into this number of lanes, each with its own slice of the subscription registry.
+     * <p>
+     * Messages to the same destination are processed in order, messages to different destinations in parallel. The other frames (CONNECT,
+     * SUBSCRIBE, UNSUBSCRIBE, DISCONNECT) are partitioned by the session id, so the frames of a session are processed in order.<br>
+     * Each slice is a subscription registry of the broker-subscription-registry type, so the "selector" header is still supported with DEFAULT.<br>
+     * If set, the channel-inbound-core-pool-size and channel-broker-core-pool-size are ignored.<br>
+     * Default is 0 (disabled).
+     */
+    private int brokerShardCount;
+
+    /**
+     * The execution mode of the inbound, outbound and broker channels: POOLED (a thread pool with the configured core pool size) or VIRTUAL (a new
+     * virtual thread for each message).
+     * <p>
+     * With VIRTUAL the messages of a session (on the brokerChannel without session: of a destination) are still executed in order, one at a time.
+     * VIRTUAL needs Java 21+, on older Java versions the thread pool is used. If broker-shard-count is set, the inbound and broker channel still use
+     * the single-threaded broker lanes.<br>
+     * Default is POOLED.
+     */
+    private ExecutorMode executorMode = ExecutorMode.POOLED;
+
+    /**
+     * The activation of the header-encoding cache: If true, the headers and payload of a STOMP MESSAGE frame which is sent to many subscribers are
+     * encoded only once, and each subscriber gets its own frame with the "subscription" and "message-id" header in front of a copy of the cached bytes.
+     * <p>
+     * Only the header encoding is saved: each subscriber still gets its own copy of the whole frame. The cached bytes are kept per
+     * clientOutboundChannel thread, so it is not used with the executor-mode VIRTUAL.<br>
+     * Default is false.
+     */
+    private boolean headerEncodingCache;
+
+    /**
+     * The activation of the latency tracing: If true, each SEND frame is stamped with its receive time and the latency until the broker, the outbound
+     * queue and the socket write of each subscriber is recorded per destination-prefix in the "stomp.latency" metric.
+     * <p>
+     * Default is false.
+     */
+    private boolean latencyTracing;
+
+    /**
+     * The activation of the Java Flight Recorder (JFR) events for frame decode, broker dispatch, outbound send, session connect/disconnect and
+     * init-load fetch. The events are only recorded if they are enabled in a running recording (e.g. started with JMC or jcmd), otherwise the cost is
+     * small, but each message still passes the begin/end of the events on every channel.
+     * <p>
+     * Default is false (ignored if the Java version has no JFR support).
+     */
+    private boolean jfrEvents;
+
+    /**
+     * The slow-consumer rules: the outbound frames of a destination matching a rule are dropped (DROP_OLDEST), replaced with the latest frame
+     * (CONFLATE) or the session is closed immediately (DISCONNECT), if a client can't read them fast enough. The first matching rule wins.
+     * <p>
+     * Default is empty: all frames are buffered until the send-buffer-size-limit or send-time-limit is exceeded (BUFFER).
+     */
+    private List<SlowConsumerRule> slowConsumerRules = new ArrayList<>();
+
+    /**
+     * The permessage-deflate compression of the websocket-endpoints.
+     * <p>
+     * Default is enabled with the default level for all websocket-endpoints.
+     */
+    private Compression compression = new Compression();
+
+    /**
+     * The tenant isolation, which gives each websocket-endpoint (ENDPOINT) or each tenant of the CONNECT frames (CONNECT_HEADER) its own
+     * partition of the broker: subscriptions, published messages and retained messages are not shared between the tenants.
+     * <p>
+     * Default is NONE: all sessions share one broker.
+     */
+    private TenantIsolation tenantIsolation = TenantIsolation.NONE;
+
+    /**
+     * The name of the CONNECT frame header with the tenant key, if the tenant-isolation is CONNECT_HEADER.
+     * <p>
+     * Default is "tenant". Sessions without this header share the default partition.
+     */
+    private String tenantHeader = "tenant";
+
     /**
      * Gets the Simple Message Broker destination prefixes which are handled by the WebSocket Stomp-Endpoint.
      *
@@ -212,6 +324,54 @@ public class WebSocketConfigProperties {
         this.sendTimeLimit = sendTimeLimit;
     }
 
+    /**
+     * Gets the number of bytes after which the batched outbound STOMP frames of a session are sent as one WebSocket message. Optional, the batching is
+     * disabled by default.
+     * <p>
+     * If set, the outbound frames of a session are combined into one WebSocket message until this size or the {@link #getSendBatchTimeLimit()} is
+     * reached.
+     *
+     * @return the number of bytes after which the batched outbound STOMP frames of a session are sent
+     */
+    public Integer getSendBatchSizeLimit() {
+        return sendBatchSizeLimit;
+    }
+
+    /**
+     * Sets the number of bytes after which the batched outbound STOMP frames of a session are sent as one WebSocket message. Optional, the batching is
+     * disabled by default.
+     * <p>
+     * If set, the outbound frames of a session are combined into one WebSocket message until this size or the {@link #getSendBatchTimeLimit()} is
+     * reached.
+     *
+     * @param sendBatchSizeLimit the new number of bytes after which the batched outbound STOMP frames of a session are sent
+     */
+    public void setSendBatchSizeLimit(Integer sendBatchSizeLimit) {
+        this.sendBatchSizeLimit = sendBatchSizeLimit;
+    }
+
+    /**
+     * Gets the maximum time in milliseconds an outbound STOMP frame is delayed by the batching (see {@link #getSendBatchSizeLimit()}).
+     * <p>
+     * Default is 10 milliseconds.
+     *
+     * @return the maximum time in milliseconds an outbound STOMP frame is delayed by the batching
+     */
+    public int getSendBatchTimeLimit() {
+        return sendBatchTimeLimit;
+    }
+
+    /**
+     * Sets the maximum time in milliseconds an outbound STOMP frame is delayed by the batching (see {@link #getSendBatchSizeLimit()}).
+     * <p>
+     * Default is 10 milliseconds.
+     *
+     * @param sendBatchTimeLimit the new maximum time in milliseconds an outbound STOMP frame is delayed by the batching
+     */
+    public void setSendBatchTimeLimit(int sendBatchTimeLimit) {
+        this.sendBatchTimeLimit = sendBatchTimeLimit;
+    }
+
     /**
      * Gets the WebSocketTransportRegistration timeToFirstMessage. Optional, The default is set to 60,000 (1 minute).
      *
@@ -282,6 +442,34 @@ public class WebSocketConfigProperties {
         this.brokerRegistryCacheLimit = brokerRegistryCacheLimit;
     }
 
+    /**
+     * Gets the subscription registry of the simple message broker.
+     * <p>
+     * DEFAULT is the spring DefaultSubscriptionRegistry with the {@link #getBrokerRegistryCacheLimit()}. TRIE (opt-in) indexes all subscribed
+     * destinations in a segment trie without a cache limit, but ignores the "selector" header of the SUBSCRIBE frames: a subscription with a selector
+     * gets all messages of its destination.<br>
+     * Default is DEFAULT.
+     *
+     * @return the subscription registry of the simple message broker
+     */
+    public SubscriptionRegistryType getBrokerSubscriptionRegistry() {
+        return brokerSubscriptionRegistry;
+    }
+
+    /**
+     * Sets the subscription registry of the simple message broker.
+     * <p>
+     * DEFAULT is the spring DefaultSubscriptionRegistry with the {@link #getBrokerRegistryCacheLimit()}. TRIE (opt-in) indexes all subscribed
+     * destinations in a segment trie without a cache limit, but ignores the "selector" header of the SUBSCRIBE frames: a subscription with a selector
+     * gets all messages of its destination.<br>
+     * Default is DEFAULT.
+     *
+     * @param brokerSubscriptionRegistry the new subscription registry of the simple message broker
+     */
+    public void setBrokerSubscriptionRegistry(SubscriptionRegistryType brokerSubscriptionRegistry) {
+        this.brokerSubscriptionRegistry = brokerSubscriptionRegistry;
+    }
+
     /**
      * Gets the MessageChannel PoolSize used for incoming messages from WebSocket clients.<br>
      * See {@link WebSocketMessageBrokerConfigurer#configureClientInboundChannel(org.springframework.messaging.simp.config.ChannelRegistration)}
@@ -356,4 +544,435 @@ public class WebSocketConfigProperties {
         this.channelBrokerCorePoolSize = channelBrokerCorePoolSize;
     }
 
+    /**
+     * Gets the number of single-threaded broker lanes. If greater than 0, the inbound and broker channel messages are partitioned by the hash of their
+     * destination into this number of lanes, each with its own slice of the subscription registry.
+     * <p>
+     * Messages to the same destination are processed in order, messages to different destinations in parallel. The other frames (CONNECT,
+     * SUBSCRIBE, UNSUBSCRIBE, DISCONNECT) are partitioned by the session id, so the frames of a session are processed in order.<br>
+     * Each slice is a subscription registry of the broker-subscription-registry type, so the "selector" header is still supported with DEFAULT.<br>
+     * If set, the channel-inbound-core-pool-size and channel-broker-core-pool-size are ignored.<br>
+     * Default is 0 (disabled).
+     *
+     * @return the number of single-threaded broker lanes
+     */
+    public int getBrokerShardCount() {
+        return brokerShardCount;
+    }
+
+    /**
+     * Sets the number of single-threaded broker lanes. If greater than 0, the inbound and broker channel messages are partitioned by the hash of their
+     * destination into this number of lanes, each with its own slice of the subscription registry.
+     * <p>
+     * Messages to the same destination are processed in order, messages to different destinations in parallel. The other frames (CONNECT,
+     * SUBSCRIBE, UNSUBSCRIBE, DISCONNECT) are partitioned by the session id, so the frames of a session are processed in order.<br>
+     * Each slice is a subscription registry of the broker-subscription-registry type, so the "selector" header is still supported with DEFAULT.<br>
+     * If set, the channel-inbound-core-pool-size and channel-broker-core-pool-size are ignored.<br>
+     * Default is 0 (disabled).
+     *
+     * @param brokerShardCount the new number of single-threaded broker lanes
+     */
+    public void setBrokerShardCount(int brokerShardCount) {
+        this.brokerShardCount = brokerShardCount;
+    }
+
+    /**
+     * Gets the execution mode of the inbound, outbound and broker channels: POOLED (a thread pool with the configured core pool size) or VIRTUAL (a new
+     * virtual thread for each message).
+     * <p>
+     * With VIRTUAL the messages of a session (on the brokerChannel without session: of a destination) are still executed in order, one at a time.
+     * VIRTUAL needs Java 21+, on older Java versions the thread pool is used. If broker-shard-count is set, the inbound and broker channel still use
+     * the single-threaded broker lanes.<br>
+     * Default is POOLED.
+     *
+     * @return the execution mode of the inbound, outbound and broker channels
+     */
+    public ExecutorMode getExecutorMode() {
+        return executorMode;
+    }
+
+    /**
+     * Sets the execution mode of the inbound, outbound and broker channels: POOLED (a thread pool with the configured core pool size) or VIRTUAL (a new
+     * virtual thread for each message).
+     * <p>
+     * With VIRTUAL the messages of a session (on the brokerChannel without session: of a destination) are still executed in order, one at a time.
+     * VIRTUAL needs Java 21+, on older Java versions the thread pool is used. If broker-shard-count is set, the inbound and broker channel still use
+     * the single-threaded broker lanes.<br>
+     * Default is POOLED.
+     *
+     * @param executorMode the new execution mode of the inbound, outbound and broker channels
+     */
+    public void setExecutorMode(ExecutorMode executorMode) {
+        this.executorMode = executorMode;
+    }
+
+    /**
+     * Checks if is activation of the header-encoding cache: If true, the headers and payload of a STOMP MESSAGE frame which is sent to many
+     * subscribers are encoded only once, and each subscriber gets its own frame with the "subscription" and "message-id" header in front of a copy of
+     * the cached bytes.
+     * <p>
+     * Only the header encoding is saved: each subscriber still gets its own copy of the whole frame. The cached bytes are kept per
+     * clientOutboundChannel thread, so it is not used with the executor-mode VIRTUAL.<br>
+     * Default is false.
+     *
+     * @return the activation of the header-encoding cache
+     */
+    public boolean isHeaderEncodingCache() {
+        return headerEncodingCache;
+    }
+
+    /**
+     * Sets the activation of the header-encoding cache: If true, the headers and payload of a STOMP MESSAGE frame which is sent to many
+     * subscribers are encoded only once, and each subscriber gets its own frame with the "subscription" and "message-id" header in front of a copy of
+     * the cached bytes.
+     * <p>
+     * Only the header encoding is saved: each subscriber still gets its own copy of the whole frame. The cached bytes are kept per
+     * clientOutboundChannel thread, so it is not used with the executor-mode VIRTUAL.<br>
+     * Default is false.
+     *
+     * @param headerEncodingCache the new activation of the header-encoding cache
+     */
+    public void setHeaderEncodingCache(boolean headerEncodingCache) {
+        this.headerEncodingCache = headerEncodingCache;
+    }
+
+    /**
+     * Checks if is activation of the latency tracing: If true, each SEND frame is stamped with its receive time and the latency until the broker, the outbound
+     * queue and the socket write of each subscriber is recorded per destination-prefix in the "stomp.latency" metric.
+     * <p>
+     * Default is false.
+     *
+     * @return the activation of the latency tracing
+     */
+    public boolean isLatencyTracing() {
+        return latencyTracing;
+    }
+
+    /**
+     * Sets the activation of the latency tracing: If true, each SEND frame is stamped with its receive time and the latency until the broker, the outbound
+     * queue and the socket write of each subscriber is recorded per destination-prefix in the "stomp.latency" metric.
+     * <p>
+     * Default is false.
+     *
+     * @param latencyTracing the new activation of the latency tracing
+     */
+    public void setLatencyTracing(boolean latencyTracing) {
+        this.latencyTracing = latencyTracing;
+    }
+
+    /**
+     * Checks if is activation of the Java Flight Recorder (JFR) events for frame decode, broker dispatch, outbound send, session connect/disconnect and
+     * init-load fetch. The events are only recorded if they are enabled in a running recording (e.g. started with JMC or jcmd), otherwise the cost is
+     * small, but each message still passes the begin/end of the events on every channel.
+     * <p>
+     * Default is false (ignored if the Java version has no JFR support).
+     *
+     * @return the activation of the Java Flight Recorder (JFR) events
+     */
+    public boolean isJfrEvents() {
+        return jfrEvents;
+    }
+
+    /**
+     * Sets the activation of the Java Flight Recorder (JFR) events for frame decode, broker dispatch, outbound send, session connect/disconnect and
+     * init-load fetch. The events are only recorded if they are enabled in a running recording (e.g. started with JMC or jcmd), otherwise the cost is
+     * small, but each message still passes the begin/end of the events on every channel.
+     * <p>
+     * Default is false (ignored if the Java version has no JFR support).
+     *
+     * @param jfrEvents the new activation of the Java Flight Recorder (JFR) events
+     */
+    public void setJfrEvents(boolean jfrEvents) {
+        this.jfrEvents = jfrEvents;
+    }
+
+    /**
+     * Gets the slow-consumer rules: the outbound frames of a destination matching a rule are dropped (DROP_OLDEST), replaced with the latest frame
+     * (CONFLATE) or the session is closed immediately (DISCONNECT), if a client can't read them fast enough. The first matching rule wins.
+     * <p>
+     * Default is empty: all frames are buffered until the send-buffer-size-limit or send-time-limit is exceeded (BUFFER).
+     *
+     * @return the slow-consumer rules
+     */
+    public List<SlowConsumerRule> getSlowConsumerRules() {
+        return slowConsumerRules;
+    }
+
+    /**
+     * Sets the slow-consumer rules: the outbound frames of a destination matching a rule are dropped (DROP_OLDEST), replaced with the latest frame
+     * (CONFLATE) or the session is closed immediately (DISCONNECT), if a client can't read them fast enough. The first matching rule wins.
+     * <p>
+     * Default is empty: all frames are buffered until the send-buffer-size-limit or send-time-limit is exceeded (BUFFER).
+     *
+     * @param slowConsumerRules the new slow-consumer rules
+     */
+    public void setSlowConsumerRules(List<SlowConsumerRule> slowConsumerRules) {
+        this.slowConsumerRules = slowConsumerRules;
+    }
+
+    /**
+     * Gets the permessage-deflate compression of the websocket-endpoints.
+     * <p>
+     * Default is enabled with the default level for all websocket-endpoints.
+     *
+     * @return the permessage-deflate compression of the websocket-endpoints
+     */
+    public Compression getCompression() {
+        return compression;
+    }
+
+    /**
+     * Sets the permessage-deflate compression of the websocket-endpoints.
+     * <p>
+     * Default is enabled with the default level for all websocket-endpoints.
+     *
+     * @param compression the new permessage-deflate compression of the websocket-endpoints
+     */
+    public void setCompression(Compression compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Gets the tenant isolation, which gives each websocket-endpoint (ENDPOINT) or each tenant of the CONNECT frames (CONNECT_HEADER) its own
+     * partition of the broker: subscriptions, published messages and retained messages are not shared between the tenants.
+     * <p>
+     * Default is NONE: all sessions share one broker.
+     *
+     * @return the tenant isolation
+     */
+    public TenantIsolation getTenantIsolation() {
+        return tenantIsolation;
+    }
+
+    /**
+     * Sets the tenant isolation, which gives each websocket-endpoint (ENDPOINT) or each tenant of the CONNECT frames (CONNECT_HEADER) its own
+     * partition of the broker: subscriptions, published messages and retained messages are not shared between the tenants.
+     * <p>
+     * Default is NONE: all sessions share one broker.
+     *
+     * @param tenantIsolation the new tenant isolation
+     */
+    public void setTenantIsolation(TenantIsolation tenantIsolation) {
+        this.tenantIsolation = tenantIsolation;
+    }
+
+    /**
+     * Gets the name of the CONNECT frame header with the tenant key, if the tenant-isolation is CONNECT_HEADER.
+     * <p>
+     * Default is "tenant". Sessions without this header share the default partition.
+     *
+     * @return the name of the CONNECT frame header with the tenant key
+     */
+    public String getTenantHeader() {
+        return tenantHeader;
+    }
+
+    /**
+     * Sets the name of the CONNECT frame header with the tenant key, if the tenant-isolation is CONNECT_HEADER.
+     * <p>
+     * Default is "tenant". Sessions without this header share the default partition.
+     *
+     * @param tenantHeader the new name of the CONNECT frame header with the tenant key
+     */
+    public void setTenantHeader(String tenantHeader) {
+        this.tenantHeader = tenantHeader;
+    }
+
+    /**
+     * The Properties for the permessage-deflate compression of the websocket-endpoints.
+     */
+    @SuppressWarnings("PMD.DataClass")
+    public static class Compression {
+
+        /**
+         * The activation of the permessage-deflate compression (RFC 7692) for the clients which offer it.
+         * <p>
+         * Default is false (the offers of the clients are declined).
+         */
+        private boolean enabled;
+
+        /**
+         * The websocket-endpoints with compression, the other websocket-endpoints decline the permessage-deflate offer.
+         * <p>
+         * Default is empty (all websocket-endpoints).
+         */
+        private String[] endpoints = new String[0];
+
+        /**
+         * The deflate compression level from 0 (no compression) to 9 (best compression).
+         * <p>
+         * Default is -1 (the default level 6 of java.util.zip.Deflater).
+         */
+        private int level = -1;
+
+        /**
+         * The minimum payload size in bytes of a message to be compressed. Smaller messages are sent uncompressed.
+         * <p>
+         * Default is 0 (all messages are compressed).
+         */
+        private int minSize;
+
+        /**
+         * The activation of "server_no_context_takeover": the server resets the compression context after each
+         * message, which saves the memory of the context between the messages but compresses worse.
+         * <p>
+         * Default is false.
+         */
+        private boolean serverNoContextTakeover;
+
+        /**
+         * The activation of "client_no_context_takeover": the client resets the compression context after each
+         * message, which saves the memory of the decompression context on the server.
+         * <p>
+         * Default is false.
+         */
+        private boolean clientNoContextTakeover;
+
+        /**
+         * Checks if is the activation of the permessage-deflate compression (RFC 7692) for the clients which offer it.
+         * <p>
+         * Default is false (the offers of the clients are declined).
+         *
+         * @return the activation of the permessage-deflate compression
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets the activation of the permessage-deflate compression (RFC 7692) for the clients which offer it.
+         * <p>
+         * Default is false (the offers of the clients are declined).
+         *
+         * @param enabled the new activation of the permessage-deflate compression
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the websocket-endpoints with compression, the other websocket-endpoints decline the permessage-deflate offer.
+         * <p>
+         * Default is empty (all websocket-endpoints).
+         *
+         * @return the websocket-endpoints with compression
+         */
+        public String[] getEndpoints() {
+            return endpoints;
+        }
+
+        /**
+         * Sets the websocket-endpoints with compression, the other websocket-endpoints decline the permessage-deflate offer.
+         * <p>
+         * Default is empty (all websocket-endpoints).
+         *
+         * @param endpoints the new websocket-endpoints with compression
+         */
+        public void setEndpoints(String[] endpoints) {
+            this.endpoints = endpoints;
+        }
+
+        /**
+         * Gets the deflate compression level from 0 (no compression) to 9 (best compression).
+         * <p>
+         * Default is -1 (the default level 6 of java.util.zip.Deflater).
+         *
+         * @return the deflate compression level
+         */
+        public int getLevel() {
+            return level;
+        }
+
+        /**
+         * Sets the deflate compression level from 0 (no compression) to 9 (best compression).
+         * <p>
+         * Default is -1 (the default level 6 of java.util.zip.Deflater).
+         *
+         * @param level the new deflate compression level
+         */
+        public void setLevel(int level) {
+            this.level = level;
+        }
+
+        /**
+         * Gets the minimum payload size in bytes of a message to be compressed. Smaller messages are sent uncompressed.
+         * <p>
+         * Default is 0 (all messages are compressed).
+         *
+         * @return the minimum payload size in bytes of a message to be compressed
+         */
+        public int getMinSize() {
+            return minSize;
+        }
+
+        /**
+         * Sets the minimum payload size in bytes of a message to be compressed. Smaller messages are sent uncompressed.
+         * <p>
+         * Default is 0 (all messages are compressed).
+         *
+         * @param minSize the new minimum payload size in bytes of a message to be compressed
+         */
+        public void setMinSize(int minSize) {
+            this.minSize = minSize;
+        }
+
+        /**
+         * Checks if is the activation of "server_no_context_takeover": the server resets the compression context after each
+         * message, which saves the memory of the context between the messages but compresses worse.
+         * <p>
+         * Default is false.
+         *
+         * @return the activation of "server_no_context_takeover"
+         */
+        public boolean isServerNoContextTakeover() {
+            return serverNoContextTakeover;
+        }
+
+        /**
+         * Sets the activation of "server_no_context_takeover": the server resets the compression context after each
+         * message, which saves the memory of the context between the messages but compresses worse.
+         * <p>
+         * Default is false.
+         *
+         * @param serverNoContextTakeover the new activation of "server_no_context_takeover"
+         */
+        public void setServerNoContextTakeover(boolean serverNoContextTakeover) {
+            this.serverNoContextTakeover = serverNoContextTakeover;
+        }
+
+        /**
+         * Checks if is the activation of "client_no_context_takeover": the client resets the compression context after each
+         * message, which saves the memory of the decompression context on the server.
+         * <p>
+         * Default is false.
+         *
+         * @return the activation of "client_no_context_takeover"
+         */
+        public boolean isClientNoContextTakeover() {
+            return clientNoContextTakeover;
+        }
+
+        /**
+         * Sets the activation of "client_no_context_takeover": the client resets the compression context after each
+         * message, which saves the memory of the decompression context on the server.
+         * <p>
+         * Default is false.
+         *
+         * @param clientNoContextTakeover the new activation of "client_no_context_takeover"
+         */
+        public void setClientNoContextTakeover(boolean clientNoContextTakeover) {
+            this.clientNoContextTakeover = clientNoContextTakeover;
+        }
+
+        /**
+         * Checks if the compression is enabled for the given websocket-endpoint.
+         *
+         * @param endpoint the websocket-endpoint.
+         * @return true if the compression is enabled and the endpoint is one of the {@link #getEndpoints()} (or the endpoints are empty)
+         */
+        public boolean isEnabledFor(final String endpoint) {
+            return enabled && (endpoints.length == 0 || Arrays.asList(endpoints).contains(endpoint));
+        }
+    }
+
 }
@@ -23,6 +23,11 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
 import org.springframework.validation.annotation.Validated;
 
+import javax.validation.Valid;
+import javax.validation.constraints.AssertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 
 /**
@@ -50,6 +55,62 @@ public class WebSocketInitLoadConfigProperties {
      */
     private String proxyUrl;
 
+    /**
+     * The {@link #proxyUrl} parsed once into a template.
+     */
+    private ProxyUrlTemplate proxyUrlTemplate;
+
+    /**
+     * Additional init-load rules, each with its own destination-patterns, proxy-url and optional headers.
+     * <p>
+     * The rules are checked in the configured order after the {@link #getDestinationPatterns()} and {@link #getProxyUrl()} above. The first matching rule
+     * wins.
+     */
+    @Valid
+    private List<InitLoadRule> rules = new ArrayList<>();
+
+    /**
+     * The index of all init-load rules, lazy created and reset if the rules change.
+     */
+    private volatile InitLoadRuleIndex ruleIndex;
+
+    /**
+     * The maximum number of init-load requests which are sent to the proxy-server at the same time.
+     * <p>
+     * The init-load requests are executed in an own thread pool of this size, so a slow proxy-server will not block the websocket sessions.<br>
+     * Default is 10.
+     */
+    private int maxConcurrentRequests = 10;
+
+    /**
+     * The maximum number of init-load requests which are waiting for a free thread, if all {@link #getMaxConcurrentRequests()} are in use.
+     * <p>
+     * Additional init-load requests are rejected and logged as warning.<br>
+     * Default is 1000.
+     */
+    private int maxQueuedRequests = 1000;
+
+    /**
+     * The connect timeout in milliseconds for a single init-load request to the proxy-server.
+     * <p>
+     * Default is 5000 (5 seconds).
+     */
+    private int connectTimeout = 5000;
+
+    /**
+     * The read timeout in milliseconds for a single init-load request to the proxy-server.
+     * <p>
+     * Default is 10000 (10 seconds).
+     */
+    private int readTimeout = 10000;
+
+    /**
+     * The in-memory cache for the init-load responses, keyed by the resolved proxy url.
+     * <p>
+     * Default is disabled.
+     */
+    private Cache cache = new Cache();
+
     /**
      * Gets the Websocket Subscription destination pattern like "/user/00001111-2222-3333-4444-555566667777/topic/..".
      * <p>
@@ -70,6 +131,7 @@ public class WebSocketInitLoadConfigProperties {
      */
     public void setDestinationPatterns(Pattern destinationPatterns) {
         this.destinationPatterns = destinationPatterns;
+        this.ruleIndex = null;
     }
 
     /**
@@ -96,6 +158,355 @@ public class WebSocketInitLoadConfigProperties {
      */
     public void setProxyUrl(String proxyUrl) {
         this.proxyUrl = proxyUrl;
+        this.proxyUrlTemplate = proxyUrl != null ? ProxyUrlTemplate.compile(proxyUrl) : null;
+        this.ruleIndex = null;
+    }
+
+    /**
+     * Gets the proxy url parsed into a template, to resolve the ${group-X} references without regex replacements.
+     *
+     * @return the proxy url template or null if no proxy url is configured
+     */
+    public ProxyUrlTemplate getProxyUrlTemplate() {
+        return proxyUrlTemplate;
+    }
+
+    /**
+     * Checks that every ${group-X} referenced by the {@link #getProxyUrl()} exists in the {@link #getDestinationPatterns()}.
+     *
+     * @return true if all referenced groups exist
+     */
+    @AssertTrue(message = "The proxy-url references a ${group-X} which doesn't exist in the destination-patterns")
+    public boolean isProxyUrlResolvable() {
+        return proxyUrlTemplate == null || proxyUrlTemplate.isResolvableBy(destinationPatterns);
+    }
+
+    /**
+     * Gets the additional init-load rules, each with its own destination-patterns, proxy-url and optional headers.
+     * <p>
+     * The rules are checked in the configured order after the {@link #getDestinationPatterns()} and {@link #getProxyUrl()} above. The first matching rule
+     * wins.
+     *
+     * @return the additional init-load rules
+     */
+    public List<InitLoadRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Sets the additional init-load rules, each with its own destination-patterns, proxy-url and optional headers.
+     * <p>
+     * The rules are checked in the configured order after the {@link #getDestinationPatterns()} and {@link #getProxyUrl()} above. The first matching rule
+     * wins.
+     *
+     * @param rules the new additional init-load rules
+     */
+    public void setRules(List<InitLoadRule> rules) {
+        this.rules = rules;
+        this.ruleIndex = null;
+    }
+
+    /**
+     * Gets all init-load rules in the order in which they are checked: The {@link #getDestinationPatterns()} with the {@link #getProxyUrl()} (if
+     * configured) and then the {@link #getRules()}.
+     *
+     * @return all init-load rules
+     */
+    public List<InitLoadRule> getEffectiveRules() {
+        List<InitLoadRule> effectiveRules = new ArrayList<>();
+        if (proxyUrl != null && !proxyUrl.isEmpty()) {
+            effectiveRules.add(new InitLoadRule(destinationPatterns, proxyUrl));
+        }
+        if (rules != null) {
+            effectiveRules.addAll(rules);
+        }
+        return effectiveRules;
+    }
+
+    /**
+     * Gets the index of all {@link #getEffectiveRules()}, to find the matching rule for a subscription without running every regex.
+     * <p>
+     * Changes inside an existing {@link InitLoadRule} are not detected; call {@link #setRules(List)} to rebuild the index.
+     *
+     * @return the index of all init-load rules
+     */
+    public InitLoadRuleIndex getRuleIndex() {
+        InitLoadRuleIndex index = ruleIndex;
+        if (index == null) {
+            index = new InitLoadRuleIndex(getEffectiveRules());
+            ruleIndex = index;
+        }
+        return index;
+    }
+
+    /**
+     * Gets the maximum number of init-load requests which are sent to the proxy-server at the same time.
+     * <p>
+     * The init-load requests are executed in an own thread pool of this size, so a slow proxy-server will not block the websocket sessions.<br>
+     * Default is 10.
+     *
+     * @return the maximum number of init-load requests which are sent to the proxy-server at the same time
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    /**
+     * Sets the maximum number of init-load requests which are sent to the proxy-server at the same time.
+     * <p>
+     * The init-load requests are executed in an own thread pool of this size, so a slow proxy-server will not block the websocket sessions.<br>
+     * Default is 10.
+     *
+     * @param maxConcurrentRequests the new maximum number of init-load requests which are sent to the proxy-server at the same time
+     */
+    public void setMaxConcurrentRequests(int maxConcurrentRequests) {
+        this.maxConcurrentRequests = maxConcurrentRequests;
+    }
+
+    /**
+     * Gets the maximum number of init-load requests which are waiting for a free thread, if all {@link #getMaxConcurrentRequests()} are in use.
+     * <p>
+     * Additional init-load requests are rejected and logged as warning.<br>
+     * Default is 1000.
+     *
+     * @return the maximum number of init-load requests which are waiting for a free thread
+     */
+    public int getMaxQueuedRequests() {
+        return maxQueuedRequests;
+    }
+
+    /**
+     * Sets the maximum number of init-load requests which are waiting for a free thread, if all {@link #getMaxConcurrentRequests()} are in use.
+     * <p>
+     * Additional init-load requests are rejected and logged as warning.<br>
+     * Default is 1000.
+     *
+     * @param maxQueuedRequests the new maximum number of init-load requests which are waiting for a free thread
+     */
+    public void setMaxQueuedRequests(int maxQueuedRequests) {
+        this.maxQueuedRequests = maxQueuedRequests;
+    }
+
+    /**
+     * Gets the connect timeout in milliseconds for a single init-load request to the proxy-server.
+     * <p>
+     * Default is 5000 (5 seconds).
+     *
+     * @return the connect timeout in milliseconds for a single init-load request to the proxy-server
+     */
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    /**
+     * Sets the connect timeout in milliseconds for a single init-load request to the proxy-server.
+     * <p>
+     * Default is 5000 (5 seconds).
+     *
+     * @param connectTimeout the new connect timeout in milliseconds for a single init-load request to the proxy-server
+     */
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Gets the read timeout in milliseconds for a single init-load request to the proxy-server.
+     * <p>
+     * Default is 10000 (10 seconds).
+     *
+     * @return the read timeout in milliseconds for a single init-load request to the proxy-server
+     */
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Sets the read timeout in milliseconds for a single init-load request to the proxy-server.
+     * <p>
+     * Default is 10000 (10 seconds).
+     *
+     * @param readTimeout the new read timeout in milliseconds for a single init-load request to the proxy-server
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    /**
+     * Gets the in-memory cache for the init-load responses, keyed by the resolved proxy url.
+     * <p>
+     * Default is disabled.
+     *
+     * @return the in-memory cache for the init-load responses
+     */
+    public Cache getCache() {
+        return cache;
+    }
+
+    /**
+     * Sets the in-memory cache for the init-load responses, keyed by the resolved proxy url.
+     * <p>
+     * Default is disabled.
+     *
+     * @param cache the new in-memory cache for the init-load responses
+     */
+    public void setCache(Cache cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * The Properties for the init-load response cache used by the {@link InitLoadProxyClient}.
+     */
+    @SuppressWarnings("PMD.DataClass")
+    public static class Cache {
+
+        /**
+         * The activation of the init-load cache: Set to true if the init-load responses should be cached.
+         * <p>
+         * Default is false, because a Mock-Server like https://wiremock.org/ can change the responses on the fly.
+         */
+        private boolean enabled;
+
+        /**
+         * The maximum number of cached init-load responses. The least recently used response is evicted first.
+         * <p>
+         * Default is 1000.
+         */
+        private int maxEntries = 1000;
+
+        /**
+         * The maximum number of payload bytes of all cached init-load responses. The least recently used response is evicted first.
+         * <p>
+         * Default is 10485760 (10 MB).
+         */
+        private long maxBytes = 10 * 1024 * 1024;
+
+        /**
+         * The time to live in milliseconds of a cached init-load response.
+         * <p>
+         * Default is 60000 (1 minute).
+         */
+        private long timeToLive = 60000;
+
+        /**
+         * The activation of the revalidation: Set to true if an expired response with an ETag or Last-Modified header should be revalidated with a
+         * conditional request (If-None-Match, If-Modified-Since) instead of loading it again.
+         * <p>
+         * Default is false.
+         */
+        private boolean revalidate;
+
+        /**
+         * Checks if is activation of the init-load cache: Set to true if the init-load responses should be cached.
+         * <p>
+         * Default is false, because a Mock-Server like https://wiremock.org/ can change the responses on the fly.
+         *
+         * @return the activation of the init-load cache
+         */
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        /**
+         * Sets the activation of the init-load cache: Set to true if the init-load responses should be cached.
+         * <p>
+         * Default is false, because a Mock-Server like https://wiremock.org/ can change the responses on the fly.
+         *
+         * @param enabled the new activation of the init-load cache
+         */
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        /**
+         * Gets the maximum number of cached init-load responses. The least recently used response is evicted first.
+         * <p>
+         * Default is 1000.
+         *
+         * @return the maximum number of cached init-load responses
+         */
+        public int getMaxEntries() {
+            return maxEntries;
+        }
+
+        /**
+         * Sets the maximum number of cached init-load responses. The least recently used response is evicted first.
+         * <p>
+         * Default is 1000.
+         *
+         * @param maxEntries the new maximum number of cached init-load responses
+         */
+        public void setMaxEntries(int maxEntries) {
+            this.maxEntries = maxEntries;
+        }
+
+        /**
+         * Gets the maximum number of payload bytes of all cached init-load responses. The least recently used response is evicted first.
+         * <p>
+         * Default is 10485760 (10 MB).
+         *
+         * @return the maximum number of payload bytes of all cached init-load responses
+         */
+        public long getMaxBytes() {
+            return maxBytes;
+        }
+
+        /**
+         * Sets the maximum number of payload bytes of all cached init-load responses. The least recently used response is evicted first.
+         * <p>
+         * Default is 10485760 (10 MB).
+         *
+         * @param maxBytes the new maximum number of payload bytes of all cached init-load responses
+         */
+        public void setMaxBytes(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        /**
+         * Gets the time to live in milliseconds of a cached init-load response.
+         * <p>
+         * Default is 60000 (1 minute).
+         *
+         * @return the time to live in milliseconds of a cached init-load response
+         */
+        public long getTimeToLive() {
+            return timeToLive;
+        }
+
+        /**
+         * Sets the time to live in milliseconds of a cached init-load response.
+         * <p>
+         * Default is 60000 (1 minute).
+         *
+         * @param timeToLive the new time to live in milliseconds of a cached init-load response
+         */
+        public void setTimeToLive(long timeToLive) {
+            this.timeToLive = timeToLive;
+        }
+
+        /**
+         * Checks if is activation of the revalidation: Set to true if an expired response with an ETag or Last-Modified header should be revalidated
+         * with a conditional request (If-None-Match, If-Modified-Since) instead of loading it again.
+         * <p>
+         * Default is false.
+         *
+         * @return the activation of the revalidation
+         */
+        public boolean isRevalidate() {
+            return revalidate;
+        }
+
+        /**
+         * Sets the activation of the revalidation: Set to true if an expired response with an ETag or Last-Modified header should be revalidated
+         * with a conditional request (If-None-Match, If-Modified-Since) instead of loading it again.
+         * <p>
+         * Default is false.
+         *
+         * @param revalidate the new activation of the revalidation
+         */
+        public void setRevalidate(boolean revalidate) {
+            this.revalidate = revalidate;
+        }
+
     }
 
 }
@@ -0,0 +1,62 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import net.brabenetz.app.springstompserver.metrics.StompMetrics;
+import net.brabenetz.app.springstompserver.session.SlowConsumerSubProtocolWebSocketHandler;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.messaging.support.AbstractSubscribableChannel;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.config.annotation.DelegatingWebSocketMessageBrokerConfiguration;
+
+/**
+ * Replaces the EnableWebSocketMessageBroker annotation, to create the {@link SlowConsumerSubProtocolWebSocketHandler} if slow-consumer rules are
+ * configured. All other settings are done by the {@link WebSocketConfig}.
+ */
+@Configuration(proxyBeanMethods = false)
+public class WebSocketMessageBrokerConfig extends DelegatingWebSocketMessageBrokerConfiguration {
+
+    @Autowired
+    private WebSocketConfigProperties properties;
+
+    @Autowired
+    private StompMetrics stompMetrics;
+
+    @Autowired
+    @Qualifier("sessionWriterExecutor")
+    private TaskExecutor sessionWriterExecutor;
+
+    @Bean
+    @Override
+    public WebSocketHandler subProtocolWebSocketHandler(final AbstractSubscribableChannel clientInboundChannel,
+            final AbstractSubscribableChannel clientOutboundChannel) {
+        if (properties.getSlowConsumerRules().isEmpty()) {
+            return super.subProtocolWebSocketHandler(clientInboundChannel, clientOutboundChannel);
+        }
+        // queue the frames of each session, and apply the slow-consumer policies if a client can't read them fast enough.
+        return new SlowConsumerSubProtocolWebSocketHandler(clientInboundChannel, clientOutboundChannel, properties.getSlowConsumerRules(),
+                sessionWriterExecutor, stompMetrics.getSlowConsumerCounters());
+    }
+
+}
@@ -0,0 +1,185 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import net.brabenetz.app.springstompserver.received.ReceivedMessageRecorder;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Properties for the {@link ReceivedMessageRecorder}.
+ */
+@Component
+@ConfigurationProperties("spring-stomp-server.received")
+@SuppressWarnings("PMD.DataClass")
+public class WebSocketReceivedConfigProperties {
+
+    /**
+     * The activation of the buffer of the received SEND frames and of its HTTP query endpoint.
+     * <p>
+     * Default is false.
+     */
+    private boolean enabled;
+
+    /**
+     * The path of the HTTP query endpoint (GET to query, DELETE to clear the buffer).
+     * <p>
+     * Default is "/received".
+     */
+    private String path = "/received";
+
+    /**
+     * The maximum number of buffered SEND frames. If the buffer is full, the oldest frame is evicted.
+     * <p>
+     * Default is 10000.
+     */
+    private int maxEntries = 10000;
+
+    /**
+     * The maximum number of payload and header bytes of all buffered SEND frames. If the limit is reached, the oldest frames are evicted.
+     * <p>
+     * Default is 16777216 (16 MB).
+     */
+    private long maxBytes = 16L * 1024 * 1024;
+
+    /**
+     * The names of the stomp headers which are indexed (besides the destination and the session), so a query by their value doesn't scan
+     * the buffer, like "correlation-id". A query by another header is rejected.
+     * <p>
+     * Default is empty (all headers are indexed; the index is bounded by the max-entries like the messages).
+     */
+    private List<String> indexedHeaders = new ArrayList<>();
+
+    /**
+     * Checks if is the activation of the buffer of the received SEND frames and of its HTTP query endpoint.
+     * <p>
+     * Default is false.
+     *
+     * @return the activation of the buffer of the received SEND frames
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Sets the activation of the buffer of the received SEND frames and of its HTTP query endpoint.
+     * <p>
+     * Default is false.
+     *
+     * @param enabled the new activation of the buffer of the received SEND frames
+     */
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Gets the path of the HTTP query endpoint (GET to query, DELETE to clear the buffer).
+     * <p>
+     * Default is "/received".
+     *
+     * @return the path of the HTTP query endpoint
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Sets the path of the HTTP query endpoint (GET to query, DELETE to clear the buffer).
+     * <p>
+     * Default is "/received".
+     *
+     * @param path the new path of the HTTP query endpoint
+     */
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    /**
+     * Gets the maximum number of buffered SEND frames. If the buffer is full, the oldest frame is evicted.
+     * <p>
+     * Default is 10000.
+     *
+     * @return the maximum number of buffered SEND frames
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the maximum number of buffered SEND frames. If the buffer is full, the oldest frame is evicted.
+     * <p>
+     * Default is 10000.
+     *
+     * @param maxEntries the new maximum number of buffered SEND frames
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Gets the maximum number of payload and header bytes of all buffered SEND frames. If the limit is reached, the oldest frames are evicted.
+     * <p>
+     * Default is 16777216 (16 MB).
+     *
+     * @return the maximum number of payload and header bytes of all buffered SEND frames
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the maximum number of payload and header bytes of all buffered SEND frames. If the limit is reached, the oldest frames are evicted.
+     * <p>
+     * Default is 16777216 (16 MB).
+     *
+     * @param maxBytes the new maximum number of payload and header bytes of all buffered SEND frames
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the names of the stomp headers which are indexed (besides the destination and the session), so a query by their value doesn't scan
+     * the buffer, like "correlation-id". A query by another header is rejected.
+     * <p>
+     * Default is empty (all headers are indexed; the index is bounded by the max-entries like the messages).
+     *
+     * @return the names of the indexed stomp headers
+     */
+    public List<String> getIndexedHeaders() {
+        return indexedHeaders;
+    }
+
+    /**
+     * Sets the names of the stomp headers which are indexed (besides the destination and the session), so a query by their value doesn't scan
+     * the buffer, like "correlation-id". A query by another header is rejected.
+     * <p>
+     * Default is empty (all headers are indexed; the index is bounded by the max-entries like the messages).
+     *
+     * @param indexedHeaders the new names of the indexed stomp headers
+     */
+    public void setIndexedHeaders(List<String> indexedHeaders) {
+        this.indexedHeaders = indexedHeaders;
+    }
+
+}
@@ -0,0 +1,313 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import net.brabenetz.app.springstompserver.recording.TrafficRecorder;
+import net.brabenetz.app.springstompserver.recording.TrafficReplayer;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+/**
+ * Properties for the {@link TrafficRecorder} and the {@link TrafficReplayer}.
+ */
+@Component
+@ConfigurationProperties("spring-stomp-server.recording")
+@SuppressWarnings("PMD.DataClass")
+public class WebSocketRecordingConfigProperties {
+
+    /**
+     * The directory where the inbound SEND frames are recorded. Each server start records into a new sub-directory (like
+     * "20261017-120000") with memory-mapped log segments "traffic-00000.log", "traffic-00001.log", ...
+     * <p>
+     * Default is null (disabled).
+     */
+    private String directory;
+
+    /**
+     * The size in bytes of one memory-mapped log segment. If a segment is full, the next segment is started.
+     * <p>
+     * Default is 67108864 (64 MB).
+     */
+    private int segmentSize = 64 * 1024 * 1024;
+
+    /**
+     * The maximum number of frames which wait for the writer thread. If the queue is full, new frames are dropped (and counted)
+     * instead of blocking the clientInboundChannel.
+     * <p>
+     * Default is 10000.
+     */
+    private int queueCapacity = 10000;
+
+    /**
+     * The replay of a recording through the broker.
+     * <p>
+     * Default is disabled.
+     */
+    private Replay replay = new Replay();
+
+    /**
+     * Gets the directory where the inbound SEND frames are recorded. Each server start records into a new sub-directory (like
+     * "20261017-120000") with memory-mapped log segments "traffic-00000.log", "traffic-00001.log", ...
+     * <p>
+     * Default is null (disabled).
+     *
+     * @return the directory where the inbound SEND frames are recorded
+     */
+    public String getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Sets the directory where the inbound SEND frames are recorded. Each server start records into a new sub-directory (like
+     * "20261017-120000") with memory-mapped log segments "traffic-00000.log", "traffic-00001.log", ...
+     * <p>
+     * Default is null (disabled).
+     *
+     * @param directory the new directory where the inbound SEND frames are recorded
+     */
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Gets the size in bytes of one memory-mapped log segment. If a segment is full, the next segment is started.
+     * <p>
+     * Default is 67108864 (64 MB).
+     *
+     * @return the size in bytes of one memory-mapped log segment
+     */
+    public int getSegmentSize() {
+        return segmentSize;
+    }
+
+    /**
+     * Sets the size in bytes of one memory-mapped log segment. If a segment is full, the next segment is started.
+     * <p>
+     * Default is 67108864 (64 MB).
+     *
+     * @param segmentSize the new size in bytes of one memory-mapped log segment
+     */
+    public void setSegmentSize(int segmentSize) {
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * Gets the maximum number of frames which wait for the writer thread. If the queue is full, new frames are dropped (and counted)
+     * instead of blocking the clientInboundChannel.
+     * <p>
+     * Default is 10000.
+     *
+     * @return the maximum number of frames which wait for the writer thread
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Sets the maximum number of frames which wait for the writer thread. If the queue is full, new frames are dropped (and counted)
+     * instead of blocking the clientInboundChannel.
+     * <p>
+     * Default is 10000.
+     *
+     * @param queueCapacity the new maximum number of frames which wait for the writer thread
+     */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = queueCapacity;
+    }
+
+    /**
+     * Gets the replay of a recording through the broker.
+     * <p>
+     * Default is disabled.
+     *
+     * @return the replay of a recording through the broker
+     */
+    public Replay getReplay() {
+        return replay;
+    }
+
+    /**
+     * Sets the replay of a recording through the broker.
+     * <p>
+     * Default is disabled.
+     *
+     * @param replay the new replay of a recording through the broker
+     */
+    public void setReplay(Replay replay) {
+        this.replay = replay;
+    }
+
+    /**
+     * The Properties for the {@link TrafficReplayer}.
+     */
+    @SuppressWarnings("PMD.DataClass")
+    public static class Replay {
+
+        /**
+         * The recording directory (with the "traffic-*.log" segments) which is replayed after the server start.
+         * <p>
+         * Default is null (disabled).
+         */
+        private String directory;
+
+        /**
+         * The speed multiplier of the replay: 1 replays with the recorded timing, 2 twice as fast, and 0 as fast as possible.
+         * <p>
+         * Default is 1.
+         */
+        private double speed = 1.0;
+
+        /**
+         * The delay in milliseconds after the server start before the replay starts, so the clients can connect and subscribe.
+         * <p>
+         * Default is 5000 (5s).
+         */
+        private long startDelay = 5000;
+
+        /**
+         * The number of records which are replayed as one batch. After each batch the replay waits until the broker dispatched the batch,
+         * so the replay is limited by the broker instead of queueing the whole recording in the brokerChannel.
+         * <p>
+         * Default is 1000.
+         */
+        private int batchSize = 1000;
+
+        /**
+         * The maximum time in milliseconds to wait until the broker dispatched a batch. Then the replay is stopped with an error.
+         * <p>
+         * Default is 30000 (30 seconds).
+         */
+        private int batchTimeout = 30000;
+
+        /**
+         * Gets the recording directory (with the "traffic-*.log" segments) which is replayed after the server start.
+         * <p>
+         * Default is null (disabled).
+         *
+         * @return the recording directory which is replayed after the server start
+         */
+        public String getDirectory() {
+            return directory;
+        }
+
+        /**
+         * Sets the recording directory (with the "traffic-*.log" segments) which is replayed after the server start.
+         * <p>
+         * Default is null (disabled).
+         *
+         * @param directory the new recording directory which is replayed after the server start
+         */
+        public void setDirectory(String directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Gets the speed multiplier of the replay: 1 replays with the recorded timing, 2 twice as fast, and 0 as fast as possible.
+         * <p>
+         * Default is 1.
+         *
+         * @return the speed multiplier of the replay
+         */
+        public double getSpeed() {
+            return speed;
+        }
+
+        /**
+         * Sets the speed multiplier of the replay: 1 replays with the recorded timing, 2 twice as fast, and 0 as fast as possible.
+         * <p>
+         * Default is 1.
+         *
+         * @param speed the new speed multiplier of the replay
+         */
+        public void setSpeed(double speed) {
+            this.speed = speed;
+        }
+
+        /**
+         * Gets the delay in milliseconds after the server start before the replay starts, so the clients can connect and subscribe.
+         * <p>
+         * Default is 5000 (5s).
+         *
+         * @return the delay in milliseconds after the server start before the replay starts
+         */
+        public long getStartDelay() {
+            return startDelay;
+        }
+
+        /**
+         * Sets the delay in milliseconds after the server start before the replay starts, so the clients can connect and subscribe.
+         * <p>
+         * Default is 5000 (5s).
+         *
+         * @param startDelay the new delay in milliseconds after the server start before the replay starts
+         */
+        public void setStartDelay(long startDelay) {
+            this.startDelay = startDelay;
+        }
+
+        /**
+         * Gets the number of records which are replayed as one batch. After each batch the replay waits until the broker dispatched the batch,
+         * so the replay is limited by the broker instead of queueing the whole recording in the brokerChannel.
+         * <p>
+         * Default is 1000.
+         *
+         * @return the number of records which are replayed as one batch
+         */
+        public int getBatchSize() {
+            return batchSize;
+        }
+
+        /**
+         * Sets the number of records which are replayed as one batch. After each batch the replay waits until the broker dispatched the batch,
+         * so the replay is limited by the broker instead of queueing the whole recording in the brokerChannel.
+         * <p>
+         * Default is 1000.
+         *
+         * @param batchSize the new number of records which are replayed as one batch
+         */
+        public void setBatchSize(int batchSize) {
+            this.batchSize = batchSize;
+        }
+
+        /**
+         * Gets the maximum time in milliseconds to wait until the broker dispatched a batch. Then the replay is stopped with an error.
+         * <p>
+         * Default is 30000 (30 seconds).
+         *
+         * @return the maximum time in milliseconds to wait until the broker dispatched a batch
+         */
+        public int getBatchTimeout() {
+            return batchTimeout;
+        }
+
+        /**
+         * Sets the maximum time in milliseconds to wait until the broker dispatched a batch. Then the replay is stopped with an error.
+         * <p>
+         * Default is 30000 (30 seconds).
+         *
+         * @param batchTimeout the new maximum time in milliseconds to wait until the broker dispatched a batch
+         */
+        public void setBatchTimeout(int batchTimeout) {
+            this.batchTimeout = batchTimeout;
+        }
+
+    }
+
+}
@@ -0,0 +1,151 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Properties for the {@link RetainedMessageListener}.
+ */
+@Component
+@ConfigurationProperties("spring-stomp-server.retained")
+@SuppressWarnings("PMD.DataClass")
+public class WebSocketRetainedConfigProperties {
+
+    /**
+     * The destination patterns like "^/topic/(.*)$" of the destinations, where the last published message is retained and sent to
+     * each new subscription.
+     * <p>
+     * Default is empty (disabled).
+     */
+    private List<Pattern> destinationPatterns = new ArrayList<>();
+
+    /**
+     * The maximum number of retained messages (one per destination). The least recently published message is evicted first.
+     * <p>
+     * Default is 10000.
+     */
+    private int maxEntries = 10000;
+
+    /**
+     * The maximum number of payload bytes of all retained messages. The least recently published message is evicted first.
+     * <p>
+     * Default is 67108864 (64 MB).
+     */
+    private long maxBytes = 64L * 1024 * 1024;
+
+    /**
+     * Gets the destination patterns like "^/topic/(.*)$" of the destinations, where the last published message is retained and sent to
+     * each new subscription.
+     * <p>
+     * Default is empty (disabled).
+     *
+     * @return the destination patterns of the retained messages
+     */
+    public List<Pattern> getDestinationPatterns() {
+        return destinationPatterns;
+    }
+
+    /**
+     * Sets the destination patterns like "^/topic/(.*)$" of the destinations, where the last published message is retained and sent to
+     * each new subscription.
+     * <p>
+     * Default is empty (disabled).
+     *
+     * @param destinationPatterns the new destination patterns of the retained messages
+     */
+    public void setDestinationPatterns(List<Pattern> destinationPatterns) {
+        this.destinationPatterns = destinationPatterns;
+    }
+
+    /**
+     * Gets the maximum number of retained messages (one per destination). The least recently published message is evicted first.
+     * <p>
+     * Default is 10000.
+     *
+     * @return the maximum number of retained messages
+     */
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Sets the maximum number of retained messages (one per destination). The least recently published message is evicted first.
+     * <p>
+     * Default is 10000.
+     *
+     * @param maxEntries the new maximum number of retained messages
+     */
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Gets the maximum number of payload bytes of all retained messages. The least recently published message is evicted first.
+     * <p>
+     * Default is 67108864 (64 MB).
+     *
+     * @return the maximum number of payload bytes of all retained messages
+     */
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Sets the maximum number of payload bytes of all retained messages. The least recently published message is evicted first.
+     * <p>
+     * Default is 67108864 (64 MB).
+     *
+     * @param maxBytes the new maximum number of payload bytes of all retained messages
+     */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Checks if the retained messages are enabled.
+     *
+     * @return true if at least one destination pattern is configured
+     */
+    public boolean isEnabled() {
+        return !destinationPatterns.isEmpty();
+    }
+
+    /**
+     * Checks if the last message of the given destination should be retained.
+     *
+     * @param destination the destination of the message.
+     * @return true if the destination matches one of the {@link #getDestinationPatterns()}
+     */
+    public boolean matches(final String destination) {
+        for (Pattern pattern : destinationPatterns) {
+            if (pattern.matcher(destination).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,242 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.embedded;
+
+import net.brabenetz.app.springstompserver.SpringStompServerApplication;
+import net.brabenetz.app.springstompserver.config.InitLoadProxyClient;
+import net.brabenetz.app.springstompserver.config.RetainedMessageListener;
+import net.brabenetz.app.springstompserver.config.WebSocketConfigProperties;
+import net.brabenetz.app.springstompserver.received.ReceivedMessageRecorder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.Banner.Mode;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Starts the spring-stomp-server in the current JVM on a random port, e.g. once for many test classes instead of a new Spring context per test class.
+ * <p>
+ * The server is started in one lazy Spring context like the fast-start (see {@link SpringStompServerApplication}), with the defaults of the
+ * "spring-stomp-server.yaml" of the application (and not the "application.yaml" of the test classpath). The given {@link WebSocketConfigProperties} are
+ * used instead of the "spring-stomp-server" properties of the environment; all other properties (e.g. of the init-load) can be given as command line
+ * arguments.
+ *
+ * <pre>
+ * try (EmbeddedStompServer server = EmbeddedStompServer.start(new WebSocketConfigProperties())) {
+ *     stompClient.connect(server.getWebsocketUrl(), sessionHandler);
+ *     ...
+ * }
+ * </pre>
+ */
+public final class EmbeddedStompServer implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(EmbeddedStompServer.class);
+
+    private static final String PROPERTIES_BEAN_NAME = "webSocketConfigProperties";
+
+    private static final String CONFIG_NAME_ARGUMENT = "--spring.config.name=";
+
+    private final ConfigurableApplicationContext context;
+
+    private final WebSocketConfigProperties properties;
+
+    private final Map<String, WebSocketSession> sessions;
+
+    private EmbeddedStompServer(final ConfigurableApplicationContext context, final WebSocketConfigProperties properties,
+            final Map<String, WebSocketSession> sessions) {
+        this.context = context;
+        this.properties = properties;
+        this.sessions = sessions;
+    }
+
+    /**
+     * Starts the server on a random port.
+     *
+     * @param properties the spring-stomp-server properties of the server.
+     * @param args additional properties as command line arguments, like "--spring-stomp-server.init-load.proxy-url=http://localhost:8181/${group-1}".
+     * @return the started server.
+     */
+    @SuppressWarnings("resource")
+    public static EmbeddedStompServer start(final WebSocketConfigProperties properties, final String... args) {
+        List<String> arguments = new ArrayList<>(Arrays.asList(args));
+        arguments.add(0, "--server.port=0");
+        if (arguments.stream().noneMatch(argument -> argument.startsWith(CONFIG_NAME_ARGUMENT))) {
+            // like the main method: the defaults of the application instead of an "application.yaml" of the classpath.
+            arguments.add(0, CONFIG_NAME_ARGUMENT + "spring-stomp-server");
+        }
+        Map<String, WebSocketSession> sessions = new ConcurrentHashMap<>();
+
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(SpringStompServerApplication.class)
+                .bannerMode(Mode.OFF)
+                .lazyInitialization(true)
+                .initializers(applicationContext -> {
+                    applicationContext.getBeanFactory().addBeanPostProcessor(new PropertiesReplacer(properties));
+                    applicationContext.getBeanFactory().registerSingleton("embeddedSessionTracker", new SessionTracker(sessions));
+                })
+                .run(arguments.toArray(new String[arguments.size()]));
+        return new EmbeddedStompServer(context, properties, sessions);
+    }
+
+    /**
+     * Gets the port of the server.
+     *
+     * @return the random port
+     */
+    public int getPort() {
+        return ((WebServerApplicationContext) context).getWebServer().getPort();
+    }
+
+    /**
+     * Gets the websocket url of the first websocket-endpoint, like "ws://localhost:12345/websocket". Use "http://" instead of "ws://" for SockJS.
+     *
+     * @return the websocket url
+     */
+    public String getWebsocketUrl() {
+        return "ws://localhost:" + getPort() + properties.getWebsocketEndpoints()[0];
+    }
+
+    /**
+     * Gets the Spring context of the server, e.g. to get the beans.
+     *
+     * @return the application context
+     */
+    public ConfigurableApplicationContext getApplicationContext() {
+        return context;
+    }
+
+    /**
+     * Gets the number of the open websocket sessions.
+     *
+     * @return the number of open sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * Resets the broker state between tests: closes all open websocket sessions, removes their subscriptions and clears the retained messages, the
+     * init-load cache and the received messages.
+     */
+    public void reset() {
+        SubscriptionRegistry subscriptionRegistry = context.getBean(SimpleBrokerMessageHandler.class).getSubscriptionRegistry();
+        for (WebSocketSession session : new ArrayList<>(sessions.values())) {
+            try {
+                session.close(CloseStatus.GOING_AWAY);
+            } catch (IOException ex) {
+                LOG.debug("Failed to close session {}: {}", session.getId(), ex.getMessage());
+            }
+            // the websocket session id is the STOMP session id; removed synchronously, so the next test doesn't see the subscriptions.
+            subscriptionRegistry.unregisterAllSubscriptions(session.getId());
+            sessions.remove(session.getId());
+        }
+        context.getBean(RetainedMessageListener.class).getCache().clear();
+        if (context.getBean(InitLoadProxyClient.class).getCache() != null) {
+            context.getBean(InitLoadProxyClient.class).getCache().clear();
+        }
+        if (context.getBean(ReceivedMessageRecorder.class).getBuffer() != null) {
+            context.getBean(ReceivedMessageRecorder.class).getBuffer().clear();
+        }
+    }
+
+    /**
+     * Checks if is running.
+     *
+     * @return true, if is running
+     */
+    public boolean isRunning() {
+        return context.isActive();
+    }
+
+    /**
+     * Stops the server.
+     */
+    public void stop() {
+        context.close();
+    }
+
+    @Override
+    public void close() {
+        stop();
+    }
+
+    /**
+     * Replaces the bound "spring-stomp-server" properties with the given instance.
+     */
+    private static final class PropertiesReplacer implements BeanPostProcessor {
+
+        private final WebSocketConfigProperties properties;
+
+        PropertiesReplacer(final WebSocketConfigProperties properties) {
+            this.properties = properties;
+        }
+
+        @Override
+        public Object postProcessAfterInitialization(final Object bean, final String beanName) {
+            return PROPERTIES_BEAN_NAME.equals(beanName) ? properties : bean;
+        }
+    }
+
+    /**
+     * Tracks the open websocket sessions for the {@link #reset()}.
+     */
+    private static final class SessionTracker implements WebSocketMessageBrokerConfigurer {
+
+        private final Map<String, WebSocketSession> sessions;
+
+        SessionTracker(final Map<String, WebSocketSession> sessions) {
+            this.sessions = sessions;
+        }
+
+        @Override
+        public void configureWebSocketTransport(final WebSocketTransportRegistration registration) {
+            registration.addDecoratorFactory(handler -> new WebSocketHandlerDecorator(handler) {
+
+                @Override
+                public void afterConnectionEstablished(final WebSocketSession session) throws Exception {
+                    sessions.put(session.getId(), session);
+                    super.afterConnectionEstablished(session);
+                }
+
+                @Override
+                public void afterConnectionClosed(final WebSocketSession session, final CloseStatus closeStatus) throws Exception {
+                    sessions.remove(session.getId());
+                    super.afterConnectionClosed(session, closeStatus);
+                }
+            });
+        }
+    }
+
+}
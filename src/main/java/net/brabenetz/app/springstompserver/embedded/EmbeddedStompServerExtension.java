@@ -0,0 +1,114 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.embedded;
+
+import net.brabenetz.app.springstompserver.config.WebSocketConfigProperties;
+import org.junit.jupiter.api.extension.BeforeEachCallback;
+import org.junit.jupiter.api.extension.ExtensionContext;
+import org.junit.jupiter.api.extension.ExtensionContext.Namespace;
+import org.junit.jupiter.api.extension.ExtensionContext.Store.CloseableResource;
+import org.junit.jupiter.api.extension.ParameterContext;
+import org.junit.jupiter.api.extension.ParameterResolver;
+
+/**
+ * Starts one {@link EmbeddedStompServer} per test run and shares it with all test classes which use the extension with the same properties instance:
+ * either with the default properties by "@ExtendWith(EmbeddedStompServerExtension.class)", or with a shared "@RegisterExtension static" field.
+ * <p>
+ * The broker state is reset before each test, and the server is stopped after all tests. The server is injected as parameter of the test methods.
+ * <p>
+ * The junit-jupiter-api is an optional dependency of the spring-stomp-server, so it must be on the test classpath of the project which uses the
+ * extension.
+ */
+public class EmbeddedStompServerExtension implements BeforeEachCallback, ParameterResolver {
+
+    private static final Namespace NAMESPACE = Namespace.create(EmbeddedStompServerExtension.class);
+
+    private final Object key;
+
+    private final WebSocketConfigProperties properties;
+
+    private final String[] args;
+
+    /**
+     * Create the extension with the default properties; all test classes with the default properties share one server.
+     */
+    public EmbeddedStompServerExtension() {
+        this.key = EmbeddedStompServerExtension.class;
+        this.properties = new WebSocketConfigProperties();
+        this.args = new String[0];
+    }
+
+    /**
+     * Create the extension with the given properties; all test classes with the same properties instance share one server.
+     *
+     * @param properties the spring-stomp-server properties of the server.
+     * @param args additional properties as command line arguments (see {@link EmbeddedStompServer#start(WebSocketConfigProperties, String...)}).
+     */
+    public EmbeddedStompServerExtension(final WebSocketConfigProperties properties, final String... args) {
+        this.key = properties;
+        this.properties = properties;
+        this.args = args;
+    }
+
+    /**
+     * Gets the shared server, and starts it on the first call.
+     *
+     * @param context the context of the current test.
+     * @return the started server
+     */
+    public EmbeddedStompServer getServer(final ExtensionContext context) {
+        return context.getRoot().getStore(NAMESPACE)
+                .getOrComputeIfAbsent(key, k -> new ServerResource(EmbeddedStompServer.start(properties, args)), ServerResource.class)
+                .server;
+    }
+
+    @Override
+    public void beforeEach(final ExtensionContext context) {
+        getServer(context).reset();
+    }
+
+    @Override
+    public boolean supportsParameter(final ParameterContext parameterContext, final ExtensionContext extensionContext) {
+        return parameterContext.getParameter().getType() == EmbeddedStompServer.class;
+    }
+
+    @Override
+    public Object resolveParameter(final ParameterContext parameterContext, final ExtensionContext extensionContext) {
+        return getServer(extensionContext);
+    }
+
+    /**
+     * Stops the server after all tests of the run.
+     */
+    private static final class ServerResource implements CloseableResource {
+
+        private final EmbeddedStompServer server;
+
+        ServerResource(final EmbeddedStompServer server) {
+            this.server = server;
+        }
+
+        @Override
+        public void close() {
+            server.stop();
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Fetching of an init-load from the proxy-server (or the cache) for a new subscription.
+ */
+@Name("net.brabenetz.springstompserver.InitLoadFetch")
+@Label("Init-Load Fetch")
+@Category("Spring Stomp Server")
+@Description("Fetching of an init-load from the proxy-server (or the cache) for a new subscription.")
+@StackTrace(false)
+class InitLoadFetchEvent extends Event {
+
+    @Label("Destination")
+    String destination;
+
+    @Label("Proxy URL")
+    String proxyUrl;
+
+    @Label("Bytes")
+    @DataAmount
+    int bytes;
+
+    @Label("Success")
+    boolean success;
+
+}
@@ -0,0 +1,41 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.jfr;
+
+/**
+ * A running init-load trace, which is completed when the init-load response (or failure) is available.
+ */
+public interface InitLoadTrace {
+
+    /**
+     * The trace which does nothing, if the JFR events are disabled.
+     */
+    InitLoadTrace NOOP = (bytes, success) -> {
+    };
+
+    /**
+     * Completes the trace.
+     *
+     * @param bytes the payload size of the init-load.
+     * @param success false if the init-load failed.
+     */
+    void completed(int bytes, boolean success);
+
+}
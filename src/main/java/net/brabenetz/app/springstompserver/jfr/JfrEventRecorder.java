@@ -0,0 +1,194 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.jfr;
+
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Creates the interceptors, decorators and the decoder which emit the JFR events.
+ * <p>
+ * This class references the jdk.jfr API, so it must only be used if {@link JfrSupport#isAvailable()}. Each event is only created and committed if it is
+ * enabled in a running recording, so the cost is close to zero if no recording is running.
+ */
+final class JfrEventRecorder {
+
+    private static final ThreadLocal<BrokerDispatchEvent> BROKER_DISPATCH_EVENT = new ThreadLocal<>();
+
+    private static final ThreadLocal<OutboundSendEvent> OUTBOUND_SEND_EVENT = new ThreadLocal<>();
+
+    private static final BrokerDispatchEvent BROKER_DISPATCH_TYPE = new BrokerDispatchEvent();
+
+    private static final OutboundSendEvent OUTBOUND_SEND_TYPE = new OutboundSendEvent();
+
+    private JfrEventRecorder() {
+    }
+
+    static ExecutorChannelInterceptor inboundInterceptor() {
+        return new ExecutorChannelInterceptor() {
+            @Override
+            public Message<?> beforeHandle(final Message<?> message, final MessageChannel channel, final MessageHandler handler) {
+                if (handler instanceof AbstractBrokerMessageHandler && BROKER_DISPATCH_TYPE.isEnabled()) {
+                    BrokerDispatchEvent event = new BrokerDispatchEvent();
+                    event.begin();
+                    BROKER_DISPATCH_EVENT.set(event);
+                }
+                return message;
+            }
+
+            @Override
+            public void afterMessageHandled(final Message<?> message, final MessageChannel channel, final MessageHandler handler, final Exception ex) {
+                BrokerDispatchEvent event = handler instanceof AbstractBrokerMessageHandler ? BROKER_DISPATCH_EVENT.get() : null;
+                if (event == null) {
+                    return;
+                }
+                BROKER_DISPATCH_EVENT.remove();
+                event.end();
+                if (event.shouldCommit()) {
+                    SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+                    event.destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+                    event.messageType = messageType != null ? messageType.name() : null;
+                    event.sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+                    event.commit();
+                }
+            }
+        };
+    }
+
+    static ExecutorChannelInterceptor outboundInterceptor() {
+        return new ExecutorChannelInterceptor() {
+            @Override
+            public Message<?> beforeHandle(final Message<?> message, final MessageChannel channel, final MessageHandler handler) {
+                if (OUTBOUND_SEND_TYPE.isEnabled()) {
+                    OutboundSendEvent event = new OutboundSendEvent();
+                    event.begin();
+                    OUTBOUND_SEND_EVENT.set(event);
+                }
+                return message;
+            }
+
+            @Override
+            public void afterMessageHandled(final Message<?> message, final MessageChannel channel, final MessageHandler handler, final Exception ex) {
+                OutboundSendEvent event = OUTBOUND_SEND_EVENT.get();
+                if (event == null) {
+                    return;
+                }
+                OUTBOUND_SEND_EVENT.remove();
+                event.end();
+                if (event.shouldCommit()) {
+                    StompHeaderAccessor accessor = StompHeaderAccessor.wrap(message);
+                    event.destination = accessor.getDestination();
+                    event.command = accessor.getCommand() != null ? accessor.getCommand().name() : null;
+                    event.sessionId = accessor.getSessionId();
+                    event.commit();
+                }
+            }
+        };
+    }
+
+    static WebSocketHandler decorate(final WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(final WebSocketSession session) throws Exception {
+                SessionConnectEvent event = new SessionConnectEvent();
+                if (event.shouldCommit()) {
+                    event.sessionId = session.getId();
+                    event.transport = transport(session);
+                    event.remoteAddress = session.getRemoteAddress() != null ? session.getRemoteAddress().toString() : null;
+                    event.commit();
+                }
+                super.afterConnectionEstablished(session);
+            }
+
+            @Override
+            public void afterConnectionClosed(final WebSocketSession session, final CloseStatus closeStatus) throws Exception {
+                SessionDisconnectEvent event = new SessionDisconnectEvent();
+                if (event.shouldCommit()) {
+                    event.sessionId = session.getId();
+                    event.transport = transport(session);
+                    event.closeStatus = closeStatus.getCode();
+                    event.commit();
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    private static String transport(final WebSocketSession session) {
+        return session instanceof SockJsSession ? "sockjs" : "websocket";
+    }
+
+    static StompDecoder decoder() {
+        return new StompDecoder() {
+            @Override
+            public List<Message<byte[]>> decode(final ByteBuffer byteBuffer, final MultiValueMap<String, String> partialMessageHeaders) {
+                StompFrameDecodeEvent event = new StompFrameDecodeEvent();
+                if (!event.isEnabled()) {
+                    return super.decode(byteBuffer, partialMessageHeaders);
+                }
+                int start = byteBuffer.position();
+                event.begin();
+                List<Message<byte[]>> messages = super.decode(byteBuffer, partialMessageHeaders);
+                event.end();
+                if (event.shouldCommit()) {
+                    event.frameCount = messages.size();
+                    event.bytes = byteBuffer.position() - start;
+                    event.commit();
+                }
+                return messages;
+            }
+        };
+    }
+
+    static InitLoadTrace initLoadStarted(final String destination, final String proxyUrl) {
+        InitLoadFetchEvent event = new InitLoadFetchEvent();
+        if (!event.isEnabled()) {
+            return InitLoadTrace.NOOP;
+        }
+        event.begin();
+        return (bytes, success) -> {
+            event.end();
+            if (event.shouldCommit()) {
+                event.destination = destination;
+                event.proxyUrl = proxyUrl;
+                event.bytes = bytes;
+                event.success = success;
+                event.commit();
+            }
+        };
+    }
+
+}
@@ -0,0 +1,124 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.jfr;
+
+import net.brabenetz.app.springstompserver.config.WebSocketConfigProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.WebSocketHandler;
+
+/**
+ * The Java Flight Recorder (JFR) events of the STOMP server (category "Spring Stomp Server" in JMC): frame decode, broker dispatch, outbound send,
+ * session connect/disconnect and init-load fetch.
+ * <p>
+ * The server still runs on Java versions without the jdk.jfr API (Java 8 before update 262), so the events are only used if the API is available and
+ * {@link WebSocketConfigProperties#isJfrEvents()} is true. Otherwise all methods return the undecorated (or no-op) objects.
+ */
+@Component
+public class JfrSupport {
+
+    private static final Logger LOG = LoggerFactory.getLogger(JfrSupport.class);
+
+    private static final boolean AVAILABLE = isClassAvailable("jdk.jfr.Event");
+
+    @Autowired
+    private WebSocketConfigProperties properties;
+
+    /**
+     * Checks if the jdk.jfr API is available.
+     *
+     * @return true if the jdk.jfr API is available
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * Checks if the JFR events are enabled (configured and available).
+     *
+     * @return true if the JFR events are enabled
+     */
+    public boolean isEnabled() {
+        return AVAILABLE && properties.isJfrEvents();
+    }
+
+    /**
+     * Gets the interceptor for the clientInboundChannel, which emits the broker dispatch events.
+     *
+     * @return the interceptor for the clientInboundChannel
+     */
+    public ExecutorChannelInterceptor inboundInterceptor() {
+        return JfrEventRecorder.inboundInterceptor();
+    }
+
+    /**
+     * Gets the interceptor for the clientOutboundChannel, which emits the outbound send events.
+     *
+     * @return the interceptor for the clientOutboundChannel
+     */
+    public ExecutorChannelInterceptor outboundInterceptor() {
+        return JfrEventRecorder.outboundInterceptor();
+    }
+
+    /**
+     * Decorates the websocket handler to emit the session connect and disconnect events.
+     *
+     * @param handler the websocket handler.
+     * @return the decorated websocket handler.
+     */
+    public WebSocketHandler decorate(final WebSocketHandler handler) {
+        return JfrEventRecorder.decorate(handler);
+    }
+
+    /**
+     * Creates a STOMP decoder which emits the frame decode events.
+     *
+     * @return the STOMP decoder.
+     */
+    public StompDecoder decoder() {
+        return JfrEventRecorder.decoder();
+    }
+
+    /**
+     * Starts the trace of an init-load fetch.
+     *
+     * @param destination the destination of the subscription.
+     * @param proxyUrl the resolved proxy-url.
+     * @return the trace, which must be completed with the response.
+     */
+    public InitLoadTrace initLoadStarted(final String destination, final String proxyUrl) {
+        return isEnabled() ? JfrEventRecorder.initLoadStarted(destination, proxyUrl) : InitLoadTrace.NOOP;
+    }
+
+    private static boolean isClassAvailable(final String className) {
+        try {
+            Class.forName(className, false, JfrSupport.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError ex) {
+            LOG.info("The JFR events are not available in Java {}.", System.getProperty("java.version"));
+            return false;
+        }
+    }
+
+}
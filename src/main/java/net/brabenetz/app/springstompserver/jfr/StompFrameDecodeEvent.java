@@ -0,0 +1,47 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Decoding of the STOMP frames of one WebSocket message from a client.
+ */
+@Name("net.brabenetz.springstompserver.FrameDecode")
+@Label("STOMP Frame Decode")
+@Category("Spring Stomp Server")
+@Description("Decoding of the STOMP frames of one WebSocket message from a client.")
+@StackTrace(false)
+class StompFrameDecodeEvent extends Event {
+
+    @Label("Frames")
+    int frameCount;
+
+    @Label("Bytes")
+    @DataAmount
+    int bytes;
+
+}
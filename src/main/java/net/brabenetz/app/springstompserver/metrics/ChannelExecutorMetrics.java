@@ -0,0 +1,121 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.metrics;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.brabenetz.app.springstompserver.broker.ShardedTaskExecutor;
+import net.brabenetz.app.springstompserver.config.VirtualThreadTaskExecutor;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * The Micrometer metrics of the channel executors (clientInboundChannel, clientOutboundChannel and brokerChannel):
+ * <ul>
+ * <li>stomp.channel.tasks.active: the number of tasks which are currently executed.</li>
+ * <li>stomp.channel.tasks.queued: the number of tasks which are waiting for a thread.</li>
+ * <li>stomp.channel.tasks.completed: the number of completed tasks.</li>
+ * </ul>
+ * A {@link ShardedTaskExecutor} includes its lanes, a {@link VirtualThreadTaskExecutor} counts the tasks of its virtual threads.
+ */
+public class ChannelExecutorMetrics implements MeterBinder {
+
+    private final Map<String, ThreadPoolTaskExecutor> executors = new LinkedHashMap<>();
+
+    /**
+     * Adds an executor to the metrics, if it is a {@link ThreadPoolTaskExecutor}.
+     *
+     * @param channel the channel name which is used as tag.
+     * @param executor the channel executor.
+     * @return this
+     */
+    public ChannelExecutorMetrics add(final String channel, final TaskExecutor executor) {
+        if (executor instanceof ThreadPoolTaskExecutor) {
+            executors.put(channel, (ThreadPoolTaskExecutor) executor);
+        }
+        return this;
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        executors.forEach((channel, executor) -> {
+            Gauge.builder("stomp.channel.tasks.active", executor, ChannelExecutorMetrics::activeCount).tag("channel", channel)
+                    .description("The tasks which are currently executed").register(registry);
+            Gauge.builder("stomp.channel.tasks.queued", executor, ChannelExecutorMetrics::queuedCount).tag("channel", channel)
+                    .description("The tasks which are waiting for a thread").register(registry);
+            FunctionCounter.builder("stomp.channel.tasks.completed", executor, ChannelExecutorMetrics::completedCount).tag("channel", channel)
+                    .description("The completed tasks").register(registry);
+        });
+    }
+
+    private static double activeCount(final ThreadPoolTaskExecutor executor) {
+        if (executor instanceof ShardedTaskExecutor) {
+            return ((ShardedTaskExecutor) executor).getActiveCount();
+        }
+        if (isVirtual(executor)) {
+            return executor.getActiveCount();
+        }
+        ThreadPoolExecutor pool = threadPool(executor);
+        return pool != null ? pool.getActiveCount() : 0;
+    }
+
+    private static double queuedCount(final ThreadPoolTaskExecutor executor) {
+        if (executor instanceof ShardedTaskExecutor) {
+            return ((ShardedTaskExecutor) executor).getQueuedTaskCount();
+        }
+        if (isVirtual(executor)) {
+            return ((VirtualThreadTaskExecutor) executor).getQueuedTaskCount();
+        }
+        ThreadPoolExecutor pool = threadPool(executor);
+        return pool != null ? pool.getQueue().size() : 0;
+    }
+
+    private static double completedCount(final ThreadPoolTaskExecutor executor) {
+        if (executor instanceof ShardedTaskExecutor) {
+            return ((ShardedTaskExecutor) executor).getCompletedTaskCount();
+        }
+        if (isVirtual(executor)) {
+            return ((VirtualThreadTaskExecutor) executor).getCompletedTaskCount();
+        }
+        ThreadPoolExecutor pool = threadPool(executor);
+        return pool != null ? pool.getCompletedTaskCount() : 0;
+    }
+
+    private static boolean isVirtual(final ThreadPoolTaskExecutor executor) {
+        // the thread pool of a VirtualThreadTaskExecutor is not used with virtual threads.
+        return executor instanceof VirtualThreadTaskExecutor && ((VirtualThreadTaskExecutor) executor).isVirtual();
+    }
+
+    private static ThreadPoolExecutor threadPool(final ThreadPoolTaskExecutor executor) {
+        try {
+            return executor.getThreadPoolExecutor();
+        } catch (IllegalStateException ex) {
+            // not initialized (yet) or already shut down.
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.brabenetz.app.springstompserver.config.WebSocketConfigProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.AbstractBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Traces the latency of each message from the SEND frame of a client to the MESSAGE frames of the subscribers (see
+ * {@link WebSocketConfigProperties#isLatencyTracing()}):
+ * <ul>
+ * <li>Each inbound SEND is stamped with its monotonic receive time (System.nanoTime()) in the {@link #RECEIVE_TIME_HEADER}, which the broker copies into
+ * the outbound MESSAGE of each subscriber.</li>
+ * <li>stage "broker": from the receive time until the broker starts handling the message (the time in the clientInboundChannel queue).</li>
+ * <li>stage "outbound-queue": from the receive time until the MESSAGE for one subscriber is sent to the clientOutboundChannel.</li>
+ * <li>stage "socket-write": from the receive time until the MESSAGE frame was handed to the WebSocket session of the subscriber.</li>
+ * </ul>
+ * The latencies are recorded in the timer "stomp.latency" (tags "stage" and "prefix") with HdrHistogram based percentiles, which can be queried over
+ * "/actuator/metrics/stomp.latency.percentile" or scraped from "/actuator/prometheus".
+ */
+@Component
+public class LatencyTracer implements MeterBinder {
+
+    /**
+     * The header with the monotonic receive time of the SEND frame.
+     */
+    public static final String RECEIVE_TIME_HEADER = "stompReceiveTime";
+
+    static final String STAGE_BROKER = "broker";
+
+    static final String STAGE_OUTBOUND_QUEUE = "outbound-queue";
+
+    static final String STAGE_SOCKET_WRITE = "socket-write";
+
+    @Autowired
+    private WebSocketConfigProperties properties;
+
+    /** The timers by stage and destination-prefix. */
+    private final Map<String, Timer> timers = new ConcurrentHashMap<>();
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        if (!properties.isLatencyTracing()) {
+            return;
+        }
+        for (String stage : new String[] {STAGE_BROKER, STAGE_OUTBOUND_QUEUE, STAGE_SOCKET_WRITE }) {
+            for (String prefix : properties.getDestinationPrefixes()) {
+                timers.put(key(stage, prefix), timer(registry, stage, prefix));
+            }
+            timers.put(key(stage, StompMetrics.OTHER_PREFIX), timer(registry, stage, StompMetrics.OTHER_PREFIX));
+        }
+    }
+
+    private static Timer timer(final MeterRegistry registry, final String stage, final String prefix) {
+        return Timer.builder("stomp.latency").tag("stage", stage).tag("prefix", prefix)
+                .description("The latency from the SEND frame until the stage")
+                .publishPercentiles(0.5, 0.9, 0.99, 0.999)
+                .register(registry);
+    }
+
+    /**
+     * Gets the interceptor for the clientInboundChannel which stamps the SEND frames and records the "broker" stage.
+     *
+     * @return the interceptor for the clientInboundChannel
+     */
+    public ExecutorChannelInterceptor inboundInterceptor() {
+        return new ExecutorChannelInterceptor() {
+            @Override
+            public Message<?> preSend(final Message<?> message, final MessageChannel channel) {
+                if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+                    return message;
+                }
+                MessageHeaderAccessor accessor = MessageHeaderAccessor.getMutableAccessor(message);
+                accessor.setHeader(RECEIVE_TIME_HEADER, System.nanoTime());
+                return MessageBuilder.createMessage(message.getPayload(), accessor.getMessageHeaders());
+            }
+
+            @Override
+            public Message<?> beforeHandle(final Message<?> message, final MessageChannel channel, final MessageHandler handler) {
+                if (handler instanceof AbstractBrokerMessageHandler) {
+                    record(STAGE_BROKER, message);
+                }
+                return message;
+            }
+        };
+    }
+
+    /**
+     * Gets the interceptor for the clientOutboundChannel which records the "outbound-queue" and "socket-write" stage.
+     *
+     * @return the interceptor for the clientOutboundChannel
+     */
+    public ExecutorChannelInterceptor outboundInterceptor() {
+        return new ExecutorChannelInterceptor() {
+            @Override
+            public Message<?> preSend(final Message<?> message, final MessageChannel channel) {
+                record(STAGE_OUTBOUND_QUEUE, message);
+                return message;
+            }
+
+            @Override
+            public void afterMessageHandled(final Message<?> message, final MessageChannel channel, final MessageHandler handler, final Exception ex) {
+                if (ex == null) {
+                    record(STAGE_SOCKET_WRITE, message);
+                }
+            }
+        };
+    }
+
+    private void record(final String stage, final Message<?> message) {
+        Object receiveTime = message.getHeaders().get(RECEIVE_TIME_HEADER);
+        if (!(receiveTime instanceof Long)) {
+            return;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        Timer timer = timers.get(key(stage, StompMetrics.prefixOf(destination, properties.getDestinationPrefixes())));
+        if (timer != null) {
+            timer.record(System.nanoTime() - (Long) receiveTime, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static String key(final String stage, final String prefix) {
+        return stage + ' ' + prefix;
+    }
+
+}
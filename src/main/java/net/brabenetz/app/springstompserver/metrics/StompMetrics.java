@@ -0,0 +1,277 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.metrics;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.brabenetz.app.springstompserver.config.WebSocketConfigProperties;
+import net.brabenetz.app.springstompserver.session.SlowConsumerCounters;
+import net.brabenetz.app.springstompserver.session.SlowConsumerPolicy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.sockjs.transport.SockJsSession;
+
+import javax.annotation.PostConstruct;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The Micrometer metrics of the STOMP sessions, subscriptions, messages and init-loads:
+ * <ul>
+ * <li>stomp.sessions: the open sessions by transport (websocket or sockjs).</li>
+ * <li>stomp.subscriptions: the subscriptions by the matching destination-prefix (or "other").</li>
+ * <li>stomp.messages: the messages by direction (in: SEND frames from the clients, out: MESSAGE frames to the clients).</li>
+ * <li>stomp.initload: the duration of the init-loads by outcome (success or error).</li>
+ * <li>stomp.initload.payload: the payload size of the successful init-loads.</li>
+ * <li>stomp.slowconsumer: the actions of the slow-consumer policies by policy (dropped or conflated frames, closed sessions).</li>
+ * </ul>
+ * The counters are collected by the {@link #inboundInterceptor()}, {@link #outboundInterceptor()} and {@link #decorate(WebSocketHandler)}, which are
+ * registered by the WebSocketConfig. The metrics of the channel executors are provided by the {@link ChannelExecutorMetrics}.
+ */
+@Component
+public class StompMetrics implements MeterBinder {
+
+    static final String OTHER_PREFIX = "other";
+
+    @Autowired
+    private WebSocketConfigProperties properties;
+
+    private final AtomicInteger webSocketSessions = new AtomicInteger();
+
+    private final AtomicInteger sockJsSessions = new AtomicInteger();
+
+    private final LongAdder inboundMessages = new LongAdder();
+
+    private final LongAdder outboundMessages = new LongAdder();
+
+    private final SlowConsumerCounters slowConsumerCounters = new SlowConsumerCounters();
+
+    private final Map<String, AtomicInteger> subscriptionsByPrefix = new ConcurrentHashMap<>();
+
+    /** The destination-prefix of each subscription by session-id and subscription-id. */
+    private final Map<String, Map<String, String>> sessionSubscriptions = new ConcurrentHashMap<>();
+
+    private volatile Timer initLoadSuccessTimer;
+
+    private volatile Timer initLoadErrorTimer;
+
+    private volatile DistributionSummary initLoadPayloadSize;
+
+    @PostConstruct
+    public void init() {
+        for (String prefix : properties.getDestinationPrefixes()) {
+            subscriptionsByPrefix.put(prefix, new AtomicInteger());
+        }
+        subscriptionsByPrefix.put(OTHER_PREFIX, new AtomicInteger());
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        Gauge.builder("stomp.sessions", webSocketSessions, AtomicInteger::get).tag("transport", "websocket")
+                .description("The open STOMP sessions").register(registry);
+        Gauge.builder("stomp.sessions", sockJsSessions, AtomicInteger::get).tag("transport", "sockjs")
+                .description("The open STOMP sessions").register(registry);
+        subscriptionsByPrefix.forEach((prefix, count) -> Gauge.builder("stomp.subscriptions", count, AtomicInteger::get).tag("prefix", prefix)
+                .description("The subscriptions by destination-prefix").register(registry));
+        FunctionCounter.builder("stomp.messages", inboundMessages, LongAdder::sum).tag("direction", "in")
+                .description("The SEND frames from the clients").register(registry);
+        FunctionCounter.builder("stomp.messages", outboundMessages, LongAdder::sum).tag("direction", "out")
+                .description("The MESSAGE frames to the clients").register(registry);
+        for (SlowConsumerPolicy policy : SlowConsumerPolicy.values()) {
+            FunctionCounter.builder("stomp.slowconsumer", slowConsumerCounters, counters -> counters.get(policy))
+                    .tag("policy", policy.name().toLowerCase(Locale.ROOT).replace('_', '-'))
+                    .description("The dropped or conflated frames and closed sessions of the slow-consumer policies").register(registry);
+        }
+        initLoadSuccessTimer = Timer.builder("stomp.initload").tag("outcome", "success")
+                .description("The duration of the init-loads from the proxy-server").register(registry);
+        initLoadErrorTimer = Timer.builder("stomp.initload").tag("outcome", "error")
+                .description("The duration of the init-loads from the proxy-server").register(registry);
+        initLoadPayloadSize = DistributionSummary.builder("stomp.initload.payload").baseUnit("bytes")
+                .description("The payload size of the init-loads").register(registry);
+    }
+
+    /**
+     * Gets the counters of the slow-consumer policies.
+     *
+     * @return the counters of the slow-consumer policies
+     */
+    public SlowConsumerCounters getSlowConsumerCounters() {
+        return slowConsumerCounters;
+    }
+
+    /**
+     * Records a finished init-load.
+     *
+     * @param startNanos the System.nanoTime() when the init-load was started.
+     * @param payloadSize the size of the payload or -1 if the init-load failed.
+     */
+    public void initLoadCompleted(final long startNanos, final int payloadSize) {
+        Timer timer = payloadSize >= 0 ? initLoadSuccessTimer : initLoadErrorTimer;
+        if (timer == null) {
+            // not bound to a registry (yet).
+            return;
+        }
+        timer.record(System.nanoTime() - startNanos, TimeUnit.NANOSECONDS);
+        if (payloadSize >= 0) {
+            initLoadPayloadSize.record(payloadSize);
+        }
+    }
+
+    /**
+     * Gets the interceptor for the clientInboundChannel which counts the SEND frames and the subscriptions.
+     *
+     * @return the interceptor for the clientInboundChannel
+     */
+    public ChannelInterceptor inboundInterceptor() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(final Message<?> message, final MessageChannel channel) {
+                SimpMessageType messageType = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+                if (messageType == SimpMessageType.MESSAGE) {
+                    inboundMessages.increment();
+                } else if (messageType == SimpMessageType.SUBSCRIBE) {
+                    subscribed(message);
+                } else if (messageType == SimpMessageType.UNSUBSCRIBE) {
+                    unsubscribed(message);
+                } else if (messageType == SimpMessageType.DISCONNECT) {
+                    disconnected(message);
+                }
+                return message;
+            }
+        };
+    }
+
+    /**
+     * Gets the interceptor for the clientOutboundChannel which counts the MESSAGE frames.
+     *
+     * @return the interceptor for the clientOutboundChannel
+     */
+    public ChannelInterceptor outboundInterceptor() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(final Message<?> message, final MessageChannel channel) {
+                if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+                    outboundMessages.increment();
+                }
+                return message;
+            }
+        };
+    }
+
+    /**
+     * Decorates the websocket handler to count the open sessions by transport.
+     *
+     * @param handler the websocket handler.
+     * @return the decorated websocket handler.
+     */
+    public WebSocketHandler decorate(final WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(final WebSocketSession session) throws Exception {
+                sessionCounter(session).incrementAndGet();
+                super.afterConnectionEstablished(session);
+            }
+
+            @Override
+            public void afterConnectionClosed(final WebSocketSession session, final CloseStatus closeStatus) throws Exception {
+                sessionCounter(session).decrementAndGet();
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    private AtomicInteger sessionCounter(final WebSocketSession session) {
+        return session instanceof SockJsSession ? sockJsSessions : webSocketSessions;
+    }
+
+    private void subscribed(final Message<?> message) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (sessionId == null || subscriptionId == null || destination == null) {
+            return;
+        }
+        String prefix = prefixOf(destination, properties.getDestinationPrefixes());
+        String previousPrefix = sessionSubscriptions.computeIfAbsent(sessionId, key -> new ConcurrentHashMap<>()).put(subscriptionId, prefix);
+        if (previousPrefix != null) {
+            subscriptionsByPrefix.get(previousPrefix).decrementAndGet();
+        }
+        subscriptionsByPrefix.get(prefix).incrementAndGet();
+    }
+
+    private void unsubscribed(final Message<?> message) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        String subscriptionId = SimpMessageHeaderAccessor.getSubscriptionId(message.getHeaders());
+        Map<String, String> subscriptions = sessionId != null ? sessionSubscriptions.get(sessionId) : null;
+        String prefix = subscriptions != null && subscriptionId != null ? subscriptions.remove(subscriptionId) : null;
+        if (prefix != null) {
+            subscriptionsByPrefix.get(prefix).decrementAndGet();
+        }
+    }
+
+    private void disconnected(final Message<?> message) {
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        Map<String, String> subscriptions = sessionId != null ? sessionSubscriptions.remove(sessionId) : null;
+        if (subscriptions != null) {
+            subscriptions.values().forEach(prefix -> subscriptionsByPrefix.get(prefix).decrementAndGet());
+        }
+    }
+
+    /**
+     * Gets the longest destination-prefix of the given destination.
+     *
+     * @param destination the destination or null.
+     * @param destinationPrefixes the configured destination-prefixes.
+     * @return the longest matching destination-prefix or "other".
+     */
+    static String prefixOf(final String destination, final String[] destinationPrefixes) {
+        String longestPrefix = OTHER_PREFIX;
+        int longestLength = 0;
+        if (destination == null) {
+            return longestPrefix;
+        }
+        for (String prefix : destinationPrefixes) {
+            if (prefix.length() > longestLength && destination.startsWith(prefix)) {
+                longestPrefix = prefix;
+                longestLength = prefix.length();
+            }
+        }
+        return longestPrefix;
+    }
+
+}
@@ -0,0 +1,117 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.publish;
+
+import net.brabenetz.app.springstompserver.config.WebSocketBulkPublishConfigProperties;
+import net.brabenetz.app.springstompserver.config.WebSocketRecordingConfigProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tracks when the broker has dispatched the messages of the {@link BulkPublishController} and the
+ * {@link net.brabenetz.app.springstompserver.recording.TrafficReplayer}, so they can wait for each batch before they read the next one.
+ * <p>
+ * The brokerChannel queues the messages in its executor without limit, so without waiting a fast request or replay would only move the records into
+ * the heap. The messages carry a {@link Dispatch} in the header {@link #DISPATCH_HEADER}, which is counted by the {@link #interceptor()}
+ * after the {@link SimpleBrokerMessageHandler} has handled the message, i.e. after the message was handed to the clientOutboundChannel of each subscribed
+ * session (or dropped because there is no subscriber).
+ */
+@Component
+public class BrokerDispatchTracker {
+
+    /** The message header with the {@link Dispatch} of the bulk publish request or the replay. */
+    public static final String DISPATCH_HEADER = "spring-stomp-server.broker-dispatch";
+
+    @Autowired
+    private WebSocketBulkPublishConfigProperties properties;
+
+    @Autowired
+    private WebSocketRecordingConfigProperties recordingConfigProperties;
+
+    /**
+     * Checks if the bulk publish or the replay is enabled.
+     *
+     * @return true if the bulk publish endpoint is enabled or a replay directory is configured
+     */
+    public boolean isEnabled() {
+        return properties.isEnabled() || recordingConfigProperties.getReplay().getDirectory() != null;
+    }
+
+    /**
+     * Gets the interceptor for the brokerChannel, which counts the dispatched messages.
+     *
+     * @return the interceptor
+     */
+    public ExecutorChannelInterceptor interceptor() {
+        return new ExecutorChannelInterceptor() {
+            @Override
+            public void afterMessageHandled(final Message<?> message, final MessageChannel channel, final MessageHandler handler, final Exception ex) {
+                Object dispatch = message.getHeaders().get(DISPATCH_HEADER);
+                // the copies of the user destinations (with the original destination) are not counted again
+                if (dispatch instanceof Dispatch && handler instanceof SimpleBrokerMessageHandler
+                        && !message.getHeaders().containsKey(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION)) {
+                    ((Dispatch) dispatch).dispatched();
+                }
+            }
+        };
+    }
+
+    /**
+     * The number of dispatched messages of one bulk publish request or replay.
+     */
+    public static final class Dispatch {
+
+        private long dispatched;
+
+        private synchronized void dispatched() {
+            dispatched++;
+            notifyAll();
+        }
+
+        /**
+         * Waits until the given number of messages was dispatched.
+         *
+         * @param count the number of sent messages of the request.
+         * @param timeout the maximum time to wait in milliseconds.
+         * @return true if the messages were dispatched, false if the time elapsed before
+         * @throws InterruptedException if the current thread was interrupted while waiting
+         */
+        public synchronized boolean await(final long count, final long timeout) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            while (dispatched < count) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+    }
+
+}
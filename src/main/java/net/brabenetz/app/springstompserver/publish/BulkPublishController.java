@@ -0,0 +1,267 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.publish;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.brabenetz.app.springstompserver.config.TenantPartitions;
+import net.brabenetz.app.springstompserver.config.WebSocketBulkPublishConfigProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.messaging.MessagingException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.util.InvalidMimeTypeException;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * HTTP endpoint to publish a stream of messages to the broker (see {@link WebSocketBulkPublishConfigProperties}), e.g. for mock backends and load
+ * scenarios without a STOMP session.
+ * <p>
+ * The request body is NDJSON (one {@link BulkPublishRecord} per line). It is parsed incrementally while it is received, so the memory usage doesn't
+ * depend on the size of the request. The messages are published through the "brokerMessagingTemplate" like the return values of a
+ * {@link org.springframework.messaging.handler.annotation.SendTo @SendTo} method, so all subscribers of the destination get them.
+ * <p>
+ * After each batch of "batch-size" records the request waits until the broker has dispatched the messages of the batch (see
+ * {@link BrokerDispatchTracker}) before it parses the next records, so a fast client is slowed down to the speed of the broker instead of filling the
+ * unbounded queue of the brokerChannel.
+ * <p>
+ * The response is NDJSON too: after each batch (and after the last record) an acknowledgement line like
+ * <code>{"batch":1,"published":999,"failed":1,"total":1000}</code> is written and flushed. "published" counts the messages which the broker has
+ * dispatched, i.e. handed to the outbound channel of each subscribed session; it doesn't mean that the clients have received them. Records without
+ * destination or with an invalid content-type are counted as failed. Invalid JSON stops the processing with an error line like
+ * <code>{"error":"...","line":42,"total":41}</code>, because the next record can't be found reliably, and a batch which is not dispatched within the
+ * "batch-timeout" stops the processing with an error line like <code>{"error":"...","total":1000}</code>.
+ */
+@RestController
+@ConditionalOnProperty(prefix = "spring-stomp-server.bulk-publish", name = "enabled")
+public class BulkPublishController {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BulkPublishController.class);
+
+    private static final String NDJSON = "application/x-ndjson";
+
+    private static final MimeType TEXT_PLAIN_UTF8 = new MimeType(MimeTypeUtils.TEXT_PLAIN, StandardCharsets.UTF_8);
+
+    @Autowired
+    private WebSocketBulkPublishConfigProperties properties;
+
+    @Autowired
+    private TenantPartitions tenantPartitions;
+
+    @Autowired
+    @Qualifier("brokerMessagingTemplate")
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    /**
+     * Publish the NDJSON records of the request body.
+     *
+     * @param tenant the optional tenant, which is used for the destinations if the tenant-isolation is enabled.
+     * @param request the request with the NDJSON body.
+     * @param response the response for the NDJSON acknowledgements.
+     * @throws IOException if the request can't be read or the response can't be written.
+     */
+    @PostMapping("${spring-stomp-server.bulk-publish.path:/publish}")
+    public void publish(@RequestParam(name = "tenant", required = false) final String tenant, final HttpServletRequest request,
+            final HttpServletResponse response) throws IOException {
+        response.setContentType(NDJSON);
+        ServletOutputStream out = response.getOutputStream();
+        String isolatedTenant = tenant != null && !tenant.isEmpty() && tenantPartitions.isEnabled() ? TenantPartitions.toTenant(tenant) : null;
+        int batchSize = Math.max(1, properties.getBatchSize());
+        Batch batch = new Batch();
+        try (MappingIterator<BulkPublishRecord> records = objectMapper.readerFor(BulkPublishRecord.class).readValues(request.getInputStream())) {
+            while (records.hasNextValue()) {
+                batch.count(publish(isolatedTenant, records.nextValue(), batch.dispatch));
+                if (batch.size() >= batchSize && !writeAcknowledgement(out, batch)) {
+                    return;
+                }
+            }
+        } catch (JsonProcessingException ex) {
+            LOG.debug("Invalid NDJSON record at line {}", ex.getLocation() != null ? ex.getLocation().getLineNr() : -1, ex);
+            if (writeAcknowledgement(out, batch)) {
+                writeLine(out, error(ex, batch.total));
+            }
+            return;
+        }
+        if (!writeAcknowledgement(out, batch)) {
+            return;
+        }
+        LOG.debug("Published {} messages ({} failed) in {} batches", batch.total - batch.totalFailed, batch.totalFailed, batch.number);
+    }
+
+    private boolean publish(final String tenant, final BulkPublishRecord record, final BrokerDispatchTracker.Dispatch dispatch) {
+        if (record == null || record.getDestination() == null || record.getDestination().isEmpty()) {
+            return false;
+        }
+        if (tenantPartitions.isEnabled() && TenantPartitions.isPartitioned(record.getDestination())) {
+            // like the clients, the records can't leave their partition
+            return false;
+        }
+        try {
+            SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+            MultiValueMap<String, String> nativeHeaders = new LinkedMultiValueMap<>();
+            MimeType contentType = null;
+            if (record.getHeaders() != null) {
+                for (Map.Entry<String, String> header : record.getHeaders().entrySet()) {
+                    if ("content-type".equalsIgnoreCase(header.getKey())) {
+                        contentType = MimeTypeUtils.parseMimeType(header.getValue());
+                    } else if (header.getValue() != null) {
+                        nativeHeaders.add(header.getKey(), header.getValue());
+                    }
+                }
+            }
+            JsonNode payload = record.getPayload();
+            byte[] bytes;
+            if (payload == null || payload.isNull()) {
+                bytes = new byte[0];
+            } else if (payload.isTextual()) {
+                bytes = payload.textValue().getBytes(StandardCharsets.UTF_8);
+                contentType = contentType != null ? contentType : TEXT_PLAIN_UTF8;
+            } else {
+                bytes = objectMapper.writeValueAsBytes(payload);
+                contentType = contentType != null ? contentType : MimeTypeUtils.APPLICATION_JSON;
+            }
+            if (contentType != null) {
+                accessor.setContentType(contentType);
+            }
+            if (!nativeHeaders.isEmpty()) {
+                accessor.setHeader(NativeMessageHeaderAccessor.NATIVE_HEADERS, nativeHeaders);
+            }
+            accessor.setHeader(BrokerDispatchTracker.DISPATCH_HEADER, dispatch);
+            // the template sets the destination and makes the headers immutable.
+            accessor.setLeaveMutable(true);
+            messagingTemplate.send(tenantPartitions.isolate(tenant, record.getDestination()),
+                    MessageBuilder.createMessage(bytes, accessor.getMessageHeaders()));
+            return true;
+        } catch (JsonProcessingException | InvalidMimeTypeException | MessagingException ex) {
+            LOG.debug("Failed to publish a message to {}", record.getDestination(), ex);
+            return false;
+        }
+    }
+
+    /**
+     * Waits until the broker has dispatched the published messages, and writes the acknowledgement of the current batch (or an error line after the
+     * batch-timeout).
+     *
+     * @return false if the processing must be stopped
+     */
+    private boolean writeAcknowledgement(final ServletOutputStream out, final Batch batch) throws IOException {
+        if (batch.size() == 0) {
+            return true;
+        }
+        boolean dispatched;
+        try {
+            dispatched = batch.dispatch.await(batch.total - batch.totalFailed, properties.getBatchTimeout());
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the broker");
+        }
+        if (!dispatched) {
+            LOG.warn("The broker didn't dispatch the bulk publish batch within {} ms", properties.getBatchTimeout());
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("error", "The batch was not dispatched by the broker within " + properties.getBatchTimeout() + " ms");
+            line.put("total", batch.total);
+            writeLine(out, line);
+            return false;
+        }
+        writeLine(out, batch.acknowledge());
+        return true;
+    }
+
+    private void writeLine(final ServletOutputStream out, final Map<String, Object> line) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(line));
+        out.write('\n');
+        out.flush();
+    }
+
+    private static Map<String, Object> error(final JsonProcessingException ex, final long total) {
+        Map<String, Object> line = new LinkedHashMap<>();
+        line.put("error", ex.getOriginalMessage());
+        line.put("line", ex.getLocation() != null ? ex.getLocation().getLineNr() : -1);
+        line.put("total", total);
+        return line;
+    }
+
+    /** The counters of the current batch and of the whole request. */
+    private static final class Batch {
+
+        private final BrokerDispatchTracker.Dispatch dispatch = new BrokerDispatchTracker.Dispatch();
+
+        private int number;
+        private int published;
+        private int failed;
+        private long total;
+        private long totalFailed;
+
+        void count(final boolean success) {
+            if (success) {
+                published++;
+            } else {
+                failed++;
+                totalFailed++;
+            }
+            total++;
+        }
+
+        int size() {
+            return published + failed;
+        }
+
+        Map<String, Object> acknowledge() {
+            number++;
+            Map<String, Object> line = new LinkedHashMap<>();
+            line.put("batch", number);
+            line.put("published", published);
+            line.put("failed", failed);
+            line.put("total", total);
+            published = 0;
+            failed = 0;
+            return line;
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.publish;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * One NDJSON record (one line) of the request body of the {@link BulkPublishController}, like:
+ * <pre>
+ * {"destination":"/topic/prices/abc","headers":{"source":"mock"},"payload":{"price":42}}
+ * </pre>
+ */
+@SuppressWarnings("PMD.DataClass")
+public class BulkPublishRecord {
+
+    /**
+     * The destination of the message, like "/topic/prices/abc".
+     */
+    private String destination;
+
+    /**
+     * The native headers of the message. A "content-type" header is used as content-type of the message.
+     */
+    private Map<String, String> headers = new LinkedHashMap<>();
+
+    /**
+     * The payload of the message: a JSON string is published as plain text, every other JSON value as JSON.
+     */
+    private JsonNode payload;
+
+    /**
+     * Gets the destination of the message, like "/topic/prices/abc".
+     *
+     * @return the destination of the message
+     */
+    public String getDestination() {
+        return destination;
+    }
+
+    /**
+     * Sets the destination of the message, like "/topic/prices/abc".
+     *
+     * @param destination the new destination of the message
+     */
+    public void setDestination(String destination) {
+        this.destination = destination;
+    }
+
+    /**
+     * Gets the native headers of the message. A "content-type" header is used as content-type of the message.
+     *
+     * @return the native headers of the message
+     */
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Sets the native headers of the message. A "content-type" header is used as content-type of the message.
+     *
+     * @param headers the new native headers of the message
+     */
+    public void setHeaders(Map<String, String> headers) {
+        this.headers = headers;
+    }
+
+    /**
+     * Gets the payload of the message: a JSON string is published as plain text, every other JSON value as JSON.
+     *
+     * @return the payload of the message
+     */
+    public JsonNode getPayload() {
+        return payload;
+    }
+
+    /**
+     * Sets the payload of the message: a JSON string is published as plain text, every other JSON value as JSON.
+     *
+     * @param payload the new payload of the message
+     */
+    public void setPayload(JsonNode payload) {
+        this.payload = payload;
+    }
+
+}
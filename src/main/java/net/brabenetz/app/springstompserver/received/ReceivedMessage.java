@@ -0,0 +1,144 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.received;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One SEND frame in the {@link ReceivedMessageBuffer}.
+ */
+public class ReceivedMessage {
+
+    private final long sequence;
+
+    private final long timestamp;
+
+    private final String sessionId;
+
+    private final String destination;
+
+    private final Map<String, List<String>> headers;
+
+    private final byte[] payload;
+
+    /**
+     * Create a new received message.
+     *
+     * @param sequence the sequence number in the buffer.
+     * @param timestamp the time of receipt in milliseconds since the epoch.
+     * @param sessionId the id of the sending session.
+     * @param destination the destination of the client.
+     * @param headers the stomp headers without the destination and content-length.
+     * @param payload the message body.
+     */
+    public ReceivedMessage(final long sequence, final long timestamp, final String sessionId, final String destination,
+            final Map<String, List<String>> headers, final byte[] payload) {
+        this.sequence = sequence;
+        this.timestamp = timestamp;
+        this.sessionId = sessionId;
+        this.destination = destination;
+        this.headers = headers;
+        this.payload = payload;
+    }
+
+    /**
+     * Gets the sequence number in the buffer, which increases with each received frame.
+     *
+     * @return the sequence number
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the time of receipt in milliseconds since the epoch.
+     *
+     * @return the time of receipt
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Gets the id of the sending session.
+     *
+     * @return the session id
+     */
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    /**
+     * Gets the destination of the client.
+     *
+     * @return the destination
+     */
+    public String getDestination() {
+        return destination;
+    }
+
+    /**
+     * Gets the stomp headers without the destination and content-length.
+     *
+     * @return the stomp headers
+     */
+    public Map<String, List<String>> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * Gets the message body.
+     *
+     * @return the message body
+     */
+    @SuppressWarnings("PMD.MethodReturnsInternalArray")
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    /**
+     * Checks if the message has a stomp header with the given value.
+     *
+     * @param name the header name.
+     * @param value the header value.
+     * @return true if one of the values of the header is equal to the given value
+     */
+    public boolean hasHeader(final String name, final String value) {
+        List<String> values = headers.get(name);
+        return values != null && values.contains(value);
+    }
+
+    /**
+     * Gets the number of bytes which are counted for the memory limit of the buffer.
+     *
+     * @return the payload, destination and header bytes
+     */
+    long getSize() {
+        long size = payload.length + destination.length();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            for (String value : header.getValue()) {
+                size += header.getKey().length() + value.length();
+            }
+        }
+        return size;
+    }
+
+}
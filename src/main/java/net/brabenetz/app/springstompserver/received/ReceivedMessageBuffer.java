@@ -0,0 +1,338 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.received;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-memory ring buffer of the most recent received SEND frames, indexed by destination, session and the values of the indexed headers (all headers if
+ * no header names are given). The number of index entries is bounded like the messages, because each key is removed with its last message.
+ * <p>
+ * The buffer is bounded by the number of entries and by the payload and header bytes; the oldest message is evicted first. Each index maps a key to
+ * the ascending sequence numbers of its messages, so the eviction only removes the first sequence of the keys of the oldest message, and a query
+ * only reads the messages of its smallest index (or the time window of the ring) from the newest to the oldest until the limit is reached.
+ */
+public class ReceivedMessageBuffer {
+
+    private final ReceivedMessage[] ring;
+
+    private final long maxBytes;
+
+    private final List<String> indexedHeaders;
+
+    private final boolean indexAllHeaders;
+
+    private final Map<String, ArrayDeque<Long>> byDestination = new HashMap<>();
+
+    private final Map<String, ArrayDeque<Long>> bySession = new HashMap<>();
+
+    private final Map<String, ArrayDeque<Long>> byHeader = new HashMap<>();
+
+    private long firstSequence;
+
+    private long nextSequence;
+
+    private long lastTimestamp = Long.MIN_VALUE;
+
+    private long currentBytes;
+
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    /**
+     * Create a new buffer.
+     *
+     * @param maxEntries the maximum number of messages.
+     * @param maxBytes the maximum number of payload and header bytes of all messages.
+     * @param indexedHeaders the names of the headers which are indexed by value, or empty to index all headers.
+     */
+    public ReceivedMessageBuffer(final int maxEntries, final long maxBytes, final List<String> indexedHeaders) {
+        this.ring = new ReceivedMessage[Math.max(0, maxEntries)];
+        this.maxBytes = maxBytes;
+        this.indexedHeaders = new ArrayList<>(indexedHeaders);
+        this.indexAllHeaders = indexedHeaders.isEmpty();
+    }
+
+    /**
+     * Checks if the values of the given header are indexed. A query by a header which is not indexed reads the whole time window of the query.
+     *
+     * @param headerName the name of the stomp header.
+     * @return true if the header is indexed
+     */
+    public boolean isIndexed(final String headerName) {
+        return indexAllHeaders || indexedHeaders.contains(headerName);
+    }
+
+    /**
+     * Add a received message and evict the oldest messages if the buffer is full. A message which is larger than the whole buffer is dropped.
+     *
+     * @param sessionId the id of the sending session.
+     * @param destination the destination of the client.
+     * @param headers the stomp headers without the destination and content-length.
+     * @param payload the message body.
+     * @return true if the message was added, false if it was dropped
+     */
+    public boolean add(final String sessionId, final String destination, final Map<String, List<String>> headers, final byte[] payload) {
+        return add(System.currentTimeMillis(), sessionId, destination, headers, payload);
+    }
+
+    synchronized boolean add(final long timestamp, final String sessionId, final String destination, final Map<String, List<String>> headers,
+            final byte[] payload) {
+        // the timestamps never decrease, so the ring is sorted by time too.
+        long monotonicTimestamp = Math.max(timestamp, lastTimestamp);
+        ReceivedMessage message = new ReceivedMessage(nextSequence, monotonicTimestamp, sessionId, destination, headers, payload);
+        long size = message.getSize();
+        if (ring.length == 0 || size > maxBytes) {
+            droppedCount.incrementAndGet();
+            return false;
+        }
+        while (size() >= ring.length || currentBytes + size > maxBytes) {
+            evictOldest();
+        }
+        ring[slot(nextSequence)] = message;
+        currentBytes += size;
+        lastTimestamp = monotonicTimestamp;
+        index(byDestination, destination, nextSequence);
+        if (sessionId != null) {
+            index(bySession, sessionId, nextSequence);
+        }
+        for (String headerKey : headerKeys(message)) {
+            index(byHeader, headerKey, nextSequence);
+        }
+        nextSequence++;
+        return true;
+    }
+
+    /**
+     * Find the most recent messages which match the given query.
+     *
+     * @param query the filter.
+     * @return the matching messages, the oldest first
+     */
+    public synchronized List<ReceivedMessage> query(final ReceivedMessageQuery query) {
+        List<ReceivedMessage> result = new ArrayList<>();
+        Iterator<Long> candidates = candidatesDescending(query);
+        while (candidates.hasNext() && result.size() < query.getLimit()) {
+            ReceivedMessage message = ring[slot(candidates.next())];
+            if (message.getTimestamp() < query.getFrom()) {
+                break;
+            }
+            if (query.matches(message)) {
+                result.add(message);
+            }
+        }
+        Collections.reverse(result);
+        return result;
+    }
+
+    /**
+     * Removes all messages.
+     */
+    public synchronized void clear() {
+        Arrays.fill(ring, null);
+        byDestination.clear();
+        bySession.clear();
+        byHeader.clear();
+        firstSequence = nextSequence;
+        currentBytes = 0;
+    }
+
+    /**
+     * Gets the number of buffered messages.
+     *
+     * @return the number of buffered messages
+     */
+    public synchronized int size() {
+        return (int) (nextSequence - firstSequence);
+    }
+
+    /**
+     * Gets the payload and header bytes of all buffered messages.
+     *
+     * @return the payload and header bytes
+     */
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    /**
+     * Gets the number of messages which were evicted to make room for newer ones.
+     *
+     * @return the number of evicted messages
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Gets the number of messages which were dropped because they were larger than the whole buffer.
+     *
+     * @return the number of dropped messages
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private void evictOldest() {
+        int slot = slot(firstSequence);
+        ReceivedMessage oldest = ring[slot];
+        ring[slot] = null;
+        firstSequence++;
+        currentBytes -= oldest.getSize();
+        unindex(byDestination, oldest.getDestination());
+        if (oldest.getSessionId() != null) {
+            unindex(bySession, oldest.getSessionId());
+        }
+        for (String headerKey : headerKeys(oldest)) {
+            unindex(byHeader, headerKey);
+        }
+        evictionCount.incrementAndGet();
+    }
+
+    /** The candidates of the smallest matching index, or the ring up to the end of the time window. */
+    private Iterator<Long> candidatesDescending(final ReceivedMessageQuery query) {
+        Iterator<Long> smallest = null;
+        int smallestSize = Integer.MAX_VALUE;
+        if (query.getSessionId() != null) {
+            ArrayDeque<Long> sequences = bySession.getOrDefault(query.getSessionId(), new ArrayDeque<>());
+            smallest = sequences.descendingIterator();
+            smallestSize = sequences.size();
+        }
+        if (query.getHeaderName() != null && isIndexed(query.getHeaderName())) {
+            ArrayDeque<Long> sequences = byHeader.getOrDefault(headerKey(query.getHeaderName(), query.getHeaderValue()), new ArrayDeque<>());
+            if (sequences.size() < smallestSize) {
+                smallest = sequences.descendingIterator();
+                smallestSize = sequences.size();
+            }
+        }
+        if (query.getDestinationPattern() != null) {
+            List<ArrayDeque<Long>> matching = new ArrayList<>();
+            int matchingSize = 0;
+            for (Map.Entry<String, ArrayDeque<Long>> entry : byDestination.entrySet()) {
+                if (query.getDestinationPattern().matcher(entry.getKey()).matches()) {
+                    matching.add(entry.getValue());
+                    matchingSize += entry.getValue().size();
+                }
+            }
+            if (matchingSize < smallestSize) {
+                smallest = merge(matching, matchingSize);
+                smallestSize = matchingSize;
+            }
+        }
+        return smallest != null ? smallest : new RingIterator(lastSequenceUntil(query.getTo()));
+    }
+
+    private static Iterator<Long> merge(final List<ArrayDeque<Long>> sequences, final int size) {
+        if (sequences.size() == 1) {
+            return sequences.get(0).descendingIterator();
+        }
+        List<Long> merged = new ArrayList<>(size);
+        sequences.forEach(merged::addAll);
+        merged.sort(Collections.reverseOrder());
+        return merged.iterator();
+    }
+
+    /** Binary search of the newest message which is received at or before the given time. */
+    private long lastSequenceUntil(final long timestamp) {
+        long low = firstSequence;
+        long high = nextSequence - 1;
+        long result = firstSequence - 1;
+        while (low <= high) {
+            long middle = (low + high) >>> 1;
+            if (ring[slot(middle)].getTimestamp() <= timestamp) {
+                result = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return result;
+    }
+
+    private List<String> headerKeys(final ReceivedMessage message) {
+        List<String> keys = new ArrayList<>();
+        for (String name : indexAllHeaders ? message.getHeaders().keySet() : indexedHeaders) {
+            List<String> values = message.getHeaders().get(name);
+            if (values != null) {
+                // a repeated value is indexed once
+                for (String value : new LinkedHashSet<>(values)) {
+                    keys.add(headerKey(name, value));
+                }
+            }
+        }
+        return keys;
+    }
+
+    private static String headerKey(final String name, final String value) {
+        return name + ':' + value;
+    }
+
+    private static void index(final Map<String, ArrayDeque<Long>> index, final String key, final long sequence) {
+        index.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(sequence);
+    }
+
+    private static void unindex(final Map<String, ArrayDeque<Long>> index, final String key) {
+        ArrayDeque<Long> sequences = index.get(key);
+        // the evicted message is always the oldest of each of its keys
+        sequences.pollFirst();
+        if (sequences.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private int slot(final long sequence) {
+        return (int) (sequence % ring.length);
+    }
+
+    /** Iterates the sequences of the ring from the given sequence down to the oldest message. */
+    private final class RingIterator implements Iterator<Long> {
+
+        private long sequence;
+
+        RingIterator(final long lastSequence) {
+            this.sequence = lastSequence;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return sequence >= firstSequence;
+        }
+
+        @Override
+        public Long next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return sequence--;
+        }
+    }
+
+}
@@ -0,0 +1,126 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.received;
+
+import net.brabenetz.app.springstompserver.config.WebSocketReceivedConfigProperties;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseStatus;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+
+/**
+ * HTTP endpoint to query the received SEND frames of the {@link ReceivedMessageRecorder} (see {@link WebSocketReceivedConfigProperties}), like:
+ * <pre>
+ * GET /received?destination=/topic/orders/.*&amp;header=correlation-id:42&amp;from=1792238400000&amp;limit=10
+ * </pre>
+ * The response is a JSON array of the most recent matching messages, the oldest first. A DELETE clears the buffer, e.g. between two tests.
+ */
+@RestController
+@ConditionalOnProperty(prefix = "spring-stomp-server.received", name = "enabled")
+public class ReceivedMessageController {
+
+    @Autowired
+    private ReceivedMessageRecorder recorder;
+
+    /**
+     * Query the received messages. All given criteria must match.
+     *
+     * @param destination the optional destination pattern (regular expression).
+     * @param session the optional session id.
+     * @param header the optional header value as "name:value", only for the indexed headers.
+     * @param from the optional start of the time window in milliseconds since the epoch.
+     * @param to the optional end of the time window in milliseconds since the epoch.
+     * @param limit the maximum number of results (default 100).
+     * @return the matching messages with the payload as UTF-8 text
+     */
+    @GetMapping("${spring-stomp-server.received.path:/received}")
+    public List<Map<String, Object>> query(@RequestParam(name = "destination", required = false) final String destination,
+            @RequestParam(name = "session", required = false) final String session,
+            @RequestParam(name = "header", required = false) final String header,
+            @RequestParam(name = "from", required = false) final Long from,
+            @RequestParam(name = "to", required = false) final Long to,
+            @RequestParam(name = "limit", defaultValue = "100") final int limit) {
+        ReceivedMessageQuery query = new ReceivedMessageQuery().session(session).limit(limit);
+        if (destination != null) {
+            query.destination(toPattern(destination));
+        }
+        if (header != null) {
+            int separator = header.indexOf(':');
+            if (separator <= 0) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The header must be given as name:value");
+            }
+            String headerName = header.substring(0, separator);
+            if (!recorder.getBuffer().isIndexed(headerName)) {
+                // the query would read the whole buffer
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "The header '" + headerName + "' is not in the indexed-headers");
+            }
+            query.header(headerName, header.substring(separator + 1));
+        }
+        if (from != null) {
+            query.from(from);
+        }
+        if (to != null) {
+            query.to(to);
+        }
+        return recorder.getBuffer().query(query).stream().map(ReceivedMessageController::toJson).collect(Collectors.toList());
+    }
+
+    /**
+     * Removes all received messages.
+     */
+    @DeleteMapping("${spring-stomp-server.received.path:/received}")
+    @ResponseStatus(HttpStatus.NO_CONTENT)
+    public void clear() {
+        recorder.getBuffer().clear();
+    }
+
+    private static Pattern toPattern(final String destination) {
+        try {
+            return Pattern.compile(destination);
+        } catch (PatternSyntaxException ex) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid destination pattern: " + ex.getDescription(), ex);
+        }
+    }
+
+    private static Map<String, Object> toJson(final ReceivedMessage message) {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("sequence", message.getSequence());
+        json.put("timestamp", message.getTimestamp());
+        json.put("session", message.getSessionId());
+        json.put("destination", message.getDestination());
+        json.put("headers", message.getHeaders());
+        json.put("payload", new String(message.getPayload(), StandardCharsets.UTF_8));
+        return json;
+    }
+
+}
@@ -0,0 +1,146 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.received;
+
+import java.util.regex.Pattern;
+
+/**
+ * The filter of a {@link ReceivedMessageBuffer#query(ReceivedMessageQuery)}. All given criteria must match.
+ */
+public class ReceivedMessageQuery {
+
+    private Pattern destinationPattern;
+
+    private String sessionId;
+
+    private String headerName;
+
+    private String headerValue;
+
+    private long from = Long.MIN_VALUE;
+
+    private long to = Long.MAX_VALUE;
+
+    private int limit = Integer.MAX_VALUE;
+
+    /**
+     * Only messages to a destination which matches the given pattern.
+     *
+     * @param pattern the destination pattern, like "^/topic/orders/.*".
+     * @return this query
+     */
+    public ReceivedMessageQuery destination(final Pattern pattern) {
+        this.destinationPattern = pattern;
+        return this;
+    }
+
+    /**
+     * Only messages of the given session.
+     *
+     * @param id the session id.
+     * @return this query
+     */
+    public ReceivedMessageQuery session(final String id) {
+        this.sessionId = id;
+        return this;
+    }
+
+    /**
+     * Only messages with the given stomp header value.
+     *
+     * @param name the header name.
+     * @param value the header value.
+     * @return this query
+     */
+    public ReceivedMessageQuery header(final String name, final String value) {
+        this.headerName = name;
+        this.headerValue = value;
+        return this;
+    }
+
+    /**
+     * Only messages which are received at or after the given time.
+     *
+     * @param timestamp the time in milliseconds since the epoch.
+     * @return this query
+     */
+    public ReceivedMessageQuery from(final long timestamp) {
+        this.from = timestamp;
+        return this;
+    }
+
+    /**
+     * Only messages which are received at or before the given time.
+     *
+     * @param timestamp the time in milliseconds since the epoch.
+     * @return this query
+     */
+    public ReceivedMessageQuery to(final long timestamp) {
+        this.to = timestamp;
+        return this;
+    }
+
+    /**
+     * Only the given number of the most recent matching messages.
+     *
+     * @param maxResults the maximum number of results.
+     * @return this query
+     */
+    public ReceivedMessageQuery limit(final int maxResults) {
+        this.limit = maxResults;
+        return this;
+    }
+
+    Pattern getDestinationPattern() {
+        return destinationPattern;
+    }
+
+    String getSessionId() {
+        return sessionId;
+    }
+
+    String getHeaderName() {
+        return headerName;
+    }
+
+    String getHeaderValue() {
+        return headerValue;
+    }
+
+    long getFrom() {
+        return from;
+    }
+
+    long getTo() {
+        return to;
+    }
+
+    int getLimit() {
+        return limit;
+    }
+
+    boolean matches(final ReceivedMessage message) {
+        return message.getTimestamp() >= from && message.getTimestamp() <= to
+                && (destinationPattern == null || destinationPattern.matcher(message.getDestination()).matches())
+                && (sessionId == null || sessionId.equals(message.getSessionId()))
+                && (headerName == null || message.hasHeader(headerName, headerValue));
+    }
+
+}
@@ -0,0 +1,141 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.received;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.brabenetz.app.springstompserver.config.TenantPartitions;
+import net.brabenetz.app.springstompserver.config.WebSocketReceivedConfigProperties;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the most recent inbound SEND frames in a {@link ReceivedMessageBuffer} (see {@link WebSocketReceivedConfigProperties}), so e2e tests can
+ * check what the clients sent with the {@link ReceivedMessageController} instead of an additional subscribing client.
+ * <p>
+ * The {@link #inboundInterceptor()} is the last interceptor of the clientInboundChannel, so a SEND frame which is rejected by another interceptor (e.g.
+ * the tenant isolation) is not recorded. The partitioned destinations of the tenants are recorded as the destinations of the clients.
+ */
+@Component
+public class ReceivedMessageRecorder implements InitializingBean, MeterBinder {
+
+    @Autowired
+    private WebSocketReceivedConfigProperties receivedConfigProperties;
+
+    @Autowired
+    private TenantPartitions tenantPartitions;
+
+    private ReceivedMessageBuffer buffer;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        if (isEnabled()) {
+            buffer = new ReceivedMessageBuffer(receivedConfigProperties.getMaxEntries(), receivedConfigProperties.getMaxBytes(),
+                    receivedConfigProperties.getIndexedHeaders());
+        }
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        if (!isEnabled()) {
+            return;
+        }
+        Gauge.builder("stomp.received.messages", buffer, ReceivedMessageBuffer::size)
+                .description("The number of buffered SEND frames").register(registry);
+        Gauge.builder("stomp.received.bytes", buffer, ReceivedMessageBuffer::getCurrentBytes)
+                .description("The payload and header bytes of the buffered SEND frames").baseUnit("bytes").register(registry);
+        FunctionCounter.builder("stomp.received.evicted", buffer, ReceivedMessageBuffer::getEvictionCount)
+                .description("The number of SEND frames which were evicted from the buffer").register(registry);
+    }
+
+    /**
+     * Checks if is the buffer of the received SEND frames enabled.
+     *
+     * @return true if the buffer is enabled
+     */
+    public boolean isEnabled() {
+        return receivedConfigProperties.isEnabled();
+    }
+
+    /**
+     * Gets the buffer of the received SEND frames.
+     *
+     * @return the buffer, or null if it is disabled
+     */
+    public ReceivedMessageBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Gets the interceptor for the clientInboundChannel, which adds the SEND frames to the buffer. It must be the last interceptor.
+     *
+     * @return the interceptor for the clientInboundChannel
+     */
+    public ChannelInterceptor inboundInterceptor() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(final Message<?> message, final MessageChannel channel) {
+                record(message);
+                return message;
+            }
+        };
+    }
+
+    private void record(final Message<?> message) {
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE || destination == null
+                || !(message.getPayload() instanceof byte[])) {
+            return;
+        }
+        String clientDestination = tenantPartitions.isEnabled() ? tenantPartitions.restore(destination) : destination;
+        buffer.add(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()), clientDestination, receivedHeaders(message),
+                (byte[]) message.getPayload());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, List<String>> receivedHeaders(final Message<?> message) {
+        Map<String, List<String>> nativeHeaders = (Map<String, List<String>>) message.getHeaders().get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        if (nativeHeaders != null) {
+            nativeHeaders.forEach((name, values) -> {
+                // the destination is a separate field, and the content-length is the length of the payload.
+                if (!"destination".equals(name) && !"content-length".equals(name)) {
+                    result.put(name, new ArrayList<>(values));
+                }
+            });
+        }
+        return result;
+    }
+
+}
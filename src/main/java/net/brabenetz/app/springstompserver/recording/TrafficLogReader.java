@@ -0,0 +1,138 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.recording;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Reads the {@link TrafficRecord}s of all log segments in a directory (written by the {@link TrafficLogWriter}) in the recorded order.
+ * <p>
+ * The segments are memory-mapped read-only one after the other, so reading the records is mostly a copy from the page cache.
+ */
+public final class TrafficLogReader implements Iterator<TrafficRecord>, Closeable {
+
+    private final Iterator<Path> segments;
+
+    private FileChannel channel;
+
+    private ByteBuffer buffer;
+
+    private TrafficRecord next;
+
+    /**
+     * Create the reader for all segments in the given directory.
+     *
+     * @param directory the directory with the "traffic-*.log" segments.
+     * @throws IOException if the directory can't be listed.
+     */
+    public TrafficLogReader(final Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files
+                    .filter(file -> file.getFileName().toString().matches("traffic-\\d+\\.log"))
+                    .sorted()
+                    .collect(Collectors.toList())
+                    .iterator();
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            try {
+                next = readNext();
+            } catch (IOException ex) {
+                throw new IllegalStateException("Failed to read the traffic log segment.", ex);
+            }
+        }
+        return next != null;
+    }
+
+    @Override
+    public TrafficRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        TrafficRecord result = next;
+        next = null;
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private TrafficRecord readNext() throws IOException {
+        while (true) {
+            if (buffer != null && buffer.remaining() >= Integer.BYTES) {
+                int length = buffer.getInt();
+                if (length > 0) {
+                    return readRecord();
+                }
+            }
+            // end of the segment: continue with the next one.
+            close();
+            if (!segments.hasNext()) {
+                buffer = null;
+                return null;
+            }
+            channel = FileChannel.open(segments.next(), StandardOpenOption.READ);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    private TrafficRecord readRecord() {
+        long relativeNanos = buffer.getLong();
+        String destination = getString();
+        int headerCount = buffer.getInt();
+        Map<String, List<String>> nativeHeaders = new LinkedHashMap<>();
+        for (int i = 0; i < headerCount; i++) {
+            nativeHeaders.computeIfAbsent(getString(), key -> new ArrayList<>(1)).add(getString());
+        }
+        byte[] payload = new byte[buffer.getInt()];
+        buffer.get(payload);
+        return new TrafficRecord(relativeNanos, destination, nativeHeaders, payload);
+    }
+
+    private String getString() {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
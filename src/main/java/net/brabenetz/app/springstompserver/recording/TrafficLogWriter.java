@@ -0,0 +1,144 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.recording;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Appends {@link TrafficRecord}s to memory-mapped log segments "traffic-00000.log", "traffic-00001.log", ... in one directory.
+ * <p>
+ * Each segment is mapped with its full size, so an append is only a copy into the page cache. If the next record doesn't fit into the current segment,
+ * the next segment is started. The unused rest of a segment stays zero, which the {@link TrafficLogReader} reads as end of the segment.
+ * <p>
+ * The record format (big-endian) is: int length (of the rest of the record), long relative nanos, string destination, int header count, header count
+ * times string name and string value, int payload length, payload bytes. Each string is an int length followed by the UTF-8 bytes.
+ * <p>
+ * This class is not thread-safe; the {@link TrafficRecorder} appends from a single writer thread.
+ */
+public final class TrafficLogWriter implements Closeable {
+
+    /** The file name format of the segments. */
+    static final String SEGMENT_FORMAT = "traffic-%05d.log";
+
+    private final Path directory;
+
+    private final int segmentSize;
+
+    private int segmentIndex;
+
+    private FileChannel channel;
+
+    private MappedByteBuffer buffer;
+
+    /**
+     * Create the writer and map the first segment.
+     *
+     * @param directory the directory of the segments, which is created if missing.
+     * @param segmentSize the size in bytes of one segment.
+     * @throws IOException if the directory or the first segment can't be created.
+     */
+    public TrafficLogWriter(final Path directory, final int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        openSegment();
+    }
+
+    /**
+     * Append the record to the current segment, or to the next segment if the current one is full.
+     *
+     * @param record the record.
+     * @throws IOException if the next segment can't be created.
+     */
+    public void append(final TrafficRecord record) throws IOException {
+        byte[] destination = record.getDestination().getBytes(StandardCharsets.UTF_8);
+        int headerCount = 0;
+        int length = Long.BYTES + Integer.BYTES + destination.length + Integer.BYTES + Integer.BYTES + record.getPayload().length;
+        for (Map.Entry<String, List<String>> header : record.getNativeHeaders().entrySet()) {
+            for (String value : header.getValue()) {
+                length += Integer.BYTES + utf8Length(header.getKey()) + Integer.BYTES + utf8Length(value);
+                headerCount++;
+            }
+        }
+        if (Integer.BYTES + length > segmentSize) {
+            throw new IllegalArgumentException("The record of " + length + " bytes doesn't fit into a segment of " + segmentSize + " bytes.");
+        }
+        if (buffer.remaining() < Integer.BYTES + length) {
+            closeSegment();
+            segmentIndex++;
+            openSegment();
+        }
+        buffer.putInt(length);
+        buffer.putLong(record.getRelativeNanos());
+        buffer.putInt(destination.length).put(destination);
+        buffer.putInt(headerCount);
+        for (Map.Entry<String, List<String>> header : record.getNativeHeaders().entrySet()) {
+            for (String value : header.getValue()) {
+                putString(header.getKey());
+                putString(value);
+            }
+        }
+        buffer.putInt(record.getPayload().length).put(record.getPayload());
+    }
+
+    /**
+     * Gets the directory of the segments.
+     *
+     * @return the directory of the segments
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+    }
+
+    private void openSegment() throws IOException {
+        channel = FileChannel.open(directory.resolve(String.format(SEGMENT_FORMAT, segmentIndex)),
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+    }
+
+    private void closeSegment() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private void putString(final String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length).put(bytes);
+    }
+
+    private static int utf8Length(final String value) {
+        return value.getBytes(StandardCharsets.UTF_8).length;
+    }
+
+}
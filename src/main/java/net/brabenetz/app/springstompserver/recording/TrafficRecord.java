@@ -0,0 +1,91 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.recording;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One recorded SEND frame: the destination, the stomp headers, the payload and the time relative to the start of the recording.
+ */
+public final class TrafficRecord {
+
+    private final long relativeNanos;
+
+    private final String destination;
+
+    private final Map<String, List<String>> nativeHeaders;
+
+    private final byte[] payload;
+
+    /**
+     * Create a recorded SEND frame.
+     *
+     * @param relativeNanos the time in nanoseconds since the start of the recording.
+     * @param destination the destination of the SEND frame.
+     * @param nativeHeaders the stomp headers without "destination" and "content-length".
+     * @param payload the message body.
+     */
+    public TrafficRecord(final long relativeNanos, final String destination, final Map<String, List<String>> nativeHeaders, final byte[] payload) {
+        this.relativeNanos = relativeNanos;
+        this.destination = destination;
+        this.nativeHeaders = nativeHeaders != null ? nativeHeaders : Collections.emptyMap();
+        this.payload = payload;
+    }
+
+    /**
+     * Gets the time in nanoseconds since the start of the recording.
+     *
+     * @return the time in nanoseconds since the start of the recording
+     */
+    public long getRelativeNanos() {
+        return relativeNanos;
+    }
+
+    /**
+     * Gets the destination of the SEND frame.
+     *
+     * @return the destination of the SEND frame
+     */
+    public String getDestination() {
+        return destination;
+    }
+
+    /**
+     * Gets the stomp headers without "destination" and "content-length".
+     *
+     * @return the stomp headers
+     */
+    public Map<String, List<String>> getNativeHeaders() {
+        return nativeHeaders;
+    }
+
+    /**
+     * Gets the message body.
+     *
+     * @return the message body
+     */
+    @SuppressWarnings("PMD.MethodReturnsInternalArray")
+    public byte[] getPayload() {
+        return payload;
+    }
+
+}
@@ -0,0 +1,215 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.recording;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import net.brabenetz.app.springstompserver.config.WebSocketRecordingConfigProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records the inbound SEND frames (destination, stomp headers, payload and the time since the server start) into a {@link TrafficLogWriter} (see
+ * {@link WebSocketRecordingConfigProperties#getDirectory()}), so the traffic can be replayed later with the {@link TrafficReplayer}.
+ * <p>
+ * The interceptor of the clientInboundChannel only offers the frames to a bounded queue, so it never blocks on file I/O: if the single writer thread
+ * can't keep up, the frames are dropped and counted in "stomp.recording.dropped".
+ */
+@Component
+public class TrafficRecorder implements InitializingBean, DisposableBean, MeterBinder {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TrafficRecorder.class);
+
+    @Autowired
+    private WebSocketRecordingConfigProperties recordingConfigProperties;
+
+    private final AtomicLong recordedCount = new AtomicLong();
+
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private final long startNanos = System.nanoTime();
+
+    private BlockingQueue<TrafficRecord> queue;
+
+    private TrafficLogWriter writer;
+
+    private Thread writerThread;
+
+    private volatile boolean running;
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        if (!isEnabled()) {
+            return;
+        }
+        Path directory = Paths.get(recordingConfigProperties.getDirectory(), new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()));
+        writer = new TrafficLogWriter(directory, recordingConfigProperties.getSegmentSize());
+        queue = new ArrayBlockingQueue<>(recordingConfigProperties.getQueueCapacity());
+        running = true;
+        writerThread = new Thread(this::writeLoop, "traffic-recorder");
+        writerThread.setDaemon(true);
+        writerThread.start();
+        LOG.info("Recording the inbound SEND frames into {}", directory);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (writerThread == null) {
+            return;
+        }
+        running = false;
+        writerThread.join(TimeUnit.SECONDS.toMillis(10));
+        LOG.info("Recorded {} SEND frames ({} dropped) into {}", recordedCount.get(), droppedCount.get(), writer.getDirectory());
+    }
+
+    @Override
+    public void bindTo(final MeterRegistry registry) {
+        if (!isEnabled()) {
+            return;
+        }
+        FunctionCounter.builder("stomp.recording.records", recordedCount, AtomicLong::get)
+                .description("The number of recorded SEND frames").register(registry);
+        FunctionCounter.builder("stomp.recording.dropped", droppedCount, AtomicLong::get)
+                .description("The number of SEND frames which were dropped because the recording queue was full").register(registry);
+    }
+
+    /**
+     * Checks if is the recording enabled.
+     *
+     * @return true if the recording directory is configured
+     */
+    public boolean isEnabled() {
+        return recordingConfigProperties.getDirectory() != null;
+    }
+
+    /**
+     * Gets the number of recorded SEND frames.
+     *
+     * @return the number of recorded SEND frames
+     */
+    public long getRecordedCount() {
+        return recordedCount.get();
+    }
+
+    /**
+     * Gets the number of SEND frames which were dropped because the recording queue was full.
+     *
+     * @return the number of dropped SEND frames
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Gets the interceptor for the clientInboundChannel, which offers the SEND frames to the recording queue.
+     *
+     * @return the interceptor for the clientInboundChannel
+     */
+    public ChannelInterceptor inboundInterceptor() {
+        return new ChannelInterceptor() {
+            @Override
+            public Message<?> preSend(final Message<?> message, final MessageChannel channel) {
+                record(message);
+                return message;
+            }
+        };
+    }
+
+    private void record(final Message<?> message) {
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE || destination == null
+                || !(message.getPayload() instanceof byte[])) {
+            return;
+        }
+        TrafficRecord record = new TrafficRecord(System.nanoTime() - startNanos, destination, recordedHeaders(message), (byte[]) message.getPayload());
+        if (!queue.offer(record)) {
+            droppedCount.incrementAndGet();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, List<String>> recordedHeaders(final Message<?> message) {
+        Map<String, List<String>> nativeHeaders = (Map<String, List<String>>) message.getHeaders().get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+        Map<String, List<String>> result = new LinkedHashMap<>();
+        if (nativeHeaders != null) {
+            nativeHeaders.forEach((name, values) -> {
+                // the destination is recorded separate, and the content-length is set again by the encoder.
+                if (!"destination".equals(name) && !"content-length".equals(name)) {
+                    result.put(name, new ArrayList<>(values));
+                }
+            });
+        }
+        return result;
+    }
+
+    private void writeLoop() {
+        try {
+            while (running || !queue.isEmpty()) {
+                TrafficRecord record = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (record == null) {
+                    continue;
+                }
+                try {
+                    writer.append(record);
+                    recordedCount.incrementAndGet();
+                } catch (IllegalArgumentException ex) {
+                    droppedCount.incrementAndGet();
+                    LOG.warn("Dropped the SEND frame to {}: {}", record.getDestination(), ex.getMessage());
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            LOG.error("Failed to record the SEND frames into {}; the recording is stopped.", writer.getDirectory(), ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                writer.close();
+            } catch (IOException ex) {
+                LOG.warn("Failed to close the traffic log in {}", writer.getDirectory(), ex);
+            }
+        }
+    }
+
+}
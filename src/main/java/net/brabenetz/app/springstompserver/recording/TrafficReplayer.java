@@ -0,0 +1,152 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.recording;
+
+import net.brabenetz.app.springstompserver.config.TenantPartitions;
+import net.brabenetz.app.springstompserver.config.WebSocketRecordingConfigProperties;
+import net.brabenetz.app.springstompserver.publish.BrokerDispatchTracker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationListener;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replays a recording of the {@link TrafficRecorder} through the message broker, so all current subscribers of the recorded destinations get the
+ * messages again (see {@link WebSocketRecordingConfigProperties#getReplay()}).
+ * <p>
+ * The records are published to the "brokerChannel" with the recorded timing divided by the speed multiplier, or as fast as possible if the speed is 0.
+ * The log segments are memory-mapped, so the replay throughput is limited by the broker and not by the file I/O: after each
+ * {@link WebSocketRecordingConfigProperties.Replay#getBatchSize()} records the replay waits until the broker dispatched them (see
+ * {@link BrokerDispatchTracker}), so the brokerChannel never queues more than one batch.
+ */
+@Component
+public class TrafficReplayer implements ApplicationListener<ApplicationReadyEvent> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(TrafficReplayer.class);
+
+    @Autowired
+    private WebSocketRecordingConfigProperties recordingConfigProperties;
+
+    @Autowired
+    @Qualifier("brokerChannel")
+    private MessageChannel brokerChannel;
+
+    @Autowired
+    private TenantPartitions tenantPartitions;
+
+    @Override
+    public void onApplicationEvent(final ApplicationReadyEvent event) {
+        WebSocketRecordingConfigProperties.Replay replay = recordingConfigProperties.getReplay();
+        if (replay.getDirectory() == null) {
+            return;
+        }
+        Thread replayThread = new Thread(() -> {
+            try {
+                Thread.sleep(replay.getStartDelay());
+                replay(Paths.get(replay.getDirectory()), replay.getSpeed());
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (IOException | RuntimeException ex) {
+                LOG.error("Failed to replay the traffic log in {}", replay.getDirectory(), ex);
+            }
+        }, "traffic-replay");
+        replayThread.setDaemon(true);
+        replayThread.start();
+    }
+
+    /**
+     * Replay all records of the given recording directory through the message broker.
+     *
+     * @param directory the recording directory with the "traffic-*.log" segments.
+     * @param speed the speed multiplier: 1 replays with the recorded timing, 2 twice as fast, and 0 (or less) as fast as possible.
+     * @return the number of replayed records.
+     * @throws IOException if the recording can't be read.
+     * @throws InterruptedException if the current thread was interrupted while waiting for the broker.
+     * @throws IllegalStateException if the broker didn't dispatch a batch within the batch-timeout.
+     */
+    public long replay(final Path directory, final double speed) throws IOException, InterruptedException {
+        LOG.info("Replay the traffic log in {} with speed {}", directory, speed);
+        WebSocketRecordingConfigProperties.Replay replay = recordingConfigProperties.getReplay();
+        BrokerDispatchTracker.Dispatch dispatch = new BrokerDispatchTracker.Dispatch();
+        long count = 0;
+        long startNanos = System.nanoTime();
+        long firstRelativeNanos = -1;
+        try (TrafficLogReader reader = new TrafficLogReader(directory)) {
+            while (reader.hasNext()) {
+                TrafficRecord record = reader.next();
+                if (firstRelativeNanos < 0) {
+                    firstRelativeNanos = record.getRelativeNanos();
+                }
+                if (speed > 0) {
+                    awaitUntil(startNanos + (long) ((record.getRelativeNanos() - firstRelativeNanos) / speed));
+                }
+                publish(record, dispatch);
+                count++;
+                if (count % replay.getBatchSize() == 0) {
+                    awaitDispatched(dispatch, count, replay.getBatchTimeout());
+                }
+            }
+        }
+        awaitDispatched(dispatch, count, replay.getBatchTimeout());
+        LOG.info("Replayed {} messages in {} ms", count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        return count;
+    }
+
+    private void publish(final TrafficRecord record, final BrokerDispatchTracker.Dispatch dispatch) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        // the recorded destinations of the clients are published to the default partition if the tenants are isolated
+        accessor.setDestination(tenantPartitions.isolate(null, record.getDestination()));
+        if (!record.getNativeHeaders().isEmpty()) {
+            accessor.setHeader(NativeMessageHeaderAccessor.NATIVE_HEADERS, record.getNativeHeaders());
+        }
+        accessor.setHeader(BrokerDispatchTracker.DISPATCH_HEADER, dispatch);
+        brokerChannel.send(MessageBuilder.createMessage(record.getPayload(), accessor.getMessageHeaders()));
+    }
+
+    private static void awaitDispatched(final BrokerDispatchTracker.Dispatch dispatch, final long count, final long timeout)
+            throws InterruptedException {
+        if (!dispatch.await(count, timeout)) {
+            throw new IllegalStateException("The broker didn't dispatch the replayed messages within " + timeout + " ms (after " + count + " messages)");
+        }
+    }
+
+    private static void awaitUntil(final long nanoTime) {
+        long waitNanos = nanoTime - System.nanoTime();
+        while (waitNanos > 0) {
+            LockSupport.parkNanos(waitNanos);
+            waitNanos = nanoTime - System.nanoTime();
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.session;
+
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * A {@link WebSocketHandlerDecorator} which wraps each new session into a {@link BatchingWebSocketSession}.
+ * <p>
+ * Register it via {@link org.springframework.web.socket.config.annotation.WebSocketTransportRegistration#addDecoratorFactory}.
+ */
+public class BatchingWebSocketHandlerDecorator extends WebSocketHandlerDecorator {
+
+    private final int batchSizeLimit;
+
+    private final int batchTimeLimit;
+
+    private final TaskScheduler taskScheduler;
+
+    private final Executor flushExecutor;
+
+    private final Map<String, BatchingWebSocketSession> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * Create the decorator.
+     *
+     * @param delegate the websocket handler to decorate.
+     * @param batchSizeLimit the number of buffered bytes which triggers the send.
+     * @param batchTimeLimit the maximum time in milliseconds a message is buffered.
+     * @param taskScheduler the scheduler for the time limit.
+     * @param flushExecutor the executor of the flush after the time limit.
+     */
+    public BatchingWebSocketHandlerDecorator(final WebSocketHandler delegate, final int batchSizeLimit, final int batchTimeLimit,
+            final TaskScheduler taskScheduler, final Executor flushExecutor) {
+        super(delegate);
+        this.batchSizeLimit = batchSizeLimit;
+        this.batchTimeLimit = batchTimeLimit;
+        this.taskScheduler = taskScheduler;
+        this.flushExecutor = flushExecutor;
+    }
+
+    @Override
+    public void afterConnectionEstablished(final WebSocketSession session) throws Exception {
+        BatchingWebSocketSession batchingSession = new BatchingWebSocketSession(session, batchSizeLimit, batchTimeLimit, taskScheduler, flushExecutor);
+        sessions.put(session.getId(), batchingSession);
+        super.afterConnectionEstablished(batchingSession);
+    }
+
+    @Override
+    public void handleMessage(final WebSocketSession session, final WebSocketMessage<?> message) throws Exception {
+        super.handleMessage(getBatchingSession(session), message);
+    }
+
+    @Override
+    public void handleTransportError(final WebSocketSession session, final Throwable exception) throws Exception {
+        super.handleTransportError(getBatchingSession(session), exception);
+    }
+
+    @Override
+    public void afterConnectionClosed(final WebSocketSession session, final CloseStatus closeStatus) throws Exception {
+        BatchingWebSocketSession batchingSession = sessions.remove(session.getId());
+        if (batchingSession != null) {
+            batchingSession.discard();
+        }
+        super.afterConnectionClosed(batchingSession != null ? batchingSession : session, closeStatus);
+    }
+
+    private WebSocketSession getBatchingSession(final WebSocketSession session) {
+        WebSocketSession batchingSession = sessions.get(session.getId());
+        return batchingSession != null ? batchingSession : session;
+    }
+
+}
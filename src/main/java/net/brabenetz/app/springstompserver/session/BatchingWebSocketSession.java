@@ -0,0 +1,197 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.TaskScheduler;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+
+/**
+ * A {@link WebSocketSessionDecorator} which combines the outbound text messages (STOMP frames) of a session into one WebSocket message.
+ * <p>
+ * STOMP frames are terminated with a NUL byte, so a client can read several frames from one WebSocket message. The buffered frames are sent if the
+ * buffer reaches the {@link #getBatchSizeLimit()} bytes or at the latest after the {@link #getBatchTimeLimit()} milliseconds after the first buffered
+ * frame. Binary messages flush the buffer and are sent directly.
+ * <p>
+ * The time limit only triggers the flush on the (shared, single-threaded) {@link TaskScheduler}. The flush itself is a blocking socket write, so it
+ * is executed by the flush executor (the clientOutboundChannel executor), and a slow client doesn't delay the heartbeats and flushes of the others.
+ */
+public class BatchingWebSocketSession extends WebSocketSessionDecorator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchingWebSocketSession.class);
+
+    private final int batchSizeLimit;
+
+    private final int batchTimeLimit;
+
+    private final TaskScheduler taskScheduler;
+
+    private final Executor flushExecutor;
+
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    /** The first buffered message, which is sent as it is if no other message is added. */
+    private TextMessage firstMessage;
+
+    private int bufferedMessageCount;
+
+    private ScheduledFuture<?> flushTask;
+
+    /**
+     * Create the batching session.
+     *
+     * @param session the session to decorate.
+     * @param batchSizeLimit the number of buffered bytes which triggers the send.
+     * @param batchTimeLimit the maximum time in milliseconds a message is buffered.
+     * @param taskScheduler the scheduler for the time limit.
+     * @param flushExecutor the executor of the flush after the time limit.
+     */
+    public BatchingWebSocketSession(final WebSocketSession session, final int batchSizeLimit, final int batchTimeLimit,
+            final TaskScheduler taskScheduler, final Executor flushExecutor) {
+        super(session);
+        this.batchSizeLimit = batchSizeLimit;
+        this.batchTimeLimit = batchTimeLimit;
+        this.taskScheduler = taskScheduler;
+        this.flushExecutor = flushExecutor;
+    }
+
+    /**
+     * Gets the number of buffered bytes which triggers the send.
+     *
+     * @return the number of buffered bytes which triggers the send
+     */
+    public int getBatchSizeLimit() {
+        return batchSizeLimit;
+    }
+
+    /**
+     * Gets the maximum time in milliseconds a message is buffered.
+     *
+     * @return the maximum time in milliseconds a message is buffered
+     */
+    public int getBatchTimeLimit() {
+        return batchTimeLimit;
+    }
+
+    @Override
+    public synchronized void sendMessage(final WebSocketMessage<?> message) throws IOException {
+        if (!(message instanceof TextMessage)) {
+            flush();
+            super.sendMessage(message);
+            return;
+        }
+        TextMessage textMessage = (TextMessage) message;
+        if (bufferedMessageCount == 0) {
+            firstMessage = textMessage;
+        } else {
+            if (bufferedMessageCount == 1) {
+                buffer.write(firstMessage.asBytes());
+            }
+            buffer.write(textMessage.asBytes());
+        }
+        bufferedMessageCount++;
+
+        int bufferedBytes = bufferedMessageCount == 1 ? firstMessage.getPayloadLength() : buffer.size();
+        if (bufferedBytes >= batchSizeLimit) {
+            flush();
+        } else if (flushTask == null) {
+            flushTask = taskScheduler.schedule(this::submitFlush, Instant.now().plusMillis(batchTimeLimit));
+        }
+    }
+
+    /**
+     * Send all buffered messages as one WebSocket message.
+     *
+     * @throws IOException if the send failed.
+     */
+    public synchronized void flush() throws IOException {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        if (bufferedMessageCount == 0) {
+            return;
+        }
+        TextMessage batch = bufferedMessageCount == 1 ? firstMessage : new TextMessage(buffer.toByteArray());
+        clear();
+        super.sendMessage(batch);
+    }
+
+    @Override
+    public void close(final CloseStatus status) throws IOException {
+        try {
+            flush();
+        } catch (IOException ex) {
+            LOG.debug("Failed to flush buffered messages of session {} before close: {}", getId(), ex.getMessage());
+        }
+        super.close(status);
+    }
+
+    /**
+     * Discard the buffered messages, e.g. after the session was closed.
+     */
+    public synchronized void discard() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        clear();
+    }
+
+    private void clear() {
+        firstMessage = null;
+        bufferedMessageCount = 0;
+        buffer.reset();
+    }
+
+    private void submitFlush() {
+        try {
+            flushExecutor.execute(this::scheduledFlush);
+        } catch (RejectedExecutionException ex) {
+            LOG.debug("Failed to submit the flush of session {}: {}", getId(), ex.getMessage());
+        }
+    }
+
+    private synchronized void scheduledFlush() {
+        flushTask = null;
+        if (!isOpen()) {
+            clear();
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException ex) {
+            LOG.debug("Failed to send buffered messages of session {}: {}", getId(), ex.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,62 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.session;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The counters of the {@link SlowConsumerWebSocketSession} actions by policy: the dropped frames (DROP_OLDEST), the replaced frames (CONFLATE) and the
+ * closed sessions (DISCONNECT, and BUFFER if the send-buffer-size-limit or the send-time-limit was exceeded).
+ */
+public class SlowConsumerCounters {
+
+    private final Map<SlowConsumerPolicy, LongAdder> counters = new EnumMap<>(SlowConsumerPolicy.class);
+
+    /**
+     * Create the counters for all policies.
+     */
+    public SlowConsumerCounters() {
+        for (SlowConsumerPolicy policy : SlowConsumerPolicy.values()) {
+            counters.put(policy, new LongAdder());
+        }
+    }
+
+    /**
+     * Count one action of the given policy.
+     *
+     * @param policy the policy.
+     */
+    public void increment(final SlowConsumerPolicy policy) {
+        counters.get(policy).increment();
+    }
+
+    /**
+     * Gets the number of actions of the given policy.
+     *
+     * @param policy the policy.
+     * @return the number of dropped or replaced frames, or closed sessions
+     */
+    public long get(final SlowConsumerPolicy policy) {
+        return counters.get(policy).sum();
+    }
+
+}
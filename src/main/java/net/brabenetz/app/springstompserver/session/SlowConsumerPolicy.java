@@ -0,0 +1,47 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.session;
+
+/**
+ * The policy of a {@link SlowConsumerRule}: what happens with the outbound frames of a session, which can't be written as fast as they are published.
+ */
+public enum SlowConsumerPolicy {
+
+    /**
+     * Buffer the frames until the send-buffer-size-limit or the send-time-limit is exceeded, then close the session (the spring default).
+     */
+    BUFFER,
+
+    /**
+     * Drop the oldest queued frames (of the DROP_OLDEST and CONFLATE destinations) if the buffer-size-limit of the rule is exceeded.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Replace a queued, not yet written frame of the same destination and subscription with the latest one, so only the latest value is sent.
+     */
+    CONFLATE,
+
+    /**
+     * Close the session immediately if the buffer-size-limit of the rule is exceeded, without waiting for the send-time-limit.
+     */
+    DISCONNECT
+
+}
@@ -0,0 +1,132 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.session;
+
+import java.util.regex.Pattern;
+
+/**
+ * One slow-consumer rule: the outbound frames of the destinations matching the {@link #getDestinationPatterns()} are handled with the
+ * {@link #getPolicy()} if the session is too slow (see {@link SlowConsumerWebSocketSession}).
+ */
+@SuppressWarnings("PMD.DataClass")
+public class SlowConsumerRule {
+
+    /**
+     * The destination pattern of the outbound frames like "^/topic/prices/.*$".
+     */
+    private Pattern destinationPatterns;
+
+    /**
+     * The policy for the frames of the matching destinations.
+     * <p>
+     * Default is BUFFER.
+     */
+    private SlowConsumerPolicy policy = SlowConsumerPolicy.BUFFER;
+
+    /**
+     * The number of queued bytes of a session, where the DROP_OLDEST and DISCONNECT policies kick in.
+     * <p>
+     * Optional, the default is the send-buffer-size-limit (512K).
+     */
+    private Integer bufferSizeLimit;
+
+    /**
+     * Create an empty rule, which is filled by the configuration properties binding.
+     */
+    public SlowConsumerRule() {
+        // default constructor for configuration properties.
+    }
+
+    /**
+     * Create a rule with the given destination pattern and policy.
+     *
+     * @param destinationPatterns the destination pattern of the outbound frames.
+     * @param policy the policy for the frames of the matching destinations.
+     * @param bufferSizeLimit the number of queued bytes of a session, where the policy kicks in (optional).
+     */
+    public SlowConsumerRule(final Pattern destinationPatterns, final SlowConsumerPolicy policy, final Integer bufferSizeLimit) {
+        this.destinationPatterns = destinationPatterns;
+        this.policy = policy;
+        this.bufferSizeLimit = bufferSizeLimit;
+    }
+
+    /**
+     * Gets the destination pattern of the outbound frames like "^/topic/prices/.*$".
+     *
+     * @return the destination pattern of the outbound frames
+     */
+    public Pattern getDestinationPatterns() {
+        return destinationPatterns;
+    }
+
+    /**
+     * Sets the destination pattern of the outbound frames like "^/topic/prices/.*$".
+     *
+     * @param destinationPatterns the new destination pattern of the outbound frames
+     */
+    public void setDestinationPatterns(Pattern destinationPatterns) {
+        this.destinationPatterns = destinationPatterns;
+    }
+
+    /**
+     * Gets the policy for the frames of the matching destinations.
+     * <p>
+     * Default is BUFFER.
+     *
+     * @return the policy for the frames of the matching destinations
+     */
+    public SlowConsumerPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Sets the policy for the frames of the matching destinations.
+     * <p>
+     * Default is BUFFER.
+     *
+     * @param policy the new policy for the frames of the matching destinations
+     */
+    public void setPolicy(SlowConsumerPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * Gets the number of queued bytes of a session, where the DROP_OLDEST and DISCONNECT policies kick in.
+     * <p>
+     * Optional, the default is the send-buffer-size-limit (512K).
+     *
+     * @return the number of queued bytes of a session, where the policy kicks in
+     */
+    public Integer getBufferSizeLimit() {
+        return bufferSizeLimit;
+    }
+
+    /**
+     * Sets the number of queued bytes of a session, where the DROP_OLDEST and DISCONNECT policies kick in.
+     * <p>
+     * Optional, the default is the send-buffer-size-limit (512K).
+     *
+     * @param bufferSizeLimit the new number of queued bytes of a session, where the policy kicks in
+     */
+    public void setBufferSizeLimit(Integer bufferSizeLimit) {
+        this.bufferSizeLimit = bufferSizeLimit;
+    }
+
+}
@@ -0,0 +1,81 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.session;
+
+import org.apache.tomcat.websocket.Constants;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.adapter.NativeWebSocketSession;
+import org.springframework.web.socket.messaging.SubProtocolWebSocketHandler;
+
+import javax.websocket.Session;
+
+import java.util.List;
+
+/**
+ * A {@link SubProtocolWebSocketHandler} which decorates each new session with a {@link SlowConsumerWebSocketSession} instead of the spring
+ * ConcurrentWebSocketSessionDecorator.
+ * <p>
+ * The ConcurrentWebSocketSessionDecorator writes the frames of a session one by one and buffers the frames of all other senders itself, so a session
+ * decorator below it never sees a backlog. The {@link SlowConsumerWebSocketSession} takes over the buffer, the send-buffer-size-limit and the
+ * send-time-limit, so its queue is the only buffer of the session and the slow-consumer policies can drop or replace the queued frames.
+ * <p>
+ * The blocking writes of the tomcat websocket sessions are bounded with the send-time-limit, so a client which doesn't read at all blocks a drain
+ * task at most for the send-time-limit, and then the session is closed.
+ */
+public class SlowConsumerSubProtocolWebSocketHandler extends SubProtocolWebSocketHandler {
+
+    private final List<SlowConsumerRule> rules;
+
+    private final TaskExecutor writerExecutor;
+
+    private final SlowConsumerCounters counters;
+
+    /**
+     * Create the handler.
+     *
+     * @param clientInboundChannel the channel of the client messages.
+     * @param clientOutboundChannel the channel of the messages to the clients.
+     * @param rules the slow-consumer rules, the first matching rule wins.
+     * @param writerExecutor the executor of the drain tasks which write the queued frames.
+     * @param counters the counters of the policy actions.
+     */
+    public SlowConsumerSubProtocolWebSocketHandler(final MessageChannel clientInboundChannel, final SubscribableChannel clientOutboundChannel,
+            final List<SlowConsumerRule> rules, final TaskExecutor writerExecutor, final SlowConsumerCounters counters) {
+        super(clientInboundChannel, clientOutboundChannel);
+        this.rules = rules;
+        this.writerExecutor = writerExecutor;
+        this.counters = counters;
+    }
+
+    @Override
+    protected WebSocketSession decorateSession(final WebSocketSession session) {
+        if (session instanceof NativeWebSocketSession) {
+            Session nativeSession = ((NativeWebSocketSession) session).getNativeSession(Session.class);
+            if (nativeSession != null) {
+                nativeSession.getUserProperties().put(Constants.BLOCKING_SEND_TIMEOUT_PROPERTY, (long) getSendTimeLimit());
+            }
+        }
+        return new SlowConsumerWebSocketSession(session, rules, getSendBufferSizeLimit(), getSendTimeLimit(), writerExecutor, counters);
+    }
+
+}
@@ -0,0 +1,347 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.session;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link WebSocketSessionDecorator} which queues the outbound frames of a session in a bounded queue and applies the {@link SlowConsumerPolicy} of the
+ * first matching {@link SlowConsumerRule} if the client can't read the frames as fast as they are published.
+ * <p>
+ * Like the spring ConcurrentWebSocketSessionDecorator, a frame is written directly in the thread of the sender as long as the session is not backlogged,
+ * and the frames of other senders are queued while a write is in flight. But the sender of a queued frame is never blocked: the queued frames are
+ * written by a drain task in the given executor, one task per session at a time. The session replaces the ConcurrentWebSocketSessionDecorator (see
+ * {@link SlowConsumerSubProtocolWebSocketHandler}), so the queue of this session is the only buffer, and the policies can drop or replace queued, not
+ * yet written frames:
+ * <ul>
+ * <li>BUFFER: the session is closed if the queued bytes exceed the send-buffer-size-limit or a write takes longer than the send-time-limit.</li>
+ * <li>DROP_OLDEST: the oldest queued DROP_OLDEST or CONFLATE frames are dropped, until the new frame fits into the buffer-size-limit of the rule.</li>
+ * <li>CONFLATE: a queued frame of the same destination and subscription is replaced with the new frame.</li>
+ * <li>DISCONNECT: the session is closed as soon as the queued bytes exceed the buffer-size-limit of the rule.</li>
+ * </ul>
+ * The queued bytes of a session never exceed the send-buffer-size-limit, and a fast client doesn't queue frames at all, so it is not affected.
+ * <p>
+ * The drain tasks block while the client doesn't read, so the executor must not be shared with other tasks, and it should not limit the number of
+ * threads: a blocked session would delay the drain tasks of all other backlogged sessions.
+ */
+public class SlowConsumerWebSocketSession extends WebSocketSessionDecorator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SlowConsumerWebSocketSession.class);
+
+    private final List<SlowConsumerRule> rules;
+
+    private final int bufferSizeLimit;
+
+    private final long sendTimeLimitNanos;
+
+    private final TaskExecutor writerExecutor;
+
+    private final SlowConsumerCounters counters;
+
+    private final Deque<QueuedFrame> queue = new ArrayDeque<>();
+
+    /** The queued CONFLATE frames by destination and subscription. */
+    private final Map<String, QueuedFrame> conflatableFrames = new HashMap<>();
+
+    private int queuedBytes;
+
+    /** A write of this session is in flight: either a direct write of a sender or the drain task. */
+    private boolean writing;
+
+    private volatile long sendStartNanos;
+
+    private volatile boolean limitExceeded;
+
+    /**
+     * Create the slow-consumer session.
+     *
+     * @param session the session to decorate.
+     * @param rules the slow-consumer rules, the first matching rule wins.
+     * @param bufferSizeLimit the maximum number of queued bytes.
+     * @param sendTimeLimit the maximum time in milliseconds of one write.
+     * @param writerExecutor the executor of the drain tasks which write the queued frames.
+     * @param counters the counters of the policy actions.
+     */
+    public SlowConsumerWebSocketSession(final WebSocketSession session, final List<SlowConsumerRule> rules, final int bufferSizeLimit,
+            final int sendTimeLimit, final TaskExecutor writerExecutor, final SlowConsumerCounters counters) {
+        super(session);
+        this.rules = rules;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sendTimeLimitNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeLimit);
+        this.writerExecutor = writerExecutor;
+        this.counters = counters;
+    }
+
+    /**
+     * Gets the number of queued, not yet written bytes.
+     *
+     * @return the number of queued bytes
+     */
+    public synchronized int getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    @Override
+    public void sendMessage(final WebSocketMessage<?> message) throws IOException {
+        if (limitExceeded) {
+            return;
+        }
+        synchronized (this) {
+            if (writing) {
+                enqueue(message);
+                return;
+            }
+            writing = true;
+        }
+        sendStartNanos = System.nanoTime();
+        try {
+            super.sendMessage(message);
+        } catch (IOException | RuntimeException ex) {
+            limitExceeded = true;
+            discard();
+            throw ex;
+        } finally {
+            sendStartNanos = 0;
+            startDrainOrStopWriting();
+        }
+    }
+
+    /**
+     * After a direct write: hand the frames queued meanwhile over to a drain task, so the sender is not blocked any longer.
+     */
+    private void startDrainOrStopWriting() {
+        synchronized (this) {
+            writing = !queue.isEmpty() && !limitExceeded;
+            if (!writing) {
+                return;
+            }
+        }
+        try {
+            writerExecutor.execute(this::drain);
+        } catch (TaskRejectedException ex) {
+            LOG.debug("Failed to start the drain task of session {}: {}", getId(), ex.getMessage());
+            limitExceeded = true;
+            discard();
+            closeQuietly();
+        }
+    }
+
+    /**
+     * Discard the queued frames, e.g. after the session was closed.
+     */
+    public synchronized void discard() {
+        queue.clear();
+        conflatableFrames.clear();
+        queuedBytes = 0;
+    }
+
+    private void enqueue(final WebSocketMessage<?> message) throws SessionLimitExceededException {
+        long sendStart = sendStartNanos;
+        if (sendStart != 0 && System.nanoTime() - sendStart > sendTimeLimitNanos) {
+            terminate(SlowConsumerPolicy.BUFFER, "Send time limit exceeded");
+        }
+        int size = message.getPayloadLength();
+        String header = headerOf(message);
+        String destination = header != null ? headerValue(header, "destination") : null;
+        SlowConsumerRule rule = destination != null ? findRule(destination) : null;
+        SlowConsumerPolicy policy = rule != null ? rule.getPolicy() : SlowConsumerPolicy.BUFFER;
+
+        String conflationKey = null;
+        if (policy == SlowConsumerPolicy.CONFLATE) {
+            conflationKey = destination + '\n' + headerValue(header, "subscription");
+            QueuedFrame queued = conflatableFrames.get(conflationKey);
+            if (queued != null) {
+                queuedBytes += size - queued.size;
+                queued.message = message;
+                queued.size = size;
+                counters.increment(SlowConsumerPolicy.CONFLATE);
+                return;
+            }
+        }
+        int ruleLimit = rule != null && rule.getBufferSizeLimit() != null ? rule.getBufferSizeLimit() : bufferSizeLimit;
+        if (queuedBytes + size > ruleLimit) {
+            if (policy == SlowConsumerPolicy.DROP_OLDEST) {
+                dropOldest(ruleLimit - size);
+                if (queuedBytes + size > ruleLimit) {
+                    // nothing more to drop: drop the new frame itself
+                    counters.increment(SlowConsumerPolicy.DROP_OLDEST);
+                    return;
+                }
+            } else if (policy == SlowConsumerPolicy.DISCONNECT) {
+                terminate(SlowConsumerPolicy.DISCONNECT, "Slow consumer of '" + destination + "'");
+            }
+        }
+        if (queuedBytes + size > bufferSizeLimit) {
+            terminate(SlowConsumerPolicy.BUFFER, "Buffer size " + (queuedBytes + size) + " bytes exceeds the send buffer size limit");
+        }
+        QueuedFrame frame = new QueuedFrame(message, size, policy, conflationKey);
+        queue.addLast(frame);
+        queuedBytes += size;
+        if (conflationKey != null) {
+            conflatableFrames.put(conflationKey, frame);
+        }
+    }
+
+    private void dropOldest(final int maxQueuedBytes) {
+        Iterator<QueuedFrame> oldest = queue.iterator();
+        while (oldest.hasNext() && queuedBytes > maxQueuedBytes) {
+            QueuedFrame frame = oldest.next();
+            if (frame.policy == SlowConsumerPolicy.DROP_OLDEST || frame.policy == SlowConsumerPolicy.CONFLATE) {
+                oldest.remove();
+                removed(frame);
+                counters.increment(SlowConsumerPolicy.DROP_OLDEST);
+            }
+        }
+    }
+
+    private void terminate(final SlowConsumerPolicy policy, final String reason) throws SessionLimitExceededException {
+        limitExceeded = true;
+        discard();
+        counters.increment(policy);
+        throw new SessionLimitExceededException(reason + " for session " + getId(), CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    private synchronized QueuedFrame poll() {
+        QueuedFrame frame = queue.pollFirst();
+        if (frame == null || limitExceeded) {
+            writing = false;
+            return null;
+        }
+        removed(frame);
+        return frame;
+    }
+
+    private void removed(final QueuedFrame frame) {
+        queuedBytes -= frame.size;
+        if (frame.conflationKey != null) {
+            conflatableFrames.remove(frame.conflationKey, frame);
+        }
+    }
+
+    private void drain() {
+        QueuedFrame frame;
+        while ((frame = poll()) != null) {
+            sendStartNanos = System.nanoTime();
+            try {
+                super.sendMessage(frame.message);
+            } catch (IOException | RuntimeException ex) {
+                LOG.debug("Failed to send the queued frames of session {}: {}", getId(), ex.getMessage());
+                limitExceeded = true;
+                discard();
+                closeQuietly();
+            } finally {
+                sendStartNanos = 0;
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (IOException ex) {
+            LOG.debug("Failed to close session {}: {}", getId(), ex.getMessage());
+        }
+    }
+
+    private SlowConsumerRule findRule(final String destination) {
+        for (SlowConsumerRule rule : rules) {
+            if (rule.getDestinationPatterns().matcher(destination).matches()) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the header part of the STOMP frame (until the empty line).
+     */
+    private static String headerOf(final WebSocketMessage<?> message) {
+        if (message instanceof TextMessage) {
+            String frame = ((TextMessage) message).getPayload();
+            int end = frame.indexOf("\n\n");
+            return end >= 0 ? frame.substring(0, end + 1) : frame;
+        }
+        if (message instanceof BinaryMessage) {
+            ByteBuffer frame = ((BinaryMessage) message).getPayload().duplicate();
+            int end = frame.position();
+            while (end < frame.limit() - 1 && !(frame.get(end) == '\n' && frame.get(end + 1) == '\n')) {
+                end++;
+            }
+            byte[] header = new byte[end + 1 - frame.position()];
+            frame.get(header, 0, Math.min(header.length, frame.remaining()));
+            return new String(header, StandardCharsets.UTF_8);
+        }
+        return null;
+    }
+
+    private static String headerValue(final String header, final String name) {
+        String prefix = "\n" + name + ":";
+        int start = header.indexOf(prefix);
+        if (start < 0) {
+            return null;
+        }
+        int valueStart = start + prefix.length();
+        int valueEnd = header.indexOf('\n', valueStart);
+        return header.substring(valueStart, valueEnd >= 0 ? valueEnd : header.length());
+    }
+
+    /**
+     * A queued frame; the message of a CONFLATE frame is replaced with newer frames of the same destination and subscription.
+     */
+    private static final class QueuedFrame {
+
+        private WebSocketMessage<?> message;
+
+        private int size;
+
+        private final SlowConsumerPolicy policy;
+
+        private final String conflationKey;
+
+        QueuedFrame(final WebSocketMessage<?> message, final int size, final SlowConsumerPolicy policy, final String conflationKey) {
+            this.message = message;
+            this.size = size;
+            this.policy = policy;
+            this.conflationKey = conflationKey;
+        }
+    }
+
+}
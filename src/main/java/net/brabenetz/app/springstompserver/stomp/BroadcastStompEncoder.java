@@ -0,0 +1,221 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.stomp;
+
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A {@link StompEncoder} with a header-encoding cache, which encodes the shared part of a broadcast MESSAGE frame only once for all subscribers.
+ * <p>
+ * If the simple broker fans out one message to many subscribers, each subscriber gets its own message with the same payload instance, and only the
+ * "subscription" and "message-id" headers are different. This encoder writes these two headers first, followed by the shared rest of the frame (all
+ * other headers, content-length and payload), which is encoded once and then only copied for the following subscribers.<br>
+ * Only the encoding is saved: each subscriber still gets its own frame with a copy of the shared part, because the WebSocket session sends the
+ * encoded frame as one message.
+ * <p>
+ * The shared part is cached per thread (the last encoded frame of the clientOutboundChannel thread), and reused if the payload is the same instance and
+ * the other headers are equal. All other frames are encoded by the {@link StompEncoder}.
+ */
+public class BroadcastStompEncoder extends StompEncoder {
+
+    private static final String SUBSCRIPTION_HEADER = "subscription";
+
+    private static final String MESSAGE_ID_HEADER = "message-id";
+
+    private static final String CONTENT_LENGTH_HEADER = "content-length";
+
+    private static final byte[] MESSAGE_COMMAND = (StompCommand.MESSAGE.name() + "\n").getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] SUBSCRIPTION_PREFIX = (SUBSCRIPTION_HEADER + ":").getBytes(StandardCharsets.UTF_8);
+
+    private static final byte[] MESSAGE_ID_PREFIX = (MESSAGE_ID_HEADER + ":").getBytes(StandardCharsets.UTF_8);
+
+    private static final byte LINE_FEED = '\n';
+
+    private final ThreadLocal<SharedFrame> lastSharedFrame = new ThreadLocal<>();
+
+    private final LongAdder sharedFrameHitCount = new LongAdder();
+
+    private final LongAdder sharedFrameMissCount = new LongAdder();
+
+    @Override
+    public byte[] encode(final Map<String, Object> headers, final byte[] payload) {
+        if (StompHeaderAccessor.getCommand(headers) != StompCommand.MESSAGE) {
+            return super.encode(headers, payload);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, List<String>> nativeHeaders = (Map<String, List<String>>) headers.get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+        String subscription = getSingleValue(nativeHeaders, SUBSCRIPTION_HEADER);
+        String messageId = getSingleValue(nativeHeaders, MESSAGE_ID_HEADER);
+        if (subscription == null || messageId == null) {
+            return super.encode(headers, payload);
+        }
+
+        SharedFrame sharedFrame = lastSharedFrame.get();
+        if (sharedFrame != null && sharedFrame.matches(nativeHeaders, payload)) {
+            sharedFrameHitCount.increment();
+        } else {
+            sharedFrame = new SharedFrame(nativeHeaders, payload);
+            sharedFrame.bytes = encodeSharedPart(sharedFrame.headers, payload);
+            lastSharedFrame.set(sharedFrame);
+            sharedFrameMissCount.increment();
+        }
+
+        byte[] subscriptionBytes = escape(subscription).getBytes(StandardCharsets.UTF_8);
+        byte[] messageIdBytes = escape(messageId).getBytes(StandardCharsets.UTF_8);
+        byte[] shared = sharedFrame.bytes;
+        byte[] frame = new byte[MESSAGE_COMMAND.length + SUBSCRIPTION_PREFIX.length + subscriptionBytes.length + 1
+                + MESSAGE_ID_PREFIX.length + messageIdBytes.length + 1 + shared.length];
+        int position = 0;
+        position = append(frame, position, MESSAGE_COMMAND);
+        position = append(frame, position, SUBSCRIPTION_PREFIX);
+        position = append(frame, position, subscriptionBytes);
+        frame[position++] = LINE_FEED;
+        position = append(frame, position, MESSAGE_ID_PREFIX);
+        position = append(frame, position, messageIdBytes);
+        frame[position++] = LINE_FEED;
+        append(frame, position, shared);
+        return frame;
+    }
+
+    /**
+     * Gets the number of MESSAGE frames which reused the shared part of the previous frame.
+     *
+     * @return the number of MESSAGE frames which reused the shared part
+     */
+    public long getSharedFrameHitCount() {
+        return sharedFrameHitCount.sum();
+    }
+
+    /**
+     * Gets the number of MESSAGE frames for which the shared part had to be encoded.
+     *
+     * @return the number of MESSAGE frames for which the shared part had to be encoded
+     */
+    public long getSharedFrameMissCount() {
+        return sharedFrameMissCount.sum();
+    }
+
+    /**
+     * Encode the frame without subscription and message-id with the {@link StompEncoder}, and strip the command line.
+     */
+    private byte[] encodeSharedPart(final Map<String, List<String>> sharedHeaders, final byte[] payload) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setHeader(NativeMessageHeaderAccessor.NATIVE_HEADERS, sharedHeaders);
+        byte[] frame = super.encode(accessor.getMessageHeaders(), payload);
+        byte[] shared = new byte[frame.length - MESSAGE_COMMAND.length];
+        System.arraycopy(frame, MESSAGE_COMMAND.length, shared, 0, shared.length);
+        return shared;
+    }
+
+    private static String getSingleValue(final Map<String, List<String>> nativeHeaders, final String name) {
+        List<String> values = nativeHeaders != null ? nativeHeaders.get(name) : null;
+        return values != null && values.size() == 1 ? values.get(0) : null;
+    }
+
+    private static boolean isSharedHeader(final String name) {
+        return !SUBSCRIPTION_HEADER.equals(name) && !MESSAGE_ID_HEADER.equals(name) && !CONTENT_LENGTH_HEADER.equals(name);
+    }
+
+    private static int append(final byte[] target, final int position, final byte[] source) {
+        System.arraycopy(source, 0, target, position, source.length);
+        return position + source.length;
+    }
+
+    /**
+     * The same header value escaping as the {@link StompEncoder} for MESSAGE frames (STOMP 1.2 "Value Encoding").
+     */
+    static String escape(final String value) {
+        StringBuilder sb = null;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String replacement;
+            if (c == '\\') {
+                replacement = "\\\\";
+            } else if (c == ':') {
+                replacement = "\\c";
+            } else if (c == '\n') {
+                replacement = "\\n";
+            } else if (c == '\r') {
+                replacement = "\\r";
+            } else {
+                replacement = null;
+            }
+            if (replacement != null) {
+                if (sb == null) {
+                    sb = new StringBuilder(value.length() + 8);
+                    sb.append(value, 0, i);
+                }
+                sb.append(replacement);
+            } else if (sb != null) {
+                sb.append(c);
+            }
+        }
+        return sb != null ? sb.toString() : value;
+    }
+
+    /**
+     * The encoded frame part which is shared by all subscribers.
+     */
+    private static final class SharedFrame {
+
+        private final Map<String, List<String>> headers = new LinkedHashMap<>();
+
+        private final byte[] payload;
+
+        private byte[] bytes;
+
+        SharedFrame(final Map<String, List<String>> nativeHeaders, final byte[] payload) {
+            nativeHeaders.forEach((name, values) -> {
+                if (isSharedHeader(name)) {
+                    headers.put(name, new ArrayList<>(values));
+                }
+            });
+            this.payload = payload;
+        }
+
+        private boolean matches(final Map<String, List<String>> nativeHeaders, final byte[] otherPayload) {
+            if (payload != otherPayload) {
+                return false;
+            }
+            int sharedHeaderCount = 0;
+            for (Map.Entry<String, List<String>> entry : nativeHeaders.entrySet()) {
+                if (isSharedHeader(entry.getKey())) {
+                    sharedHeaderCount++;
+                    if (!entry.getValue().equals(headers.get(entry.getKey()))) {
+                        return false;
+                    }
+                }
+            }
+            return sharedHeaderCount == headers.size();
+        }
+    }
+
+}
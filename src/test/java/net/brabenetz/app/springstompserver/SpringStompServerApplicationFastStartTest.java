@@ -0,0 +1,88 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver;
+
+import net.brabenetz.app.springstompserver.broker.TrieSubscriptionRegistry;
+import net.brabenetz.app.springstompserver.testtools.WebSocketStompSessionHandler;
+import net.brabenetz.app.springstompserver.testtools.WebSocketUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class SpringStompServerApplicationFastStartTest {
+
+    private ConfigurableApplicationContext context;
+
+    @AfterEach
+    public void close() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    public void testFastStartWithSingleLazyContext() throws Exception {
+        context = SpringStompServerApplication.start(new String[] {"--" + SpringStompServerApplication.FAST_START_PROPERTY + "=true", "--server.port=0",
+                "--spring-stomp-server.broker-subscription-registry=TRIE" });
+
+        assertThat(context.getParent()).isNull();
+        assertThat(context.getBeanFactory().getBeanDefinition("jacksonObjectMapper").isLazyInit()).isTrue();
+        assertThat(context.getBeanFactory().getBeanDefinition("webSocketConfig").isLazyInit()).isFalse();
+        // the broker is created before the subscription registry is set
+        assertThat(context.getBean(SimpleBrokerMessageHandler.class).getSubscriptionRegistry()).isInstanceOf(TrieSubscriptionRegistry.class);
+
+        // the websocket endpoint works as without fast-start
+        int port = ((WebServerApplicationContext) context).getWebServer().getPort();
+        StompSession session = WebSocketUtils.createStompClient()
+                .connect("ws://localhost:" + port + "/websocket", new WebSocketStompSessionHandler("fast-start"))
+                .get(5, TimeUnit.SECONDS);
+        CountDownLatch doneSignal = new CountDownLatch(1);
+        List<String> messages = new CopyOnWriteArrayList<>();
+        session.subscribe("/topic/test/fast-start", WebSocketUtils.createStompFrameHandler((StompHeaders headers, String payload) -> {
+            messages.add(payload);
+            doneSignal.countDown();
+        }));
+        session.send("/topic/test/fast-start", "test");
+
+        assertThat(doneSignal.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(messages).containsExactly("test");
+        session.disconnect();
+    }
+
+    @Test
+    public void testDefaultStartWithParentContext() {
+        context = SpringStompServerApplication.start(new String[] {"--server.port=0" });
+
+        assertThat(context.getParent()).isNotNull();
+        assertThat(context.getBeanFactory().getBeanDefinition("jacksonObjectMapper").isLazyInit()).isFalse();
+    }
+
+}
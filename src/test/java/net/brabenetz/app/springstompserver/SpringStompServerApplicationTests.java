@@ -24,6 +24,7 @@ import com.github.tomakehurst.wiremock.client.WireMock;
 import com.maciejwalkowiak.wiremock.spring.ConfigureWireMock;
 import com.maciejwalkowiak.wiremock.spring.EnableWireMock;
 import com.maciejwalkowiak.wiremock.spring.InjectWireMock;
+import net.brabenetz.app.springstompserver.broker.TrieSubscriptionRegistry;
 import net.brabenetz.app.springstompserver.config.WebSocketInitLoadConfigProperties;
 import net.brabenetz.app.springstompserver.testtools.WebSocketPayload;
 import net.brabenetz.app.springstompserver.testtools.WebSocketStompSessionHandler;
@@ -34,26 +35,32 @@ import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.actuate.metrics.AutoConfigureMetrics;
 import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.web.server.LocalServerPort;
 import org.springframework.core.env.Environment;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
 import org.springframework.messaging.simp.stomp.StompHeaders;
 import org.springframework.messaging.simp.stomp.StompSession;
 import org.springframework.messaging.simp.stomp.StompSession.Subscription;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
 import org.springframework.util.concurrent.ListenableFuture;
+import org.springframework.web.client.RestTemplate;
 import org.springframework.web.socket.WebSocketHttpHeaders;
 import org.springframework.web.socket.messaging.WebSocketStompClient;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
 
 import static org.assertj.core.api.Assertions.assertThat;
 
 @SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@AutoConfigureMetrics
 @EnableWireMock(@ConfigureWireMock(name = "wiremock", property = "wiremock.baseurl"))
 class SpringStompServerApplicationTests {
 
@@ -71,12 +78,17 @@ class SpringStompServerApplicationTests {
     @Autowired
     private WebSocketInitLoadConfigProperties webSocketInitLoadConfigProperties;
 
+    @Autowired
+    private SimpleBrokerMessageHandler simpleBrokerMessageHandler;
+
     private StompSession currentSession;
+    private List<StompSession> otherSessions;
     private List<Subscription> subscriptions;
 
     @BeforeEach
     public void init() {
         currentSession = null;
+        otherSessions = new ArrayList<>();
         subscriptions = new ArrayList<>();
 
         String newProxyUrl = webSocketInitLoadConfigProperties.getProxyUrl()
@@ -91,6 +103,7 @@ class SpringStompServerApplicationTests {
         if (currentSession != null) {
             currentSession.disconnect();
         }
+        otherSessions.forEach(session -> session.disconnect());
     }
 
     @Test
@@ -207,4 +220,206 @@ class SpringStompServerApplicationTests {
         assertThat(headers.get("destination")).containsExactly("/user/123456/topic/test/1234");
         assertThat(headers.get("content-type")).containsExactly("application/json");
     }
+
+    @Test
+    public void testSlowInitialLoadDoesNotBlockTheSession() throws Exception {
+        // prepare Wiremock with a slow response:
+        wiremock.stubFor(WireMock.get("/mocked-init-load/test/slow").willReturn(
+                WireMock.ok("\"slow\"")
+                        .withHeader("content-type", "application/json")
+                        .withFixedDelay(3000)));
+
+        String clientName = "STOMP-WebSocket";
+        String websocketEndpoint = "ws://localhost:" + port + "/websocket";
+        WebSocketStompClient stompClient = WebSocketUtils.createStompClient();
+
+        // connect to the Websocket
+        WebSocketStompSessionHandler sessionHandler = new WebSocketStompSessionHandler(clientName);
+        ListenableFuture<StompSession> stompClientConnection = stompClient.connect(websocketEndpoint, sessionHandler);
+        currentSession = stompClientConnection.get(1, TimeUnit.SECONDS);
+
+        // Register Subscription with a slow init-load
+        subscriptions.add(currentSession.subscribe("/user/123456/topic/test/slow", WebSocketUtils.createStompFrameHandler((StompHeaders headers, String payload) -> {
+            LOG.info(clientName + " FrameHandler got slow init-load: " + payload);
+        })));
+
+        // Register Subscription without init-load
+        CountDownLatch doneSignal = new CountDownLatch(1);
+        subscriptions.add(currentSession.subscribe("/topic/test/1234", WebSocketUtils.createStompFrameHandler((StompHeaders headers, String payload) -> {
+            LOG.info(clientName + " FrameHandler got new Payload: " + payload);
+            doneSignal.countDown();
+        })));
+
+        // Send Message
+        currentSession.send("/topic/test/1234", "test");
+
+        // The message must be consumed while the init-load is still waiting for the proxy-server
+        doneSignal.await(1, TimeUnit.SECONDS);
+        assertThat(doneSignal.getCount()).describedAs("CountDownLatch").isEqualTo(0);
+    }
+
+    @Test
+    public void testConcurrentInitialLoadsAreCoalesced() throws Exception {
+        // prepare Wiremock with a response which is slow enough that all subscriptions are waiting for it:
+        wiremock.stubFor(WireMock.get("/mocked-init-load/test/coalesced").willReturn(
+                WireMock.ok("\"coalesced\"")
+                        .withHeader("content-type", "application/json")
+                        .withFixedDelay(500)));
+
+        String websocketEndpoint = "ws://localhost:" + port + "/websocket";
+        WebSocketStompClient stompClient = WebSocketUtils.createStompClient();
+
+        int clientCount = 3;
+        CountDownLatch doneSignal = new CountDownLatch(clientCount);
+        for (int i = 0; i < clientCount; i++) {
+            String clientName = "STOMP-WebSocket-" + i;
+            StompSession session = stompClient.connect(websocketEndpoint, new WebSocketStompSessionHandler(clientName)).get(1, TimeUnit.SECONDS);
+            otherSessions.add(session);
+            CountDownLatch clientSignal = new CountDownLatch(1);
+            subscriptions.add(session.subscribe("/user/" + i + "/topic/test/coalesced", WebSocketUtils.createStompFrameHandler((StompHeaders headers, String payload) -> {
+                LOG.info(clientName + " FrameHandler got new Payload: " + payload);
+                if (clientSignal.getCount() > 0) {
+                    clientSignal.countDown();
+                    doneSignal.countDown();
+                }
+            })));
+        }
+
+        // Wait until all init-loads are consumed
+        doneSignal.await(2, TimeUnit.SECONDS);
+        assertThat(doneSignal.getCount()).describedAs("CountDownLatch").isEqualTo(0);
+
+        // only one request to the proxy-server
+        wiremock.verify(1, WireMock.getRequestedFor(WireMock.urlEqualTo("/mocked-init-load/test/coalesced")));
+    }
+
+    @Test
+    public void testInitialLoadIsOnlySentToTheSubscribingSession() throws Exception {
+        wiremock.stubFor(WireMock.get("/mocked-init-load/test/targeted").willReturn(
+                WireMock.ok("\"targeted\"")
+                        .withHeader("content-type", "application/json")));
+
+        String websocketEndpoint = "ws://localhost:" + port + "/websocket";
+        WebSocketStompClient stompClient = WebSocketUtils.createStompClient();
+        String destination = "/user/123456/topic/test/targeted";
+
+        // first subscriber gets its init-load
+        currentSession = stompClient.connect(websocketEndpoint, new WebSocketStompSessionHandler("STOMP-WebSocket-first")).get(1, TimeUnit.SECONDS);
+        CountDownLatch firstSignal = new CountDownLatch(1);
+        List<String> firstMessages = new CopyOnWriteArrayList<>();
+        subscriptions.add(currentSession.subscribe(destination, WebSocketUtils.createStompFrameHandler((StompHeaders headers, String payload) -> {
+            firstMessages.add(payload);
+            firstSignal.countDown();
+        })));
+        firstSignal.await(5, TimeUnit.SECONDS);
+        assertThat(firstMessages).containsExactly("targeted");
+
+        // second subscriber of the same destination gets its own init-load
+        StompSession secondSession = stompClient.connect(websocketEndpoint, new WebSocketStompSessionHandler("STOMP-WebSocket-second"))
+                .get(1, TimeUnit.SECONDS);
+        otherSessions.add(secondSession);
+        CountDownLatch secondSignal = new CountDownLatch(1);
+        List<String> secondMessages = new CopyOnWriteArrayList<>();
+        subscriptions.add(secondSession.subscribe(destination, WebSocketUtils.createStompFrameHandler((StompHeaders headers, String payload) -> {
+            secondMessages.add(payload);
+            secondSignal.countDown();
+        })));
+        secondSignal.await(5, TimeUnit.SECONDS);
+        assertThat(secondMessages).containsExactly("targeted");
+
+        // round-trip a message through the first session, so a wrongly fanned-out init-load would have arrived before
+        CountDownLatch broadcastSignal = new CountDownLatch(1);
+        subscriptions.add(currentSession.subscribe("/topic/test/targeted", WebSocketUtils.createStompFrameHandler((StompHeaders headers, String payload) -> {
+            broadcastSignal.countDown();
+        })));
+        currentSession.send("/topic/test/targeted", "broadcast");
+        broadcastSignal.await(5, TimeUnit.SECONDS);
+
+        // the first subscriber got no extra frame from the init-load of the second subscriber
+        assertThat(firstMessages).containsExactly("targeted");
+    }
+
+    @Test
+    public void testRetainedMessageIsSentOnSubscribe() throws Exception {
+        String websocketEndpoint = "ws://localhost:" + port + "/websocket";
+        WebSocketStompClient stompClient = WebSocketUtils.createStompClient();
+        // the publisher asks for a receipt, which needs a scheduler
+        ThreadPoolTaskScheduler receiptScheduler = new ThreadPoolTaskScheduler();
+        receiptScheduler.initialize();
+        stompClient.setTaskScheduler(receiptScheduler);
+        String destination = "/topic/retained/last-value";
+
+        // publish two messages, and wait until the broker delivered both
+        currentSession = stompClient.connect(websocketEndpoint, new WebSocketStompSessionHandler("STOMP-WebSocket-publisher")).get(1, TimeUnit.SECONDS);
+        CountDownLatch publishedSignal = new CountDownLatch(2);
+        subscriptions.add(currentSession.subscribe(destination, WebSocketUtils.createStompFrameHandler((StompHeaders headers, String payload) -> {
+            publishedSignal.countDown();
+        })));
+        currentSession.send(destination, "first");
+        StompHeaders lastHeaders = new StompHeaders();
+        lastHeaders.setDestination(destination);
+        lastHeaders.setReceipt("publisher-receipt");
+        lastHeaders.add("x-test", "retained header");
+        currentSession.send(lastHeaders, "last");
+        assertThat(publishedSignal.await(5, TimeUnit.SECONDS)).isTrue();
+
+        // a new subscriber gets only the last message directly on subscribe
+        StompSession lateSession = stompClient.connect(websocketEndpoint, new WebSocketStompSessionHandler("STOMP-WebSocket-late"))
+                .get(1, TimeUnit.SECONDS);
+        otherSessions.add(lateSession);
+        CountDownLatch retainedSignal = new CountDownLatch(1);
+        List<String> retainedMessages = new CopyOnWriteArrayList<>();
+        List<StompHeaders> retainedHeaders = new CopyOnWriteArrayList<>();
+        subscriptions.add(lateSession.subscribe(destination, WebSocketUtils.createStompFrameHandler((StompHeaders headers, String payload) -> {
+            retainedMessages.add(payload);
+            retainedHeaders.add(headers);
+            retainedSignal.countDown();
+        })));
+        assertThat(retainedSignal.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(retainedMessages).containsExactly("last");
+        // the application headers are retained, but not the frame headers of the publisher
+        assertThat(retainedHeaders.get(0).getFirst("x-test")).isEqualTo("retained header");
+        assertThat(retainedHeaders.get(0).getReceipt()).isNull();
+        assertThat(retainedHeaders.get(0).getSubscription()).isNotNull();
+        receiptScheduler.shutdown();
+    }
+
+    @Test
+    public void testPrometheusMetrics() throws Exception {
+        wiremock.stubFor(WireMock.get("/mocked-init-load/test/metrics").willReturn(
+                WireMock.ok("\"metrics\"")
+                        .withHeader("content-type", "application/json")));
+
+        String websocketEndpoint = "ws://localhost:" + port + "/websocket";
+        WebSocketStompClient stompClient = WebSocketUtils.createStompClient();
+        currentSession = stompClient.connect(websocketEndpoint, new WebSocketStompSessionHandler("STOMP-WebSocket-metrics")).get(5, TimeUnit.SECONDS);
+        CountDownLatch doneSignal = new CountDownLatch(2);
+        subscriptions.add(currentSession.subscribe("/user/123456/topic/test/metrics", WebSocketUtils.createStompFrameHandler((StompHeaders headers,
+                String payload) -> doneSignal.countDown())));
+        subscriptions.add(currentSession.subscribe("/topic/test/metrics", WebSocketUtils.createStompFrameHandler((StompHeaders headers,
+                String payload) -> doneSignal.countDown())));
+        currentSession.send("/topic/test/metrics", "test");
+        assertThat(doneSignal.await(5, TimeUnit.SECONDS)).isTrue();
+
+        String metrics = new RestTemplate().getForObject("http://localhost:" + port + "/actuator/prometheus", String.class);
+
+        assertThat(metrics).containsPattern("stomp_sessions\\{transport=\"websocket\",\\} [1-9]");
+        assertThat(metrics).containsPattern("stomp_subscriptions\\{prefix=\"/user\",\\} [1-9]");
+        assertThat(metrics).containsPattern("stomp_subscriptions\\{prefix=\"/topic\",\\} [1-9]");
+        assertThat(metrics).containsPattern("stomp_messages_total\\{direction=\"in\",\\} [1-9]");
+        assertThat(metrics).containsPattern("stomp_messages_total\\{direction=\"out\",\\} [1-9]");
+        assertThat(metrics).containsPattern("stomp_initload_seconds_count\\{outcome=\"success\",\\} [1-9]");
+        assertThat(metrics).containsPattern("stomp_initload_payload_bytes_sum [1-9]");
+        assertThat(metrics).contains("stomp_channel_tasks_queued{channel=\"inbound\",}");
+        assertThat(metrics).contains("stomp_channel_tasks_completed_total{channel=\"outbound\",}");
+        assertThat(metrics).containsPattern("stomp_latency_seconds_count\\{prefix=\"/topic\",stage=\"broker\",\\} [1-9]");
+        assertThat(metrics).containsPattern("stomp_latency_seconds_count\\{prefix=\"/topic\",stage=\"outbound-queue\",\\} [1-9]");
+        assertThat(metrics).containsPattern("stomp_latency_seconds_count\\{prefix=\"/topic\",stage=\"socket-write\",\\} [1-9]");
+        assertThat(metrics).contains("stomp_latency_seconds{prefix=\"/topic\",stage=\"socket-write\",quantile=\"0.99\",}");
+    }
+
+    @Test
+    public void testTrieSubscriptionRegistryIsUsed() {
+        assertThat(simpleBrokerMessageHandler.getSubscriptionRegistry()).isInstanceOf(TrieSubscriptionRegistry.class);
+    }
 }
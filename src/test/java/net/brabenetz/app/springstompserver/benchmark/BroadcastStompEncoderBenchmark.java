@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.benchmark;
+
+import net.brabenetz.app.springstompserver.stomp.BroadcastStompEncoder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link StompEncoder} with the {@link BroadcastStompEncoder} for one message which is fanned out to many subscribers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BroadcastStompEncoderBenchmark {
+
+    private static final int SUBSCRIBER_COUNT = 1000;
+
+    @Param({"100", "4096", "65536"})
+    private int payloadSize;
+
+    private final StompEncoder stompEncoder = new StompEncoder();
+
+    private final BroadcastStompEncoder broadcastEncoder = new BroadcastStompEncoder();
+
+    private byte[] payload;
+
+    private Map<String, Object>[] subscriberHeaders;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'x');
+        subscriberHeaders = new Map[SUBSCRIBER_COUNT];
+        for (int i = 0; i < SUBSCRIBER_COUNT; i++) {
+            StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+            accessor.setDestination("/topic/orders/4711");
+            accessor.setNativeHeader("content-type", "application/json");
+            accessor.setSubscriptionId("sub-0");
+            accessor.setMessageId("00001111-2222-3333-4444-555566667777-" + i);
+            subscriberHeaders[i] = accessor.getMessageHeaders();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SUBSCRIBER_COUNT)
+    public void stompEncoder(final Blackhole blackhole) {
+        for (Map<String, Object> headers : subscriberHeaders) {
+            blackhole.consume(stompEncoder.encode(headers, payload));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(SUBSCRIBER_COUNT)
+    public void broadcastEncoder(final Blackhole blackhole) {
+        for (Map<String, Object> headers : subscriberHeaders) {
+            blackhole.consume(broadcastEncoder.encode(headers, payload));
+        }
+    }
+
+    /**
+     * Just run this class as application.
+     */
+    public static void main(final String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(BroadcastStompEncoderBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
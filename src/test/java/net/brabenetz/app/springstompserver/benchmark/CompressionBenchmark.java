@@ -0,0 +1,145 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Measures the CPU time and the compressed size of permessage-deflate (raw deflate with sync-flush, like Tomcat) for JSON payloads, per compression level
+ * and with or without context takeover.
+ * <p>
+ * The "compressedBytes" and "uncompressedBytes" counters give the bandwidth: the ratio of both is the size of the compressed messages on the wire.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompressionBenchmark {
+
+    private static final int MESSAGE_COUNT = 64;
+
+    @Param({"1", "6", "9"})
+    private int level;
+
+    @Param({"128", "1024", "16384"})
+    private int payloadSize;
+
+    @Param({"true", "false"})
+    private boolean contextTakeover;
+
+    private byte[][] payloads;
+
+    private byte[] buffer;
+
+    private Deflater deflater;
+
+    private int index;
+
+    /**
+     * The sizes of the compressed and uncompressed payloads, reported by JMH as secondary results.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Bandwidth {
+
+        public long compressedBytes;
+
+        public long uncompressedBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            compressedBytes = 0;
+            uncompressedBytes = 0;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        Random random = new Random(4711);
+        payloads = new byte[MESSAGE_COUNT][];
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            StringBuilder json = new StringBuilder("[");
+            while (json.length() < payloadSize - 100) {
+                json.append("{\"orderId\":").append(random.nextInt(1_000_000))
+                        .append(",\"symbol\":\"SYM").append(random.nextInt(50))
+                        .append("\",\"price\":").append(random.nextInt(100_000) / 100.0)
+                        .append(",\"quantity\":").append(random.nextInt(1000))
+                        .append(",\"side\":\"").append(random.nextBoolean() ? "BUY" : "SELL").append("\"},");
+            }
+            json.setLength(json.length() - 1);
+            payloads[i] = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        }
+        buffer = new byte[payloadSize * 2 + 64];
+        deflater = new Deflater(level, true);
+    }
+
+    @TearDown
+    public void tearDown() {
+        deflater.end();
+    }
+
+    @Benchmark
+    public int compress(final Bandwidth bandwidth) {
+        byte[] payload = payloads[index++ % MESSAGE_COUNT];
+        if (!contextTakeover) {
+            deflater.reset();
+        }
+        deflater.setInput(payload);
+        int length = deflater.deflate(buffer, 0, buffer.length, Deflater.SYNC_FLUSH);
+        // the trailing 0x00 0x00 0xFF 0xFF of the sync-flush is not sent (RFC 7692)
+        bandwidth.compressedBytes += length - 4;
+        bandwidth.uncompressedBytes += payload.length;
+        return length;
+    }
+
+    /**
+     * Just run this class as application.
+     */
+    public static void main(final String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(CompressionBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,109 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.benchmark;
+
+import net.brabenetz.app.springstompserver.config.ExecutorMode;
+import net.brabenetz.app.springstompserver.config.VirtualThreadTaskExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput (tasks per second) of the POOLED and VIRTUAL {@link ExecutorMode} with tasks which block for a short time, like a
+ * message handler which waits for a slow WebSocket client.
+ * <p>
+ * On Java versions before 21 both modes use the same thread pool.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutorModeBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    private static final int CORE_POOL_SIZE = 8;
+
+    @Param({"POOLED", "VIRTUAL"})
+    private ExecutorMode executorMode;
+
+    private ThreadPoolTaskExecutor executor;
+
+    @Setup
+    public void setup() {
+        executor = executorMode == ExecutorMode.VIRTUAL ? new VirtualThreadTaskExecutor() : new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(CORE_POOL_SIZE);
+        executor.setThreadNamePrefix("benchmark-");
+        executor.initialize();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void executeBlockingTasks() throws InterruptedException {
+        CountDownLatch doneSignal = new CountDownLatch(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            executor.execute(() -> {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                }
+                doneSignal.countDown();
+            });
+        }
+        doneSignal.await();
+    }
+
+    /**
+     * Just run this class as application.
+     */
+    public static void main(final String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(ExecutorModeBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
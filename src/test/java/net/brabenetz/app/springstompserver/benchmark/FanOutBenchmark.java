@@ -0,0 +1,115 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the fan-out of one published message by the simple broker to 1 to N subscribers of the same destination (synchronous channels, so the
+ * score is the whole cost of one publish).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FanOutBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    private int subscriberCount;
+
+    private SimpleBrokerMessageHandler broker;
+
+    private Blackhole blackhole;
+
+    private Message<?> message;
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        this.blackhole = blackhole;
+        ExecutorSubscribableChannel inboundChannel = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel outboundChannel = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel();
+        broker = new SimpleBrokerMessageHandler(inboundChannel, outboundChannel, brokerChannel, Collections.singletonList("/topic"));
+        broker.start();
+        outboundChannel.subscribe(outbound -> this.blackhole.consume(outbound));
+
+        for (int s = 0; s < subscriberCount; s++) {
+            broker.handleMessage(message(SimpMessageType.CONNECT, "session-" + s, null));
+            broker.handleMessage(message(SimpMessageType.SUBSCRIBE, "session-" + s, "/topic/orders/4711"));
+        }
+        message = message(SimpMessageType.MESSAGE, null, "/topic/orders/4711");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        broker.stop();
+    }
+
+    @Benchmark
+    public void publish() {
+        broker.handleMessage(message);
+    }
+
+    private static Message<?> message(final SimpMessageType type, final String sessionId, final String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(sessionId != null ? "sub-0" : null);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage("payload", accessor.getMessageHeaders());
+    }
+
+    /**
+     * Just run this class as application.
+     */
+    public static void main(final String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(FanOutBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,101 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.benchmark;
+
+import net.brabenetz.app.springstompserver.config.InitLoadRule;
+import net.brabenetz.app.springstompserver.config.InitLoadRuleIndex;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the {@link InitLoadRuleIndex} with a linear scan over all rules, for a destination which matches the last configured rule.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InitLoadRuleIndexBenchmark {
+
+    @Param({"1", "10", "100"})
+    private int ruleCount;
+
+    private List<InitLoadRule> rules;
+
+    private InitLoadRuleIndex index;
+
+    private String destination;
+
+    @Setup
+    public void setup() {
+        rules = new ArrayList<>();
+        for (int i = 0; i < ruleCount; i++) {
+            rules.add(new InitLoadRule(Pattern.compile("^/topic/family" + i + "/(.*)$"), "http://localhost:8181/family" + i + "/${group-1}"));
+        }
+        index = new InitLoadRuleIndex(rules);
+        destination = "/topic/family" + (ruleCount - 1) + "/orders/4711";
+    }
+
+    @Benchmark
+    public InitLoadRule linearScan() {
+        for (InitLoadRule rule : rules) {
+            Matcher matcher = rule.getDestinationPatterns().matcher(destination);
+            if (matcher.matches()) {
+                return rule;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public InitLoadRule index() {
+        return index.findMatch(destination).getRule();
+    }
+
+    /**
+     * Just run this class as application.
+     */
+    public static void main(final String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(InitLoadRuleIndexBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,87 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.benchmark;
+
+import net.brabenetz.app.springstompserver.config.ProxyUrlTemplate;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the precompiled {@link ProxyUrlTemplate} with the previous per-subscription String.replaceAll approach.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyUrlTemplateBenchmark {
+
+    private static final String PROXY_URL = "http://localhost:8181/mocked-init-load/${group-2}?user=${group-1}";
+
+    private final Pattern destinationPattern = Pattern.compile("^/user/([^/]+)/topic/(.*)$");
+
+    private final String destination = "/user/00001111-2222-3333-4444-555566667777/topic/orders/4711";
+
+    private final ProxyUrlTemplate template = ProxyUrlTemplate.compile(PROXY_URL);
+
+    @Benchmark
+    public String replaceAll() {
+        Matcher matcher = destinationPattern.matcher(destination);
+        matcher.matches();
+        String proxyUrl = PROXY_URL;
+        for (int i = 1; i <= matcher.groupCount(); i++) {
+            proxyUrl = proxyUrl.replaceAll("\\$\\{group-" + i + "\\}", matcher.group(i));
+        }
+        return proxyUrl;
+    }
+
+    @Benchmark
+    public String template() {
+        Matcher matcher = destinationPattern.matcher(destination);
+        matcher.matches();
+        return template.expand(destination, matcher);
+    }
+
+    /**
+     * Just run this class as application.
+     */
+    public static void main(final String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(ProxyUrlTemplateBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
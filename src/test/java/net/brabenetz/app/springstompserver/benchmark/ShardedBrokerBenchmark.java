@@ -0,0 +1,148 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.benchmark;
+
+import net.brabenetz.app.springstompserver.broker.ShardedSubscriptionRegistry;
+import net.brabenetz.app.springstompserver.broker.ShardedTaskExecutor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput (published messages per second) of the simple broker with 1 to N {@link ShardedTaskExecutor} lanes.
+ * <p>
+ * Each published message is fanned out to all sessions which subscribed the destination.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ShardedBrokerBenchmark {
+
+    private static final int BATCH_SIZE = 10000;
+
+    private static final int DESTINATION_COUNT = 64;
+
+    private static final int SESSION_COUNT = 16;
+
+    @Param({"1", "2", "4", "8"})
+    private int shardCount;
+
+    private ShardedTaskExecutor executor;
+
+    private ExecutorSubscribableChannel brokerChannel;
+
+    private SimpleBrokerMessageHandler broker;
+
+    private Message<?>[] messages;
+
+    private volatile CountDownLatch doneSignal;
+
+    @Setup
+    public void setup() {
+        executor = new ShardedTaskExecutor(shardCount);
+        executor.setThreadNamePrefix("benchmark-");
+        executor.initialize();
+
+        ExecutorSubscribableChannel inboundChannel = new ExecutorSubscribableChannel(executor);
+        ExecutorSubscribableChannel outboundChannel = new ExecutorSubscribableChannel();
+        brokerChannel = new ExecutorSubscribableChannel(executor);
+        broker = new SimpleBrokerMessageHandler(inboundChannel, outboundChannel, brokerChannel, Collections.singletonList("/topic"));
+        broker.setSubscriptionRegistry(new ShardedSubscriptionRegistry(shardCount));
+        broker.start();
+
+        outboundChannel.subscribe(message -> {
+            if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+                doneSignal.countDown();
+            }
+        });
+        for (int s = 0; s < SESSION_COUNT; s++) {
+            broker.handleMessage(message(SimpMessageType.CONNECT, "session-" + s, null, null));
+            for (int d = 0; d < DESTINATION_COUNT; d++) {
+                broker.handleMessage(message(SimpMessageType.SUBSCRIBE, "session-" + s, "sub-" + d, "/topic/orders/" + d));
+            }
+        }
+        messages = new Message<?>[BATCH_SIZE];
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            messages[i] = message(SimpMessageType.MESSAGE, null, null, "/topic/orders/" + (i % DESTINATION_COUNT));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        broker.stop();
+        executor.shutdown();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public void publish() throws InterruptedException {
+        doneSignal = new CountDownLatch(BATCH_SIZE * SESSION_COUNT);
+        for (Message<?> message : messages) {
+            brokerChannel.send(message);
+        }
+        doneSignal.await();
+    }
+
+    private static Message<?> message(final SimpMessageType type, final String sessionId, final String subscriptionId, final String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage("payload", accessor.getMessageHeaders());
+    }
+
+    /**
+     * Just run this class as application.
+     */
+    public static void main(final String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(ShardedBrokerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,111 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the STOMP frame encoding (outbound MESSAGE) and decoding (inbound SEND) for payloads from 100 bytes up to the default message-size-limit
+ * of 64K.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StompCodecBenchmark {
+
+    @Param({"100", "1024", "16384", "65536"})
+    private int payloadSize;
+
+    private final StompEncoder encoder = new StompEncoder();
+
+    private final StompDecoder decoder = new StompDecoder();
+
+    private byte[] payload;
+
+    private Map<String, Object> messageHeaders;
+
+    private byte[] sendFrame;
+
+    @Setup
+    public void setup() {
+        payload = new byte[payloadSize];
+        Arrays.fill(payload, (byte) 'x');
+
+        StompHeaderAccessor message = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        message.setDestination("/topic/orders/4711");
+        message.setNativeHeader("content-type", "application/json");
+        message.setSubscriptionId("sub-0");
+        message.setMessageId("00001111-2222-3333-4444-555566667777-0");
+        messageHeaders = message.getMessageHeaders();
+
+        StompHeaderAccessor send = StompHeaderAccessor.create(StompCommand.SEND);
+        send.setDestination("/topic/orders/4711");
+        send.setNativeHeader("content-type", "application/json");
+        sendFrame = encoder.encode(send.getMessageHeaders(), payload);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return encoder.encode(messageHeaders, payload);
+    }
+
+    @Benchmark
+    public List<Message<byte[]>> decode() {
+        return decoder.decode(ByteBuffer.wrap(sendFrame));
+    }
+
+    /**
+     * Just run this class as application.
+     */
+    public static void main(final String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(StompCodecBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
@@ -0,0 +1,108 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.benchmark;
+
+import net.brabenetz.app.springstompserver.broker.TrieSubscriptionRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MultiValueMap;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the {@link TrieSubscriptionRegistry} with the spring DefaultSubscriptionRegistry (cache-limit 1024), with per-user destinations which are
+ * published round-robin, so the number of distinct destinations can exceed the cache limit.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SubscriptionRegistryBenchmark {
+
+    @Param({"100", "1024", "10000"})
+    private int destinationCount;
+
+    @Param({"DEFAULT", "TRIE"})
+    private String registryType;
+
+    private SubscriptionRegistry registry;
+
+    private Message<?>[] messages;
+
+    private int next;
+
+    @Setup
+    public void setup() {
+        registry = "TRIE".equals(registryType) ? new TrieSubscriptionRegistry() : new DefaultSubscriptionRegistry();
+        messages = new Message<?>[destinationCount];
+        for (int i = 0; i < destinationCount; i++) {
+            String destination = "/user/" + i + "/topic/orders/" + i;
+            registry.registerSubscription(message(SimpMessageType.SUBSCRIBE, "session-" + i, destination));
+            messages[i] = message(SimpMessageType.MESSAGE, null, destination);
+        }
+        // some wildcard subscriptions which must be checked for each destination
+        registry.registerSubscription(message(SimpMessageType.SUBSCRIBE, "session-all", "/user/*/topic/**"));
+    }
+
+    @Benchmark
+    public MultiValueMap<String, String> findSubscriptions() {
+        next = (next + 1) % messages.length;
+        return registry.findSubscriptions(messages[next]);
+    }
+
+    private static Message<?> message(final SimpMessageType type, final String sessionId, final String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(sessionId != null ? "sub-0" : null);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage("", accessor.getMessageHeaders());
+    }
+
+    /**
+     * Just run this class as application.
+     */
+    public static void main(final String[] args) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(SubscriptionRegistryBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+
+}
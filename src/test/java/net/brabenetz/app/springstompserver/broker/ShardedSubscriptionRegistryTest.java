@@ -0,0 +1,187 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.broker;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ShardedSubscriptionRegistryTest {
+
+    private ShardedTaskExecutor executor;
+
+    @AfterEach
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testSubscriptionsAreStoredInTheSliceOfTheirDestination() {
+        ShardedSubscriptionRegistry registry = new ShardedSubscriptionRegistry(4);
+        registry.registerSubscription(message(SimpMessageType.SUBSCRIBE, "session-1", "sub-1", "/topic/a"));
+        registry.registerSubscription(message(SimpMessageType.SUBSCRIBE, "session-1", "sub-2", "/topic/b"));
+        registry.registerSubscription(message(SimpMessageType.SUBSCRIBE, "session-2", "sub-1", "/topic/*"));
+
+        int subscriptionCount = 0;
+        for (int i = 0; i < registry.getShardCount(); i++) {
+            // the wildcard subscription is in each slice
+            assertThat(registry.getSubscriptionCount(i)).isGreaterThanOrEqualTo(1);
+            subscriptionCount += registry.getSubscriptionCount(i);
+        }
+        assertThat(subscriptionCount).isEqualTo(2 + registry.getShardCount());
+
+        assertThat(registry.findSubscriptions(message(SimpMessageType.MESSAGE, null, null, "/topic/a"))).containsOnlyKeys("session-1", "session-2");
+        assertThat(registry.findSubscriptions(message(SimpMessageType.MESSAGE, null, null, "/topic/c"))).containsOnlyKeys("session-2");
+
+        registry.unregisterSubscription(message(SimpMessageType.UNSUBSCRIBE, "session-1", "sub-1", null));
+        assertThat(registry.findSubscriptions(message(SimpMessageType.MESSAGE, null, null, "/topic/a"))).containsOnlyKeys("session-2");
+
+        registry.unregisterAllSubscriptions("session-2");
+        assertThat(registry.findSubscriptions(message(SimpMessageType.MESSAGE, null, null, "/topic/a"))).isEmpty();
+        assertThat(registry.findSubscriptions(message(SimpMessageType.MESSAGE, null, null, "/topic/b"))).containsOnlyKeys("session-1");
+    }
+
+    @Test
+    public void testDefaultSubscriptionRegistrySlicesSupportTheSelector() {
+        ShardedSubscriptionRegistry registry = new ShardedSubscriptionRegistry(4, DefaultSubscriptionRegistry::new);
+        Message<?> subscribe = message(SimpMessageType.SUBSCRIBE, "session-1", "sub-1", "/topic/a");
+        SimpMessageHeaderAccessor selectorAccessor = SimpMessageHeaderAccessor.wrap(subscribe);
+        selectorAccessor.setNativeHeader("selector", "headers.type == 'x'");
+        registry.registerSubscription(MessageBuilder.createMessage("", selectorAccessor.getMessageHeaders()));
+        registry.registerSubscription(message(SimpMessageType.SUBSCRIBE, "session-2", "sub-1", "/topic/*"));
+
+        assertThat(registry.findSubscriptions(message(SimpMessageType.MESSAGE, null, null, "/topic/a"))).containsOnlyKeys("session-2");
+        SimpMessageHeaderAccessor typeAccessor = SimpMessageHeaderAccessor.wrap(message(SimpMessageType.MESSAGE, null, null, "/topic/a"));
+        typeAccessor.setNativeHeader("type", "x");
+        assertThat(registry.findSubscriptions(MessageBuilder.createMessage("", typeAccessor.getMessageHeaders()))).containsOnlyKeys("session-1", "session-2");
+        assertThat(registry.getSubscriptionCount(0)).isEqualTo(-1);
+    }
+
+    @Test
+    public void testMessagesOfTheSameDestinationAreDeliveredInOrder() throws Exception {
+        int destinationCount = 8;
+        int messageCount = 200;
+        executor = new ShardedTaskExecutor(4);
+        executor.setThreadNamePrefix("test-");
+        executor.initialize();
+
+        ExecutorSubscribableChannel inboundChannel = new ExecutorSubscribableChannel(executor);
+        ExecutorSubscribableChannel outboundChannel = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel(executor);
+        SimpleBrokerMessageHandler broker = new SimpleBrokerMessageHandler(inboundChannel, outboundChannel, brokerChannel, Collections.singletonList("/topic"));
+        broker.setSubscriptionRegistry(new ShardedSubscriptionRegistry(executor.getShardCount()));
+        broker.start();
+
+        CountDownLatch doneSignal = new CountDownLatch(destinationCount * messageCount);
+        Map<String, List<Object>> received = new ConcurrentHashMap<>();
+        outboundChannel.subscribe(message -> {
+            if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+                String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+                received.computeIfAbsent(destination, key -> Collections.synchronizedList(new ArrayList<>())).add(message.getPayload());
+                doneSignal.countDown();
+            }
+        });
+
+        broker.handleMessage(message(SimpMessageType.CONNECT, "session-1", null, null));
+        for (int d = 0; d < destinationCount; d++) {
+            broker.handleMessage(message(SimpMessageType.SUBSCRIBE, "session-1", "sub-" + d, "/topic/" + d));
+        }
+        for (int i = 0; i < messageCount; i++) {
+            for (int d = 0; d < destinationCount; d++) {
+                brokerChannel.send(MessageBuilder.createMessage(i, message(SimpMessageType.MESSAGE, null, null, "/topic/" + d).getHeaders()));
+            }
+        }
+
+        doneSignal.await(5, TimeUnit.SECONDS);
+        assertThat(doneSignal.getCount()).describedAs("CountDownLatch").isEqualTo(0);
+        for (int d = 0; d < destinationCount; d++) {
+            List<Object> payloads = received.get("/topic/" + d);
+            for (int i = 0; i < messageCount; i++) {
+                assertThat(payloads.get(i)).isEqualTo(i);
+            }
+        }
+        broker.stop();
+    }
+
+    @Test
+    public void testSubscriptionsAreNotRegisteredAfterTheDisconnect() throws Exception {
+        int sessionCount = 200;
+        int destinationCount = 16;
+        executor = new ShardedTaskExecutor(4);
+        executor.setThreadNamePrefix("test-");
+        executor.initialize();
+
+        ExecutorSubscribableChannel inboundChannel = new ExecutorSubscribableChannel(executor);
+        ExecutorSubscribableChannel outboundChannel = new ExecutorSubscribableChannel();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel(executor);
+        SimpleBrokerMessageHandler broker = new SimpleBrokerMessageHandler(inboundChannel, outboundChannel, brokerChannel, Collections.singletonList("/topic"));
+        ShardedSubscriptionRegistry registry = new ShardedSubscriptionRegistry(executor.getShardCount());
+        broker.setSubscriptionRegistry(registry);
+        broker.start();
+
+        // the SUBSCRIBE frames of a session have destinations of all lanes, and are directly followed by the DISCONNECT
+        for (int s = 0; s < sessionCount; s++) {
+            String sessionId = "session-" + s;
+            inboundChannel.send(message(SimpMessageType.CONNECT, sessionId, null, null));
+            for (int d = 0; d < destinationCount; d++) {
+                inboundChannel.send(message(SimpMessageType.SUBSCRIBE, sessionId, "sub-" + d, "/topic/" + d));
+                // a SEND to the same destination keeps the lane of the destination busy
+                inboundChannel.send(message(SimpMessageType.MESSAGE, sessionId, null, "/topic/" + d));
+            }
+            inboundChannel.send(message(SimpMessageType.DISCONNECT, sessionId, null, null));
+        }
+
+        for (int i = 0; i < 100 && (executor.getQueuedTaskCount() > 0 || executor.getActiveCount() > 0); i++) {
+            Thread.sleep(50);
+        }
+        assertThat(executor.getQueuedTaskCount()).isZero();
+        for (int i = 0; i < registry.getShardCount(); i++) {
+            assertThat(registry.getSubscriptionCount(i)).describedAs("subscriptions of slice " + i).isZero();
+        }
+        broker.stop();
+    }
+
+    private static Message<?> message(final SimpMessageType type, final String sessionId, final String subscriptionId, final String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage("", accessor.getMessageHeaders());
+    }
+
+}
@@ -0,0 +1,132 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.broker;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.SubscriptionRegistry;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.util.MultiValueMap;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class TrieSubscriptionRegistryTest {
+
+    private static final List<String> SUBSCRIPTIONS = Arrays.asList(
+            "/topic/test/1234",
+            "/topic/test/*",
+            "/topic/**",
+            "/topic/**/1234",
+            "/topic/*/5678",
+            "/topic/order-*",
+            "/topic/{id}/details",
+            "/user/123/queue/test",
+            "/queue/test");
+
+    private static final List<String> DESTINATIONS = Arrays.asList(
+            "/topic/test/1234",
+            "/topic/test/5678",
+            "/topic/test",
+            "/topic",
+            "/topic/order-1",
+            "/topic/order/details",
+            "/topic/a/b/c/1234",
+            "/user/123/queue/test",
+            "/queue/test",
+            "/queue/test/1234",
+            "/unknown");
+
+    @Test
+    public void testFindSubscriptionsLikeTheDefaultSubscriptionRegistry() {
+        TrieSubscriptionRegistry trieRegistry = new TrieSubscriptionRegistry();
+        DefaultSubscriptionRegistry defaultRegistry = new DefaultSubscriptionRegistry();
+        for (int i = 0; i < SUBSCRIPTIONS.size(); i++) {
+            subscribe(trieRegistry, "session-" + (i % 3), "sub-" + i, SUBSCRIPTIONS.get(i));
+            subscribe(defaultRegistry, "session-" + (i % 3), "sub-" + i, SUBSCRIPTIONS.get(i));
+        }
+        assertThat(trieRegistry.getSubscriptionCount()).isEqualTo(SUBSCRIPTIONS.size());
+
+        for (String destination : DESTINATIONS) {
+            MultiValueMap<String, String> expected = defaultRegistry.findSubscriptions(message(destination));
+            MultiValueMap<String, String> actual = trieRegistry.findSubscriptions(message(destination));
+            assertThat(actual.keySet()).describedAs(destination).containsExactlyInAnyOrderElementsOf(expected.keySet());
+            expected.forEach((sessionId, subscriptionIds) -> assertThat(actual.get(sessionId))
+                    .describedAs(destination + " " + sessionId)
+                    .containsExactlyInAnyOrderElementsOf(subscriptionIds));
+        }
+    }
+
+    @Test
+    public void testUnsubscribeRemovesEmptyNodes() {
+        TrieSubscriptionRegistry registry = new TrieSubscriptionRegistry();
+        subscribe(registry, "session-1", "sub-1", "/topic/test/1234");
+        subscribe(registry, "session-2", "sub-1", "/topic/test/1234");
+        subscribe(registry, "session-2", "sub-2", "/topic/other/**");
+
+        assertThat(registry.findSubscriptions(message("/topic/test/1234"))).containsOnlyKeys("session-1", "session-2");
+
+        unsubscribe(registry, "session-1", "sub-1");
+        assertThat(registry.findSubscriptions(message("/topic/test/1234"))).containsOnlyKeys("session-2");
+
+        registry.unregisterAllSubscriptions("session-2");
+        assertThat(registry.findSubscriptions(message("/topic/test/1234"))).isEmpty();
+        assertThat(registry.getSubscriptionCount()).isEqualTo(0);
+        assertThat(registry.getNodeCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testResubscribeWithSameSubscriptionId() {
+        TrieSubscriptionRegistry registry = new TrieSubscriptionRegistry();
+        subscribe(registry, "session-1", "sub-1", "/topic/first");
+        subscribe(registry, "session-1", "sub-1", "/topic/second");
+
+        assertThat(registry.findSubscriptions(message("/topic/first"))).isEmpty();
+        assertThat(registry.findSubscriptions(message("/topic/second")).get("session-1")).containsExactly("sub-1");
+        assertThat(registry.getSubscriptionCount()).isEqualTo(1);
+    }
+
+    private static void subscribe(final SubscriptionRegistry registry, final String sessionId, final String subscriptionId, final String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setDestination(destination);
+        registry.registerSubscription(MessageBuilder.createMessage("", accessor.getMessageHeaders()));
+    }
+
+    private static void unsubscribe(final SubscriptionRegistry registry, final String sessionId, final String subscriptionId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.UNSUBSCRIBE);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId(subscriptionId);
+        registry.unregisterSubscription(MessageBuilder.createMessage("", accessor.getMessageHeaders()));
+    }
+
+    private static Message<?> message(final String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage("", accessor.getMessageHeaders());
+    }
+
+}
@@ -0,0 +1,53 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.compression;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class CompressionHandshakeHandlerTest {
+
+    @Test
+    public void testDisabledRemovesTheDeflateOffers() {
+        CompressionHandshakeHandler handler = new CompressionHandshakeHandler(false, false, false);
+
+        assertThat(handler.rewriteExtensions("permessage-deflate; client_max_window_bits")).isNull();
+        assertThat(handler.rewriteExtensions("x-webkit-deflate-frame, permessage-deflate")).isEqualTo("x-webkit-deflate-frame");
+    }
+
+    @Test
+    public void testEnabledKeepsTheOffers() {
+        CompressionHandshakeHandler handler = new CompressionHandshakeHandler(true, false, false);
+
+        assertThat(handler.rewriteExtensions("permessage-deflate; client_max_window_bits")).isEqualTo("permessage-deflate; client_max_window_bits");
+    }
+
+    @Test
+    public void testNoContextTakeoverIsAddedOnce() {
+        CompressionHandshakeHandler handler = new CompressionHandshakeHandler(true, true, true);
+
+        assertThat(handler.rewriteExtensions("permessage-deflate; client_max_window_bits"))
+                .isEqualTo("permessage-deflate; client_max_window_bits; server_no_context_takeover; client_no_context_takeover");
+        assertThat(handler.rewriteExtensions("permessage-deflate; server_no_context_takeover"))
+                .isEqualTo("permessage-deflate; server_no_context_takeover; client_no_context_takeover");
+    }
+
+}
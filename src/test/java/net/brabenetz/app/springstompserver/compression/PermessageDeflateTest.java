@@ -0,0 +1,182 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.compression;
+
+import net.brabenetz.app.springstompserver.config.WebSocketConfigProperties;
+import net.brabenetz.app.springstompserver.embedded.EmbeddedStompServer;
+import net.brabenetz.app.springstompserver.embedded.EmbeddedStompServerExtension;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Tests the permessage-deflate negotiation and the min-size with a plain socket, because the websocket clients of the tests don't offer compression.
+ */
+public class PermessageDeflateTest {
+
+    private static final int RSV1 = 0x40;
+
+    @RegisterExtension
+    static EmbeddedStompServerExtension server = new EmbeddedStompServerExtension(compressionProperties());
+
+    private int port;
+
+    private Socket socket;
+
+    private static WebSocketConfigProperties compressionProperties() {
+        WebSocketConfigProperties properties = new WebSocketConfigProperties();
+        properties.setWebsocketEndpoints(new String[] {"/websocket", "/websocket-plain" });
+        properties.getCompression().setEnabled(true);
+        properties.getCompression().setEndpoints(new String[] {"/websocket" });
+        properties.getCompression().setLevel(1);
+        properties.getCompression().setMinSize(256);
+        properties.getCompression().setClientNoContextTakeover(true);
+        return properties;
+    }
+
+    @BeforeEach
+    public void init(EmbeddedStompServer embeddedStompServer) {
+        port = embeddedStompServer.getPort();
+    }
+
+    @AfterEach
+    public void close() throws IOException {
+        if (socket != null) {
+            socket.close();
+        }
+    }
+
+    @Test
+    public void testTheTomcatVersionIsSupported() {
+        // otherwise the level and min-size are silently ignored
+        assertThat(DeflateWebSocketHandlerDecorator.isSupported()).isTrue();
+    }
+
+    @Test
+    public void testSmallFramesUncompressedAndLargeFramesCompressed() throws Exception {
+        String handshakeResponse = handshake("/websocket");
+        assertThat(handshakeResponse).contains("101");
+        assertThat(handshakeResponse).containsPattern("(?i)Sec-WebSocket-Extensions: permessage-deflate.*client_no_context_takeover");
+
+        sendFrame("CONNECT\naccept-version:1.2\nhost:localhost\n\n\0");
+        Frame connected = readFrame();
+        assertThat(connected.rsv1).describedAs("small frame is uncompressed").isFalse();
+        assertThat(new String(connected.payload, StandardCharsets.UTF_8)).startsWith("CONNECTED");
+
+        char[] body = new char[2000];
+        Arrays.fill(body, 'x');
+        sendFrame("SUBSCRIBE\nid:sub-0\ndestination:/topic/deflate\n\n\0");
+        sendFrame("SEND\ndestination:/topic/deflate\ncontent-type:application/json\n\n{\"value\":\"" + new String(body) + "\"}\0");
+        Frame message = readFrame();
+        assertThat(message.rsv1).describedAs("large frame is compressed").isTrue();
+        assertThat(message.payload.length).isLessThan(body.length / 10);
+    }
+
+    @Test
+    public void testEndpointWithoutCompression() throws Exception {
+        String handshakeResponse = handshake("/websocket-plain");
+
+        assertThat(handshakeResponse).contains("101");
+        assertThat(handshakeResponse).doesNotContainPattern("(?i)Sec-WebSocket-Extensions");
+    }
+
+    private String handshake(final String path) throws IOException {
+        socket = new Socket("localhost", port);
+        socket.setSoTimeout(5000);
+        String key = Base64.getEncoder().encodeToString("0123456789abcdef".getBytes(StandardCharsets.US_ASCII));
+        String request = "GET " + path + " HTTP/1.1\r\n"
+                + "Host: localhost:" + port + "\r\n"
+                + "Upgrade: websocket\r\n"
+                + "Connection: Upgrade\r\n"
+                + "Sec-WebSocket-Key: " + key + "\r\n"
+                + "Sec-WebSocket-Version: 13\r\n"
+                + "Sec-WebSocket-Protocol: v12.stomp\r\n"
+                + "Sec-WebSocket-Extensions: permessage-deflate; client_max_window_bits\r\n"
+                + "\r\n";
+        socket.getOutputStream().write(request.getBytes(StandardCharsets.US_ASCII));
+        InputStream in = socket.getInputStream();
+        ByteArrayOutputStream response = new ByteArrayOutputStream();
+        while (!response.toString("US-ASCII").endsWith("\r\n\r\n")) {
+            response.write(in.read());
+        }
+        return response.toString("US-ASCII");
+    }
+
+    private void sendFrame(final String text) throws IOException {
+        byte[] payload = text.getBytes(StandardCharsets.UTF_8);
+        byte[] mask = {1, 2, 3, 4 };
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        frame.write(0x81); // FIN + text
+        if (payload.length < 126) {
+            frame.write(0x80 | payload.length);
+        } else {
+            frame.write(0x80 | 126);
+            frame.write(payload.length >> 8);
+            frame.write(payload.length & 0xFF);
+        }
+        frame.write(mask);
+        for (int i = 0; i < payload.length; i++) {
+            frame.write(payload[i] ^ mask[i % 4]);
+        }
+        OutputStream out = socket.getOutputStream();
+        out.write(frame.toByteArray());
+        out.flush();
+    }
+
+    private Frame readFrame() throws IOException {
+        DataInputStream in = new DataInputStream(socket.getInputStream());
+        int first = in.readUnsignedByte();
+        int length = in.readUnsignedByte() & 0x7F;
+        if (length == 126) {
+            length = in.readUnsignedShort();
+        } else if (length == 127) {
+            length = (int) in.readLong();
+        }
+        byte[] payload = new byte[length];
+        in.readFully(payload);
+        return new Frame((first & RSV1) != 0, payload);
+    }
+
+    private static final class Frame {
+
+        private final boolean rsv1;
+
+        private final byte[] payload;
+
+        Frame(final boolean rsv1, final byte[] payload) {
+            this.rsv1 = rsv1;
+            this.payload = payload;
+        }
+    }
+
+}
@@ -0,0 +1,168 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InitLoadCacheTest {
+
+    private WebSocketInitLoadConfigProperties.Cache properties;
+    private MutableClock clock;
+    private InitLoadCache cache;
+
+    @BeforeEach
+    public void init() {
+        properties = new WebSocketInitLoadConfigProperties.Cache();
+        properties.setEnabled(true);
+        properties.setMaxEntries(3);
+        properties.setMaxBytes(100);
+        properties.setTimeToLive(1000);
+        clock = new MutableClock();
+        cache = new InitLoadCache(properties, clock);
+    }
+
+    @Test
+    public void testHitAndMiss() {
+        assertThat(cache.get("http://proxy/a")).isNull();
+
+        cache.put("http://proxy/a", response("a"));
+
+        assertThat(cache.get("http://proxy/a").getResponse().getBody()).isEqualTo("a".getBytes());
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testMeters() {
+        MeterRegistry registry = new SimpleMeterRegistry();
+        cache.bindTo(registry);
+        assertThat(cache.get("http://proxy/a")).isNull();
+        cache.put("http://proxy/a", response("a"));
+        cache.get("http://proxy/a");
+
+        assertThat(registry.get("stomp.init-load.cache.hits").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("stomp.init-load.cache.misses").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("stomp.init-load.cache.evictions").functionCounter().count()).isEqualTo(0);
+        assertThat(registry.get("stomp.init-load.cache.entries").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("stomp.init-load.cache.bytes").gauge().value()).isEqualTo(1);
+    }
+
+    @Test
+    public void testTimeToLive() {
+        cache.put("http://proxy/a", response("a"));
+
+        clock.millis += 999;
+        assertThat(cache.isExpired(cache.get("http://proxy/a"))).isFalse();
+
+        clock.millis += 1;
+        assertThat(cache.isExpired(cache.get("http://proxy/a"))).isTrue();
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsedByMaxEntries() {
+        cache.put("http://proxy/a", response("a"));
+        cache.put("http://proxy/b", response("b"));
+        cache.put("http://proxy/c", response("c"));
+        cache.get("http://proxy/a");
+
+        cache.put("http://proxy/d", response("d"));
+
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.get("http://proxy/b")).isNull();
+        assertThat(cache.get("http://proxy/a")).isNotNull();
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testEvictLeastRecentlyUsedByMaxBytes() {
+        cache.put("http://proxy/a", response("a".repeat(40)));
+        cache.put("http://proxy/b", response("b".repeat(40)));
+        cache.put("http://proxy/c", response("c".repeat(40)));
+
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.getCurrentBytes()).isEqualTo(80);
+        assertThat(cache.get("http://proxy/a")).isNull();
+
+        // too large for the cache at all
+        cache.put("http://proxy/d", response("d".repeat(101)));
+        assertThat(cache.get("http://proxy/d")).isNull();
+        assertThat(cache.getCurrentBytes()).isEqualTo(80);
+    }
+
+    @Test
+    public void testRevalidated() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag("\"v1\"");
+        cache.put("http://proxy/a", new ResponseEntity<>("a".getBytes(), headers, HttpStatus.OK));
+        clock.millis += 1000;
+
+        InitLoadCache.CachedResponse expired = cache.get("http://proxy/a");
+        assertThat(cache.isExpired(expired)).isTrue();
+        assertThat(expired.isRevalidatable()).isTrue();
+
+        cache.revalidated("http://proxy/a", expired);
+
+        assertThat(cache.isExpired(cache.get("http://proxy/a"))).isFalse();
+        assertThat(cache.getRevalidationCount()).isEqualTo(1);
+    }
+
+    private static ResponseEntity<byte[]> response(String body) {
+        return ResponseEntity.ok(body.getBytes());
+    }
+
+    private static class MutableClock extends Clock {
+        private long millis = 1_000_000;
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+
+        @Override
+        public long millis() {
+            return millis;
+        }
+    }
+}
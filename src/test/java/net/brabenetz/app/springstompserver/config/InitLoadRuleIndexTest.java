@@ -0,0 +1,91 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class InitLoadRuleIndexTest {
+
+    @Test
+    public void testLiteralPrefix() {
+        assertThat(InitLoadRuleIndex.literalPrefix(Pattern.compile("^/topic/orders/(.*)$"))).isEqualTo("/topic/orders/");
+        assertThat(InitLoadRuleIndex.literalPrefix(Pattern.compile("/topic/prices\\.(.*)"))).isEqualTo("/topic/prices.");
+        assertThat(InitLoadRuleIndex.literalPrefix(Pattern.compile("^/user/[^/]+/topic/(.*)$"))).isEqualTo("/user/");
+        assertThat(InitLoadRuleIndex.literalPrefix(Pattern.compile("^/topics?/(.*)$"))).isEqualTo("/topic");
+        assertThat(InitLoadRuleIndex.literalPrefix(Pattern.compile("^/topic/a+"))).isEqualTo("/topic/a");
+        assertThat(InitLoadRuleIndex.literalPrefix(Pattern.compile("^/topic/\\d+"))).isEqualTo("/topic/");
+        assertThat(InitLoadRuleIndex.literalPrefix(Pattern.compile("^/topic/a|^/queue/b"))).isEmpty();
+        assertThat(InitLoadRuleIndex.literalPrefix(Pattern.compile("^/topic/(.*)", Pattern.CASE_INSENSITIVE))).isEmpty();
+        assertThat(InitLoadRuleIndex.literalPrefix(Pattern.compile(".*"))).isEmpty();
+    }
+
+    @Test
+    public void testFindMatchReturnsFirstMatchingRuleInConfiguredOrder() {
+        InitLoadRule generic = new InitLoadRule(Pattern.compile("^/topic/(.*)$"), "http://generic/${group-1}");
+        InitLoadRule orders = new InitLoadRule(Pattern.compile("^/topic/orders/(.*)$"), "http://orders/${group-1}");
+        InitLoadRule prices = new InitLoadRule(Pattern.compile("^/topic/prices/(.*)$"), "http://prices/${group-1}");
+        InitLoadRule anything = new InitLoadRule(Pattern.compile("(.*)"), "http://anything/${group-1}");
+
+        InitLoadRuleIndex index = new InitLoadRuleIndex(Arrays.asList(orders, generic, prices, anything));
+
+        assertThat(index.isEmpty()).isFalse();
+        assertThat(index.findMatch("/topic/orders/4711").getRule()).isSameAs(orders);
+        // generic is configured before prices, so it wins
+        assertThat(index.findMatch("/topic/prices/4711").getRule()).isSameAs(generic);
+        assertThat(index.findMatch("/queue/test").getRule()).isSameAs(anything);
+
+        InitLoadRuleIndex.Match match = index.findMatch("/topic/orders/4711");
+        assertThat(match.getRule().getProxyUrlTemplate().expand("/topic/orders/4711", match.getMatchResult())).isEqualTo("http://orders/4711");
+    }
+
+    @Test
+    public void testFindMatchWithoutMatchingRule() {
+        InitLoadRule orders = new InitLoadRule(Pattern.compile("^/topic/orders/(.*)$"), "http://orders/${group-1}");
+        InitLoadRule prices = new InitLoadRule(Pattern.compile("^/topic/prices/[0-9]+$"), "http://prices");
+
+        InitLoadRuleIndex index = new InitLoadRuleIndex(Arrays.asList(orders, prices));
+
+        assertThat(index.findMatch("/topic/order")).isNull();
+        assertThat(index.findMatch("/topic/prices/abc")).isNull();
+        assertThat(index.findMatch("")).isNull();
+        assertThat(new InitLoadRuleIndex(Collections.emptyList()).isEmpty()).isTrue();
+    }
+
+    @Test
+    public void testEffectiveRules() {
+        WebSocketInitLoadConfigProperties properties = new WebSocketInitLoadConfigProperties();
+        assertThat(properties.getRuleIndex().isEmpty()).isTrue();
+
+        InitLoadRule orders = new InitLoadRule(Pattern.compile("^/topic/orders/(.*)$"), "http://orders/${group-1}");
+        properties.setRules(Collections.singletonList(orders));
+        properties.setProxyUrl("http://default/${group-1}");
+
+        assertThat(properties.getEffectiveRules()).hasSize(2);
+        assertThat(properties.getRuleIndex().findMatch("/user/123/topic/orders/1").getRule().getProxyUrl()).isEqualTo("http://default/${group-1}");
+        assertThat(properties.getRuleIndex().findMatch("/topic/orders/1").getRule()).isSameAs(orders);
+    }
+
+}
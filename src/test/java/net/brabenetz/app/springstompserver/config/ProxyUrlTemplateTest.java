@@ -0,0 +1,78 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ProxyUrlTemplateTest {
+
+    @Test
+    public void testExpand() {
+        Pattern pattern = Pattern.compile("^/user/([^/]+)/topic/(.*)$");
+        ProxyUrlTemplate template = ProxyUrlTemplate.compile("http://localhost:8181/mock/${group-2}?user=${group-1}&again=${group-2}");
+
+        String destination = "/user/123456/topic/test/1234";
+        Matcher matcher = pattern.matcher(destination);
+        assertThat(matcher.matches()).isTrue();
+
+        assertThat(template.expand(destination, matcher)).isEqualTo("http://localhost:8181/mock/test/1234?user=123456&again=test/1234");
+        assertThat(template.getMaxGroupReference()).isEqualTo(2);
+        assertThat(template.isResolvableBy(pattern)).isTrue();
+    }
+
+    @Test
+    public void testExpandWithoutGroupReference() {
+        Pattern pattern = Pattern.compile("^/topic/(.*)$");
+        ProxyUrlTemplate template = ProxyUrlTemplate.compile("http://localhost:8181/mock");
+
+        String destination = "/topic/test";
+        Matcher matcher = pattern.matcher(destination);
+        assertThat(matcher.matches()).isTrue();
+
+        assertThat(template.expand(destination, matcher)).isEqualTo("http://localhost:8181/mock");
+        assertThat(template.getMaxGroupReference()).isEqualTo(0);
+    }
+
+    @Test
+    public void testExpandKeepsSpecialCharactersAndOptionalGroups() {
+        Pattern pattern = Pattern.compile("^/topic/([^/]+)(/optional)?$");
+        ProxyUrlTemplate template = ProxyUrlTemplate.compile("http://localhost:8181/${group-1}${group-2}");
+
+        String destination = "/topic/a$1\\b";
+        Matcher matcher = pattern.matcher(destination);
+        assertThat(matcher.matches()).isTrue();
+
+        assertThat(template.expand(destination, matcher)).isEqualTo("http://localhost:8181/a$1\\b");
+    }
+
+    @Test
+    public void testIsResolvableBy() {
+        ProxyUrlTemplate template = ProxyUrlTemplate.compile("http://localhost:8181/${group-1}/${group-3}");
+
+        assertThat(template.isResolvableBy(Pattern.compile("^/(a)/(b)/(c)$"))).isTrue();
+        assertThat(template.isResolvableBy(Pattern.compile("^/(a)/(b)$"))).isFalse();
+    }
+
+}
@@ -0,0 +1,87 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class RetainedMessageCacheTest {
+
+    private WebSocketRetainedConfigProperties properties;
+    private RetainedMessageCache cache;
+
+    @BeforeEach
+    public void init() {
+        properties = new WebSocketRetainedConfigProperties();
+        properties.setMaxEntries(3);
+        properties.setMaxBytes(100);
+        cache = new RetainedMessageCache(properties);
+    }
+
+    @Test
+    public void testLastValueWins() {
+        assertThat(cache.get("/topic/a")).isNull();
+
+        cache.put("/topic/a", "first".getBytes(), Collections.emptyMap());
+        cache.put("/topic/a", "last".getBytes(), Collections.singletonMap("content-type", Collections.singletonList("text/plain")));
+
+        RetainedMessageCache.RetainedMessage retained = cache.get("/topic/a");
+        assertThat(retained.getPayload()).isEqualTo("last".getBytes());
+        assertThat(retained.getNativeHeaders()).containsKey("content-type");
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.getCurrentBytes()).isEqualTo(4);
+        assertThat(cache.getHitCount()).isEqualTo(1);
+        assertThat(cache.getMissCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testEvictLeastRecentlyPublishedByMaxEntries() {
+        cache.put("/topic/a", "a".getBytes(), Collections.emptyMap());
+        cache.put("/topic/b", "b".getBytes(), Collections.emptyMap());
+        cache.put("/topic/c", "c".getBytes(), Collections.emptyMap());
+        cache.put("/topic/a", "a2".getBytes(), Collections.emptyMap());
+
+        cache.put("/topic/d", "d".getBytes(), Collections.emptyMap());
+
+        assertThat(cache.get("/topic/b")).isNull();
+        assertThat(cache.get("/topic/a")).isNotNull();
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.getEvictionCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testEvictByMaxBytes() {
+        cache.put("/topic/a", new byte[60], Collections.emptyMap());
+        cache.put("/topic/b", new byte[60], Collections.emptyMap());
+
+        assertThat(cache.get("/topic/a")).isNull();
+        assertThat(cache.getCurrentBytes()).isEqualTo(60);
+
+        // larger than the whole cache: not retained, and the old value is removed
+        cache.put("/topic/b", new byte[101], Collections.emptyMap());
+        assertThat(cache.get("/topic/b")).isNull();
+        assertThat(cache.getCurrentBytes()).isZero();
+    }
+
+}
@@ -0,0 +1,161 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import net.brabenetz.app.springstompserver.embedded.EmbeddedStompServer;
+import net.brabenetz.app.springstompserver.embedded.EmbeddedStompServerExtension;
+import net.brabenetz.app.springstompserver.received.ReceivedMessage;
+import net.brabenetz.app.springstompserver.received.ReceivedMessageQuery;
+import net.brabenetz.app.springstompserver.received.ReceivedMessageRecorder;
+import net.brabenetz.app.springstompserver.testtools.WebSocketPayload;
+import net.brabenetz.app.springstompserver.testtools.WebSocketStompSessionHandler;
+import net.brabenetz.app.springstompserver.testtools.WebSocketUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Sessions with a tenant in the CONNECT header and sessions without tenant on one server: the sessions without tenant share the default partition and
+ * can't reach the partitions of the tenants.
+ */
+public class TenantConnectHeaderIsolationTest {
+
+    @RegisterExtension
+    static EmbeddedStompServerExtension server = new EmbeddedStompServerExtension(connectHeaderTenants(), "--spring-stomp-server.received.enabled=true");
+
+    private final List<StompSession> sessions = new ArrayList<>();
+
+    private final BlockingQueue<String> errors = new LinkedBlockingQueue<>();
+
+    private static WebSocketConfigProperties connectHeaderTenants() {
+        WebSocketConfigProperties properties = new WebSocketConfigProperties();
+        properties.setTenantIsolation(TenantIsolation.CONNECT_HEADER);
+        return properties;
+    }
+
+    @AfterEach
+    public void disconnect() {
+        sessions.stream().filter(StompSession::isConnected).forEach(StompSession::disconnect);
+    }
+
+    @Test
+    public void testWildcardSubscriptionWithoutTenantDoesNotReceiveTheTenantMessages(EmbeddedStompServer embeddedStompServer) throws Exception {
+        StompSession tenantSession = connect(embeddedStompServer, "run-1");
+        StompSession defaultSession = connect(embeddedStompServer, null);
+        BlockingQueue<WebSocketPayload<String>> tenantMessages = subscribe(tenantSession, "/topic/test/wildcard");
+        BlockingQueue<WebSocketPayload<String>> wildcardMessages = subscribe(defaultSession, "/topic/**");
+        // the wildcard subscription works within the default partition
+        defaultSession.send("/topic/test/wildcard", "from-default");
+        WebSocketPayload<String> wildcardMessage = wildcardMessages.poll(5, TimeUnit.SECONDS);
+        assertThat(wildcardMessage.getBody()).isEqualTo("from-default");
+        assertThat(wildcardMessage.getHeaders().get("destination")).containsExactly("/topic/test/wildcard");
+
+        tenantSession.send("/topic/test/wildcard", "from-run-1");
+
+        assertThat(tenantMessages.poll(5, TimeUnit.SECONDS).getBody()).isEqualTo("from-run-1");
+        assertThat(wildcardMessages.poll(500, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    public void testPartitionedDestinationsOfTheClientsAreRejected(EmbeddedStompServer embeddedStompServer) throws Exception {
+        StompSession tenantSession = connect(embeddedStompServer, "run-1");
+        BlockingQueue<WebSocketPayload<String>> tenantMessages = subscribe(tenantSession, "/topic/test/partitioned");
+
+        StompSession subscriber = connect(embeddedStompServer, null);
+        subscribe(subscriber, "/topic/~run-1/test/partitioned");
+        awaitRejected(subscriber, "/topic/~run-1/test/partitioned");
+
+        StompSession sender = connect(embeddedStompServer, null);
+        sender.send("/topic/~run-1/test/partitioned", "from-default");
+        awaitRejected(sender, "/topic/~run-1/test/partitioned");
+
+        assertThat(tenantMessages.poll(500, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    public void testOnlyTheAcceptedFramesAreRecordedWithTheDestinationOfTheClient(EmbeddedStompServer embeddedStompServer) throws Exception {
+        StompSession tenantSession = connect(embeddedStompServer, "run-1");
+        BlockingQueue<WebSocketPayload<String>> tenantMessages = subscribe(tenantSession, "/topic/test/received");
+        StompSession sender = connect(embeddedStompServer, null);
+        sender.send("/topic/~run-1/test/received", "rejected");
+        awaitRejected(sender, "/topic/~run-1/test/received");
+
+        tenantSession.send("/topic/test/received", "accepted");
+        assertThat(tenantMessages.poll(5, TimeUnit.SECONDS).getBody()).isEqualTo("accepted");
+
+        List<ReceivedMessage> received = embeddedStompServer.getApplicationContext().getBean(ReceivedMessageRecorder.class).getBuffer()
+                .query(new ReceivedMessageQuery());
+        assertThat(received).extracting(ReceivedMessage::getDestination).containsExactly("/topic/test/received");
+    }
+
+    private StompSession connect(EmbeddedStompServer embeddedStompServer, String tenant) throws Exception {
+        StompHeaders connectHeaders = new StompHeaders();
+        if (tenant != null) {
+            connectHeaders.add("tenant", tenant);
+        }
+        StompSession session = WebSocketUtils.createStompClient()
+                .connect(embeddedStompServer.getWebsocketUrl(), (WebSocketHttpHeaders) null, connectHeaders, new WebSocketStompSessionHandler(tenant) {
+                    @Override
+                    public void handleFrame(StompHeaders headers, Object payload) {
+                        // the ERROR frames
+                        errors.add(headers.getFirst("message"));
+                    }
+                })
+                .get(5, TimeUnit.SECONDS);
+        sessions.add(session);
+        return session;
+    }
+
+    /**
+     * The server sends an ERROR frame and closes the session. The ERROR frame can be lost if the ConcurrentWebSocketSessionDecorator still flushes the
+     * CONNECTED frame when the session is closed, so only the closed session is sure.
+     */
+    private void awaitRejected(StompSession session, String destination) throws InterruptedException {
+        for (int i = 0; i < 500 && errors.isEmpty() && session.isConnected(); i++) {
+            Thread.sleep(10);
+        }
+        String error = errors.poll(100, TimeUnit.MILLISECONDS);
+        if (error != null) {
+            assertThat(error).contains(destination);
+        } else {
+            assertThat(session.isConnected()).describedAs("connected").isFalse();
+        }
+    }
+
+    private static BlockingQueue<WebSocketPayload<String>> subscribe(StompSession session, String destination) {
+        BlockingQueue<WebSocketPayload<String>> messages = new LinkedBlockingQueue<>();
+        session.subscribe(destination, WebSocketUtils.createStompFrameHandler((StompHeaders headers, String payload) -> {
+            messages.add(new WebSocketPayload<>(headers, payload));
+        }));
+        return messages;
+    }
+
+}
@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import net.brabenetz.app.springstompserver.embedded.EmbeddedStompServer;
+import net.brabenetz.app.springstompserver.embedded.EmbeddedStompServerExtension;
+import net.brabenetz.app.springstompserver.testtools.WebSocketPayload;
+import net.brabenetz.app.springstompserver.testtools.WebSocketStompSessionHandler;
+import net.brabenetz.app.springstompserver.testtools.WebSocketUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Two e2e runs on the endpoints "/websocket-a" and "/websocket-b" of one server, with isolated brokers.
+ */
+public class TenantIsolationTest {
+
+    @RegisterExtension
+    static EmbeddedStompServerExtension server = new EmbeddedStompServerExtension(isolatedEndpoints(),
+            "--spring-stomp-server.retained.destination-patterns=^/topic/retained/.*");
+
+    private final List<StompSession> sessions = new ArrayList<>();
+
+    private static WebSocketConfigProperties isolatedEndpoints() {
+        WebSocketConfigProperties properties = new WebSocketConfigProperties();
+        properties.setWebsocketEndpoints(new String[] {"/websocket-a", "/websocket-b" });
+        properties.setTenantIsolation(TenantIsolation.ENDPOINT);
+        return properties;
+    }
+
+    @AfterEach
+    public void disconnect() {
+        sessions.forEach(StompSession::disconnect);
+    }
+
+    @Test
+    public void testMessagesAreOnlyDeliveredWithinTheEndpoint(EmbeddedStompServer embeddedStompServer) throws Exception {
+        StompSession sessionA = connect(embeddedStompServer, "/websocket-a");
+        StompSession sessionB = connect(embeddedStompServer, "/websocket-b");
+        BlockingQueue<WebSocketPayload<String>> messagesA = subscribe(sessionA, "/topic/test/tenant");
+        BlockingQueue<WebSocketPayload<String>> messagesB = subscribe(sessionB, "/topic/test/tenant");
+
+        sessionA.send("/topic/test/tenant", "from-a");
+        sessionB.send("/topic/test/tenant", "from-b");
+
+        WebSocketPayload<String> messageA = messagesA.poll(5, TimeUnit.SECONDS);
+        assertThat(messageA.getBody()).isEqualTo("from-a");
+        assertThat(messageA.getHeaders().get("destination")).containsExactly("/topic/test/tenant");
+        assertThat(messagesB.poll(5, TimeUnit.SECONDS).getBody()).isEqualTo("from-b");
+        assertThat(messagesA.poll(200, TimeUnit.MILLISECONDS)).isNull();
+        assertThat(messagesB.poll(200, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    @Test
+    public void testRetainedMessagesAreIsolated(EmbeddedStompServer embeddedStompServer) throws Exception {
+        // "/topic/retained/.*" is retained, see the arguments of the server
+        StompSession sessionA = connect(embeddedStompServer, "/websocket-a");
+        BlockingQueue<WebSocketPayload<String>> published = subscribe(sessionA, "/topic/retained/tenant");
+        sessionA.send("/topic/retained/tenant", "retained-a");
+        assertThat(published.poll(5, TimeUnit.SECONDS).getBody()).isEqualTo("retained-a");
+
+        BlockingQueue<WebSocketPayload<String>> retainedA = subscribe(connect(embeddedStompServer, "/websocket-a"), "/topic/retained/tenant");
+        BlockingQueue<WebSocketPayload<String>> retainedB = subscribe(connect(embeddedStompServer, "/websocket-b"), "/topic/retained/tenant");
+
+        assertThat(retainedA.poll(5, TimeUnit.SECONDS).getBody()).isEqualTo("retained-a");
+        assertThat(retainedB.poll(500, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    private StompSession connect(EmbeddedStompServer embeddedStompServer, String endpoint) throws Exception {
+        StompSession session = WebSocketUtils.createStompClient()
+                .connect("ws://localhost:" + embeddedStompServer.getPort() + endpoint, new WebSocketStompSessionHandler(endpoint))
+                .get(5, TimeUnit.SECONDS);
+        sessions.add(session);
+        return session;
+    }
+
+    private static BlockingQueue<WebSocketPayload<String>> subscribe(StompSession session, String destination) {
+        BlockingQueue<WebSocketPayload<String>> messages = new LinkedBlockingQueue<>();
+        session.subscribe(destination, WebSocketUtils.createStompFrameHandler((StompHeaders headers, String payload) -> {
+            messages.add(new WebSocketPayload<>(headers, payload));
+        }));
+        return messages;
+    }
+
+}
@@ -0,0 +1,119 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TenantPartitionsTest {
+
+    private final WebSocketConfigProperties properties = new WebSocketConfigProperties();
+
+    private final TenantPartitions tenantPartitions = new TenantPartitions();
+
+    @BeforeEach
+    public void init() {
+        properties.setTenantIsolation(TenantIsolation.CONNECT_HEADER);
+        ReflectionTestUtils.setField(tenantPartitions, "properties", properties);
+    }
+
+    @Test
+    public void testIsolateAndRestore() {
+        assertThat(tenantPartitions.isolate("run-1", "/topic/prices/EUR")).isEqualTo("/topic/~run-1/prices/EUR");
+        assertThat(tenantPartitions.isolate("run-1", "/user/123456/topic/test")).isEqualTo("/user/~run-1/123456/topic/test");
+        assertThat(tenantPartitions.isolate(null, "/topic/prices/EUR")).describedAs("default partition").isEqualTo("/topic/~/prices/EUR");
+        assertThat(tenantPartitions.isolate(null, "/topic/~run-1/prices/EUR")).describedAs("partitioned by the server").isEqualTo("/topic/~run-1/prices/EUR");
+        assertThat(tenantPartitions.isolate("run-1", "/unknown/prices")).isEqualTo("/unknown/prices");
+
+        assertThat(tenantPartitions.restore("/topic/~run-1/prices/EUR")).isEqualTo("/topic/prices/EUR");
+        assertThat(tenantPartitions.restore("/topic/prices/EUR")).isEqualTo("/topic/prices/EUR");
+        assertThat(tenantPartitions.restore("/topic/~/prices/EUR")).isEqualTo("/topic/prices/EUR");
+        // a client can't leave its partition with a tenant segment in the destination
+        assertThat(tenantPartitions.isolate("run-1", "/topic/~run-2/prices")).isEqualTo("/topic/~run-1/~run-2/prices");
+        assertThat(tenantPartitions.restore("/topic/~run-1/~run-2/prices")).isEqualTo("/topic/~run-2/prices");
+    }
+
+    @Test
+    public void testTenantOfConnectHeader() {
+        Map<String, Object> sessionAttributes = new HashMap<>();
+        StompHeaderAccessor connect = StompHeaderAccessor.create(StompCommand.CONNECT);
+        connect.setSessionAttributes(sessionAttributes);
+        connect.addNativeHeader("tenant", "e2e/worker 1");
+        tenantPartitions.inboundInterceptor().preSend(MessageBuilder.createMessage(new byte[0], connect.getMessageHeaders()), null);
+
+        assertThat(sessionAttributes).containsEntry(TenantPartitions.TENANT_ATTRIBUTE, "e2e_worker_1");
+
+        StompHeaderAccessor send = StompHeaderAccessor.create(StompCommand.SEND);
+        send.setSessionAttributes(sessionAttributes);
+        send.setDestination("/topic/prices");
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], send.getMessageHeaders());
+        Message<?> isolated = tenantPartitions.inboundInterceptor().preSend(message, null);
+
+        assertThat(SimpMessageHeaderAccessor.getDestination(isolated.getHeaders())).isEqualTo("/topic/~e2e_worker_1/prices");
+        assertThat(SimpMessageHeaderAccessor.getDestination(message.getHeaders())).describedAs("original message").isEqualTo("/topic/prices");
+    }
+
+    @Test
+    public void testTheDefaultPartitionIsNoTenant() {
+        assertThat(TenantPartitions.toTenant("/")).isEqualTo("_");
+        assertThat(TenantPartitions.toTenant("~")).isEqualTo("_");
+    }
+
+    @Test
+    public void testPartitionedDestinationsOfTheClientsAreRejected() {
+        for (StompCommand command : new StompCommand[] {StompCommand.SEND, StompCommand.SUBSCRIBE }) {
+            StompHeaderAccessor accessor = StompHeaderAccessor.create(command);
+            accessor.setSessionAttributes(new HashMap<>());
+            accessor.setDestination("/topic/~run-1/prices");
+            Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+
+            assertThatThrownBy(() -> tenantPartitions.validationInterceptor().preSend(message, null)).isInstanceOf(MessageDeliveryException.class)
+                    .hasMessageContaining("/topic/~run-1/prices");
+        }
+        StompHeaderAccessor send = StompHeaderAccessor.create(StompCommand.SEND);
+        send.setDestination("/topic/prices");
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], send.getMessageHeaders());
+        assertThat(tenantPartitions.validationInterceptor().preSend(message, null)).isSameAs(message);
+    }
+
+    @Test
+    public void testOutboundRestoresTheDestination() {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination("/topic/~e2e_worker_1/prices");
+        Message<?> restored = tenantPartitions.outboundInterceptor().preSend(MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders()), null);
+
+        assertThat(SimpMessageHeaderAccessor.getDestination(restored.getHeaders())).isEqualTo("/topic/prices");
+    }
+
+}
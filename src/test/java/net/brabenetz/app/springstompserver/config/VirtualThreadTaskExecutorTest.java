@@ -0,0 +1,186 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.config;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHandlingRunnable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class VirtualThreadTaskExecutorTest {
+
+    private VirtualThreadTaskExecutor executor;
+
+    @BeforeEach
+    public void init() {
+        executor = new VirtualThreadTaskExecutor();
+        executor.setCorePoolSize(2);
+        executor.setThreadNamePrefix("virtual-test-");
+        executor.initialize();
+    }
+
+    @AfterEach
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Test
+    public void testVirtualThreadsAreUsedIfAvailable() {
+        assertThat(executor.isVirtual()).isEqualTo(VirtualThreadTaskExecutor.isVirtualThreadsAvailable());
+        // the thread pool is always initialized for the executor statistics.
+        assertThat(executor.getThreadPoolExecutor()).isNotNull();
+    }
+
+    @Test
+    public void testExecute() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(100);
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        for (int i = 0; i < 100; i++) {
+            executor.execute(() -> {
+                thread.set(Thread.currentThread());
+                done.countDown();
+            });
+        }
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        if (!executor.isVirtual()) {
+            assertThat(thread.get().getName()).startsWith("virtual-test-");
+        }
+    }
+
+    @Test
+    public void testSubmit() throws Exception {
+        assertThat(executor.submit(() -> "result").get(5, TimeUnit.SECONDS)).isEqualTo("result");
+    }
+
+    @Test
+    public void testMessagesOfASessionAreExecutedInOrder() throws InterruptedException {
+        int sessionCount = 8;
+        int messageCount = 200;
+        VirtualThreadTaskExecutor threadPerTaskExecutor = createThreadPerTaskExecutor();
+        CountDownLatch done = new CountDownLatch(sessionCount * messageCount);
+        Map<String, List<Integer>> executed = new ConcurrentHashMap<>();
+        Map<String, AtomicInteger> activeMessages = new ConcurrentHashMap<>();
+        AtomicInteger maxActiveMessagesPerSession = new AtomicInteger();
+        for (int i = 0; i < messageCount; i++) {
+            for (int s = 0; s < sessionCount; s++) {
+                int index = i;
+                threadPerTaskExecutor.execute(new MessageTask(message("session-" + s, "/topic/test"), message -> {
+                    String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+                    AtomicInteger active = activeMessages.computeIfAbsent(sessionId, key -> new AtomicInteger());
+                    maxActiveMessagesPerSession.accumulateAndGet(active.incrementAndGet(), Math::max);
+                    executed.computeIfAbsent(sessionId, key -> Collections.synchronizedList(new ArrayList<>())).add(index);
+                    active.decrementAndGet();
+                    done.countDown();
+                }));
+            }
+        }
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        for (int s = 0; s < sessionCount; s++) {
+            List<Integer> indexes = executed.get("session-" + s);
+            for (int i = 0; i < messageCount; i++) {
+                assertThat(indexes.get(i)).isEqualTo(i);
+            }
+        }
+        assertThat(maxActiveMessagesPerSession.get()).describedAs("parallel messages of one session").isEqualTo(1);
+        assertThat(threadPerTaskExecutor.getQueuedTaskCount()).isZero();
+        assertThat(threadPerTaskExecutor.getCompletedTaskCount()).isEqualTo(sessionCount * messageCount);
+        threadPerTaskExecutor.shutdown();
+    }
+
+    @Test
+    public void testFailedMessageDoesNotStopTheFollowingMessagesOfTheSession() throws InterruptedException {
+        VirtualThreadTaskExecutor threadPerTaskExecutor = createThreadPerTaskExecutor();
+        CountDownLatch done = new CountDownLatch(1);
+        threadPerTaskExecutor.execute(new MessageTask(message("session-1", "/topic/test"), message -> {
+            throw new IllegalStateException("expected");
+        }));
+        threadPerTaskExecutor.execute(new MessageTask(message("session-1", "/topic/test"), message -> done.countDown()));
+
+        assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        threadPerTaskExecutor.shutdown();
+    }
+
+    private static VirtualThreadTaskExecutor createThreadPerTaskExecutor() {
+        // a new thread for each task, like the virtual threads (which are not available on every Java version of the build).
+        VirtualThreadTaskExecutor threadPerTaskExecutor = new VirtualThreadTaskExecutor(Executors.newCachedThreadPool());
+        threadPerTaskExecutor.setThreadNamePrefix("ordered-test-");
+        threadPerTaskExecutor.initialize();
+        assertThat(threadPerTaskExecutor.isVirtual()).isTrue();
+        return threadPerTaskExecutor;
+    }
+
+    private static Message<?> message(final String sessionId, final String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setSessionId(sessionId);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage("", accessor.getMessageHeaders());
+    }
+
+    /**
+     * Like the task of the ExecutorSubscribableChannel.
+     */
+    private static final class MessageTask implements MessageHandlingRunnable {
+
+        private final Message<?> message;
+
+        private final MessageHandler handler;
+
+        MessageTask(final Message<?> message, final MessageHandler handler) {
+            this.message = message;
+            this.handler = handler;
+        }
+
+        @Override
+        public Message<?> getMessage() {
+            return message;
+        }
+
+        @Override
+        public MessageHandler getMessageHandler() {
+            return handler;
+        }
+
+        @Override
+        public void run() {
+            handler.handleMessage(message);
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.embedded;
+
+import net.brabenetz.app.springstompserver.testtools.WebSocketStompSessionHandler;
+import net.brabenetz.app.springstompserver.testtools.WebSocketUtils;
+import org.junit.jupiter.api.MethodOrderer.OrderAnnotation;
+import org.junit.jupiter.api.Order;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestMethodOrder;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.DefaultSubscriptionRegistry;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@ExtendWith(EmbeddedStompServerExtension.class)
+@TestMethodOrder(OrderAnnotation.class)
+public class EmbeddedStompServerTest {
+
+    private static EmbeddedStompServer firstServer;
+
+    private static StompSession leftOpenSession;
+
+    @Test
+    @Order(1)
+    public void testSendAndReceive(EmbeddedStompServer server) throws Exception {
+        firstServer = server;
+        assertThat(server.isRunning()).isTrue();
+        assertThat(server.getApplicationContext().getParent()).isNull();
+        // the TRIE registry is an opt-in, because it doesn't support the "selector" header
+        assertThat(server.getApplicationContext().getBean(SimpleBrokerMessageHandler.class).getSubscriptionRegistry())
+                .isInstanceOf(DefaultSubscriptionRegistry.class);
+
+        leftOpenSession = connect(server);
+        CountDownLatch doneSignal = new CountDownLatch(1);
+        List<String> messages = new CopyOnWriteArrayList<>();
+        leftOpenSession.subscribe("/topic/test/embedded", WebSocketUtils.createStompFrameHandler((StompHeaders headers, String payload) -> {
+            messages.add(payload);
+            doneSignal.countDown();
+        }));
+        leftOpenSession.send("/topic/test/embedded", "test");
+
+        assertThat(doneSignal.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(messages).containsExactly("test");
+        assertThat(server.getSessionCount()).isEqualTo(1);
+        // the session is not disconnected, so the next test checks the reset
+    }
+
+    @Test
+    @Order(2)
+    public void testBrokerStateIsResetBetweenTests(EmbeddedStompServer server) throws Exception {
+        assertThat(server).isSameAs(firstServer);
+        assertThat(server.getSessionCount()).isZero();
+        SimpleBrokerMessageHandler broker = server.getApplicationContext().getBean(SimpleBrokerMessageHandler.class);
+        assertThat(broker.getSubscriptionRegistry().findSubscriptions(createSendMessage("/topic/test/embedded"))).isEmpty();
+
+        // the left open session of the previous test is closed by the server
+        for (int i = 0; i < 50 && leftOpenSession.isConnected(); i++) {
+            Thread.sleep(100);
+        }
+        assertThat(leftOpenSession.isConnected()).isFalse();
+    }
+
+    private static StompSession connect(EmbeddedStompServer server) throws Exception {
+        return WebSocketUtils.createStompClient()
+                .connect(server.getWebsocketUrl(), new WebSocketStompSessionHandler("embedded"))
+                .get(5, TimeUnit.SECONDS);
+    }
+
+    private static Message<byte[]> createSendMessage(String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        accessor.setSessionId("check");
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+}
@@ -0,0 +1,170 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class JfrEventRecorderTest {
+
+    private static final String[] EVENT_NAMES = {"FrameDecode", "BrokerDispatch", "OutboundSend", "SessionConnect", "SessionDisconnect",
+        "InitLoadFetch" };
+
+    @TempDir
+    Path tempDir;
+
+    private Recording recording;
+
+    @BeforeEach
+    public void init() {
+        recording = new Recording();
+        for (String eventName : EVENT_NAMES) {
+            recording.enable("net.brabenetz.springstompserver." + eventName).withoutThreshold();
+        }
+        recording.start();
+    }
+
+    @AfterEach
+    public void cleanup() {
+        recording.close();
+    }
+
+    @Test
+    public void testJfrSupportIsAvailable() {
+        assertThat(JfrSupport.isAvailable()).isTrue();
+    }
+
+    @Test
+    public void testFrameDecodeEvent() throws Exception {
+        byte[] frame = "SEND\ndestination:/topic/test\n\nhello\0".getBytes(StandardCharsets.UTF_8);
+
+        List<Message<byte[]>> messages = JfrEventRecorder.decoder().decode(ByteBuffer.wrap(frame));
+
+        assertThat(messages).hasSize(1);
+        RecordedEvent event = singleEvent("FrameDecode");
+        assertThat(event.getInt("frameCount")).isEqualTo(1);
+        assertThat(event.getInt("bytes")).isEqualTo(frame.length);
+    }
+
+    @Test
+    public void testBrokerDispatchEvent() throws Exception {
+        ExecutorChannelInterceptor interceptor = JfrEventRecorder.inboundInterceptor();
+        ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel();
+        MessageHandler broker = new SimpleBrokerMessageHandler(channel, channel, channel, Collections.singletonList("/topic"));
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination("/topic/test");
+        accessor.setSessionId("session-1");
+        Message<String> message = MessageBuilder.createMessage("hello", accessor.getMessageHeaders());
+
+        interceptor.afterMessageHandled(message, channel, broker, null);
+        interceptor.beforeHandle(message, channel, broker);
+        interceptor.afterMessageHandled(message, channel, broker, null);
+
+        RecordedEvent event = singleEvent("BrokerDispatch");
+        assertThat(event.getString("destination")).isEqualTo("/topic/test");
+        assertThat(event.getString("messageType")).isEqualTo("MESSAGE");
+        assertThat(event.getString("sessionId")).isEqualTo("session-1");
+    }
+
+    @Test
+    public void testOutboundSendEvent() throws Exception {
+        ExecutorChannelInterceptor interceptor = JfrEventRecorder.outboundInterceptor();
+        ExecutorSubscribableChannel channel = new ExecutorSubscribableChannel();
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination("/topic/test");
+        accessor.setSessionId("session-1");
+        Message<byte[]> message = MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+
+        interceptor.beforeHandle(message, channel, mock(MessageHandler.class));
+        interceptor.afterMessageHandled(message, channel, mock(MessageHandler.class), null);
+
+        RecordedEvent event = singleEvent("OutboundSend");
+        assertThat(event.getString("destination")).isEqualTo("/topic/test");
+        assertThat(event.getString("command")).isEqualTo("MESSAGE");
+        assertThat(event.getString("sessionId")).isEqualTo("session-1");
+    }
+
+    @Test
+    public void testSessionEvents() throws Exception {
+        WebSocketHandler handler = JfrEventRecorder.decorate(mock(WebSocketHandler.class));
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("session-1");
+
+        handler.afterConnectionEstablished(session);
+        handler.afterConnectionClosed(session, CloseStatus.GOING_AWAY);
+
+        assertThat(singleEvent("SessionConnect").getString("transport")).isEqualTo("websocket");
+        assertThat(singleEvent("SessionDisconnect").getInt("closeStatus")).isEqualTo(CloseStatus.GOING_AWAY.getCode());
+    }
+
+    @Test
+    public void testInitLoadFetchEvent() throws Exception {
+        JfrEventRecorder.initLoadStarted("/user/1/topic/test", "http://proxy/test").completed(42, true);
+
+        RecordedEvent event = singleEvent("InitLoadFetch");
+        assertThat(event.getString("destination")).isEqualTo("/user/1/topic/test");
+        assertThat(event.getString("proxyUrl")).isEqualTo("http://proxy/test");
+        assertThat(event.getInt("bytes")).isEqualTo(42);
+        assertThat(event.getBoolean("success")).isTrue();
+    }
+
+    private RecordedEvent singleEvent(final String eventName) throws Exception {
+        Path file = tempDir.resolve("recording.jfr");
+        if (!file.toFile().exists()) {
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("net.brabenetz.springstompserver." + eventName))
+                .collect(Collectors.toList());
+        assertThat(events).hasSize(1);
+        return events.get(0);
+    }
+
+}
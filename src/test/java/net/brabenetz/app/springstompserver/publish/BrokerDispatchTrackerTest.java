@@ -0,0 +1,85 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.publish;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class BrokerDispatchTrackerTest {
+
+    private final ExecutorChannelInterceptor interceptor = new BrokerDispatchTracker().interceptor();
+
+    private final MessageHandler broker = mock(SimpleBrokerMessageHandler.class);
+
+    @Test
+    public void testAwaitTheDispatchedMessages() throws Exception {
+        BrokerDispatchTracker.Dispatch dispatch = new BrokerDispatchTracker.Dispatch();
+        Message<byte[]> message = message(dispatch, false);
+
+        interceptor.afterMessageHandled(message, null, broker, null);
+        assertThat(dispatch.await(2, 50)).isFalse();
+
+        CompletableFuture<Boolean> awaited = CompletableFuture.supplyAsync(() -> {
+            try {
+                return dispatch.await(2, 5000);
+            } catch (InterruptedException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        interceptor.afterMessageHandled(message, null, broker, null);
+        assertThat(awaited.get(5, TimeUnit.SECONDS)).isTrue();
+    }
+
+    @Test
+    public void testOnlyTheOriginalMessagesOfTheBrokerAreCounted() throws Exception {
+        BrokerDispatchTracker.Dispatch dispatch = new BrokerDispatchTracker.Dispatch();
+
+        // the UserDestinationMessageHandler and the copies of the user destinations
+        interceptor.afterMessageHandled(message(dispatch, false), null, mock(MessageHandler.class), null);
+        interceptor.afterMessageHandled(message(dispatch, true), null, broker, null);
+        assertThat(dispatch.await(1, 50)).isFalse();
+
+        interceptor.afterMessageHandled(message(dispatch, false), null, broker, new IllegalStateException("failed"));
+        assertThat(dispatch.await(1, 50)).isTrue();
+    }
+
+    private static Message<byte[]> message(final BrokerDispatchTracker.Dispatch dispatch, final boolean userDestinationCopy) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination("/topic/dispatch");
+        accessor.setHeader(BrokerDispatchTracker.DISPATCH_HEADER, dispatch);
+        if (userDestinationCopy) {
+            accessor.setHeader(SimpMessageHeaderAccessor.ORIGINAL_DESTINATION, "/user/topic/dispatch");
+        }
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+
+}
@@ -0,0 +1,150 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.publish;
+
+import net.brabenetz.app.springstompserver.config.WebSocketConfigProperties;
+import net.brabenetz.app.springstompserver.embedded.EmbeddedStompServer;
+import net.brabenetz.app.springstompserver.embedded.EmbeddedStompServerExtension;
+import net.brabenetz.app.springstompserver.testtools.WebSocketPayload;
+import net.brabenetz.app.springstompserver.testtools.WebSocketStompSessionHandler;
+import net.brabenetz.app.springstompserver.testtools.WebSocketUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.messaging.converter.SimpleMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BulkPublishControllerTest {
+
+    @RegisterExtension
+    static EmbeddedStompServerExtension server = new EmbeddedStompServerExtension(new WebSocketConfigProperties(),
+            "--spring-stomp-server.bulk-publish.enabled=true", "--spring-stomp-server.bulk-publish.batch-size=2");
+
+    private StompSession session;
+
+    private final BlockingQueue<WebSocketPayload<String>> messages = new LinkedBlockingQueue<>();
+
+    @BeforeEach
+    public void subscribe(EmbeddedStompServer embeddedStompServer) throws Exception {
+        WebSocketStompClient stompClient = WebSocketUtils.createStompClient();
+        // the payloads have different content-types, so they are not converted
+        stompClient.setMessageConverter(new SimpleMessageConverter());
+        session = stompClient.connect(embeddedStompServer.getWebsocketUrl(), new WebSocketStompSessionHandler("bulk-publish")).get(5, TimeUnit.SECONDS);
+        session.subscribe("/topic/bulk/*", new StompFrameHandler() {
+
+            @Override
+            public Type getPayloadType(StompHeaders headers) {
+                return byte[].class;
+            }
+
+            @Override
+            public void handleFrame(StompHeaders headers, Object payload) {
+                messages.add(new WebSocketPayload<>(headers, new String((byte[]) payload, StandardCharsets.UTF_8)));
+            }
+
+        });
+        // wait until the subscription is registered in the broker
+        session.send("/topic/bulk/ready", "ready".getBytes(StandardCharsets.UTF_8));
+        assertThat(messages.poll(5, TimeUnit.SECONDS).getBody()).isEqualTo("ready");
+    }
+
+    @AfterEach
+    public void disconnect() {
+        session.disconnect();
+    }
+
+    @Test
+    public void testPublishWithBatchAcknowledgements(EmbeddedStompServer embeddedStompServer) throws Exception {
+        List<String> acknowledgements = post(embeddedStompServer,
+                "{\"destination\":\"/topic/bulk/1\",\"payload\":\"text-1\"}\n"
+                        + "{\"destination\":\"/topic/bulk/2\",\"headers\":{\"source\":\"mock\"},\"payload\":{\"value\":2}}\n"
+                        + "{\"payload\":\"no destination\"}\n"
+                        + "{\"destination\":\"/topic/bulk/4\",\"headers\":{\"content-type\":\"application/xml\"},\"payload\":\"<value>4</value>\"}\n"
+                        + "{\"destination\":\"/topic/bulk/5\",\"payload\":[5]}\n");
+
+        assertThat(acknowledgements).containsExactly(
+                "{\"batch\":1,\"published\":2,\"failed\":0,\"total\":2}",
+                "{\"batch\":2,\"published\":1,\"failed\":1,\"total\":4}",
+                "{\"batch\":3,\"published\":1,\"failed\":0,\"total\":5}");
+
+        WebSocketPayload<String> text = messages.poll(5, TimeUnit.SECONDS);
+        assertThat(text.getBody()).isEqualTo("text-1");
+        assertThat(text.getHeaders().get("content-type")).containsExactly("text/plain;charset=UTF-8");
+        WebSocketPayload<String> json = messages.poll(5, TimeUnit.SECONDS);
+        assertThat(json.getBody()).isEqualTo("{\"value\":2}");
+        assertThat(json.getHeaders().get("content-type")).containsExactly("application/json");
+        assertThat(json.getHeaders().get("source")).containsExactly("mock");
+        WebSocketPayload<String> xml = messages.poll(5, TimeUnit.SECONDS);
+        assertThat(xml.getBody()).isEqualTo("<value>4</value>");
+        assertThat(xml.getHeaders().get("content-type")).containsExactly("application/xml");
+        assertThat(messages.poll(5, TimeUnit.SECONDS).getBody()).isEqualTo("[5]");
+    }
+
+    @Test
+    public void testInvalidJsonStopsThePublishing(EmbeddedStompServer embeddedStompServer) throws Exception {
+        List<String> acknowledgements = post(embeddedStompServer,
+                "{\"destination\":\"/topic/bulk/1\",\"payload\":\"valid\"}\n"
+                        + "not json\n"
+                        + "{\"destination\":\"/topic/bulk/3\",\"payload\":\"after error\"}\n");
+
+        assertThat(acknowledgements).hasSize(2);
+        assertThat(acknowledgements.get(0)).isEqualTo("{\"batch\":1,\"published\":1,\"failed\":0,\"total\":1}");
+        assertThat(acknowledgements.get(1)).startsWith("{\"error\":").endsWith("\"line\":2,\"total\":1}");
+        assertThat(messages.poll(5, TimeUnit.SECONDS).getBody()).isEqualTo("valid");
+        assertThat(messages.poll(500, TimeUnit.MILLISECONDS)).isNull();
+    }
+
+    private static List<String> post(EmbeddedStompServer embeddedStompServer, String ndjson) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + embeddedStompServer.getPort() + "/publish").openConnection();
+        connection.setRequestMethod("POST");
+        connection.setRequestProperty("Content-Type", "application/x-ndjson");
+        connection.setDoOutput(true);
+        // streamed request without Content-Length, like a generator of a load scenario
+        connection.setChunkedStreamingMode(64);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(ndjson.getBytes(StandardCharsets.UTF_8));
+        }
+        assertThat(connection.getResponseCode()).isEqualTo(200);
+        assertThat(connection.getContentType()).startsWith("application/x-ndjson");
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(connection.getInputStream(), StandardCharsets.UTF_8))) {
+            return reader.lines().collect(Collectors.toList());
+        }
+    }
+
+}
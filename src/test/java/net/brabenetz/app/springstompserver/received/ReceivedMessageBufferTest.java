@@ -0,0 +1,137 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.received;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReceivedMessageBufferTest {
+
+    private final ReceivedMessageBuffer buffer = new ReceivedMessageBuffer(4, 1000, Collections.singletonList("correlation-id"));
+
+    @Test
+    public void testEvictOldestByMaxEntries() {
+        for (int i = 1; i <= 6; i++) {
+            buffer.add(1000 + i, "session-1", "/topic/test/" + i, Collections.emptyMap(), ("payload-" + i).getBytes());
+        }
+
+        assertThat(payloads(buffer.query(new ReceivedMessageQuery()))).containsExactly("payload-3", "payload-4", "payload-5", "payload-6");
+        assertThat(buffer.size()).isEqualTo(4);
+        assertThat(buffer.getEvictionCount()).isEqualTo(2);
+        assertThat(buffer.query(new ReceivedMessageQuery().destination(Pattern.compile("/topic/test/1")))).isEmpty();
+    }
+
+    @Test
+    public void testEvictOldestByMaxBytes() {
+        ReceivedMessageBuffer smallBuffer = new ReceivedMessageBuffer(100, 25, Collections.emptyList());
+        // 10 bytes for the destination and 5 for the payload
+        smallBuffer.add(1000, "session-1", "/topic/a/1", Collections.emptyMap(), "11111".getBytes());
+        smallBuffer.add(1001, "session-1", "/topic/a/2", Collections.emptyMap(), "22222".getBytes());
+
+        assertThat(payloads(smallBuffer.query(new ReceivedMessageQuery()))).containsExactly("22222");
+        assertThat(smallBuffer.getCurrentBytes()).isEqualTo(15);
+        assertThat(smallBuffer.add(1002, "session-1", "/topic/a/3", Collections.emptyMap(), new byte[100])).isFalse();
+        assertThat(smallBuffer.getDroppedCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void testQueryByDestinationPatternAndSession() {
+        buffer.add(1000, "session-1", "/topic/orders/1", Collections.emptyMap(), "a".getBytes());
+        buffer.add(1001, "session-2", "/topic/orders/2", Collections.emptyMap(), "b".getBytes());
+        buffer.add(1002, "session-1", "/topic/prices/1", Collections.emptyMap(), "c".getBytes());
+        buffer.add(1003, "session-1", "/topic/orders/3", Collections.emptyMap(), "d".getBytes());
+
+        assertThat(payloads(buffer.query(new ReceivedMessageQuery().destination(Pattern.compile("/topic/orders/.*"))))).containsExactly("a", "b", "d");
+        assertThat(payloads(buffer.query(new ReceivedMessageQuery().session("session-1")))).containsExactly("a", "c", "d");
+        assertThat(payloads(buffer.query(new ReceivedMessageQuery().destination(Pattern.compile("/topic/orders/.*")).session("session-1"))))
+                .containsExactly("a", "d");
+        assertThat(payloads(buffer.query(new ReceivedMessageQuery().session("session-1").limit(2)))).containsExactly("c", "d");
+        assertThat(buffer.query(new ReceivedMessageQuery().session("unknown"))).isEmpty();
+    }
+
+    @Test
+    public void testQueryByTimeWindow() {
+        for (int i = 0; i < 4; i++) {
+            buffer.add(1000 + i * 10, "session-1", "/topic/test", Collections.emptyMap(), String.valueOf(i).getBytes());
+        }
+
+        assertThat(payloads(buffer.query(new ReceivedMessageQuery().from(1010).to(1020)))).containsExactly("1", "2");
+        assertThat(payloads(buffer.query(new ReceivedMessageQuery().from(1015)))).containsExactly("2", "3");
+        assertThat(payloads(buffer.query(new ReceivedMessageQuery().to(1005)))).containsExactly("0");
+        assertThat(buffer.query(new ReceivedMessageQuery().to(999))).isEmpty();
+    }
+
+    @Test
+    public void testQueryByIndexedAndNotIndexedHeader() {
+        buffer.add(1000, "session-1", "/topic/test", headers("correlation-id", "42", "type", "x"), "a".getBytes());
+        buffer.add(1001, "session-1", "/topic/test", headers("correlation-id", "43", "type", "y"), "b".getBytes());
+        buffer.add(1002, "session-1", "/topic/test", headers("correlation-id", "42", "type", "y"), "c".getBytes());
+
+        assertThat(payloads(buffer.query(new ReceivedMessageQuery().header("correlation-id", "42")))).containsExactly("a", "c");
+        assertThat(payloads(buffer.query(new ReceivedMessageQuery().header("type", "y")))).containsExactly("b", "c");
+    }
+
+    @Test
+    public void testAllHeadersAreIndexedWithoutIndexedHeaders() {
+        ReceivedMessageBuffer allHeadersBuffer = new ReceivedMessageBuffer(2, 1000, Collections.emptyList());
+        allHeadersBuffer.add(1000, "session-1", "/topic/test", headers("correlation-id", "42", "type", "x"), "a".getBytes());
+        allHeadersBuffer.add(1001, "session-1", "/topic/test", headers("correlation-id", "43", "type", "y"), "b".getBytes());
+        allHeadersBuffer.add(1002, "session-1", "/topic/test", headers("correlation-id", "42", "type", "y"), "c".getBytes());
+
+        assertThat(allHeadersBuffer.isIndexed("type")).isTrue();
+        assertThat(buffer.isIndexed("type")).isFalse();
+        // "a" is evicted together with its index entries
+        assertThat(payloads(allHeadersBuffer.query(new ReceivedMessageQuery().header("type", "y")))).containsExactly("b", "c");
+        assertThat(payloads(allHeadersBuffer.query(new ReceivedMessageQuery().header("type", "x")))).isEmpty();
+        assertThat(payloads(allHeadersBuffer.query(new ReceivedMessageQuery().header("correlation-id", "42")))).containsExactly("c");
+    }
+
+    @Test
+    public void testClear() {
+        buffer.add(1000, "session-1", "/topic/test", headers("correlation-id", "42", "type", "x"), "a".getBytes());
+        buffer.clear();
+        buffer.add(1001, "session-1", "/topic/test", Collections.emptyMap(), "b".getBytes());
+
+        assertThat(payloads(buffer.query(new ReceivedMessageQuery()))).containsExactly("b");
+        assertThat(buffer.query(new ReceivedMessageQuery().header("correlation-id", "42"))).isEmpty();
+        assertThat(buffer.getCurrentBytes()).isEqualTo(12);
+    }
+
+    private static Map<String, List<String>> headers(String name1, String value1, String name2, String value2) {
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        headers.put(name1, Arrays.asList(value1));
+        headers.put(name2, Arrays.asList(value2));
+        return headers;
+    }
+
+    private static List<String> payloads(List<ReceivedMessage> messages) {
+        return messages.stream().map(message -> new String(message.getPayload())).collect(Collectors.toList());
+    }
+
+}
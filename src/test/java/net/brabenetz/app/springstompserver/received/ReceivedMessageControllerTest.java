@@ -0,0 +1,113 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.received;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import net.brabenetz.app.springstompserver.config.WebSocketConfigProperties;
+import net.brabenetz.app.springstompserver.embedded.EmbeddedStompServer;
+import net.brabenetz.app.springstompserver.embedded.EmbeddedStompServerExtension;
+import net.brabenetz.app.springstompserver.testtools.WebSocketStompSessionHandler;
+import net.brabenetz.app.springstompserver.testtools.WebSocketUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class ReceivedMessageControllerTest {
+
+    @RegisterExtension
+    static EmbeddedStompServerExtension server = new EmbeddedStompServerExtension(new WebSocketConfigProperties(),
+            "--spring-stomp-server.received.enabled=true", "--spring-stomp-server.received.indexed-headers=correlation-id");
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    public void testQueryReceivedMessages(EmbeddedStompServer embeddedStompServer) throws Exception {
+        StompSession session = WebSocketUtils.createStompClient()
+                .connect(embeddedStompServer.getWebsocketUrl(), new WebSocketStompSessionHandler("received"))
+                .get(5, TimeUnit.SECONDS);
+        try {
+            session.send(headers("/topic/orders/1", "42"), "order-1");
+            session.send(headers("/topic/orders/2", "43"), "order-2");
+            session.send(headers("/topic/prices/1", "42"), "price-1");
+
+            JsonNode all = awaitQuery(embeddedStompServer, "", 3);
+            assertThat(all.get(0).get("destination").asText()).isEqualTo("/topic/orders/1");
+            assertThat(all.get(0).get("session").asText()).isNotEmpty();
+            assertThat(all.get(0).get("headers").get("correlation-id").get(0).asText()).isEqualTo("42");
+            assertThat(all.get(0).get("payload").asText()).isEqualTo("\"order-1\"");
+
+            JsonNode orders = query(embeddedStompServer, "?destination=/topic/orders/.*&header=correlation-id:42");
+            assertThat(orders).hasSize(1);
+            assertThat(orders.get(0).get("destination").asText()).isEqualTo("/topic/orders/1");
+            assertThat(query(embeddedStompServer, "?limit=1").get(0).get("destination").asText()).isEqualTo("/topic/prices/1");
+            long from = all.get(1).get("timestamp").asLong();
+            assertThat(query(embeddedStompServer, "?from=" + from + "&session=" + all.get(0).get("session").asText())).hasSizeBetween(2, 3);
+
+            assertThat(request(embeddedStompServer, "DELETE", "").getResponseCode()).isEqualTo(204);
+            assertThat(query(embeddedStompServer, "")).isEmpty();
+            assertThat(request(embeddedStompServer, "GET", "?header=no-separator").getResponseCode()).isEqualTo(400);
+            // only correlation-id is indexed
+            assertThat(request(embeddedStompServer, "GET", "?header=content-type:application/json").getResponseCode()).isEqualTo(400);
+        } finally {
+            session.disconnect();
+        }
+    }
+
+    private static StompHeaders headers(String destination, String correlationId) {
+        StompHeaders headers = new StompHeaders();
+        headers.setDestination(destination);
+        headers.add("correlation-id", correlationId);
+        return headers;
+    }
+
+    /** The SEND frames are processed asynchronously by the clientInboundChannel. */
+    private JsonNode awaitQuery(EmbeddedStompServer embeddedStompServer, String parameters, int expectedSize) throws Exception {
+        long deadline = System.currentTimeMillis() + 5000;
+        JsonNode result = query(embeddedStompServer, parameters);
+        while (result.size() < expectedSize && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+            result = query(embeddedStompServer, parameters);
+        }
+        assertThat(result).hasSize(expectedSize);
+        return result;
+    }
+
+    private JsonNode query(EmbeddedStompServer embeddedStompServer, String parameters) throws Exception {
+        HttpURLConnection connection = request(embeddedStompServer, "GET", parameters);
+        assertThat(connection.getResponseCode()).isEqualTo(200);
+        return objectMapper.readTree(connection.getInputStream());
+    }
+
+    private static HttpURLConnection request(EmbeddedStompServer embeddedStompServer, String method, String parameters) throws Exception {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + embeddedStompServer.getPort() + "/received" + parameters)
+                .openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+}
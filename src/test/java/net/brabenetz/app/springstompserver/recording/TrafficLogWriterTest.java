@@ -0,0 +1,84 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.recording;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+public class TrafficLogWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void testRoundTripOverMultipleSegments() throws IOException {
+        try (TrafficLogWriter writer = new TrafficLogWriter(tempDir, 256)) {
+            for (int i = 0; i < 20; i++) {
+                writer.append(new TrafficRecord(i * 1000L, "/topic/" + i, Collections.singletonMap("content-type", Arrays.asList("text/plain", "ü")),
+                        ("payload-" + i).getBytes()));
+            }
+        }
+
+        assertThat(Files.list(tempDir).count()).isGreaterThan(1);
+        List<TrafficRecord> records = new ArrayList<>();
+        try (TrafficLogReader reader = new TrafficLogReader(tempDir)) {
+            reader.forEachRemaining(records::add);
+        }
+        assertThat(records).hasSize(20);
+        for (int i = 0; i < 20; i++) {
+            TrafficRecord record = records.get(i);
+            assertThat(record.getRelativeNanos()).isEqualTo(i * 1000L);
+            assertThat(record.getDestination()).isEqualTo("/topic/" + i);
+            assertThat(record.getNativeHeaders()).containsEntry("content-type", Arrays.asList("text/plain", "ü"));
+            assertThat(record.getPayload()).isEqualTo(("payload-" + i).getBytes());
+        }
+    }
+
+    @Test
+    public void testEmptyRecording() throws IOException {
+        new TrafficLogWriter(tempDir, 1024).close();
+
+        try (TrafficLogReader reader = new TrafficLogReader(tempDir)) {
+            assertThat(reader.hasNext()).isFalse();
+        }
+    }
+
+    @Test
+    public void testRecordLargerThanSegment() throws IOException {
+        try (TrafficLogWriter writer = new TrafficLogWriter(tempDir, 64)) {
+            Map<String, List<String>> noHeaders = Collections.emptyMap();
+            assertThatThrownBy(() -> writer.append(new TrafficRecord(0, "/topic/a", noHeaders, new byte[64])))
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+}
@@ -0,0 +1,178 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.recording;
+
+import net.brabenetz.app.springstompserver.config.TenantPartitions;
+import net.brabenetz.app.springstompserver.config.WebSocketConfigProperties;
+import net.brabenetz.app.springstompserver.config.WebSocketRecordingConfigProperties;
+import net.brabenetz.app.springstompserver.publish.BrokerDispatchTracker;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorChannelInterceptor;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class TrafficReplayerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<Message<?>> publishedMessages = new ArrayList<>();
+
+    private final ExecutorChannelInterceptor dispatchInterceptor = new BrokerDispatchTracker().interceptor();
+
+    private final WebSocketRecordingConfigProperties recordingProperties = new WebSocketRecordingConfigProperties();
+
+    @Test
+    public void testRecordAndReplay() throws Exception {
+        Path recordingDir = record();
+
+        long count = replayer().replay(recordingDir, 0);
+
+        assertThat(count).isEqualTo(2);
+        assertThat(publishedMessages).hasSize(2);
+        Message<?> message = publishedMessages.get(0);
+        assertThat(SimpMessageHeaderAccessor.getMessageType(message.getHeaders())).isEqualTo(SimpMessageType.MESSAGE);
+        assertThat(SimpMessageHeaderAccessor.getDestination(message.getHeaders())).isEqualTo("/topic/a");
+        assertThat(SimpMessageHeaderAccessor.getFirstNativeHeader("my-header", message.getHeaders())).isEqualTo("my-value");
+        assertThat(SimpMessageHeaderAccessor.getFirstNativeHeader("content-length", message.getHeaders())).isNull();
+        assertThat(message.getPayload()).isEqualTo("a".getBytes());
+        assertThat(SimpMessageHeaderAccessor.getDestination(publishedMessages.get(1).getHeaders())).isEqualTo("/topic/b");
+    }
+
+    @Test
+    public void testReplayWithRecordedTiming() throws Exception {
+        try (TrafficLogWriter writer = new TrafficLogWriter(tempDir, 1024)) {
+            writer.append(new TrafficRecord(TimeUnit.MILLISECONDS.toNanos(1000), "/topic/a", null, new byte[0]));
+            writer.append(new TrafficRecord(TimeUnit.MILLISECONDS.toNanos(1400), "/topic/a", null, new byte[0]));
+        }
+
+        long start = System.nanoTime();
+        replayer().replay(tempDir, 2);
+
+        // 400ms recorded gap with speed 2
+        assertThat(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isBetween(200L, 2000L);
+        assertThat(publishedMessages).hasSize(2);
+    }
+
+    @Test
+    public void testReplayIsLimitedByTheBroker() throws Exception {
+        int recordCount = 1000;
+        try (TrafficLogWriter writer = new TrafficLogWriter(tempDir, 1024 * 1024)) {
+            for (int i = 0; i < recordCount; i++) {
+                writer.append(new TrafficRecord(i, "/topic/a", null, new byte[0]));
+            }
+        }
+        // the brokerChannel executor can only queue 10 messages, more would be rejected
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(1);
+        executor.setMaxPoolSize(1);
+        executor.setQueueCapacity(10);
+        executor.initialize();
+        ExecutorSubscribableChannel brokerChannel = new ExecutorSubscribableChannel(executor);
+        brokerChannel.addInterceptor(dispatchInterceptor);
+        ExecutorSubscribableChannel outboundChannel = new ExecutorSubscribableChannel();
+        AtomicInteger deliveredCount = new AtomicInteger();
+        outboundChannel.subscribe(message -> {
+            if (SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) == SimpMessageType.MESSAGE) {
+                deliveredCount.incrementAndGet();
+            }
+        });
+        SimpleBrokerMessageHandler broker = new SimpleBrokerMessageHandler(new ExecutorSubscribableChannel(), outboundChannel, brokerChannel,
+                Collections.singletonList("/topic"));
+        broker.start();
+        SimpMessageHeaderAccessor connect = SimpMessageHeaderAccessor.create(SimpMessageType.CONNECT);
+        connect.setSessionId("session-1");
+        broker.handleMessage(MessageBuilder.createMessage("", connect.getMessageHeaders()));
+        SimpMessageHeaderAccessor subscribe = SimpMessageHeaderAccessor.create(SimpMessageType.SUBSCRIBE);
+        subscribe.setSessionId("session-1");
+        subscribe.setSubscriptionId("sub-1");
+        subscribe.setDestination("/topic/a");
+        broker.handleMessage(MessageBuilder.createMessage("", subscribe.getMessageHeaders()));
+        recordingProperties.getReplay().setBatchSize(5);
+        TrafficReplayer replayer = replayer();
+        ReflectionTestUtils.setField(replayer, "brokerChannel", brokerChannel);
+
+        assertThat(replayer.replay(tempDir, 0)).isEqualTo(recordCount);
+        // all messages are dispatched when the replay returns
+        assertThat(deliveredCount.get()).isEqualTo(recordCount);
+        broker.stop();
+        executor.shutdown();
+    }
+
+    private Path record() throws Exception {
+        WebSocketRecordingConfigProperties properties = new WebSocketRecordingConfigProperties();
+        properties.setDirectory(tempDir.toString());
+        TrafficRecorder recorder = new TrafficRecorder();
+        ReflectionTestUtils.setField(recorder, "recordingConfigProperties", properties);
+        recorder.afterPropertiesSet();
+        recorder.inboundInterceptor().preSend(sendMessage("/topic/a", "a"), null);
+        recorder.inboundInterceptor().preSend(sendMessage("/topic/b", "b"), null);
+        recorder.destroy();
+        assertThat(recorder.getRecordedCount()).isEqualTo(2);
+        assertThat(recorder.getDroppedCount()).isZero();
+        try (Stream<Path> dirs = Files.list(tempDir)) {
+            return dirs.findFirst().get();
+        }
+    }
+
+    private TrafficReplayer replayer() {
+        TrafficReplayer replayer = new TrafficReplayer();
+        TenantPartitions tenantPartitions = new TenantPartitions();
+        ReflectionTestUtils.setField(tenantPartitions, "properties", new WebSocketConfigProperties());
+        ReflectionTestUtils.setField(replayer, "tenantPartitions", tenantPartitions);
+        ReflectionTestUtils.setField(replayer, "recordingConfigProperties", recordingProperties);
+        ReflectionTestUtils.setField(replayer, "brokerChannel", (MessageChannel) (message, timeout) -> {
+            publishedMessages.add(message);
+            dispatchInterceptor.afterMessageHandled(message, null, mock(SimpleBrokerMessageHandler.class), null);
+            return true;
+        });
+        return replayer;
+    }
+
+    private static Message<byte[]> sendMessage(final String destination, final String payload) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination(destination);
+        accessor.addNativeHeader("destination", destination);
+        accessor.addNativeHeader("content-length", String.valueOf(payload.length()));
+        accessor.addNativeHeader("my-header", "my-value");
+        return MessageBuilder.createMessage(payload.getBytes(), accessor.getMessageHeaders());
+    }
+
+}
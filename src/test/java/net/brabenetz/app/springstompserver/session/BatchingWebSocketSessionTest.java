@@ -0,0 +1,157 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.session;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class BatchingWebSocketSessionTest {
+
+    private ThreadPoolTaskScheduler taskScheduler;
+
+    private ThreadPoolTaskExecutor flushExecutor;
+
+    private List<String> sendThreads;
+
+    private List<WebSocketMessage<?>> sentMessages;
+
+    private WebSocketSession delegate;
+
+    @BeforeEach
+    public void init() throws Exception {
+        taskScheduler = new ThreadPoolTaskScheduler();
+        taskScheduler.initialize();
+        flushExecutor = new ThreadPoolTaskExecutor();
+        flushExecutor.setCorePoolSize(2);
+        flushExecutor.setThreadNamePrefix("flush-");
+        flushExecutor.initialize();
+        sentMessages = new CopyOnWriteArrayList<>();
+        sendThreads = new CopyOnWriteArrayList<>();
+        delegate = mock(WebSocketSession.class);
+        when(delegate.getId()).thenReturn("session-1");
+        when(delegate.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            sendThreads.add(Thread.currentThread().getName());
+            return sentMessages.add(invocation.getArgument(0));
+        }).when(delegate).sendMessage(any());
+    }
+
+    @AfterEach
+    public void shutdown() {
+        taskScheduler.shutdown();
+        flushExecutor.shutdown();
+    }
+
+    @Test
+    public void testFramesAreCombinedUntilTheSizeLimit() throws Exception {
+        BatchingWebSocketSession session = new BatchingWebSocketSession(delegate, 40, 10000, taskScheduler, flushExecutor);
+
+        session.sendMessage(new TextMessage("MESSAGE\n\nfirst\0"));
+        session.sendMessage(new TextMessage("MESSAGE\n\nsecond\0"));
+        assertThat(sentMessages).describedAs("buffered").isEmpty();
+
+        session.sendMessage(new TextMessage("MESSAGE\n\nthird\0"));
+        assertThat(sentMessages).hasSize(1);
+        assertThat(sentMessages.get(0).getPayload()).isEqualTo("MESSAGE\n\nfirst\0MESSAGE\n\nsecond\0MESSAGE\n\nthird\0");
+    }
+
+    @Test
+    public void testFramesAreSentAfterTheTimeLimit() throws Exception {
+        BatchingWebSocketSession session = new BatchingWebSocketSession(delegate, 64 * 1024, 500, taskScheduler, flushExecutor);
+
+        TextMessage message = new TextMessage("MESSAGE\n\nonly\0");
+        session.sendMessage(message);
+        assertThat(sentMessages).describedAs("buffered").isEmpty();
+
+        long timeout = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (sentMessages.isEmpty() && System.nanoTime() < timeout) {
+            Thread.sleep(10);
+        }
+        // a single message is sent as it is
+        assertThat(sentMessages).containsExactly(message);
+        assertThat(sendThreads).allMatch(name -> name.startsWith("flush-"));
+    }
+
+    @Test
+    public void testBlockedFlushDoesNotBlockTheScheduler() throws Exception {
+        CountDownLatch writeBlocked = new CountDownLatch(1);
+        CountDownLatch releaseWrite = new CountDownLatch(1);
+        WebSocketSession slowDelegate = mock(WebSocketSession.class);
+        when(slowDelegate.getId()).thenReturn("slow-session");
+        when(slowDelegate.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            writeBlocked.countDown();
+            return releaseWrite.await(10, TimeUnit.SECONDS);
+        }).when(slowDelegate).sendMessage(any());
+        BatchingWebSocketSession slowSession = new BatchingWebSocketSession(slowDelegate, 64 * 1024, 50, taskScheduler, flushExecutor);
+        BatchingWebSocketSession session = new BatchingWebSocketSession(delegate, 64 * 1024, 50, taskScheduler, flushExecutor);
+
+        try {
+            slowSession.sendMessage(new TextMessage("MESSAGE\n\nslow\0"));
+            assertThat(writeBlocked.await(5, TimeUnit.SECONDS)).isTrue();
+
+            // the single scheduler thread is free for the time limit of the other session and the heartbeats
+            TextMessage message = new TextMessage("MESSAGE\n\nfast\0");
+            session.sendMessage(message);
+            CountDownLatch heartbeat = new CountDownLatch(1);
+            taskScheduler.schedule(heartbeat::countDown, Instant.now().plusMillis(10));
+            assertThat(heartbeat.await(5, TimeUnit.SECONDS)).isTrue();
+            long timeout = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (sentMessages.isEmpty() && System.nanoTime() < timeout) {
+                Thread.sleep(10);
+            }
+            assertThat(sentMessages).containsExactly(message);
+        } finally {
+            releaseWrite.countDown();
+        }
+    }
+
+    @Test
+    public void testBinaryMessageFlushesTheBuffer() throws Exception {
+        BatchingWebSocketSession session = new BatchingWebSocketSession(delegate, 64 * 1024, 10000, taskScheduler, flushExecutor);
+
+        TextMessage textMessage = new TextMessage("MESSAGE\n\ntext\0");
+        BinaryMessage binaryMessage = new BinaryMessage(new byte[] {1, 2, 3});
+        session.sendMessage(textMessage);
+        session.sendMessage(binaryMessage);
+
+        assertThat(sentMessages).containsExactly(textMessage, binaryMessage);
+    }
+
+}
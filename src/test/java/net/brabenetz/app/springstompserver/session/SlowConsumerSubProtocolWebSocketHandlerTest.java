@@ -0,0 +1,150 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.session;
+
+import net.brabenetz.app.springstompserver.config.WebSocketConfigProperties;
+import net.brabenetz.app.springstompserver.embedded.EmbeddedStompServer;
+import net.brabenetz.app.springstompserver.embedded.EmbeddedStompServerExtension;
+import net.brabenetz.app.springstompserver.metrics.StompMetrics;
+import net.brabenetz.app.springstompserver.testtools.WebSocketStompSessionHandler;
+import net.brabenetz.app.springstompserver.testtools.WebSocketUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import javax.websocket.ContainerProvider;
+import javax.websocket.WebSocketContainer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * E2e tests with a real STOMP client, which stops reading: the frame handler blocks the read thread of the client, so the socket buffers fill up and
+ * the writes of the server block.
+ */
+public class SlowConsumerSubProtocolWebSocketHandlerTest {
+
+    private static final int MAX_PUBLISHED = 5000;
+
+    /** A frame of about 32K, so the socket buffers fill up soon. */
+    private static final String PADDING = String.join("", Collections.nCopies(32 * 1024, "x"));
+
+    @RegisterExtension
+    static EmbeddedStompServerExtension server = new EmbeddedStompServerExtension(slowConsumerRules());
+
+    private final List<StompSession> sessions = new ArrayList<>();
+
+    private static WebSocketConfigProperties slowConsumerRules() {
+        WebSocketConfigProperties properties = new WebSocketConfigProperties();
+        // the frames are only queued while another thread is blocked in a write to the session
+        properties.setChannelOutboundCorePoolSize(4);
+        properties.setSlowConsumerRules(Arrays.asList(
+                new SlowConsumerRule(Pattern.compile("^/topic/slow/prices$"), SlowConsumerPolicy.CONFLATE, null),
+                new SlowConsumerRule(Pattern.compile("^/topic/slow/ticks$"), SlowConsumerPolicy.DROP_OLDEST, 128 * 1024)));
+        return properties;
+    }
+
+    @AfterEach
+    public void disconnect() {
+        sessions.forEach(StompSession::disconnect);
+    }
+
+    @Test
+    public void testConflateInsteadOfClose(EmbeddedStompServer embeddedStompServer) throws Exception {
+        publishToBlockedClient(embeddedStompServer, "/topic/slow/prices", SlowConsumerPolicy.CONFLATE);
+    }
+
+    @Test
+    public void testDropOldestInsteadOfClose(EmbeddedStompServer embeddedStompServer) throws Exception {
+        publishToBlockedClient(embeddedStompServer, "/topic/slow/ticks", SlowConsumerPolicy.DROP_OLDEST);
+    }
+
+    /**
+     * Publishes to a client which doesn't read, until the policy drops frames. Then the client reads again and gets the latest frame, and the session
+     * is still open.
+     */
+    private void publishToBlockedClient(final EmbeddedStompServer embeddedStompServer, final String destination,
+            final SlowConsumerPolicy policy) throws Exception {
+        SlowConsumerCounters counters = embeddedStompServer.getApplicationContext().getBean(StompMetrics.class).getSlowConsumerCounters();
+        SimpMessagingTemplate template = embeddedStompServer.getApplicationContext().getBean(SimpMessagingTemplate.class);
+        long dropped = counters.get(policy);
+
+        WebSocketContainer container = ContainerProvider.getWebSocketContainer();
+        container.setDefaultMaxTextMessageBufferSize(64 * 1024);
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient(container));
+        stompClient.setMessageConverter(new StringMessageConverter());
+        StompSession session = stompClient.connect(embeddedStompServer.getWebsocketUrl(), new WebSocketStompSessionHandler("STOMP-WebSocket-slow"))
+                .get(5, TimeUnit.SECONDS);
+        sessions.add(session);
+        CountDownLatch resume = new CountDownLatch(1);
+        List<String> bodies = Collections.synchronizedList(new ArrayList<>());
+        CountDownLatch subscribed = new CountDownLatch(1);
+        session.subscribe(destination, WebSocketUtils.createStompFrameHandler((StompHeaders headers, String payload) -> {
+            bodies.add(payload);
+            if ("subscribed".equals(payload)) {
+                subscribed.countDown();
+                return;
+            }
+            try {
+                // the client stops reading
+                resume.await(30, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        // the subscription is done, when its first frame arrives
+        while (!subscribed.await(100, TimeUnit.MILLISECONDS)) {
+            template.convertAndSend(destination, "subscribed");
+        }
+
+        int published = 0;
+        while (counters.get(policy) == dropped && published < MAX_PUBLISHED) {
+            template.convertAndSend(destination, published++ + ":" + PADDING);
+        }
+        // the frames still in the clientOutboundChannel are queued before the last one
+        Thread.sleep(200);
+        String last = published + ":last";
+        template.convertAndSend(destination, last);
+        resume.countDown();
+
+        long deadline = System.currentTimeMillis() + 30000;
+        while (!bodies.contains(last) && session.isConnected() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(counters.get(policy)).describedAs("%s frames", policy).isGreaterThan(dropped);
+        assertThat(session.isConnected()).describedAs("connected").isTrue();
+        assertThat(bodies).contains(last);
+        assertThat(bodies.stream().filter(body -> !"subscribed".equals(body))).hasSizeLessThan(published + 1);
+    }
+
+}
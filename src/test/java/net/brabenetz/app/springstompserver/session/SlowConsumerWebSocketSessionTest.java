@@ -0,0 +1,253 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.session;
+
+import org.assertj.core.api.ThrowableAssert.ThrowingCallable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class SlowConsumerWebSocketSessionTest {
+
+    private List<WebSocketMessage<?>> sentMessages;
+
+    /** The drain tasks, which are only executed on {@link #drain()}, to simulate a slow client. */
+    private List<Runnable> writerTasks;
+
+    private SlowConsumerCounters counters;
+
+    private WebSocketSession delegate;
+
+    /** The sends which are executed while the next frame is written, to simulate a write in flight. */
+    private ThrowingCallable whileWriting;
+
+    @BeforeEach
+    public void init() throws Exception {
+        sentMessages = Collections.synchronizedList(new ArrayList<>());
+        writerTasks = new ArrayList<>();
+        counters = new SlowConsumerCounters();
+        delegate = mock(WebSocketSession.class);
+        when(delegate.getId()).thenReturn("session-1");
+        when(delegate.isOpen()).thenReturn(true);
+        doAnswer(invocation -> {
+            sentMessages.add(invocation.getArgument(0));
+            ThrowingCallable sends = whileWriting;
+            whileWriting = null;
+            if (sends != null) {
+                sends.call();
+            }
+            return null;
+        }).when(delegate).sendMessage(any());
+    }
+
+    @Test
+    public void testFastConsumerGetsAllFrames() throws Exception {
+        SlowConsumerWebSocketSession session = createSession(1000, new SlowConsumerRule(Pattern.compile("^/topic/.*$"), SlowConsumerPolicy.CONFLATE, null));
+
+        session.sendMessage(frame("/topic/a", "sub-0", "1"));
+        session.sendMessage(frame("/topic/a", "sub-0", "2"));
+
+        // written directly, without a drain task
+        assertThat(writerTasks).isEmpty();
+        assertThat(bodies()).containsExactly("1", "2");
+        assertThat(session.getQueuedBytes()).isZero();
+        assertThat(counters.get(SlowConsumerPolicy.CONFLATE)).isZero();
+    }
+
+    @Test
+    public void testConflateToTheLatestValuePerDestinationAndSubscription() throws Exception {
+        SlowConsumerWebSocketSession session = createSession(1000,
+                new SlowConsumerRule(Pattern.compile("^/topic/prices/.*$"), SlowConsumerPolicy.CONFLATE, null));
+
+        whileWriting = () -> {
+            session.sendMessage(frame("/topic/prices/a", "sub-0", "a1"));
+            session.sendMessage(frame("/topic/prices/b", "sub-0", "b1"));
+            session.sendMessage(frame("/topic/prices/a", "sub-0", "a2"));
+            session.sendMessage(frame("/topic/prices/a", "sub-1", "a2-sub1"));
+            session.sendMessage(frame("/topic/orders", "sub-2", "order"));
+            session.sendMessage(frame("/topic/prices/a", "sub-0", "a3"));
+        };
+        session.sendMessage(frame("/topic/prices/a", "sub-0", "a0"));
+        drain();
+
+        assertThat(bodies()).containsExactly("a0", "a3", "b1", "a2-sub1", "order");
+        assertThat(counters.get(SlowConsumerPolicy.CONFLATE)).isEqualTo(2);
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        int frameSize = frame("/topic/ticks", "sub-0", "0").getPayloadLength();
+        int orderSize = frame("/topic/orders", "sub-1", "order").getPayloadLength();
+        // the limit is for all queued frames of the session: the order and two ticks
+        SlowConsumerWebSocketSession session = createSession(1000,
+                new SlowConsumerRule(Pattern.compile("^/topic/ticks$"), SlowConsumerPolicy.DROP_OLDEST, orderSize + frameSize * 2));
+
+        whileWriting = () -> {
+            session.sendMessage(frame("/topic/orders", "sub-1", "order"));
+            for (int i = 0; i < 5; i++) {
+                session.sendMessage(frame("/topic/ticks", "sub-0", String.valueOf(i)));
+            }
+        };
+        session.sendMessage(frame("/topic/ticks", "sub-0", "first"));
+        drain();
+
+        // the BUFFER frame of /topic/orders is never dropped
+        assertThat(bodies()).containsExactly("first", "order", "3", "4");
+        assertThat(counters.get(SlowConsumerPolicy.DROP_OLDEST)).isEqualTo(3);
+    }
+
+    @Test
+    public void testDisconnectImmediately() throws Exception {
+        int frameSize = frame("/topic/ticks", "sub-0", "0").getPayloadLength();
+        SlowConsumerWebSocketSession session = createSession(1000,
+                new SlowConsumerRule(Pattern.compile("^/topic/ticks$"), SlowConsumerPolicy.DISCONNECT, frameSize * 2));
+
+        whileWriting = () -> {
+            session.sendMessage(frame("/topic/ticks", "sub-0", "0"));
+            session.sendMessage(frame("/topic/ticks", "sub-0", "1"));
+            assertThatThrownBy(() -> session.sendMessage(frame("/topic/ticks", "sub-0", "2"))).isInstanceOf(SessionLimitExceededException.class);
+        };
+        session.sendMessage(frame("/topic/ticks", "sub-0", "first"));
+        drain();
+
+        assertThat(bodies()).containsExactly("first");
+        assertThat(counters.get(SlowConsumerPolicy.DISCONNECT)).isEqualTo(1);
+    }
+
+    @Test
+    public void testBufferUntilTheSendBufferSizeLimit() throws Exception {
+        int frameSize = frame("/topic/orders", "sub-0", "0").getPayloadLength();
+        SlowConsumerWebSocketSession session = createSession(frameSize * 2,
+                new SlowConsumerRule(Pattern.compile("^/topic/ticks$"), SlowConsumerPolicy.DROP_OLDEST, null));
+
+        whileWriting = () -> {
+            session.sendMessage(frame("/topic/orders", "sub-0", "0"));
+            session.sendMessage(frame("/topic/orders", "sub-0", "1"));
+            assertThatThrownBy(() -> session.sendMessage(frame("/topic/orders", "sub-0", "2"))).isInstanceOf(SessionLimitExceededException.class);
+        };
+        session.sendMessage(frame("/topic/orders", "sub-0", "first"));
+
+        assertThat(counters.get(SlowConsumerPolicy.BUFFER)).isEqualTo(1);
+        assertThat(session.getQueuedBytes()).isZero();
+    }
+
+    @Test
+    public void testBlockedSessionDoesNotDelayTheHealthySession() throws Exception {
+        ThreadPoolTaskExecutor writerExecutor = new ThreadPoolTaskExecutor();
+        writerExecutor.setCorePoolSize(1);
+        writerExecutor.setQueueCapacity(0);
+        writerExecutor.setThreadNamePrefix("sessionWriter-");
+        writerExecutor.initialize();
+        AtomicInteger blockedWrites = new AtomicInteger();
+        CountDownLatch firstWriteStarted = new CountDownLatch(1);
+        CountDownLatch secondFrameQueued = new CountDownLatch(1);
+        CountDownLatch secondWriteStarted = new CountDownLatch(1);
+        CountDownLatch unblock = new CountDownLatch(1);
+        WebSocketSession blockedDelegate = mock(WebSocketSession.class);
+        when(blockedDelegate.getId()).thenReturn("session-blocked");
+        doAnswer(invocation -> {
+            if (blockedWrites.incrementAndGet() == 1) {
+                firstWriteStarted.countDown();
+                secondFrameQueued.await();
+            } else {
+                // the client stops reading
+                secondWriteStarted.countDown();
+                unblock.await();
+            }
+            return null;
+        }).when(blockedDelegate).sendMessage(any());
+        SlowConsumerWebSocketSession blocked = new SlowConsumerWebSocketSession(blockedDelegate, Collections.emptyList(), 1000, 10000,
+                writerExecutor, counters);
+        SlowConsumerWebSocketSession healthy = new SlowConsumerWebSocketSession(delegate, Collections.emptyList(), 1000, 10000,
+                writerExecutor, counters);
+        ExecutorService sender = Executors.newSingleThreadExecutor();
+        try {
+            sender.submit(() -> {
+                blocked.sendMessage(frame("/topic/a", "sub-0", "0"));
+                return null;
+            });
+            assertThat(firstWriteStarted.await(5, TimeUnit.SECONDS)).isTrue();
+            // queued while the first write is in flight, so the sender is not blocked
+            blocked.sendMessage(frame("/topic/a", "sub-0", "1"));
+            secondFrameQueued.countDown();
+            // the drain task of the blocked session is blocked in the only core thread of the writer executor
+            assertThat(secondWriteStarted.await(5, TimeUnit.SECONDS)).isTrue();
+
+            whileWriting = () -> healthy.sendMessage(frame("/topic/a", "sub-0", "2"));
+            healthy.sendMessage(frame("/topic/a", "sub-0", "1"));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (sentMessages.size() < 2 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            assertThat(bodies()).containsExactly("1", "2");
+            assertThat(blockedWrites).hasValue(2);
+        } finally {
+            unblock.countDown();
+            sender.shutdown();
+            writerExecutor.shutdown();
+        }
+    }
+
+    private SlowConsumerWebSocketSession createSession(final int bufferSizeLimit, final SlowConsumerRule... rules) {
+        return new SlowConsumerWebSocketSession(delegate, Arrays.asList(rules), bufferSizeLimit, 10000, writerTasks::add, counters);
+    }
+
+    private void drain() {
+        while (!writerTasks.isEmpty()) {
+            writerTasks.remove(0).run();
+        }
+    }
+
+    private List<String> bodies() {
+        return sentMessages.stream().map(message -> {
+            String frame = (String) message.getPayload();
+            return frame.substring(frame.indexOf("\n\n") + 2, frame.length() - 1);
+        }).collect(Collectors.toList());
+    }
+
+    private static TextMessage frame(final String destination, final String subscription, final String body) {
+        return new TextMessage("MESSAGE\ndestination:" + destination + "\nsubscription:" + subscription + "\nmessage-id:1\n\n" + body + "\0");
+    }
+
+}
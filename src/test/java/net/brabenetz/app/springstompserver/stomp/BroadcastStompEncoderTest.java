@@ -0,0 +1,107 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.stomp;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompDecoder;
+import org.springframework.messaging.simp.stomp.StompEncoder;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.NativeMessageHeaderAccessor;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+public class BroadcastStompEncoderTest {
+
+    private final StompEncoder stompEncoder = new StompEncoder();
+
+    private final BroadcastStompEncoder broadcastEncoder = new BroadcastStompEncoder();
+
+    private final StompDecoder decoder = new StompDecoder();
+
+    @Test
+    public void testBroadcastFramesAreEqualToTheStompEncoderFrames() {
+        byte[] payload = "{\"test\": 1234}".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < 3; i++) {
+            Map<String, Object> headers = messageHeaders("/topic/test/1234", "sub-" + i, "message:" + i);
+
+            assertSameFrame(broadcastEncoder.encode(headers, payload), stompEncoder.encode(headers, payload));
+        }
+        assertThat(broadcastEncoder.getSharedFrameMissCount()).isEqualTo(1);
+        assertThat(broadcastEncoder.getSharedFrameHitCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void testSharedPartIsNotReusedForOtherPayloadOrHeaders() {
+        byte[] payload = "first".getBytes(StandardCharsets.UTF_8);
+        byte[] otherPayload = "first".getBytes(StandardCharsets.UTF_8);
+
+        Map<String, Object> headers = messageHeaders("/topic/test/1234", "sub-0", "0");
+        assertSameFrame(broadcastEncoder.encode(headers, payload), stompEncoder.encode(headers, payload));
+        // equal but not the same payload
+        assertSameFrame(broadcastEncoder.encode(headers, otherPayload), stompEncoder.encode(headers, otherPayload));
+        // other destination
+        Map<String, Object> otherHeaders = messageHeaders("/topic/test/5678", "sub-0", "1");
+        assertSameFrame(broadcastEncoder.encode(otherHeaders, otherPayload), stompEncoder.encode(otherHeaders, otherPayload));
+
+        assertThat(broadcastEncoder.getSharedFrameMissCount()).isEqualTo(3);
+        assertThat(broadcastEncoder.getSharedFrameHitCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void testOtherFramesAreEncodedByTheStompEncoder() {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.CONNECTED);
+        accessor.setNativeHeader("version", "1.2");
+        Map<String, Object> headers = accessor.getMessageHeaders();
+
+        assertThat(broadcastEncoder.encode(headers, new byte[0])).isEqualTo(stompEncoder.encode(headers, new byte[0]));
+        assertThat(broadcastEncoder.getSharedFrameMissCount()).isEqualTo(0);
+    }
+
+    private static Map<String, Object> messageHeaders(final String destination, final String subscriptionId, final String messageId) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.create(StompCommand.MESSAGE);
+        accessor.setDestination(destination);
+        accessor.setNativeHeader("content-type", "application/json");
+        accessor.setNativeHeader("x-escaped", "a:b\\c");
+        accessor.setSubscriptionId(subscriptionId);
+        accessor.setMessageId(messageId);
+        return accessor.getMessageHeaders();
+    }
+
+    private void assertSameFrame(final byte[] actual, final byte[] expected) {
+        assertThat(actual).hasSameSizeAs(expected);
+        Message<byte[]> actualMessage = decoder.decode(ByteBuffer.wrap(actual)).get(0);
+        Message<byte[]> expectedMessage = decoder.decode(ByteBuffer.wrap(expected)).get(0);
+        assertThat(actualMessage.getPayload()).isEqualTo(expectedMessage.getPayload());
+        assertThat(nativeHeaders(actualMessage)).isEqualTo(nativeHeaders(expectedMessage));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, List<String>> nativeHeaders(final Message<byte[]> message) {
+        return (Map<String, List<String>>) message.getHeaders().get(NativeMessageHeaderAccessor.NATIVE_HEADERS);
+    }
+
+}
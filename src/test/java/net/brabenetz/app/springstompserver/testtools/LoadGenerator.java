@@ -0,0 +1,384 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.testtools;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.simp.stomp.StompFrameHandler;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.io.PrintStream;
+import java.lang.reflect.Type;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A load generator which starts N STOMP clients (WebSocket or SockJS), each with M subscriptions, and publishes messages with a fixed rate to the
+ * subscribed destinations.
+ * <p>
+ * It reports the following latencies as HdrHistogram percentiles:
+ * <ul>
+ * <li>connect: from the connect request until the STOMP session is connected.</li>
+ * <li>init-load: from the SUBSCRIBE until the first message which was not published by the load generator (only if the destination matches an
+ * init-load destination-pattern of the server).</li>
+ * <li>delivery: from the scheduled send time until the message is received by a subscriber. The scheduled (not the actual) send time is used, so a
+ * stalled publisher doesn't hide the latency (coordinated omission).</li>
+ * </ul>
+ * Example:
+ *
+ * <pre>
+ * java -cp ... net.brabenetz.app.springstompserver.testtools.LoadGenerator --url=ws://localhost:8080/websocket --clients=100 --subscriptions=10
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(LoadGenerator.class);
+
+    /**
+     * The header with the scheduled send time (System.nanoTime) of a published message.
+     */
+    static final String SEND_TIME_HEADER = "load-send-time";
+
+    private final Settings settings;
+
+    private final Histogram connectLatency = new ConcurrentHistogram(3);
+
+    private final Histogram initLoadLatency = new ConcurrentHistogram(3);
+
+    private final Histogram deliveryLatency = new ConcurrentHistogram(3);
+
+    private final AtomicLong publishedCount = new AtomicLong();
+
+    public LoadGenerator(final Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Just run this class as application.
+     */
+    public static void main(final String[] args) throws Exception {
+        LoadGenerator loadGenerator = new LoadGenerator(Settings.parse(args));
+        loadGenerator.run();
+        loadGenerator.report(System.out);
+    }
+
+    /**
+     * Connects the clients, publishes the messages for the configured duration and disconnects the clients.
+     */
+    public void run() throws Exception {
+        WebSocketStompClient stompClient = settings.sockJs ? WebSocketUtils.createStompOverSocketJsClient() : WebSocketUtils.createStompClient();
+        // the payload is only measured, never parsed.
+        stompClient.setMessageConverter(new ByteArrayMessageConverter());
+
+        List<StompSession> sessions = new ArrayList<>();
+        try {
+            for (int c = 0; c < settings.clients; c++) {
+                long connectStart = System.nanoTime();
+                StompSession session = stompClient.connect(settings.url, new WebSocketStompSessionHandler("load-client-" + c))
+                        .get(settings.timeout, TimeUnit.MILLISECONDS);
+                connectLatency.recordValue(System.nanoTime() - connectStart);
+                sessions.add(session);
+                for (int s = 0; s < settings.subscriptions; s++) {
+                    session.subscribe(destination(s), new LoadFrameHandler(System.nanoTime()));
+                }
+            }
+            LOG.info("{} clients with {} subscriptions connected.", settings.clients, settings.subscriptions);
+            // the SUBSCRIBE frames are processed asynchronously, so give the broker (and the init-loads) some time.
+            Thread.sleep(settings.warmup);
+
+            publish(sessions);
+            awaitDelivery();
+        } finally {
+            sessions.forEach(StompSession::disconnect);
+            stompClient.stop();
+        }
+    }
+
+    private void publish(final List<StompSession> sessions) {
+        byte[] payload = new byte[settings.payloadSize];
+        Arrays.fill(payload, (byte) 'x');
+        long interval = TimeUnit.SECONDS.toNanos(1) / settings.rate;
+        long start = System.nanoTime();
+        long end = start + TimeUnit.MILLISECONDS.toNanos(settings.duration);
+        for (long i = 0;; i++) {
+            long scheduledTime = start + i * interval;
+            if (scheduledTime >= end) {
+                break;
+            }
+            long delay = scheduledTime - System.nanoTime();
+            if (delay > 0) {
+                LockSupport.parkNanos(delay);
+            }
+            StompHeaders headers = new StompHeaders();
+            headers.setDestination(destination((int) (i % settings.subscriptions)));
+            headers.set(SEND_TIME_HEADER, Long.toString(scheduledTime));
+            sessions.get((int) (i % sessions.size())).send(headers, payload);
+            publishedCount.incrementAndGet();
+        }
+    }
+
+    private void awaitDelivery() throws InterruptedException {
+        // each client subscribed each destination, so each message is delivered to all clients.
+        long expected = publishedCount.get() * settings.clients;
+        long deadline = System.currentTimeMillis() + settings.timeout;
+        while (deliveryLatency.getTotalCount() < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        if (deliveryLatency.getTotalCount() < expected) {
+            LOG.warn("Only {} of {} messages were delivered within {}ms.", deliveryLatency.getTotalCount(), expected, settings.timeout);
+        }
+    }
+
+    private String destination(final int index) {
+        return settings.destination.replace("{n}", Integer.toString(index));
+    }
+
+    /**
+     * Prints the number of messages and the latency percentiles in milliseconds.
+     *
+     * @param out the stream to print the report to.
+     */
+    public void report(final PrintStream out) {
+        out.printf("published: %d, delivered: %d (%d clients, %d subscriptions, %d msg/s, %d bytes)%n", publishedCount.get(),
+                deliveryLatency.getTotalCount(), settings.clients, settings.subscriptions, settings.rate, settings.payloadSize);
+        out.printf("%-10s %10s %10s %10s %10s %10s %10s%n", "latency", "count", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        report(out, "connect", connectLatency);
+        report(out, "init-load", initLoadLatency);
+        report(out, "delivery", deliveryLatency);
+    }
+
+    private static void report(final PrintStream out, final String name, final Histogram histogram) {
+        out.printf("%-10s %10d %10.3f %10.3f %10.3f %10.3f %10.3f%n", name, histogram.getTotalCount(), millis(histogram.getValueAtPercentile(50)),
+                millis(histogram.getValueAtPercentile(90)), millis(histogram.getValueAtPercentile(99)), millis(histogram.getValueAtPercentile(99.9)),
+                millis(histogram.getMaxValue()));
+    }
+
+    private static double millis(final long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    public Histogram getConnectLatency() {
+        return connectLatency;
+    }
+
+    public Histogram getInitLoadLatency() {
+        return initLoadLatency;
+    }
+
+    public Histogram getDeliveryLatency() {
+        return deliveryLatency;
+    }
+
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    /**
+     * Records the init-load and delivery latency of one subscription.
+     */
+    private class LoadFrameHandler implements StompFrameHandler {
+
+        private final long subscribeTime;
+
+        private final AtomicBoolean initLoadReceived = new AtomicBoolean();
+
+        LoadFrameHandler(final long subscribeTime) {
+            this.subscribeTime = subscribeTime;
+        }
+
+        @Override
+        public Type getPayloadType(final StompHeaders headers) {
+            return byte[].class;
+        }
+
+        @Override
+        public void handleFrame(final StompHeaders headers, final Object payload) {
+            long now = System.nanoTime();
+            String sendTime = headers.getFirst(SEND_TIME_HEADER);
+            if (sendTime != null) {
+                deliveryLatency.recordValue(Math.max(0, now - Long.parseLong(sendTime)));
+            } else if (initLoadReceived.compareAndSet(false, true)) {
+                initLoadLatency.recordValue(now - subscribeTime);
+            }
+        }
+
+    }
+
+    /**
+     * The settings of the load generator, which can be parsed from "--name=value" arguments.
+     */
+    public static class Settings {
+
+        /**
+         * The STOMP endpoint (ws://... for WebSocket, http://... for SockJS).
+         */
+        private String url = "ws://localhost:8080/websocket";
+
+        /**
+         * If true, the clients connect via SockJS.
+         */
+        private boolean sockJs;
+
+        /**
+         * The number of clients.
+         */
+        private int clients = 10;
+
+        /**
+         * The number of subscriptions per client. All clients subscribe the same destinations.
+         */
+        private int subscriptions = 10;
+
+        /**
+         * The destination template, "{n}" is replaced by the subscription index.
+         */
+        private String destination = "/topic/load/{n}";
+
+        /**
+         * The number of published messages per second (of all clients).
+         */
+        private int rate = 100;
+
+        /**
+         * The payload size of the published messages in bytes.
+         */
+        private int payloadSize = 100;
+
+        /**
+         * The publish duration in milliseconds.
+         */
+        private long duration = 10000;
+
+        /**
+         * The pause in milliseconds between the subscriptions and the first published message.
+         */
+        private long warmup = 1000;
+
+        /**
+         * The timeout in milliseconds for the connect and for the delivery of the last messages.
+         */
+        private long timeout = 10000;
+
+        public static Settings parse(final String[] args) {
+            Settings settings = new Settings();
+            for (String arg : args) {
+                String[] nameValue = arg.replaceFirst("^--", "").split("=", 2);
+                String value = nameValue.length > 1 ? nameValue[1] : "true";
+                switch (nameValue[0]) {
+                    case "url":
+                        settings.url(value);
+                        break;
+                    case "sock-js":
+                        settings.sockJs(Boolean.parseBoolean(value));
+                        break;
+                    case "clients":
+                        settings.clients(Integer.parseInt(value));
+                        break;
+                    case "subscriptions":
+                        settings.subscriptions(Integer.parseInt(value));
+                        break;
+                    case "destination":
+                        settings.destination(value);
+                        break;
+                    case "rate":
+                        settings.rate(Integer.parseInt(value));
+                        break;
+                    case "payload-size":
+                        settings.payloadSize(Integer.parseInt(value));
+                        break;
+                    case "duration":
+                        settings.duration(Long.parseLong(value));
+                        break;
+                    case "warmup":
+                        settings.warmup(Long.parseLong(value));
+                        break;
+                    case "timeout":
+                        settings.timeout(Long.parseLong(value));
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown argument: " + arg);
+                }
+            }
+            return settings;
+        }
+
+        public Settings url(final String url) {
+            this.url = url;
+            return this;
+        }
+
+        public Settings sockJs(final boolean sockJs) {
+            this.sockJs = sockJs;
+            return this;
+        }
+
+        public Settings clients(final int clients) {
+            this.clients = clients;
+            return this;
+        }
+
+        public Settings subscriptions(final int subscriptions) {
+            this.subscriptions = subscriptions;
+            return this;
+        }
+
+        public Settings destination(final String destination) {
+            this.destination = destination;
+            return this;
+        }
+
+        public Settings rate(final int rate) {
+            this.rate = rate;
+            return this;
+        }
+
+        public Settings payloadSize(final int payloadSize) {
+            this.payloadSize = payloadSize;
+            return this;
+        }
+
+        public Settings duration(final long duration) {
+            this.duration = duration;
+            return this;
+        }
+
+        public Settings warmup(final long warmup) {
+            this.warmup = warmup;
+            return this;
+        }
+
+        public Settings timeout(final long timeout) {
+            this.timeout = timeout;
+            return this;
+        }
+
+    }
+
+}
@@ -0,0 +1,69 @@
+/*-
+ * #%L
+ * Spring Stomp Server
+ * ===============================================================
+ * Copyright (C) 2020 Brabenetz Harald, Austria
+ * ===============================================================
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ * #L%
+ */
+package net.brabenetz.app.springstompserver.testtools;
+
+import com.github.tomakehurst.wiremock.WireMockServer;
+import com.github.tomakehurst.wiremock.client.WireMock;
+import com.maciejwalkowiak.wiremock.spring.ConfigureWireMock;
+import com.maciejwalkowiak.wiremock.spring.EnableWireMock;
+import com.maciejwalkowiak.wiremock.spring.InjectWireMock;
+import net.brabenetz.app.springstompserver.config.WebSocketInitLoadConfigProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.server.LocalServerPort;
+import org.springframework.core.env.Environment;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = "spring-stomp-server.init-load.destination-patterns=^/topic/load/(.*)$")
+@EnableWireMock(@ConfigureWireMock(name = "wiremock", property = "wiremock.baseurl"))
+public class LoadGeneratorTest {
+
+    @LocalServerPort
+    private int port;
+
+    @InjectWireMock("wiremock")
+    private WireMockServer wiremock;
+
+    @Autowired
+    private Environment env;
+
+    @Autowired
+    private WebSocketInitLoadConfigProperties webSocketInitLoadConfigProperties;
+
+    @Test
+    public void testLoadGenerator() throws Exception {
+        webSocketInitLoadConfigProperties.setProxyUrl(env.getProperty("wiremock.baseurl") + "/mocked-init-load/${group-1}");
+        wiremock.stubFor(WireMock.get(WireMock.urlMatching("/mocked-init-load/.*")).willReturn(WireMock.ok("\"init\"")));
+
+        LoadGenerator loadGenerator = new LoadGenerator(LoadGenerator.Settings.parse(new String[] {
+            "--url=ws://localhost:" + port + "/websocket", "--clients=3", "--subscriptions=2", "--rate=50", "--duration=1000", "--warmup=5000" }));
+        loadGenerator.run();
+        loadGenerator.report(System.out);
+
+        assertThat(loadGenerator.getConnectLatency().getTotalCount()).isEqualTo(3);
+        assertThat(loadGenerator.getInitLoadLatency().getTotalCount()).isEqualTo(3 * 2);
+        assertThat(loadGenerator.getPublishedCount()).isEqualTo(50);
+        assertThat(loadGenerator.getDeliveryLatency().getTotalCount()).isEqualTo(50 * 3);
+    }
+
+}